@@ -0,0 +1,57 @@
+package com.outbrain.ob1k.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a marker cached in place of a value that the loader could not find (negative caching).
+ * <p>
+ * the tombstone carries its own expiration time, so it can expire sooner than the values in the same cache
+ * regardless of the backend; an expired tombstone is treated as a cache miss.
+ * it is serializable so the default transcoders of spy memcached can store it as is.
+ * for folsom based clients, see {@code MemcachedClientBuilder.withNegativeCaching()}.
+ * </p>
+ * tombstones never reach the callers of the loading caches, which return null for them.
+ */
+public final class CacheTombstone implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long expirationTime;
+
+  public CacheTombstone(final long expirationTime) {
+    this.expirationTime = expirationTime;
+  }
+
+  /**
+   * creates a tombstone that expires after the given ttl, typed as a cache value.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> V create(final long ttl, final TimeUnit unit) {
+    return (V) new CacheTombstone(System.currentTimeMillis() + unit.toMillis(ttl));
+  }
+
+  public static boolean isTombstone(final Object value) {
+    return value instanceof CacheTombstone;
+  }
+
+  /**
+   * @return the value, or null if it is a tombstone.
+   */
+  public static <V> V unwrap(final V value) {
+    return isTombstone(value) ? null : value;
+  }
+
+  public long getExpirationTime() {
+    return expirationTime;
+  }
+
+  public boolean isExpired() {
+    return System.currentTimeMillis() >= expirationTime;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheTombstone{expirationTime=" + expirationTime + "}";
+  }
+}
@@ -27,6 +27,9 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.newPromise;
  * a wrapper for TypedCache implementation that delegate missing entries to a loader.
  * the loader is used a such a way that prevents concurrent activations on the same key.
  * <p>
+ * when a negative ttl is set, keys the loader could not find are cached as a {@link CacheTombstone} expiring after
+ * that ttl, so repeated lookups of missing keys don't reach the loader. tombstones are returned as null.
+ * <p>
  * @author aronen 10/26/14.
  */
 public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
@@ -40,6 +43,8 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
   private final long duration;
   private final TimeUnit timeUnit;
+  private final long negativeTtl;
+  private final TimeUnit negativeTtlUnit;
 
   private final Counter cacheHits;
   private final Counter cacheMiss;
@@ -47,6 +52,7 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
   private final Counter loaderErrors;
   private final Counter cacheTimeouts;
   private final Counter loaderTimeouts;
+  private final Counter negativeHits;
 
   public LoadingCacheDelegate(final TypedCache<K, V> cache, final CacheLoader<K, V> loader, final String cacheName) {
     this(cache, loader, cacheName, null);
@@ -59,6 +65,16 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
   public LoadingCacheDelegate(final TypedCache<K, V> cache, final CacheLoader<K, V> loader, final String cacheName,
                               final MetricFactory metricFactory, final long duration, final TimeUnit timeUnit) {
+    this(cache, loader, cacheName, metricFactory, duration, timeUnit, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param duration the timeout of fetching from the cache, and of the loader; non positive for no timeout.
+   * @param negativeTtl how long to cache the fact that the loader could not find a key, 0 to disable negative caching.
+   */
+  public LoadingCacheDelegate(final TypedCache<K, V> cache, final CacheLoader<K, V> loader, final String cacheName,
+                              final MetricFactory metricFactory, final long duration, final TimeUnit timeUnit,
+                              final long negativeTtl, final TimeUnit negativeTtlUnit) {
     this.cache = cache;
     this.loader = loader;
     this.cacheName = cacheName;
@@ -66,6 +82,8 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
     this.duration = duration;
     this.timeUnit = timeUnit;
+    this.negativeTtl = negativeTtl;
+    this.negativeTtlUnit = negativeTtlUnit;
 
     if (metricFactory != null) {
       metricFactory.registerGauge("LoadingCacheDelegate." + cacheName, "mapSize", futureValues::size);
@@ -76,6 +94,7 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
       loaderErrors = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "loaderErrors");
       cacheTimeouts = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "cacheTimeouts");
       loaderTimeouts = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "loaderTimeouts");
+      negativeHits = metricFactory.createCounter("LoadingCacheDelegate." + cacheName, "negativeHits");
 
     } else {
       cacheHits = null;
@@ -84,6 +103,7 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
       loaderErrors = null;
       cacheTimeouts = null;
       loaderTimeouts = null;
+      negativeHits = null;
     }
   }
 
@@ -97,11 +117,17 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
           return;
         }
 
-        final ComposableFuture<V> cachedResult = cache.getAsync(key).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch from cache named: " + cacheName);
+        final ComposableFuture<V> cachedResult = withTimeout(cache.getAsync(key), "LoadingCacheDelegate fetch from cache named: " + cacheName);
         cachedResult.consume(res -> {
           if (res.isSuccess()) {
             final V result = res.getValue();
-            if (result == null) {
+            if (isLiveTombstone(result)) {
+              if (negativeHits != null) {
+                negativeHits.inc();
+              }
+              promise.set(null);
+              futureValues.remove(key);
+            } else if (result == null || CacheTombstone.isTombstone(result)) {
               if (cacheMiss != null) {
                 cacheMiss.inc();
               }
@@ -132,9 +158,13 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
     );
   }
 
+  private <T> ComposableFuture<T> withTimeout(final ComposableFuture<T> future, final String taskDescription) {
+    return duration > 0 ? future.withTimeout(duration, timeUnit, taskDescription) : future;
+  }
+
   private void fetchFromLoader(final K key, final ComposablePromise<V> promise) {
     try {
-      final ComposableFuture<V> loadedResult = loader.load(cacheName, key).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch from loader; cache name:" + cacheName);
+      final ComposableFuture<V> loadedResult = withTimeout(loader.load(cacheName, key), "LoadingCacheDelegate fetch from loader; cache name:" + cacheName);
 
       loadedResult.consume(loadedRes -> {
         if (loadedRes.isSuccess()) {
@@ -160,7 +190,13 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
   }
 
   private void cacheLoadedValue(final K key, final Try<V> loadedRes) {
-    cache.setAsync(key, loadedRes.getValue()).consume(result -> {
+    final V value = loadedRes.getValue();
+    if (value == null && !isNegativeCachingEnabled()) {
+      futureValues.remove(key);
+      return;
+    }
+
+    cache.setAsync(key, value != null ? value : CacheTombstone.create(negativeTtl, negativeTtlUnit)).consume(result -> {
       futureValues.remove(key);
       handleCacheLoadedResultsFailure(result);
     });
@@ -190,15 +226,23 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
           }
         }
 
-        final ComposableFuture<Map<K, V>> cachedResults = cache.getBulkAsync(processedKeys).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch bulk from cache named: " + cacheName);
+        final ComposableFuture<Map<K, V>> cachedResults = withTimeout(cache.getBulkAsync(processedKeys), "LoadingCacheDelegate fetch bulk from cache named: " + cacheName);
         cachedResults.consume(tryGet -> {
           if (tryGet.isSuccess()) {
             final Map<K, V> result = tryGet.getValue();
             final List<K> missingFromCacheKeys = new ArrayList<>();
             for (final K key : processedKeys) {
-              if (result.containsKey(key)) {
+              final V value = result.get(key);
+              if (isLiveTombstone(value)) {
+                futureValues.get(key).set(null);
+                futureValues.remove(key);
+
+                if (negativeHits != null) {
+                  negativeHits.inc();
+                }
+              } else if (value != null && !CacheTombstone.isTombstone(value)) {
                 final ComposablePromise<V> promise = futureValues.get(key);
-                promise.set(result.get(key));
+                promise.set(value);
                 futureValues.remove(key);
 
                 if (cacheHits != null) {
@@ -235,7 +279,7 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
   private void fetchFromLoader(final List<K> missingFromCacheKeys) {
     try {
-      final ComposableFuture<Map<K, V>> loadedResults = loader.load(cacheName, missingFromCacheKeys).withTimeout(duration, timeUnit, "LoadingCacheDelegate fetch bulk from loader for cache named: " + cacheName);
+      final ComposableFuture<Map<K, V>> loadedResults = withTimeout(loader.load(cacheName, missingFromCacheKeys), "LoadingCacheDelegate fetch bulk from loader for cache named: " + cacheName);
       loadedResults.consume(loadedRes -> {
         if (loadedRes.isSuccess()) {
           final Map<K, V> elements = loadedRes.getValue();
@@ -266,13 +310,35 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
   }
 
   private void cacheLoadedValues(final List<K> missingFromCacheKeys, final Map<K, V> elements) {
-    cache.setBulkAsync(elements).consume(setBulkResult -> {
+    final Map<K, V> entries = new HashMap<>(elements);
+    if (isNegativeCachingEnabled()) {
+      for (final K key : missingFromCacheKeys) {
+        if (entries.get(key) == null) {
+          entries.put(key, CacheTombstone.create(negativeTtl, negativeTtlUnit));
+        }
+      }
+    }
+    entries.values().removeIf(value -> value == null);
+
+    cache.setBulkAsync(entries).consume(setBulkResult -> {
       missingFromCacheKeys.forEach(futureValues::remove);
 
       handleCacheLoadedResultsFailure(setBulkResult);
     });
   }
 
+  private static <K, V> EntryMapper<K, V> withoutTombstones(final EntryMapper<K, V> mapper) {
+    return (key, value) -> mapper.map(key, CacheTombstone.unwrap(value));
+  }
+
+  private boolean isNegativeCachingEnabled() {
+    return negativeTtl > 0;
+  }
+
+  private static boolean isLiveTombstone(final Object value) {
+    return CacheTombstone.isTombstone(value) && !((CacheTombstone) value).isExpired();
+  }
+
   private void handleCacheLoadedResultsFailure(final Try<?> setCommandResult) {
     if (!setCommandResult.isSuccess()) {
       if (cacheErrors != null) {
@@ -298,7 +364,7 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
 
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
-    return cache.setAsync(key, mapper, maxIterations);
+    return cache.setAsync(key, withoutTombstones(mapper), maxIterations);
   }
 
   @Override
@@ -306,8 +372,18 @@ public class LoadingCacheDelegate<K, V> implements TypedCache<K, V> {
     return cache.setBulkAsync(entries);
   }
 
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    return cache.setBulkAsync(keys, withoutTombstones(mapper), maxIterations);
+  }
+
   @Override
   public ComposableFuture<Boolean> deleteAsync(final K key) {
     return cache.deleteAsync(key);
   }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    return cache.deleteBulkAsync(keys);
+  }
 }
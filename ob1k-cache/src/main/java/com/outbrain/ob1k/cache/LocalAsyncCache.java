@@ -11,8 +11,13 @@ import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.concurrent.handlers.FutureErrorHandler;
 import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
+import com.outbrain.swinfra.metrics.api.Counter;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
@@ -25,6 +30,10 @@ import static com.outbrain.ob1k.concurrent.ComposableFutures.*;
  * User: aronen
  * Date: 6/30/13
  * Time: 6:08 PM
+ *
+ * when created with a loader and a negative ttl, keys the loader could not find are kept in the cache
+ * as a {@link CacheTombstone} expiring after that ttl, and are returned as null.
+ * without a loader, values (and tombstones) are kept as they were set.
  */
 public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   private final LoadingCache<K, ComposableFuture<V>> loadingCache;
@@ -32,6 +41,9 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   private final CacheLoader<K, V> loader;
   private final String cacheName;
   private final boolean failOnMissingEntries;
+  private final long negativeTtl;
+  private final TimeUnit negativeTtlUnit;
+  private final Counter negativeHits;
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final CacheLoader<K, V> loader,
                          final MetricFactory metricFactory, final String cacheName) {
@@ -40,9 +52,20 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
 
   public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final CacheLoader<K, V> loader,
                          final MetricFactory metricFactory, final String cacheName, final boolean failOnMissingEntries) {
+    this(maximumSize, ttl, unit, loader, metricFactory, cacheName, failOnMissingEntries, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param negativeTtl how long to cache the fact that the loader could not find a key, 0 to disable negative caching.
+   */
+  public LocalAsyncCache(final int maximumSize, final int ttl, final TimeUnit unit, final CacheLoader<K, V> loader,
+                         final MetricFactory metricFactory, final String cacheName, final boolean failOnMissingEntries,
+                         final long negativeTtl, final TimeUnit negativeTtlUnit) {
     this.loader = loader;
     this.cacheName = cacheName;
     this.failOnMissingEntries = failOnMissingEntries;
+    this.negativeTtl = negativeTtl;
+    this.negativeTtlUnit = negativeTtlUnit;
 
     final boolean collectStats = metricFactory != null;
     final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
@@ -66,6 +89,9 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
 
     if (collectStats) {
       GuavaCacheGaugesFactory.createGauges(metricFactory, loadingCache, "LocalAsyncCache-" + cacheName);
+      this.negativeHits = metricFactory.createCounter("LocalAsyncCache-" + cacheName, "negativeHits");
+    } else {
+      this.negativeHits = null;
     }
 
     this.localCache = null;
@@ -79,6 +105,9 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     this.loader = null;
     this.loadingCache = null;
     this.failOnMissingEntries = true; // fake value, not in use.
+    this.negativeTtl = 0; // not in use.
+    this.negativeTtlUnit = TimeUnit.MILLISECONDS;
+    this.negativeHits = null;
     this.cacheName = cacheName;
 
     final boolean collectStats = metricFactory != null;
@@ -106,7 +135,12 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
   }
 
   private ComposableFuture<V> loadElement(final K key) {
-    return loader.load(cacheName, key).materialize();
+    final ComposableFuture<V> loaded = loader.load(cacheName, key);
+    if (!isNegativeCachingEnabled()) {
+      return loaded.materialize();
+    }
+
+    return loaded.continueOnSuccess((SuccessHandler<V, V>) value -> value != null ? value : tombstone()).materialize();
   }
 
   private FutureSuccessHandler<Map<K, V>, V> extractLoaderResultEntry(final K key) {
@@ -117,6 +151,8 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     } else {
       if (failOnMissingEntries) {
         return fromError(new RuntimeException("result is missing from loader response."));
+      } else if (isNegativeCachingEnabled()) {
+        return fromValue(tombstone());
       } else {
         return fromNull();
       }
@@ -141,10 +177,30 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
         if (res == null) {
           return fromNull();
         }
-        return res.continueOnError((FutureErrorHandler<V>) error -> {
+        final ComposableFuture<V> result = res.continueOnError((FutureErrorHandler<V>) error -> {
           loadingCache.asMap().remove(key, res);
           return fromError(error);
         });
+
+        if (!isNegativeCachingEnabled()) {
+          return result;
+        }
+
+        return result.continueOnSuccess((FutureSuccessHandler<V, V>) value -> {
+          if (!CacheTombstone.isTombstone(value)) {
+            return fromValue(value);
+          }
+
+          if (((CacheTombstone) value).isExpired()) {
+            loadingCache.asMap().remove(key, res);
+            return getAsync(key);
+          }
+
+          if (negativeHits != null) {
+            negativeHits.inc();
+          }
+          return fromNull();
+        });
       } else {
         final ComposableFuture<V> res = localCache.getIfPresent(key);
         if (res == null) {
@@ -184,7 +240,35 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
         result.put(key, value);
       }
 
-      return ComposableFutures.all(true, result);
+      if (loadingCache == null || !isNegativeCachingEnabled()) {
+        return ComposableFutures.all(true, result);
+      }
+
+      return ComposableFutures.all(true, result).continueOnSuccess((FutureSuccessHandler<Map<K, V>, Map<K, V>>) values -> {
+        final List<K> expiredKeys = new ArrayList<>();
+        final Iterator<Map.Entry<K, V>> entries = values.entrySet().iterator();
+        while (entries.hasNext()) {
+          final Map.Entry<K, V> entry = entries.next();
+          if (CacheTombstone.isTombstone(entry.getValue())) {
+            entries.remove();
+            if (((CacheTombstone) entry.getValue()).isExpired()) {
+              loadingCache.asMap().remove(entry.getKey(), innerMap.get(entry.getKey()));
+              expiredKeys.add(entry.getKey());
+            } else if (negativeHits != null) {
+              negativeHits.inc();
+            }
+          }
+        }
+
+        if (expiredKeys.isEmpty()) {
+          return fromValue(values);
+        }
+
+        return getBulkAsync(expiredKeys).continueOnSuccess((SuccessHandler<Map<K, V>, Map<K, V>>) reloaded -> {
+          values.putAll(reloaded);
+          return values;
+        });
+      });
     } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
       return ComposableFutures.fromError(e.getCause());
     }
@@ -201,6 +285,22 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     return fromValue(true);
   }
 
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    if (loadingCache != null) {
+      loadingCache.invalidateAll(keys);
+    } else {
+      localCache.invalidateAll(keys);
+    }
+
+    final Map<K, Boolean> result = new HashMap<>();
+    for (final K key : keys) {
+      result.put(key, true);
+    }
+
+    return fromValue(result);
+  }
+
   @Override
   public ComposableFuture<Boolean> setAsync(final K key, final V value) {
     if (loadingCache != null) {
@@ -224,7 +324,7 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
       if (currentFuture != null) {
         return currentFuture.continueOnSuccess((FutureSuccessHandler<V, Boolean>) currentValue -> {
           try {
-            final V newValue = mapper.map(key, currentValue);
+            final V newValue = mapper.map(key, CacheTombstone.unwrap(currentValue));
             if (newValue == null) {
               return fromValue(false);
             }
@@ -259,6 +359,14 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     }
   }
 
+  private boolean isNegativeCachingEnabled() {
+    return loader != null && negativeTtl > 0;
+  }
+
+  private V tombstone() {
+    return CacheTombstone.create(negativeTtl, negativeTtlUnit);
+  }
+
   @Override
   public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
     final Map<K, ComposableFuture<Boolean>> result = new HashMap<>();
@@ -269,4 +377,14 @@ public class LocalAsyncCache<K,V> implements TypedCache<K,V> {
     return ComposableFutures.all(false, result);
   }
 
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    final Map<K, ComposableFuture<Boolean>> result = new HashMap<>();
+    for (final K key : keys) {
+      result.put(key, setAsync(key, mapper, maxIterations));
+    }
+
+    return ComposableFutures.all(false, result);
+  }
+
 }
@@ -17,5 +17,13 @@ public interface TypedCache<K, V> {
     ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations);
     ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries);
 
+    /**
+     * atomically maps over a set of entries.
+     * each key is retried independently (up to maxIterations times) when it was concurrently modified,
+     * so a contended key does not cause the whole batch to be re-executed.
+     */
+    ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations);
+
     ComposableFuture<Boolean> deleteAsync(final K key);
+    ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys);
 }
@@ -0,0 +1,166 @@
+package com.outbrain.ob1k.cache.filters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.common.filters.AsyncFilter;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.handlers.ErrorHandler;
+import com.outbrain.ob1k.concurrent.handlers.FutureErrorHandler;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a client/server filter for endpoints that take a collection of ids and return a map from id to entity.
+ * <p>
+ * each entity is cached separately, and the endpoint is invoked only with the ids that are missing from the cache,
+ * by replacing the collection parameter of the call. entities missing from the endpoint response are not cached.
+ * </p>
+ * errors of the cache are treated as misses. a failed call fails the ids it was invoked with for errorTtl.
+ *
+ * @param <E> the type of the ids in the collection parameter
+ * @param <K> the cache key type
+ * @param <V> the entity type
+ */
+public class BulkCachingFilter<E, K, V> implements AsyncFilter<Map<E, V>, AsyncRequestContext> {
+  private static final Logger log = LoggerFactory.getLogger(BulkCachingFilter.class);
+
+  private final TypedCache<K, V> cache;
+  private final BulkCacheKeyGenerator<E, K> generator;
+  private final int paramIndex;
+  private final Cache<K, Throwable> recentErrors;
+
+  private final Counter hits;
+  private final Counter misses;
+
+  public BulkCachingFilter(final BulkCacheKeyGenerator<E, K> generator, final int paramIndex, final TypedCache<K, V> cache) {
+    this(generator, paramIndex, cache, null, null, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param paramIndex the index of the collection parameter of the endpoint.
+   * @param errorTtl how long to fail ids whose last invocation failed, without invoking them again. 0 to disable.
+   */
+  public BulkCachingFilter(final BulkCacheKeyGenerator<E, K> generator, final int paramIndex, final TypedCache<K, V> cache,
+                           final String cacheName, final MetricFactory metricFactory, final long errorTtl, final TimeUnit errorTtlUnit) {
+    this.cache = cache;
+    this.generator = generator;
+    this.paramIndex = paramIndex;
+    this.recentErrors = errorTtl > 0 ? CacheBuilder.newBuilder().expireAfterWrite(errorTtl, errorTtlUnit).<K, Throwable>build() : null;
+
+    if (metricFactory != null) {
+      hits = metricFactory.createCounter("BulkCachingFilter." + cacheName, "hits");
+      misses = metricFactory.createCounter("BulkCachingFilter." + cacheName, "miss");
+    } else {
+      hits = null;
+      misses = null;
+    }
+  }
+
+  @Override
+  public ComposableFuture<Map<E, V>> handleAsync(final AsyncRequestContext ctx) {
+    final Object[] params = ctx.getParams();
+    @SuppressWarnings("unchecked")
+    final Collection<E> elements = (Collection<E>) params[paramIndex];
+
+    final Map<K, E> keys = new LinkedHashMap<>();
+    for (final E element : elements) {
+      keys.put(generator.createKey(params, element), element);
+    }
+
+    return cache.getBulkAsync(keys.keySet()).continueOnError((ErrorHandler<Map<K, V>>) error -> {
+      // in case there was an error in the cache we treat it as missing items in the cache.
+      return new HashMap<>();
+    }).continueOnSuccess((FutureSuccessHandler<Map<K, V>, Map<E, V>>) cached -> {
+      final Map<E, V> result = new HashMap<>();
+      final List<K> missingKeys = new ArrayList<>();
+      final Collection<E> missingElements = elements instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+
+      for (final Map.Entry<K, E> entry : keys.entrySet()) {
+        final V value = cached.get(entry.getKey());
+        if (value != null) {
+          result.put(entry.getValue(), value);
+          continue;
+        }
+
+        final Throwable error = recentErrors != null ? recentErrors.getIfPresent(entry.getKey()) : null;
+        if (error != null) {
+          return ComposableFutures.fromError(error);
+        }
+
+        missingKeys.add(entry.getKey());
+        missingElements.add(entry.getValue());
+      }
+
+      if (hits != null) {
+        hits.inc(result.size());
+        misses.inc(missingKeys.size());
+      }
+
+      if (missingKeys.isEmpty()) {
+        return ComposableFutures.fromValue(result);
+      }
+
+      final Object[] missingParams = params.clone();
+      missingParams[paramIndex] = missingElements;
+      return ctx.<Map<E, V>>invokeAsync(missingParams).continueOnSuccess((SuccessHandler<Map<E, V>, Map<E, V>>) loaded -> {
+        if (loaded != null) {
+          cacheLoadedValues(keys, missingKeys, loaded);
+          result.putAll(loaded);
+        }
+        return result;
+      }).continueOnError((FutureErrorHandler<Map<E, V>>) error -> {
+        if (recentErrors != null) {
+          for (final K key : missingKeys) {
+            recentErrors.put(key, error);
+          }
+        }
+        return ComposableFutures.fromError(error);
+      });
+    });
+  }
+
+  private void cacheLoadedValues(final Map<K, E> keys, final List<K> missingKeys, final Map<E, V> loaded) {
+    final Map<K, V> entries = new HashMap<>();
+    for (final K key : missingKeys) {
+      final V value = loaded.get(keys.get(key));
+      if (value != null) {
+        entries.put(key, value);
+      }
+    }
+
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    cache.setBulkAsync(entries).consume(result -> {
+      if (!result.isSuccess()) {
+        log.error("Failed to set loaded values", result.getError());
+      }
+    });
+  }
+
+  public static interface BulkCacheKeyGenerator<E, K> {
+    /**
+     * @param params all the params of the call, for endpoints whose result depends on more than the ids.
+     * @param element a single id of the collection parameter.
+     */
+    public K createKey(Object[] params, E element);
+  }
+}
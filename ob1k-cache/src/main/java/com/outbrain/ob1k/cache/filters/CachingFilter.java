@@ -1,57 +1,157 @@
 package com.outbrain.ob1k.cache.filters;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.cache.CacheLoader;
+import com.outbrain.ob1k.cache.LoadingCacheDelegate;
 import com.outbrain.ob1k.cache.LocalAsyncCache;
 import com.outbrain.ob1k.cache.TypedCache;
 import com.outbrain.ob1k.common.filters.AsyncFilter;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
-import com.outbrain.ob1k.concurrent.handlers.ErrorHandler;
-import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
-import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
+import com.outbrain.ob1k.concurrent.handlers.FutureErrorHandler;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
 
-import java.util.concurrent.ExecutionException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by aronen on 10/28/14.
  *
- * a client/server filter that caches method call result for a predefined period of time.
+ * a client/server filter that caches method call result in a {@link TypedCache}, local, remote or tiered.
+ * <p>
+ * misses are loaded through a {@link LoadingCacheDelegate}, so concurrent calls with the same key are invoked only once,
+ * and failed calls can be remembered for a short while so a failing endpoint isn't hammered by retries.
+ * errors of the cache itself are treated as misses, unless the call was already invoked for the key, e.g. when the
+ * call timed out, so a call is never invoked twice.
+ * </p>
+ * see {@link BulkCachingFilter} for endpoints that take a collection of ids.
  */
 public class CachingFilter<K, V> implements AsyncFilter<V, AsyncRequestContext> {
+  private static final long DEFAULT_ERROR_TTL_MS = 1000;
+
   private final TypedCache<K, V> cache;
+  private final TypedCache<K, V> loadingCache;
   private final CacheKeyGenerator<K> generator;
+  private final ConcurrentMap<K, PendingCall> pendingCalls;
+  private final Cache<K, Throwable> recentErrors;
+
+  public CachingFilter(final CacheKeyGenerator<K> generator, final int cacheSize, final int ttl, final TimeUnit timeUnit) {
+    this(generator, new LocalAsyncCache<>(cacheSize, ttl, timeUnit), "CachingFilter", null,
+        0, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
+  }
 
-  public CachingFilter(final CacheKeyGenerator<K> generator, int cacheSize, int ttl, TimeUnit timeUnit) {
-    this.cache = new LocalAsyncCache<>(cacheSize, ttl, timeUnit);
+  public CachingFilter(final CacheKeyGenerator<K> generator, final TypedCache<K, V> cache, final String cacheName,
+                       final MetricFactory metricFactory) {
+    this(generator, cache, cacheName, metricFactory, 0, TimeUnit.MILLISECONDS, DEFAULT_ERROR_TTL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param loadTimeout the timeout of fetching from the cache, and of the call itself; should exceed the call's own timeout.
+   *                    0 for no timeout, as with the other constructors.
+   * @param errorTtl how long to fail calls whose last invocation failed, without invoking them again. 0 to disable.
+   */
+  public CachingFilter(final CacheKeyGenerator<K> generator, final TypedCache<K, V> cache, final String cacheName,
+                       final MetricFactory metricFactory, final long loadTimeout, final TimeUnit loadTimeoutUnit,
+                       final long errorTtl, final TimeUnit errorTtlUnit) {
+    this.cache = cache;
     this.generator = generator;
+    this.pendingCalls = new ConcurrentHashMap<>();
+    this.recentErrors = errorTtl > 0 ? CacheBuilder.newBuilder().expireAfterWrite(errorTtl, errorTtlUnit).<K, Throwable>build() : null;
+    this.loadingCache = new LoadingCacheDelegate<>(cache, new ContextLoader(), cacheName, metricFactory, loadTimeout, loadTimeoutUnit);
   }
 
   @Override
   public ComposableFuture<V> handleAsync(final AsyncRequestContext ctx) {
     final K key = generator.createKey(ctx.getParams());
-    return cache.getAsync(key).continueOnError(new ErrorHandler<V>() {
-      @Override
-      public V handle(Throwable error) throws ExecutionException {
-        // in case there was an error in the cache we treat it as missing item in the cache.
-        return null;
+    if (recentErrors != null) {
+      final Throwable error = recentErrors.getIfPresent(key);
+      if (error != null) {
+        return ComposableFutures.fromError(error);
       }
-    }).continueOnSuccess(new FutureSuccessHandler<V, V>() {
-      @Override
-      public ComposableFuture<V> handle(V result) {
-        if (result != null) {
-          return ComposableFutures.fromValue(result);
-        } else {
-          return ctx.<V>invokeAsync().continueOnSuccess((SuccessHandler<V, V>) result1 -> {
-            cache.setAsync(key, result1);
-            return result1;
-          });
-        }
+    }
+
+    // identical calls are interchangeable, so the loader may invoke the context of any call waiting for this key,
+    // and the calls waiting together share the mark of the invocation.
+    final PendingCall pendingCall = pendingCalls.compute(key, (k, pending) ->
+        new PendingCall(ctx, pending != null ? pending.invoked : new AtomicBoolean()));
+    final ComposableFuture<V> result = loadingCache.getAsync(key).continueOnError((FutureErrorHandler<V>) error -> {
+      if (error instanceof LoadFailure) {
+        return ComposableFutures.fromError(error.getCause());
       }
+
+      if (pendingCall.invoked.get()) {
+        // the call may still be running, e.g. the load timed out, invoking it again could run it twice.
+        return ComposableFutures.fromError(error);
+      }
+
+      // in case there was an error in the cache we treat it as missing item in the cache.
+      return ctx.invokeAsync();
     });
+
+    result.consume(res -> pendingCalls.remove(key, pendingCall));
+    return result;
+  }
+
+  /**
+   * @return the cache used by this filter, e.g. for invalidating entries.
+   */
+  public TypedCache<K, V> getCache() {
+    return cache;
   }
 
   public static interface CacheKeyGenerator<K> {
     public K createKey(Object[] params);
   }
+
+  private class ContextLoader implements CacheLoader<K, V> {
+    @Override
+    public ComposableFuture<V> load(final String cacheName, final K key) {
+      final PendingCall pendingCall = pendingCalls.get(key);
+      if (pendingCall == null) {
+        return ComposableFutures.fromError(new LoadFailure(new IllegalStateException("no pending call for key " + key)));
+      }
+
+      pendingCall.invoked.set(true);
+      return pendingCall.ctx.<V>invokeAsync().continueOnError((FutureErrorHandler<V>) error -> {
+        if (recentErrors != null) {
+          recentErrors.put(key, error);
+        }
+        return ComposableFutures.fromError(new LoadFailure(error));
+      });
+    }
+
+    @Override
+    public ComposableFuture<Map<K, V>> load(final String cacheName, final Iterable<? extends K> keys) {
+      final Map<K, ComposableFuture<V>> values = new HashMap<>();
+      for (final K key : keys) {
+        values.put(key, load(cacheName, key));
+      }
+      return ComposableFutures.all(true, values);
+    }
+  }
+
+  private static class PendingCall {
+    final AsyncRequestContext ctx;
+    final AtomicBoolean invoked;
+
+    PendingCall(final AsyncRequestContext ctx, final AtomicBoolean invoked) {
+      this.ctx = ctx;
+      this.invoked = invoked;
+    }
+  }
+
+  /**
+   * marks errors of the call itself, as opposed to errors of the cache.
+   */
+  private static class LoadFailure extends RuntimeException {
+    LoadFailure(final Throwable cause) {
+      super(cause);
+    }
+  }
 }
@@ -0,0 +1,112 @@
+package com.outbrain.ob1k.cache.memcache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects frequently accessed keys using a count-min sketch.
+ * <p>
+ * the sketch uses a fixed amount of memory regardless of the number of distinct keys.
+ * counts may be over estimated (never under estimated), so a larger width means less cold keys reported as hot.
+ * all the counters are halved at the end of every window, so keys that cool down stop being reported as hot.
+ * </p>
+ * updates are not synchronized, the counts are approximated anyway.
+ */
+public class HotKeysDetector {
+
+  private static final int DEPTH = 4;
+  private static final int DEFAULT_WIDTH = 4096;
+
+  private final AtomicIntegerArray counters;
+  private final int widthMask;
+  private final int threshold;
+  private final long windowMs;
+  private final AtomicLong windowStart;
+
+  /**
+   * @param threshold the number of accesses within a window from which a key is considered hot.
+   * @param window    the decay window.
+   */
+  public HotKeysDetector(final int threshold, final long window, final TimeUnit unit) {
+    this(DEFAULT_WIDTH, threshold, window, unit);
+  }
+
+  /**
+   * @param width     the number of counters per hash function, rounded up to a power of two.
+   * @param threshold the number of accesses within a window from which a key is considered hot.
+   * @param window    the decay window.
+   */
+  public HotKeysDetector(final int width, final int threshold, final long window, final TimeUnit unit) {
+    if (width <= 0 || threshold <= 0) {
+      throw new IllegalArgumentException("width and threshold must be positive");
+    }
+
+    final int roundedWidth = Integer.highestOneBit(width - 1) << 1;
+    this.counters = new AtomicIntegerArray(DEPTH * Math.max(roundedWidth, 1));
+    this.widthMask = Math.max(roundedWidth, 1) - 1;
+    this.threshold = threshold;
+    this.windowMs = unit.toMillis(window);
+    this.windowStart = new AtomicLong(System.currentTimeMillis());
+  }
+
+  /**
+   * records an access to the key.
+   *
+   * @return true if the key is hot.
+   */
+  public boolean recordAccess(final String key) {
+    decayIfNeeded();
+
+    final int h1 = spread(key.hashCode());
+    final int h2 = spread(h1 ^ 0x5bd1e995);
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < DEPTH; i++) {
+      final int count = counters.incrementAndGet(index(i, h1, h2));
+      min = Math.min(min, count);
+    }
+
+    return min >= threshold;
+  }
+
+  /**
+   * @return true if the key is hot, without recording an access.
+   */
+  public boolean isHot(final String key) {
+    final int h1 = spread(key.hashCode());
+    final int h2 = spread(h1 ^ 0x5bd1e995);
+    for (int i = 0; i < DEPTH; i++) {
+      if (counters.get(index(i, h1, h2)) < threshold) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private int index(final int row, final int h1, final int h2) {
+    return row * (widthMask + 1) + ((h1 + row * h2) & widthMask);
+  }
+
+  private void decayIfNeeded() {
+    final long now = System.currentTimeMillis();
+    final long start = windowStart.get();
+    if (now - start < windowMs || !windowStart.compareAndSet(start, now)) {
+      return;
+    }
+
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, counters.get(i) >>> 1);
+    }
+  }
+
+  // murmur3 finalizer
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -0,0 +1,299 @@
+package com.outbrain.ob1k.cache.memcache;
+
+import com.outbrain.ob1k.cache.EntryMapper;
+import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.combiners.BiFunction;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.outbrain.ob1k.concurrent.ComposableFutures.combine;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+
+/**
+ * A memcached decorator that spreads the reads of hot keys over several nodes of the cluster.
+ * <p>
+ * every read is recorded by a {@link HotKeysDetector}. reads of a hot key are served from a random copy out of
+ * the original key and its replicas. a replica is stored under the original key with a "#n" suffix, so the consistent
+ * hashing of the underlying client places it on a (most probably) different node.
+ * a replica that is missing is read from the original key and backfilled.
+ * </p>
+ * <p>
+ * writes go to the original key, and also update (or invalidate) the replicas while the key is hot.
+ * replicas of a key that has cooled down are not updated anymore, so they should be stored with a short expiration,
+ * which bounds the staleness of replica reads. this is why the replicas are written to a separate cache
+ * (typically the same folsom client wrapped with a shorter expiration).
+ * </p>
+ */
+public class HotKeysReplicatingCacheDelegate<K, V> implements TypedCache<K, V> {
+
+  private final TypedCache<String, V> cache;
+  private final TypedCache<String, V> replicasCache;
+  private final CacheKeyTranslator<K> keyTranslator;
+  private final HotKeysDetector hotKeysDetector;
+  private final int replicas;
+
+  private final Counter hotReads;
+  private final Counter replicaMisses;
+
+  /**
+   * @param cache         the cache holding the original keys.
+   * @param replicasCache the cache holding the replicas, should have a short expiration.
+   * @param replicas      the number of replicas for each hot key (excluding the original).
+   */
+  public HotKeysReplicatingCacheDelegate(final TypedCache<String, V> cache, final TypedCache<String, V> replicasCache,
+                                         final CacheKeyTranslator<K> keyTranslator, final HotKeysDetector hotKeysDetector,
+                                         final int replicas, final String cacheName, final MetricFactory metricFactory) {
+    this.cache = Objects.requireNonNull(cache, "cache must not be null");
+    this.replicasCache = Objects.requireNonNull(replicasCache, "replicasCache must not be null");
+    this.keyTranslator = Objects.requireNonNull(keyTranslator, "keyTranslator must not be null");
+    this.hotKeysDetector = Objects.requireNonNull(hotKeysDetector, "hotKeysDetector must not be null");
+    if (replicas <= 0) {
+      throw new IllegalArgumentException("replicas must be positive");
+    }
+    this.replicas = replicas;
+
+    if (metricFactory != null) {
+      hotReads = metricFactory.createCounter("HotKeysReplicatingCacheDelegate." + cacheName, "hotReads");
+      replicaMisses = metricFactory.createCounter("HotKeysReplicatingCacheDelegate." + cacheName, "replicaMisses");
+    } else {
+      hotReads = null;
+      replicaMisses = null;
+    }
+  }
+
+  @Override
+  public ComposableFuture<V> getAsync(final K key) {
+    final String stringKey = keyTranslator.translateKey(key);
+    if (!hotKeysDetector.recordAccess(stringKey)) {
+      return cache.getAsync(stringKey);
+    }
+
+    if (hotReads != null) {
+      hotReads.inc();
+    }
+
+    final int replica = ThreadLocalRandom.current().nextInt(replicas + 1);
+    if (replica == 0) {
+      return cache.getAsync(stringKey);
+    }
+
+    final String replicaKey = replicaKey(stringKey, replica);
+    return replicasCache.getAsync(replicaKey).continueOnSuccess((FutureSuccessHandler<V, V>) value -> {
+      if (value != null) {
+        return fromValue(value);
+      }
+
+      if (replicaMisses != null) {
+        replicaMisses.inc();
+      }
+
+      return cache.getAsync(stringKey).continueOnSuccess((FutureSuccessHandler<V, V>) originalValue -> {
+        if (originalValue != null) {
+          replicasCache.setAsync(replicaKey, originalValue);
+        }
+        return fromValue(originalValue);
+      });
+    });
+  }
+
+  @Override
+  public ComposableFuture<Map<K, V>> getBulkAsync(final Iterable<? extends K> keys) {
+    final Map<String, K> coldKeys = new HashMap<>();
+    final Map<String, K> hotKeys = new HashMap<>();
+    final Map<String, String> replicaToOriginal = new HashMap<>();
+    for (final K key : keys) {
+      final String stringKey = keyTranslator.translateKey(key);
+      final int replica = hotKeysDetector.recordAccess(stringKey) ? ThreadLocalRandom.current().nextInt(replicas + 1) : 0;
+      if (replica == 0) {
+        coldKeys.put(stringKey, key);
+      } else {
+        hotKeys.put(stringKey, key);
+        replicaToOriginal.put(replicaKey(stringKey, replica), stringKey);
+      }
+    }
+
+    if (hotReads != null) {
+      hotReads.inc(hotKeys.size());
+    }
+
+    final ComposableFuture<Map<K, V>> coldValues = cache.getBulkAsync(coldKeys.keySet())
+      .continueOnSuccess((FutureSuccessHandler<Map<String, V>, Map<K, V>>) values -> fromValue(translateBack(values, coldKeys)));
+    if (hotKeys.isEmpty()) {
+      return coldValues;
+    }
+
+    final ComposableFuture<Map<K, V>> hotValues = replicasCache.getBulkAsync(replicaToOriginal.keySet())
+      .continueOnSuccess((FutureSuccessHandler<Map<String, V>, Map<K, V>>) replicaValues -> {
+        final Map<K, V> result = new HashMap<>();
+        final Map<String, String> missingReplicas = new HashMap<>();
+        for (final Map.Entry<String, String> replica : replicaToOriginal.entrySet()) {
+          final V value = replicaValues.get(replica.getKey());
+          if (value != null) {
+            result.put(hotKeys.get(replica.getValue()), value);
+          } else {
+            missingReplicas.put(replica.getValue(), replica.getKey());
+          }
+        }
+
+        if (missingReplicas.isEmpty()) {
+          return fromValue(result);
+        }
+
+        if (replicaMisses != null) {
+          replicaMisses.inc(missingReplicas.size());
+        }
+
+        return cache.getBulkAsync(missingReplicas.keySet()).continueOnSuccess((FutureSuccessHandler<Map<String, V>, Map<K, V>>) originalValues -> {
+          final Map<String, V> backfill = new HashMap<>();
+          for (final Map.Entry<String, V> originalValue : originalValues.entrySet()) {
+            result.put(hotKeys.get(originalValue.getKey()), originalValue.getValue());
+            backfill.put(missingReplicas.get(originalValue.getKey()), originalValue.getValue());
+          }
+
+          if (!backfill.isEmpty()) {
+            replicasCache.setBulkAsync(backfill);
+          }
+          return fromValue(result);
+        });
+      });
+
+    return combine(coldValues, hotValues, (BiFunction<Map<K, V>, Map<K, V>, Map<K, V>>) (cold, hot) -> {
+      final Map<K, V> result = new HashMap<>(cold);
+      result.putAll(hot);
+      return result;
+    });
+  }
+
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final V value) {
+    final String stringKey = keyTranslator.translateKey(key);
+    if (hotKeysDetector.isHot(stringKey)) {
+      final Map<String, V> replicaEntries = new HashMap<>();
+      for (final String replicaKey : replicaKeys(stringKey)) {
+        replicaEntries.put(replicaKey, value);
+      }
+      replicasCache.setBulkAsync(replicaEntries);
+    }
+
+    return cache.setAsync(stringKey, value);
+  }
+
+  /**
+   * the replicas of a hot key are invalidated after a successful update, and backfilled by the following reads.
+   */
+  @Override
+  public ComposableFuture<Boolean> setAsync(final K key, final EntryMapper<K, V> mapper, final int maxIterations) {
+    final String stringKey = keyTranslator.translateKey(key);
+    return cache.setAsync(stringKey, (k, value) -> mapper.map(key, value), maxIterations).continueOnSuccess((FutureSuccessHandler<Boolean, Boolean>) result -> {
+      if (result && hotKeysDetector.isHot(stringKey)) {
+        replicasCache.deleteBulkAsync(replicaKeys(stringKey));
+      }
+      return fromValue(result);
+    });
+  }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
+    final Map<String, K> keysMap = new HashMap<>();
+    final Map<String, V> stringEntries = new HashMap<>();
+    final Map<String, V> replicaEntries = new HashMap<>();
+    for (final Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+      final String stringKey = keyTranslator.translateKey(entry.getKey());
+      keysMap.put(stringKey, entry.getKey());
+      stringEntries.put(stringKey, entry.getValue());
+      if (hotKeysDetector.isHot(stringKey)) {
+        for (final String replicaKey : replicaKeys(stringKey)) {
+          replicaEntries.put(replicaKey, entry.getValue());
+        }
+      }
+    }
+
+    if (!replicaEntries.isEmpty()) {
+      replicasCache.setBulkAsync(replicaEntries);
+    }
+
+    return cache.setBulkAsync(stringEntries)
+      .continueOnSuccess((FutureSuccessHandler<Map<String, Boolean>, Map<K, Boolean>>) results -> fromValue(translateBack(results, keysMap)));
+  }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    final Map<String, K> keysMap = translate(keys);
+    return cache.setBulkAsync(keysMap.keySet(), (k, value) -> mapper.map(keysMap.get(k), value), maxIterations)
+      .continueOnSuccess((FutureSuccessHandler<Map<String, Boolean>, Map<K, Boolean>>) results -> {
+        deleteHotReplicas(results);
+        return fromValue(translateBack(results, keysMap));
+      });
+  }
+
+  @Override
+  public ComposableFuture<Boolean> deleteAsync(final K key) {
+    final String stringKey = keyTranslator.translateKey(key);
+    if (hotKeysDetector.isHot(stringKey)) {
+      replicasCache.deleteBulkAsync(replicaKeys(stringKey));
+    }
+
+    return cache.deleteAsync(stringKey);
+  }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    final Map<String, K> keysMap = translate(keys);
+    final Map<String, Boolean> allKeys = new HashMap<>();
+    keysMap.keySet().forEach(stringKey -> allKeys.put(stringKey, true));
+    deleteHotReplicas(allKeys);
+
+    return cache.deleteBulkAsync(keysMap.keySet())
+      .continueOnSuccess((FutureSuccessHandler<Map<String, Boolean>, Map<K, Boolean>>) results -> fromValue(translateBack(results, keysMap)));
+  }
+
+  private void deleteHotReplicas(final Map<String, Boolean> results) {
+    final List<String> replicaKeys = new ArrayList<>();
+    for (final Map.Entry<String, Boolean> result : results.entrySet()) {
+      if (result.getValue() && hotKeysDetector.isHot(result.getKey())) {
+        replicaKeys.addAll(replicaKeys(result.getKey()));
+      }
+    }
+
+    if (!replicaKeys.isEmpty()) {
+      replicasCache.deleteBulkAsync(replicaKeys);
+    }
+  }
+
+  private List<String> replicaKeys(final String stringKey) {
+    final List<String> replicaKeys = new ArrayList<>(replicas);
+    for (int replica = 1; replica <= replicas; replica++) {
+      replicaKeys.add(replicaKey(stringKey, replica));
+    }
+    return replicaKeys;
+  }
+
+  private static String replicaKey(final String stringKey, final int replica) {
+    return stringKey + "#" + replica;
+  }
+
+  private Map<String, K> translate(final Iterable<? extends K> keys) {
+    final Map<String, K> keysMap = new HashMap<>();
+    for (final K key : keys) {
+      keysMap.put(keyTranslator.translateKey(key), key);
+    }
+    return keysMap;
+  }
+
+  private static <K, T> Map<K, T> translateBack(final Map<String, T> values, final Map<String, K> keysMap) {
+    final Map<K, T> result = new HashMap<>(values.size());
+    for (final Map.Entry<String, T> value : values.entrySet()) {
+      result.put(keysMap.get(value.getKey()), value.getValue());
+    }
+    return result;
+  }
+}
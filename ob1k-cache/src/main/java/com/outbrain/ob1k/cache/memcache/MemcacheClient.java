@@ -146,12 +146,29 @@ public class MemcacheClient<K, V> implements TypedCache<K, V> {
     }
   }
 
+  /**
+   * spy queues all the sets on its connections without waiting for the replies, so the writes are pipelined.
+   * when the client is built with the binary protocol and {@code ConnectionFactoryBuilder.setShouldOptimize(true)}
+   * consecutive sets are further merged into quiet (noreply) sets.
+   */
   @Override
   public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
     final Map<K, ComposableFuture<Boolean>> results = new HashMap<>();
-    for (final K key : entries.keySet()) {
-      final ComposableFuture<Boolean> singleRes = setAsync(key, entries.get(key));
-      results.put(key, singleRes);
+    for (final Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+      results.put(entry.getKey(), setAsync(entry.getKey(), entry.getValue()));
+    }
+
+    return ComposableFutures.all(false, results);
+  }
+
+  /**
+   * spy has no multi gets with cas ids, so each key runs its own cas loop concurrently with the others.
+   */
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    final Map<K, ComposableFuture<Boolean>> results = new HashMap<>();
+    for (final K key : keys) {
+      results.put(key, setAsync(key, mapper, maxIterations));
     }
 
     return ComposableFutures.all(false, results);
@@ -161,4 +178,14 @@ public class MemcacheClient<K, V> implements TypedCache<K, V> {
   public ComposableFuture<Boolean> deleteAsync(final K key) {
     return SpyFutureHelper.fromOperation(() -> spyClient.delete(keyTranslator.translateKey(key)));
   }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    final Map<K, ComposableFuture<Boolean>> results = new HashMap<>();
+    for (final K key : keys) {
+      results.put(key, deleteAsync(key));
+    }
+
+    return ComposableFutures.all(false, results);
+  }
 }
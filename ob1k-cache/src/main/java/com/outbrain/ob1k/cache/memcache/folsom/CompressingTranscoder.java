@@ -0,0 +1,98 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.spotify.folsom.Transcoder;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link Transcoder} decorator that compresses encoded values larger than a given threshold.
+ * <p>
+ * a compressed value starts with a header made of a magic byte, the codec id and the uncompressed length.
+ * the magic byte (0xC1) is neither a valid MessagePack type nor a valid first byte of UTF-8 encoded JSON,
+ * so values below the threshold, and values written before compression was enabled, are handed to the delegate as is.
+ * </p>
+ * values are decompressed according to the codec written in their header, so the codec can be changed safely.
+ */
+public class CompressingTranscoder<T> implements Transcoder<T> {
+
+  static final byte MAGIC = (byte) 0xC1;
+  static final int HEADER_SIZE = 6;
+
+  // memcached default max item size, larger buffers are not kept around
+  private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024;
+  private static final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+  private final Transcoder<T> delegate;
+  private final CompressionCodec codec;
+  private final int thresholdBytes;
+
+  public CompressingTranscoder(final Transcoder<T> transcoderDelegate, final CompressionCodec codec, final int thresholdBytes) {
+    this.delegate = Objects.requireNonNull(transcoderDelegate, "transcoderDelegate must not be null");
+    this.codec = Objects.requireNonNull(codec, "codec must not be null");
+    this.thresholdBytes = thresholdBytes;
+  }
+
+  @Override
+  public T decode(final byte[] b) {
+    if (!isCompressed(b)) {
+      return delegate.decode(b);
+    }
+
+    final CompressionCodec valueCodec = CompressionCodec.fromId(b[1]);
+    final byte[] uncompressed = new byte[readInt(b, 2)];
+    valueCodec.decompress(b, HEADER_SIZE, b.length - HEADER_SIZE, uncompressed);
+
+    return delegate.decode(uncompressed);
+  }
+
+  @Override
+  public byte[] encode(final T t) {
+    final byte[] encoded = delegate.encode(t);
+    if (encoded.length < thresholdBytes) {
+      return encoded;
+    }
+
+    final byte[] buffer = buffer(HEADER_SIZE + codec.maxCompressedLength(encoded.length));
+    final int compressedLength = codec.compress(encoded, buffer, HEADER_SIZE);
+    if (compressedLength < 0 || HEADER_SIZE + compressedLength >= encoded.length) {
+      // not worth it
+      return encoded;
+    }
+
+    buffer[0] = MAGIC;
+    buffer[1] = codec.id();
+    writeInt(buffer, 2, encoded.length);
+
+    return Arrays.copyOf(buffer, HEADER_SIZE + compressedLength);
+  }
+
+  static boolean isCompressed(final byte[] b) {
+    return b.length > HEADER_SIZE && b[0] == MAGIC;
+  }
+
+  private static byte[] buffer(final int size) {
+    if (size > MAX_CACHED_BUFFER_SIZE) {
+      return new byte[size];
+    }
+
+    byte[] buffer = buffers.get();
+    if (buffer == null || buffer.length < size) {
+      buffer = new byte[size];
+      buffers.set(buffer);
+    }
+
+    return buffer;
+  }
+
+  private static void writeInt(final byte[] b, final int offset, final int value) {
+    b[offset] = (byte) (value >>> 24);
+    b[offset + 1] = (byte) (value >>> 16);
+    b[offset + 2] = (byte) (value >>> 8);
+    b[offset + 3] = (byte) value;
+  }
+
+  private static int readInt(final byte[] b, final int offset) {
+    return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+  }
+}
@@ -0,0 +1,114 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.apache.commons.lang.SerializationException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compression algorithms supported by {@link CompressingTranscoder}.
+ * <p>
+ * the id of each codec is written into the header of every compressed value, so ids must never be changed or reused.
+ * id 0 is reserved for {@link TombstoneAwareTranscoder}.
+ * </p>
+ * LZ4 is the default: it is fast enough to be applied on every set and get.
+ * DEFLATE trades CPU for a better ratio, and is useful for large values that are rarely written.
+ */
+public enum CompressionCodec {
+
+  LZ4((byte) 1) {
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    @Override
+    int maxCompressedLength(final int length) {
+      return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    int compress(final byte[] src, final byte[] dest, final int destOffset) {
+      return compressor.compress(src, 0, src.length, dest, destOffset, dest.length - destOffset);
+    }
+
+    @Override
+    void decompress(final byte[] src, final int srcOffset, final int srcLength, final byte[] dest) {
+      final int length = decompressor.decompress(src, srcOffset, srcLength, dest, 0, dest.length);
+      if (length != dest.length) {
+        throw new SerializationException("Failed to decompress value: expected " + dest.length + " bytes but got " + length);
+      }
+    }
+  },
+
+  DEFLATE((byte) 2) {
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    int maxCompressedLength(final int length) {
+      // zlib's deflateBound() for raw deflate streams
+      return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    int compress(final byte[] src, final byte[] dest, final int destOffset) {
+      final Deflater deflater = deflaters.get();
+      try {
+        deflater.setInput(src);
+        deflater.finish();
+        final int length = deflater.deflate(dest, destOffset, dest.length - destOffset);
+        return deflater.finished() ? length : -1;
+      } finally {
+        deflater.reset();
+      }
+    }
+
+    @Override
+    void decompress(final byte[] src, final int srcOffset, final int srcLength, final byte[] dest) {
+      final Inflater inflater = inflaters.get();
+      try {
+        inflater.setInput(src, srcOffset, srcLength);
+        final int length = inflater.inflate(dest);
+        if (length != dest.length || !inflater.finished()) {
+          throw new SerializationException("Failed to decompress value: expected " + dest.length + " bytes but got " + length);
+        }
+      } catch (final DataFormatException e) {
+        throw new SerializationException("Failed to decompress value", e);
+      } finally {
+        inflater.reset();
+      }
+    }
+  };
+
+  private final byte id;
+
+  CompressionCodec(final byte id) {
+    this.id = id;
+  }
+
+  byte id() {
+    return id;
+  }
+
+  static CompressionCodec fromId(final byte id) {
+    for (final CompressionCodec codec : values()) {
+      if (codec.id == id) {
+        return codec;
+      }
+    }
+
+    throw new SerializationException("Unknown compression codec id " + id);
+  }
+
+  abstract int maxCompressedLength(int length);
+
+  /**
+   * @return the number of bytes written to dest, or a negative value if the compressed value didn't fit.
+   */
+  abstract int compress(byte[] src, byte[] dest, int destOffset);
+
+  abstract void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest);
+}
@@ -7,13 +7,23 @@ import com.spotify.dns.LookupResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link DnsSrvResolver} that looks up consul rather than DNS.
+ * <p>
+ * Folsom places the keys on the resolved nodes using ketama consistent hashing, so every membership change remaps
+ * the keys of the nodes that joined or left. To avoid remapping twice when a node's health check flaps, a node that
+ * is no longer healthy can be kept in the resolved cluster for a grace period, and is only removed if it does not
+ * come back by then.
+ * </p>
  *
  * @author Eran Harel
  */
@@ -26,27 +36,60 @@ public class HealthyMemcachedResolver implements DnsSrvResolver, HealthyTargetsL
   private static final int LOOKUP_TTL_SEC = 15;
 
   private final HealthyTargetsList healthyTargetsList;
+  private final long removalGraceMs;
+
+  // node -> the time it was last seen healthy, or Long.MAX_VALUE if it is currently healthy
+  private final Map<LookupResult, Long> nodes = new LinkedHashMap<>();
 
   private volatile List<LookupResult> resolvedCluster;
 
   public HealthyMemcachedResolver(final HealthyTargetsList healthyTargetsList) {
+    this(healthyTargetsList, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param removalGrace how long to keep a node that is no longer healthy in the resolved cluster.
+   */
+  public HealthyMemcachedResolver(final HealthyTargetsList healthyTargetsList, final long removalGrace, final TimeUnit unit) {
     this.healthyTargetsList = Objects.requireNonNull(healthyTargetsList, "healthyTargetsList must not be null");
+    this.removalGraceMs = unit.toMillis(removalGrace);
     healthyTargetsList.addListener(this);
   }
 
   @Override
   public List<LookupResult> resolve(final String fqdn_ignored) {
+    if (removalGraceMs > 0) {
+      updateResolvedCluster(null);
+    }
     return resolvedCluster;
   }
 
   @Override
   public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
-    resolvedCluster = healthTargets.stream()
-      .map(this::toLookupResult)
-      .collect(Collectors.toList());
+    final List<LookupResult> healthyNodes = new ArrayList<>(healthTargets.size());
+    healthTargets.forEach(instance -> healthyNodes.add(toLookupResult(instance)));
+    updateResolvedCluster(healthyNodes);
     log.info("New {} cluster was resolved: {}", healthyTargetsList.getModule(), resolvedCluster);
   }
 
+  /**
+   * @param healthyNodes the new healthy nodes, or null if only the grace periods should be re-evaluated.
+   */
+  private synchronized void updateResolvedCluster(final List<LookupResult> healthyNodes) {
+    final long now = System.currentTimeMillis();
+    if (healthyNodes != null) {
+      nodes.replaceAll((node, lastSeen) -> lastSeen == Long.MAX_VALUE ? now : lastSeen);
+      healthyNodes.forEach(node -> nodes.put(node, Long.MAX_VALUE));
+    }
+
+    final boolean removed = nodes.values().removeIf(lastSeen -> lastSeen != Long.MAX_VALUE && now - lastSeen >= removalGraceMs);
+    if (healthyNodes != null || removed) {
+      final List<LookupResult> cluster = new ArrayList<>(nodes.keySet());
+      cluster.sort(Comparator.comparing(LookupResult::host).thenComparing(LookupResult::port));
+      resolvedCluster = cluster;
+    }
+  }
+
   private LookupResult toLookupResult(final HealthInfoInstance instance) {
     return LookupResult.create(instance.Node.Address, (int)instance.Service.Port, NODE_PRIORITY, NODE_WEIGHT, LOOKUP_TTL_SEC);
   }
@@ -1,7 +1,10 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.outbrain.ob1k.cache.CacheTombstone;
 import com.spotify.folsom.Transcoder;
 import org.apache.commons.lang.SerializationException;
 
@@ -9,22 +12,30 @@ import java.io.IOException;
 import java.util.Objects;
 
 /**
+ * The reader and writer are resolved once per transcoder, and values are encoded into a per thread buffer
+ * that is reused across calls.
+ *
  * @author Eran Harel
  */
 public class JsonTranscoder<T> implements Transcoder<T> {
 
-  private final ObjectMapper objectMapper;
+  private static final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(ByteArrayBuilder::new);
+
+  private final ObjectReader reader;
+  private final ObjectWriter writer;
   private final Class<T> valueType;
 
   public JsonTranscoder(final ObjectMapper objectMapper, final Class<T> valueType) {
-    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper must not be null");
+    Objects.requireNonNull(objectMapper, "objectMapper must not be null");
     this.valueType = Objects.requireNonNull(valueType, "valueType must not be null");
+    this.reader = objectMapper.reader(valueType);
+    this.writer = objectMapper.writer();
   }
 
   @Override
   public T decode(final byte[] b) {
     try {
-      return objectMapper.readValue(b, valueType);
+      return reader.readValue(b);
     } catch (final IOException e) {
       throw new SerializationException("Failed to decode to type " + valueType.getSimpleName(), e);
     }
@@ -32,10 +43,18 @@ public class JsonTranscoder<T> implements Transcoder<T> {
 
   @Override
   public byte[] encode(final T t) {
+    if (CacheTombstone.isTombstone(t)) {
+      throw new SerializationException("Failed to encode a cache tombstone, build the client with MemcachedClientBuilder.withNegativeCaching()");
+    }
+
+    final ByteArrayBuilder buffer = buffers.get();
     try {
-      return objectMapper.writeValueAsBytes(t);
-    } catch (final JsonProcessingException e) {
+      writer.writeValue(buffer, t);
+      return buffer.toByteArray();
+    } catch (final IOException e) {
       throw new SerializationException("Failed to encode input " + t.getClass().getSimpleName() + " to type " + valueType.getSimpleName(), e);
+    } finally {
+      buffer.reset();
     }
   }
 }
@@ -1,5 +1,6 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.outbrain.ob1k.cache.EntryMapper;
 import com.outbrain.ob1k.cache.TypedCache;
@@ -7,6 +8,7 @@ import com.outbrain.ob1k.cache.memcache.CacheKeyTranslator;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.concurrent.Try;
+import com.outbrain.ob1k.concurrent.handlers.FutureErrorHandler;
 import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
 import com.spotify.folsom.GetResult;
 import com.spotify.folsom.MemcacheClient;
@@ -14,6 +16,7 @@ import com.spotify.folsom.MemcacheStatus;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -119,12 +122,115 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
     }
   }
 
+  /**
+   * all the sets are written back to back without waiting for replies, so folsom pipelines them over its connections,
+   * and the replies are collected by a single listener rather than one per entry.
+   * entries that failed are omitted from the result map.
+   */
   @Override
   public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Map<? extends K, ? extends V> entries) {
-    final Map<K, ComposableFuture<Boolean>> futureResults = entries.entrySet().stream().collect(Collectors.toMap(
-      Map.Entry::getKey,
-      e -> setAsync(e.getKey(), e.getValue())));
-    return ComposableFutures.all(false, futureResults);
+    final List<K> keys = new ArrayList<>(entries.size());
+    return fromListenableFuture(() -> {
+      final List<ListenableFuture<MemcacheStatus>> futures = new ArrayList<>(entries.size());
+      for (final Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+        keys.add(entry.getKey());
+        futures.add(folsomClient.set(key(entry.getKey()), entry.getValue(), expirationSeconds));
+      }
+      return Futures.successfulAsList(futures);
+    }, statuses -> toResultsMap(keys, statuses));
+  }
+
+  /**
+   * each round fetches all pending keys with a single multi casGet and pipelines the conditional writes.
+   * only the keys that lost a race are carried to the next round.
+   * a key whose write failed, or whose round failed after other keys were resolved, maps to false.
+   * the future fails only when a round fails before any key was resolved.
+   */
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    try {
+      final Map<String, K> pendingKeys = new LinkedHashMap<>();
+      for (final K key : keys) {
+        pendingKeys.put(key(key), key);
+      }
+
+      return casUpdateBulk(pendingKeys, mapper, maxIterations, new HashMap<>(pendingKeys.size()));
+    } catch (final Exception e) {
+      return ComposableFutures.fromError(e);
+    }
+  }
+
+  private ComposableFuture<Map<K, Boolean>> casUpdateBulk(final Map<String, K> pendingKeys, final EntryMapper<K, V> mapper,
+                                                          final int iterationsLeft, final Map<K, Boolean> results) {
+    final List<String> stringKeys = new ArrayList<>(pendingKeys.keySet());
+
+    return fromListenableFuture(() -> folsomClient.casGet(stringKeys))
+      .continueOnSuccess((FutureSuccessHandler<List<GetResult<V>>, List<MemcacheStatus>>) currentValues -> {
+        final List<ListenableFuture<MemcacheStatus>> updates = new ArrayList<>(stringKeys.size());
+        for (int i = 0; i < stringKeys.size(); i++) {
+          updates.add(casUpdate(stringKeys.get(i), pendingKeys.get(stringKeys.get(i)), currentValues.get(i), mapper));
+        }
+
+        return fromListenableFuture(() -> Futures.successfulAsList(updates));
+      })
+      .continueOnSuccess((FutureSuccessHandler<List<MemcacheStatus>, Map<K, Boolean>>) statuses -> {
+        final Map<String, K> contendedKeys = new LinkedHashMap<>();
+        for (int i = 0; i < stringKeys.size(); i++) {
+          final MemcacheStatus status = statuses.get(i);
+          final K key = pendingKeys.get(stringKeys.get(i));
+          if (status == null) {
+            results.put(key, false); // the write failed
+            continue;
+          }
+
+          if (isContended(status) && iterationsLeft > 0) {
+            contendedKeys.put(stringKeys.get(i), key);
+          } else {
+            results.put(key, isOK(status));
+          }
+        }
+
+        if (contendedKeys.isEmpty()) {
+          return fromValue(results);
+        }
+
+        return casUpdateBulk(contendedKeys, mapper, iterationsLeft - 1, results);
+      })
+      .continueOnError((FutureErrorHandler<Map<K, Boolean>>) error -> {
+        if (results.isEmpty()) {
+          return ComposableFutures.fromError(error);
+        }
+
+        for (final K key : pendingKeys.values()) {
+          if (!results.containsKey(key)) {
+            results.put(key, false);
+          }
+        }
+        return fromValue(results);
+      });
+  }
+
+  private ListenableFuture<MemcacheStatus> casUpdate(final String stringKey, final K key, final GetResult<V> currentValue,
+                                                     final EntryMapper<K, V> mapper) {
+    try {
+      final V newValue = currentValue == null ? mapper.map(key, null) : mapper.map(key, currentValue.getValue());
+      if (newValue == null) {
+        return Futures.immediateFuture(MemcacheStatus.INVALID_ARGUMENTS);
+      }
+
+      return currentValue == null ?
+        folsomClient.add(stringKey, newValue, expirationSeconds) :
+        folsomClient.set(stringKey, newValue, expirationSeconds, currentValue.getCas());
+    } catch (final Exception e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * a cas set that lost the race returns KEY_EXISTS, while an add that lost the race returns ITEM_NOT_STORED.
+   */
+  private static boolean isContended(final MemcacheStatus status) {
+    return status == MemcacheStatus.KEY_EXISTS || status == MemcacheStatus.ITEM_NOT_STORED;
   }
 
   @Override
@@ -132,6 +238,29 @@ public class MemcachedClient<K, V> implements TypedCache<K, V> {
     return fromListenableFuture(() -> folsomClient.delete(key(key)), this::isOK);
   }
 
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    final List<K> keysList = new ArrayList<>();
+    return fromListenableFuture(() -> {
+      final List<ListenableFuture<MemcacheStatus>> futures = new ArrayList<>();
+      for (final K key : keys) {
+        keysList.add(key);
+        futures.add(folsomClient.delete(key(key)));
+      }
+      return Futures.successfulAsList(futures);
+    }, statuses -> toResultsMap(keysList, statuses));
+  }
+
+  private Map<K, Boolean> toResultsMap(final List<K> keys, final List<MemcacheStatus> statuses) {
+    final Map<K, Boolean> results = new HashMap<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      final MemcacheStatus status = statuses.get(i);
+      if (status != null) {
+        results.put(keys.get(i), isOK(status));
+      }
+    }
+    return results;
+  }
 
   private String key(final K key) {
     return keyTranslator.translateKey(key);
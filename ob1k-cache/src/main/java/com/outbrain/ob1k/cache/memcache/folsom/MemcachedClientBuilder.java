@@ -3,7 +3,13 @@ package com.outbrain.ob1k.cache.memcache.folsom;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.cache.memcache.CacheKeyTranslator;
+import com.outbrain.ob1k.cache.memcache.HotKeysDetector;
+import com.outbrain.ob1k.cache.memcache.HotKeysReplicatingCacheDelegate;
+import com.outbrain.ob1k.cache.memcache.IdentityCacheKeyTranslator;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
+import com.spotify.folsom.MemcacheClient;
 import com.spotify.folsom.MemcacheClientBuilder;
 import com.spotify.folsom.Transcoder;
 import org.apache.commons.lang3.ClassUtils;
@@ -11,6 +17,7 @@ import org.msgpack.MessagePack;
 
 import java.lang.reflect.Type;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A small extension over Folsom {@link MemcachedClientBuilder} that simplifies the creation of JSON and MessagePack
@@ -20,6 +27,12 @@ import java.util.Objects;
 public class MemcachedClientBuilder<T> {
 
   private Transcoder<T> transcoder;
+  private boolean negativeCaching;
+  private HotKeysDetector hotKeysDetector;
+  private int hotKeysReplicas;
+  private long replicasExpirationSeconds;
+  private String hotKeysCacheName;
+  private MetricFactory hotKeysMetricFactory;
 
   private MemcachedClientBuilder(final Transcoder<T> transcoder) {
     this.transcoder = Objects.requireNonNull(transcoder, "transcoder must not be null");
@@ -84,13 +97,97 @@ public class MemcachedClientBuilder<T> {
     return new MemcachedClientBuilder<>(transcoder);
   }
 
+  /**
+   * Compress values of at least thresholdBytes with LZ4.
+   * Call before {@link #withObjectSizeMonitoring(MetricFactory, String, long)} in order to monitor the compressed sizes.
+   * @return The builder
+   */
+  public MemcachedClientBuilder<T> withCompression(final int thresholdBytes) {
+    return withCompression(CompressionCodec.LZ4, thresholdBytes);
+  }
+
+  /**
+   * Compress values of at least thresholdBytes with the given codec.
+   * Call before {@link #withObjectSizeMonitoring(MetricFactory, String, long)} in order to monitor the compressed sizes.
+   * @return The builder
+   */
+  public MemcachedClientBuilder<T> withCompression(final CompressionCodec codec, final int thresholdBytes) {
+    transcoder = new CompressingTranscoder<>(transcoder, codec, thresholdBytes);
+    return this;
+  }
+
   public MemcachedClientBuilder<T> withObjectSizeMonitoring(final MetricFactory metricFactory, final String cacheName, final long sampleRate) {
     transcoder = new ObjectSizeMonitoringTranscoder<>(transcoder, metricFactory, cacheName, sampleRate);
     return this;
   }
 
+  /**
+   * Allow storing {@link com.outbrain.ob1k.cache.CacheTombstone}s, as done by the negative caching of
+   * {@link com.outbrain.ob1k.cache.LoadingCacheDelegate}.
+   * Required when the client backs a loading cache with a negative ttl, without it writing a tombstone fails.
+   * @return The builder
+   */
+  public MemcachedClientBuilder<T> withNegativeCaching() {
+    negativeCaching = true;
+    return this;
+  }
+
+  /**
+   * Spread the reads of hot keys over several nodes, see {@link HotKeysReplicatingCacheDelegate}.
+   * Applies to the caches created by {@link #buildTypedCache(MemcacheClient, CacheKeyTranslator, long, TimeUnit)}.
+   * @param replicas the number of replicas for each hot key (excluding the original).
+   * @param replicasExpiration the expiration of the replicas, which bounds their staleness.
+   * @return The builder
+   */
+  public MemcachedClientBuilder<T> withHotKeysReplication(final HotKeysDetector hotKeysDetector, final int replicas,
+                                                          final long replicasExpiration, final TimeUnit timeUnit) {
+    return withHotKeysReplication(hotKeysDetector, replicas, replicasExpiration, timeUnit, null, null);
+  }
+
+  /**
+   * Spread the reads of hot keys over several nodes, see {@link HotKeysReplicatingCacheDelegate}.
+   * Applies to the caches created by {@link #buildTypedCache(MemcacheClient, CacheKeyTranslator, long, TimeUnit)}.
+   * @param replicas the number of replicas for each hot key (excluding the original).
+   * @param replicasExpiration the expiration of the replicas, which bounds their staleness. at least a second, since
+   *                           memcached expirations are in seconds and 0 never expires.
+   * @return The builder
+   */
+  public MemcachedClientBuilder<T> withHotKeysReplication(final HotKeysDetector hotKeysDetector, final int replicas,
+                                                          final long replicasExpiration, final TimeUnit timeUnit,
+                                                          final String cacheName, final MetricFactory metricFactory) {
+    this.hotKeysDetector = Objects.requireNonNull(hotKeysDetector, "hotKeysDetector must not be null");
+    if (replicas <= 0) {
+      throw new IllegalArgumentException("replicas must be positive");
+    }
+    final long replicasExpirationSeconds = timeUnit.toSeconds(replicasExpiration);
+    if (replicasExpirationSeconds < 1) {
+      throw new IllegalArgumentException("replicasExpiration must be at least a second");
+    }
+    this.hotKeysReplicas = replicas;
+    this.replicasExpirationSeconds = replicasExpirationSeconds;
+    this.hotKeysCacheName = cacheName;
+    this.hotKeysMetricFactory = metricFactory;
+    return this;
+  }
+
   public MemcacheClientBuilder<T> build() {
-    return new MemcacheClientBuilder<>(transcoder);
+    return new MemcacheClientBuilder<>(negativeCaching ? new TombstoneAwareTranscoder<>(transcoder) : transcoder);
+  }
+
+  /**
+   * Create a cache over a folsom client connected from {@link #build()}, with the hot keys replication if configured.
+   * @return The cache
+   */
+  public <K> TypedCache<K, T> buildTypedCache(final MemcacheClient<T> folsomClient, final CacheKeyTranslator<K> keyTranslator,
+                                              final long expiration, final TimeUnit timeUnit) {
+    if (hotKeysDetector == null) {
+      return new MemcachedClient<>(folsomClient, keyTranslator, expiration, timeUnit);
+    }
+
+    final CacheKeyTranslator<String> identity = IdentityCacheKeyTranslator.getInstance();
+    return new HotKeysReplicatingCacheDelegate<>(new MemcachedClient<>(folsomClient, identity, expiration, timeUnit),
+      new MemcachedClient<>(folsomClient, identity, replicasExpirationSeconds, TimeUnit.SECONDS), keyTranslator,
+      hotKeysDetector, hotKeysReplicas, hotKeysCacheName, hotKeysMetricFactory);
   }
 
   private static class DefaultObjectMapperHolder {
@@ -1,37 +1,41 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
+import com.outbrain.ob1k.cache.CacheTombstone;
 import com.spotify.folsom.Transcoder;
 import org.apache.commons.lang.SerializationException;
 import org.msgpack.MessagePack;
+import org.msgpack.packer.BufferPacker;
 import org.msgpack.template.Template;
-import org.msgpack.type.Value;
-import org.msgpack.unpacker.Converter;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.Objects;
 
 /**
+ * The template of the value type is looked up once (on first use, so types may be registered after construction),
+ * values are decoded straight into the template without building an intermediate {@link org.msgpack.type.Value} tree,
+ * and encoded into a per thread packer that is reused across calls.
+ *
  * @author Eran Harel
  */
 public class MessagePackTranscoder<T> implements Transcoder<T> {
 
   private final MessagePack messagePack;
   private final Type valueType;
+  private final ThreadLocal<BufferPacker> packers;
+
+  private volatile Template<T> template;
 
   public MessagePackTranscoder(final MessagePack messagePack, final Type valueType) {
     this.messagePack = Objects.requireNonNull(messagePack, "messagePack must not be null");
     this.valueType = Objects.requireNonNull(valueType, "valueType must not be null");
+    this.packers = ThreadLocal.withInitial(messagePack::createBufferPacker);
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public T decode(final byte[] b) {
-    final Template<?> template = messagePack.lookup(valueType);
-
     try {
-      final Value value = messagePack.read(b);
-      return (T) template.read(new Converter(messagePack, value), null);
+      return messagePack.read(b, template());
     } catch (final IOException e) {
       throw new SerializationException("Failed to decode to type " + valueType.getTypeName(), e);
     }
@@ -39,10 +43,29 @@ public class MessagePackTranscoder<T> implements Transcoder<T> {
 
   @Override
   public byte[] encode(final T t) {
+    if (CacheTombstone.isTombstone(t)) {
+      throw new SerializationException("Failed to encode a cache tombstone, build the client with MemcachedClientBuilder.withNegativeCaching()");
+    }
+
+    final BufferPacker packer = packers.get();
     try {
-      return messagePack.write(t);
+      template().write(packer, t);
+      return packer.toByteArray();
     } catch (final IOException e) {
       throw new SerializationException("Failed to encode input " + t.getClass().getSimpleName() + " to type " + valueType.getTypeName(), e);
+    } finally {
+      packer.clear();
     }
   }
+
+  @SuppressWarnings("unchecked")
+  private Template<T> template() {
+    Template<T> result = template;
+    if (result == null) {
+      result = (Template<T>) messagePack.lookup(valueType);
+      template = result;
+    }
+
+    return result;
+  }
 }
@@ -0,0 +1,63 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.outbrain.ob1k.cache.CacheTombstone;
+import com.spotify.folsom.Transcoder;
+
+import java.util.Objects;
+
+/**
+ * A {@link Transcoder} decorator that stores {@link CacheTombstone}s next to the values of the delegate.
+ * <p>
+ * a tombstone is written as the compression magic byte, followed by the reserved codec id 0 and its expiration time,
+ * so it can never be mistaken for a value encoded by the delegate, compressed or not.
+ * </p>
+ * must be the outermost transcoder.
+ */
+public class TombstoneAwareTranscoder<T> implements Transcoder<T> {
+
+  static final byte TOMBSTONE_ID = 0;
+  private static final int TOMBSTONE_SIZE = 10;
+
+  private final Transcoder<T> delegate;
+
+  public TombstoneAwareTranscoder(final Transcoder<T> transcoderDelegate) {
+    this.delegate = Objects.requireNonNull(transcoderDelegate, "transcoderDelegate must not be null");
+  }
+
+  @Override
+  public T decode(final byte[] b) {
+    if (!isTombstone(b)) {
+      return delegate.decode(b);
+    }
+
+    long expirationTime = 0;
+    for (int i = 2; i < TOMBSTONE_SIZE; i++) {
+      expirationTime = (expirationTime << 8) | (b[i] & 0xFF);
+    }
+
+    @SuppressWarnings("unchecked")
+    final T tombstone = (T) new CacheTombstone(expirationTime);
+    return tombstone;
+  }
+
+  @Override
+  public byte[] encode(final T t) {
+    if (!CacheTombstone.isTombstone(t)) {
+      return delegate.encode(t);
+    }
+
+    final long expirationTime = ((CacheTombstone) t).getExpirationTime();
+    final byte[] b = new byte[TOMBSTONE_SIZE];
+    b[0] = CompressingTranscoder.MAGIC;
+    b[1] = TOMBSTONE_ID;
+    for (int i = TOMBSTONE_SIZE - 1; i >= 2; i--) {
+      b[i] = (byte) (expirationTime >>> (8 * (TOMBSTONE_SIZE - 1 - i)));
+    }
+
+    return b;
+  }
+
+  private static boolean isTombstone(final byte[] b) {
+    return b.length == TOMBSTONE_SIZE && b[0] == CompressingTranscoder.MAGIC && b[1] == TOMBSTONE_ID;
+  }
+}
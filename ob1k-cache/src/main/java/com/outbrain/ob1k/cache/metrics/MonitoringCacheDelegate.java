@@ -27,6 +27,7 @@ public class MonitoringCacheDelegate<K, V> implements TypedCache<K, V> {
   private final AsyncOperationMetrics<Boolean> setAsyncMetrics;
   private final AsyncOperationMetrics<Map<K, Boolean>> setBulkAsyncMetrics;
   private final AsyncOperationMetrics<Boolean> deleteAsyncMetrics;
+  private final AsyncOperationMetrics<Map<K, Boolean>> deleteBulkAsyncMetrics;
 
   /* cache metrics */
   private final Counter total;
@@ -53,6 +54,7 @@ public class MonitoringCacheDelegate<K, V> implements TypedCache<K, V> {
     setAsyncMetrics = new AsyncOperationMetrics<>(metricFactory, component + ".setAsync");
     setBulkAsyncMetrics = new AsyncOperationMetrics<>(metricFactory, component + ".setBulkAsync");
     deleteAsyncMetrics = new AsyncOperationMetrics<>(metricFactory, component + ".deleteAsync");
+    deleteBulkAsyncMetrics = new AsyncOperationMetrics<>(metricFactory, component + ".deleteBulkAsync");
 
     final String componentCache = component + ".Cache";
     hits = metricFactory.createCounter(componentCache, "hits");
@@ -93,8 +95,18 @@ public class MonitoringCacheDelegate<K, V> implements TypedCache<K, V> {
     return setBulkAsyncMetrics.update(delegate.setBulkAsync(entries));
   }
 
+  @Override
+  public ComposableFuture<Map<K, Boolean>> setBulkAsync(final Iterable<? extends K> keys, final EntryMapper<K, V> mapper, final int maxIterations) {
+    return setBulkAsyncMetrics.update(delegate.setBulkAsync(keys, mapper, maxIterations));
+  }
+
   @Override
   public ComposableFuture<Boolean> deleteAsync(final K key) {
     return deleteAsyncMetrics.update(delegate.deleteAsync(key));
   }
+
+  @Override
+  public ComposableFuture<Map<K, Boolean>> deleteBulkAsync(final Iterable<? extends K> keys) {
+    return deleteBulkAsyncMetrics.update(delegate.deleteBulkAsync(keys));
+  }
 }
@@ -15,7 +15,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -116,6 +118,19 @@ public abstract class AbstractMemcachedClientTest {
     Assert.assertNull("value was not deleted", client.getAsync(key).get());
   }
 
+  @Test
+  public void testDeleteBulk() throws ExecutionException, InterruptedException {
+    final Map<String, String> entries = new HashMap<>();
+    for (int i=0; i< 100; i++) {
+      entries.put("deleteBulkKey" + i, "value" + i);
+    }
+
+    client.setBulkAsync(entries).get();
+    final Map<String, Boolean> results = client.deleteBulkAsync(entries.keySet()).get();
+    Assert.assertEquals("unexpected results size", entries.size(), results.size());
+    Assert.assertFalse("all keys should have been deleted", results.containsValue(false));
+    Assert.assertTrue("values were not deleted", client.getBulkAsync(entries.keySet()).get().isEmpty());
+  }
 
   @Test
   public void testCas() throws ExecutionException, InterruptedException {
@@ -131,6 +146,48 @@ public abstract class AbstractMemcachedClientTest {
     Assert.assertEquals(expectedSetCount, client.getAsync(counterKey).get());
   }
 
+  @Test
+  public void testBulkCas() throws ExecutionException, InterruptedException {
+    final List<String> counterKeys = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      counterKeys.add("bulkCounterKey" + i);
+    }
+    client.deleteBulkAsync(counterKeys).get();
+
+    final int iterations = 100;
+    final int threadCount = 2;
+    final AtomicInteger successCount = new AtomicInteger(0);
+    final Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread(() -> {
+        for (int t = 0; t < iterations; t++) {
+          try {
+            final Map<String, Boolean> res = client.setBulkAsync(counterKeys,
+              (key, value) -> value == null ? 1 : (Integer) value + 1, iterations).get();
+            for (final Boolean keyRes : res.values()) {
+              if (keyRes) {
+                successCount.incrementAndGet();
+              }
+            }
+          } catch (final Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      threads[i].start();
+    }
+
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    final int expectedSetCount = iterations * threadCount;
+    Assert.assertEquals("Successful sets", expectedSetCount * counterKeys.size(), successCount.get());
+    for (final Serializable value : client.getBulkAsync(counterKeys).get().values()) {
+      Assert.assertEquals(expectedSetCount, value);
+    }
+  }
+
   private int runMultiThreadedCas(final String counterKey, final int iterations, final int threadCount) throws InterruptedException {
     final AtomicInteger successCount = new AtomicInteger(0);
     final Thread[] threads = new Thread[threadCount];
@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.Assert.*;
 
 /**
@@ -272,4 +273,27 @@ public class LocalAsyncCacheTest {
       if (expectedMsg != null) assertEquals(expectedMsg,e.getCause().getMessage());
     }
   }
+
+  @Test
+  public void testNegativeCaching() throws ExecutionException, InterruptedException {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final ExceptionalCacheLoader loader = new ExceptionalCacheLoader() {
+      @Override
+      public ComposableFuture<String> load(final String cacheName, final String key) {
+        loaderCounter.incrementAndGet();
+        return super.load(cacheName, key);
+      }
+    };
+    final LocalAsyncCache<String, String> cache =
+        new LocalAsyncCache<>(3, 1000, TimeUnit.MILLISECONDS, loader, null, "negative", false, 50, TimeUnit.MILLISECONDS);
+
+    assertNull(cache.getAsync(NULL_KEY).get());
+    assertNull(cache.getAsync(NULL_KEY).get());
+    assertEquals("missing values should be loaded once", 1, loaderCounter.get());
+    assertFalse(cache.getBulkAsync(Arrays.asList(NULL_KEY, "key1")).get().containsKey(NULL_KEY));
+
+    Thread.sleep(60);
+    assertNull(cache.getAsync(NULL_KEY).get());
+    assertEquals("expired tombstones should be reloaded", 2, loaderCounter.get());
+  }
 }
@@ -142,4 +142,35 @@ public class TestLoadingCacheDelegate {
 
   }
 
+  @Test
+  public void testNegativeCaching() throws ExecutionException, InterruptedException {
+    final AtomicInteger loaderCounter = new AtomicInteger();
+    final CacheLoader<String, String> nullLoader = new CacheLoader<String, String>() {
+      @Override
+      public ComposableFuture<String> load(final String cacheName, final String key) {
+        loaderCounter.incrementAndGet();
+        return ComposableFutures.fromNull();
+      }
+
+      @Override
+      public ComposableFuture<Map<String, String>> load(final String cacheName, final Iterable<? extends String> keys) {
+        loaderCounter.incrementAndGet();
+        return ComposableFutures.fromValue(new HashMap<>());
+      }
+    };
+
+    final TypedCache<String, String> loadingCache = new LoadingCacheDelegate<>(new LocalAsyncCache<>(), nullLoader, "negative",
+        metricFactory, 1, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+
+    Assert.assertNull(loadingCache.getAsync("key").get());
+    Assert.assertNull(loadingCache.getAsync("key").get());
+    Assert.assertTrue(loadingCache.getBulkAsync(Arrays.asList("key", "other")).get().isEmpty());
+    Assert.assertTrue(loadingCache.getBulkAsync(Arrays.asList("key", "other")).get().isEmpty());
+    Assert.assertEquals("loader calls", 2, loaderCounter.get());
+    Assert.assertEquals("negative hits", 4, registry.getCounters().get("LoadingCacheDelegate.negative.negativeHits").getCount());
+
+    Thread.sleep(60);
+    Assert.assertNull(loadingCache.getAsync("key").get());
+    Assert.assertEquals("expired tombstones should be reloaded", 3, loaderCounter.get());
+  }
 }
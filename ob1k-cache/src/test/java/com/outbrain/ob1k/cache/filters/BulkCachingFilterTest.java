@@ -0,0 +1,93 @@
+package com.outbrain.ob1k.cache.filters;
+
+import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+public class BulkCachingFilterTest {
+
+  private static final BulkCachingFilter.BulkCacheKeyGenerator<Integer, String> KEY_GENERATOR = (params, id) -> "entity-" + id;
+
+  private final List<Collection<Integer>> invocations = new ArrayList<>();
+  private final BulkCachingFilter<Integer, String, String> filter = new BulkCachingFilter<>(KEY_GENERATOR, 0, new LocalAsyncCache<>());
+
+  @Test
+  public void testOnlyMissingIdsAreInvoked() throws ExecutionException, InterruptedException {
+    final Map<Integer, String> res1 = filter.handleAsync(context(1, 2)).get();
+    final Map<Integer, String> res2 = filter.handleAsync(context(1, 2, 3, 4)).get();
+
+    Assert.assertEquals("value-2", res1.get(2));
+    Assert.assertEquals(4, res2.size());
+    Assert.assertEquals("value-1", res2.get(1));
+    Assert.assertEquals("value-4", res2.get(4));
+    Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)), invocations);
+  }
+
+  @Test
+  public void testFullyCachedCallsAreNotInvoked() throws ExecutionException, InterruptedException {
+    filter.handleAsync(context(1, 2, 3)).get();
+    final Map<Integer, String> res = filter.handleAsync(context(3, 1)).get();
+
+    Assert.assertEquals(2, res.size());
+    Assert.assertEquals(1, invocations.size());
+  }
+
+  @Test
+  public void testCallerParamsAreNotModified() throws ExecutionException, InterruptedException {
+    filter.handleAsync(context(1)).get();
+    final AsyncRequestContext ctx = context(1, 2);
+    filter.handleAsync(ctx).get();
+
+    Assert.assertEquals(Arrays.asList(1, 2), ctx.getParams()[0]);
+    Assert.assertEquals(Arrays.asList(2), invocations.get(1));
+  }
+
+  private AsyncRequestContext context(final Integer... ids) {
+    final Object[] params = {Arrays.asList(ids)};
+    return new AsyncRequestContext() {
+      @Override
+      public <T> ComposableFuture<T> invokeAsync() {
+        return invokeAsync(params);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> ComposableFuture<T> invokeAsync(final Object[] invokedParams) {
+        final Collection<Integer> requested = (Collection<Integer>) invokedParams[0];
+        invocations.add(requested);
+
+        final Map<Integer, String> result = new HashMap<>();
+        for (final Integer id : requested) {
+          result.put(id, "value-" + id);
+        }
+        return ComposableFutures.fromValue((T) result);
+      }
+
+      @Override
+      public Object[] getParams() {
+        return params;
+      }
+
+      @Override
+      public String getServiceMethodName() {
+        return "getEntities";
+      }
+
+      @Override
+      public String getServiceClassName() {
+        return "EntityService";
+      }
+    };
+  }
+}
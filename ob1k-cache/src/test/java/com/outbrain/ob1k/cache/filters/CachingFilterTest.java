@@ -1,8 +1,11 @@
 package com.outbrain.ob1k.cache.filters;
 
 import com.outbrain.ob1k.AsyncRequestContext;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.cache.TypedCache;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -51,4 +54,68 @@ public class CachingFilterTest {
     Assert.assertEquals(VALUE2.get(), res3);
   }
 
+  @Test
+  public void testConcurrentCallsAreInvokedOnce() throws ExecutionException, InterruptedException {
+    final ComposablePromise<Object> promise = ComposableFutures.newPromise();
+    Mockito.when(context.invokeAsync()).thenReturn(promise.future());
+    final CachingFilter<String, Integer> filter = new CachingFilter<>(KEY_GENERATOR, new LocalAsyncCache<>(), "concurrent", null);
+
+    final ComposableFuture<Integer> res1 = filter.handleAsync(context);
+    final ComposableFuture<Integer> res2 = filter.handleAsync(context);
+    promise.set(7);
+
+    Assert.assertEquals(7, (int) res1.get());
+    Assert.assertEquals(7, (int) res2.get());
+    Mockito.verify(context, Mockito.times(1)).invokeAsync();
+  }
+
+  @Test
+  public void testErrorsAreCachedBriefly() throws ExecutionException, InterruptedException {
+    Mockito.when(context.invokeAsync()).thenReturn(ComposableFutures.fromError(new RuntimeException("oops")), VALUE1);
+    final CachingFilter<String, Integer> filter = new CachingFilter<>(KEY_GENERATOR, new LocalAsyncCache<>(), "errors", null,
+        1, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+    assertFails(filter.handleAsync(context));
+    assertFails(filter.handleAsync(context));
+    Mockito.verify(context, Mockito.times(1)).invokeAsync();
+
+    Thread.sleep(150);
+    Assert.assertEquals(1, (int) filter.handleAsync(context).get());
+  }
+
+  @Test
+  public void testCacheErrorsAreTreatedAsMisses() throws ExecutionException, InterruptedException {
+    final TypedCache<String, Integer> failingCache = new LocalAsyncCache<String, Integer>() {
+      @Override
+      public ComposableFuture<Integer> getAsync(final String key) {
+        return ComposableFutures.fromError(new RuntimeException("cache is down"));
+      }
+    };
+    final CachingFilter<String, Integer> filter = new CachingFilter<>(KEY_GENERATOR, failingCache, "failing", null);
+
+    Assert.assertEquals(VALUE1.get(), filter.handleAsync(context).get());
+  }
+
+  @Test
+  public void testTimedOutCallsAreNotInvokedAgain() throws ExecutionException, InterruptedException {
+    Mockito.when(context.invokeAsync()).thenReturn(ComposableFutures.newPromise().future());
+    final CachingFilter<String, Integer> filter = new CachingFilter<>(KEY_GENERATOR, new LocalAsyncCache<>(), "timeout", null,
+        50, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS);
+
+    try {
+      filter.handleAsync(context).get();
+      Assert.fail("call should have timed out");
+    } catch (final ExecutionException e) {
+      Mockito.verify(context, Mockito.times(1)).invokeAsync();
+    }
+  }
+
+  private static void assertFails(final ComposableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+      Assert.fail("call should have failed");
+    } catch (final ExecutionException e) {
+      Assert.assertEquals("oops", e.getCause().getMessage());
+    }
+  }
 }
@@ -0,0 +1,33 @@
+package com.outbrain.ob1k.cache.memcache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class HotKeysDetectorTest {
+
+  @Test
+  public void testHotKeyDetection() {
+    final HotKeysDetector detector = new HotKeysDetector(10, 1, TimeUnit.HOURS);
+    for (int i = 1; i < 10; i++) {
+      Assert.assertFalse("key should not be hot after " + i + " accesses", detector.recordAccess("hot"));
+    }
+
+    Assert.assertTrue("key should be hot", detector.recordAccess("hot"));
+    Assert.assertTrue("key should be hot", detector.isHot("hot"));
+    Assert.assertFalse("other key should not be hot", detector.isHot("cold"));
+  }
+
+  @Test
+  public void testDecay() throws InterruptedException {
+    final HotKeysDetector detector = new HotKeysDetector(10, 10, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 10; i++) {
+      detector.recordAccess("hot");
+    }
+    Assert.assertTrue("key should be hot", detector.isHot("hot"));
+
+    Thread.sleep(20);
+    Assert.assertFalse("key should have cooled down", detector.recordAccess("hot"));
+  }
+}
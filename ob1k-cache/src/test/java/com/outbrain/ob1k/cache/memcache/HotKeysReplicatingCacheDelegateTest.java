@@ -0,0 +1,80 @@
+package com.outbrain.ob1k.cache.memcache;
+
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.cache.TypedCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class HotKeysReplicatingCacheDelegateTest {
+
+  private static final int REPLICAS = 2;
+
+  private final LocalAsyncCache<String, String> cache = new LocalAsyncCache<>();
+  private final LocalAsyncCache<String, String> replicasCache = new LocalAsyncCache<>();
+  private TypedCache<String, String> replicatingCache;
+
+  @Before
+  public void setup() {
+    final HotKeysDetector detector = new HotKeysDetector(5, 1, TimeUnit.HOURS);
+    replicatingCache = new HotKeysReplicatingCacheDelegate<>(cache, replicasCache, IdentityCacheKeyTranslator.getInstance(),
+      detector, REPLICAS, "test", null);
+  }
+
+  @Test
+  public void testHotKeysAreReplicated() throws ExecutionException, InterruptedException {
+    replicatingCache.setAsync("key", "value").get();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("value", replicatingCache.getAsync("key").get());
+    }
+
+    for (int replica = 1; replica <= REPLICAS; replica++) {
+      Assert.assertEquals("replica " + replica, "value", replicasCache.getAsync("key#" + replica).get());
+    }
+    Assert.assertNull("cold keys should not be replicated", replicasCache.getAsync("other#1").get());
+  }
+
+  @Test
+  public void testWritesUpdateReplicasOfHotKeys() throws ExecutionException, InterruptedException {
+    replicatingCache.setAsync("key", "value").get();
+    for (int i = 0; i < 100; i++) {
+      replicatingCache.getAsync("key").get();
+    }
+
+    replicatingCache.setAsync("key", "newValue").get();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("newValue", replicatingCache.getAsync("key").get());
+    }
+
+    replicatingCache.setAsync("key", (key, value) -> value + "!", 3).get();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals("newValue!", replicatingCache.getAsync("key").get());
+    }
+
+    replicatingCache.deleteAsync("key").get();
+    for (int replica = 1; replica <= REPLICAS; replica++) {
+      Assert.assertNull("replica " + replica, replicasCache.getAsync("key#" + replica).get());
+    }
+  }
+
+  @Test
+  public void testGetBulk() throws ExecutionException, InterruptedException {
+    replicatingCache.setAsync("hot", "hotValue").get();
+    replicatingCache.setAsync("cold", "coldValue").get();
+    for (int i = 0; i < 10; i++) {
+      replicatingCache.getAsync("hot").get();
+    }
+
+    for (int i = 0; i < 100; i++) {
+      final Map<String, String> values = replicatingCache.getBulkAsync(Arrays.asList("hot", "cold", "missing")).get();
+      Assert.assertEquals("values size", 2, values.size());
+      Assert.assertEquals("hotValue", values.get("hot"));
+      Assert.assertEquals("coldValue", values.get("cold"));
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.outbrain.ob1k.cache.memcache.folsom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.outbrain.ob1k.cache.CacheTombstone;
+import com.spotify.folsom.Transcoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class CompressingTranscoderTest {
+
+  private static final int THRESHOLD = 100;
+
+  private final JsonTranscoder<Person> jsonTranscoder = new JsonTranscoder<>(new ObjectMapper(), Person.class);
+
+  @Test
+  public void testRoundTripTranscoding_lz4() {
+    testRoundTripTranscoding(CompressionCodec.LZ4);
+  }
+
+  @Test
+  public void testRoundTripTranscoding_deflate() {
+    testRoundTripTranscoding(CompressionCodec.DEFLATE);
+  }
+
+  private void testRoundTripTranscoding(final CompressionCodec codec) {
+    final CompressingTranscoder<Person> transcoder = new CompressingTranscoder<>(jsonTranscoder, codec, THRESHOLD);
+    final Person person = new Person(66, longName(), 90);
+
+    final byte[] encoded = transcoder.encode(person);
+    Assert.assertTrue("large value should have been compressed", CompressingTranscoder.isCompressed(encoded));
+    Assert.assertTrue("compressed value should be smaller", encoded.length < jsonTranscoder.encode(person).length);
+
+    final Person decodedPerson = transcoder.decode(encoded);
+    Assert.assertEquals("decoded person age", person.age, decodedPerson.age);
+    Assert.assertEquals("decoded person name", person.name, decodedPerson.name);
+    Assert.assertEquals("decoded person weight", person.weight, decodedPerson.weight, 0.01f);
+  }
+
+  @Test
+  public void testSmallValuesAreNotCompressed() {
+    final CompressingTranscoder<Person> transcoder = new CompressingTranscoder<>(jsonTranscoder, CompressionCodec.LZ4, THRESHOLD);
+    final Person person = new Person(66, "Saba", 90);
+
+    final byte[] encoded = transcoder.encode(person);
+    Assert.assertArrayEquals("small value should be left as is", jsonTranscoder.encode(person), encoded);
+    Assert.assertEquals("decoded person name", person.name, transcoder.decode(encoded).name);
+  }
+
+  @Test
+  public void testDecodingUncompressedValues() {
+    final CompressingTranscoder<Person> transcoder = new CompressingTranscoder<>(jsonTranscoder, CompressionCodec.LZ4, THRESHOLD);
+    final Person person = new Person(66, longName(), 90);
+
+    // written before compression was enabled
+    final Person decodedPerson = transcoder.decode(jsonTranscoder.encode(person));
+    Assert.assertEquals("decoded person name", person.name, decodedPerson.name);
+  }
+
+  @Test
+  public void testDecodingWithADifferentCodec() {
+    final CompressingTranscoder<Person> lz4Transcoder = new CompressingTranscoder<>(jsonTranscoder, CompressionCodec.LZ4, THRESHOLD);
+    final CompressingTranscoder<Person> deflateTranscoder = new CompressingTranscoder<>(jsonTranscoder, CompressionCodec.DEFLATE, THRESHOLD);
+    final Person person = new Person(66, longName(), 90);
+
+    Assert.assertEquals("decoded person name", person.name, deflateTranscoder.decode(lz4Transcoder.encode(person)).name);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testTombstoneTranscoding() {
+    final Transcoder<Object> compressingTranscoder = (Transcoder) new CompressingTranscoder<>(jsonTranscoder, CompressionCodec.LZ4, THRESHOLD);
+    final TombstoneAwareTranscoder<Object> transcoder = new TombstoneAwareTranscoder<>(compressingTranscoder);
+
+    final CacheTombstone tombstone = CacheTombstone.create(1, TimeUnit.SECONDS);
+    final Object decoded = transcoder.decode(transcoder.encode(tombstone));
+    Assert.assertTrue("tombstone should be decoded as such", CacheTombstone.isTombstone(decoded));
+    Assert.assertEquals("tombstone expiration time", tombstone.getExpirationTime(), ((CacheTombstone) decoded).getExpirationTime());
+
+    final Person person = new Person(66, longName(), 90);
+    Assert.assertEquals("decoded person name", person.name, ((Person) transcoder.decode(transcoder.encode(person))).name);
+  }
+
+  private static String longName() {
+    final StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      name.append("Saba");
+    }
+    return name.toString();
+  }
+}
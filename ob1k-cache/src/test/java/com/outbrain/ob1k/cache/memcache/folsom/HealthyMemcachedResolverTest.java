@@ -37,6 +37,7 @@ public class HealthyMemcachedResolverTest {
   private final HealthInfoInstance memcachedInstance = createMemcachedNode();
   private final List<HealthInfoInstance> healthyInstances = Lists.newArrayList(memcachedInstance);
 
+  private HealthyTargetsList healthyTargetsList;
   private HealthyMemcachedResolver resolver;
   public static final String SERVICE = "memcached";
 
@@ -45,16 +46,20 @@ public class HealthyMemcachedResolverTest {
     final String filterTag = "filterTag";
     Mockito.when(mockHealth.filterDcLocalHealthyInstances(SERVICE, filterTag)).thenReturn(ComposableFutures.fromValue(healthyInstances));
     Mockito.when(mockHealth.pollHealthyInstances(SERVICE, filterTag, 0)).thenReturn(ComposableFutures.schedule(() -> mockResponse, 1, TimeUnit.HOURS));
-    final HealthyTargetsList healthyTargetsList = new HealthyTargetsList(mockHealth, SERVICE, filterTag, null, new CodahaleMetricsFactory(new MetricRegistry()));
+    healthyTargetsList = new HealthyTargetsList(mockHealth, SERVICE, filterTag, null, new CodahaleMetricsFactory(new MetricRegistry()));
 
     resolver = new HealthyMemcachedResolver(healthyTargetsList);
     healthyTargetsList.getInitializationFuture().get();
   }
 
   private HealthInfoInstance createMemcachedNode() {
+    return createMemcachedNode("memcached01");
+  }
+
+  private HealthInfoInstance createMemcachedNode(final String address) {
     final HealthInfoInstance node = new HealthInfoInstance();
     node.Node = new HealthInfoInstance.Node();
-    node.Node.Address = "memcached01";
+    node.Node.Address = address;
     node.Service = new HealthInfoInstance.Service();
     node.Service.Port = 11911;
 
@@ -71,4 +76,26 @@ public class HealthyMemcachedResolverTest {
     Assert.assertEquals("port", memcachedInstance.Service.Port, lookupResult.port());
     Assert.assertEquals("getResolvedCluster", lookupResults, resolver.getResolvedCluster());
   }
+
+  @Test
+  public void testRemovalGrace() throws InterruptedException {
+    final HealthyMemcachedResolver graceResolver = new HealthyMemcachedResolver(healthyTargetsList, 50, TimeUnit.MILLISECONDS);
+    final HealthInfoInstance otherInstance = createMemcachedNode("memcached02");
+
+    graceResolver.onTargetsChanged(Lists.newArrayList(memcachedInstance, otherInstance));
+    Assert.assertEquals("num results", 2, graceResolver.resolve(SERVICE).size());
+
+    graceResolver.onTargetsChanged(Lists.newArrayList(memcachedInstance));
+    Assert.assertEquals("unhealthy node should be kept during the grace period", 2, graceResolver.resolve(SERVICE).size());
+
+    graceResolver.onTargetsChanged(Lists.newArrayList(memcachedInstance, otherInstance));
+    Thread.sleep(100);
+    Assert.assertEquals("node that came back should be kept", 2, graceResolver.resolve(SERVICE).size());
+
+    graceResolver.onTargetsChanged(Lists.newArrayList(memcachedInstance));
+    Thread.sleep(100);
+    final List<LookupResult> lookupResults = graceResolver.resolve(SERVICE);
+    Assert.assertEquals("unhealthy node should be removed after the grace period", 1, lookupResults.size());
+    Assert.assertEquals("host", memcachedInstance.Node.Address, lookupResults.get(0).host());
+  }
 }
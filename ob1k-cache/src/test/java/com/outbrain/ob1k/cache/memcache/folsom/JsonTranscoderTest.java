@@ -1,9 +1,13 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.outbrain.ob1k.cache.CacheTombstone;
+import org.apache.commons.lang.SerializationException;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Eran Harel
  */
@@ -22,4 +26,8 @@ public class JsonTranscoderTest {
     Assert.assertNotSame(person, decodedPerson);
   }
 
+  @Test(expected = SerializationException.class)
+  public void testTombstonesRequireNegativeCaching() {
+    transcoder.encode(CacheTombstone.create(1, TimeUnit.MINUTES));
+  }
 }
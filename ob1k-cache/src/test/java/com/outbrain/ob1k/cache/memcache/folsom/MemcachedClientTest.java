@@ -1,17 +1,37 @@
 package com.outbrain.ob1k.cache.memcache.folsom;
 
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.Futures;
 import com.outbrain.ob1k.cache.AbstractMemcachedClientTest;
 import com.outbrain.ob1k.cache.TypedCache;
+import com.outbrain.ob1k.cache.memcache.HotKeysDetector;
 import com.spotify.folsom.ConnectFuture;
+import com.spotify.folsom.GetResult;
 import com.spotify.folsom.MemcacheClient;
 import com.spotify.folsom.MemcacheClientBuilder;
+import com.spotify.folsom.MemcacheStatus;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 /**
  * @author Eran Harel
  */
@@ -37,4 +57,67 @@ public class MemcachedClientTest extends AbstractMemcachedClientTest {
   protected TypedCache<String, Serializable> createCacheClient() throws Exception {
     return new MemcachedClient<>(folsomClient, key -> key, 1, TimeUnit.MINUTES);
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBulkCasFailsWhenNoKeyWasResolved() throws Exception {
+    final MemcacheClient<String> failingClient = mock(MemcacheClient.class);
+    when(failingClient.casGet(Arrays.asList("a", "b"))).thenReturn(Futures.immediateFailedFuture(new IOException("down")));
+    final MemcachedClient<String, String> cache = new MemcachedClient<>(failingClient, key -> key, 1, TimeUnit.MINUTES);
+
+    try {
+      cache.setBulkAsync(Arrays.asList("a", "b"), (key, value) -> "new", 3).get();
+      fail("the bulk cas should fail when no key was resolved");
+    } catch (final ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBulkCasMarksTheUnresolvedKeys() throws Exception {
+    final MemcacheClient<String> flakyClient = mock(MemcacheClient.class);
+    when(flakyClient.casGet(Arrays.asList("a", "b"))).thenReturn(Futures.immediateFuture(
+      Arrays.asList(GetResult.success("old", 1), GetResult.success("old", 2))));
+    when(flakyClient.set(eq("a"), anyString(), anyInt(), eq(1L))).thenReturn(Futures.immediateFuture(MemcacheStatus.OK));
+    when(flakyClient.set(eq("b"), anyString(), anyInt(), eq(2L))).thenReturn(Futures.immediateFuture(MemcacheStatus.KEY_EXISTS));
+    // the retry of the contended key fails
+    when(flakyClient.casGet(Collections.singletonList("b"))).thenReturn(Futures.immediateFailedFuture(new IOException("down")));
+    final MemcachedClient<String, String> cache = new MemcachedClient<>(flakyClient, key -> key, 1, TimeUnit.MINUTES);
+
+    final Map<String, Boolean> expected = new HashMap<>();
+    expected.put("a", true);
+    expected.put("b", false);
+    assertEquals(expected, cache.setBulkAsync(Arrays.asList("a", "b"), (key, value) -> "new", 3).get());
+  }
+
+  @Test
+  public void testHotKeysReplicationThroughTheBuilder() throws Exception {
+    final MemcachedClientBuilder<String> builder = MemcachedClientBuilder.newJsonClient(String.class)
+      .withHotKeysReplication(new HotKeysDetector(5, 1, TimeUnit.HOURS), 2, 10, TimeUnit.SECONDS);
+    final MemcacheClient<String> stringClient = builder.build()
+      .withAddress(HostAndPort.fromParts("localhost", MEMCACHED_PORT))
+      .withRequestTimeoutMillis(1000)
+      .connectAscii();
+    ConnectFuture.connectFuture(stringClient).get();
+
+    try {
+      final TypedCache<Integer, String> cache = builder.buildTypedCache(stringClient, key -> "hot" + key, 1, TimeUnit.MINUTES);
+      cache.setAsync(1, "value").get();
+      for (int i = 0; i < 100; i++) {
+        assertEquals("value", cache.getAsync(1).get());
+      }
+
+      assertEquals("the hot key should be replicated", "value", stringClient.get("hot1#1").get());
+      assertEquals("the hot key should be replicated", "value", stringClient.get("hot1#2").get());
+    } finally {
+      stringClient.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHotKeysReplicasMustExpire() {
+    MemcachedClientBuilder.newJsonClient(String.class)
+      .withHotKeysReplication(new HotKeysDetector(5, 1, TimeUnit.HOURS), 2, 500, TimeUnit.MILLISECONDS);
+  }
 }
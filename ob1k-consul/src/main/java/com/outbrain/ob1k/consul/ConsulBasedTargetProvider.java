@@ -56,16 +56,6 @@ public class ConsulBasedTargetProvider implements TargetProvider, HealthyTargets
     return provideTargets(1).get(0); // knowing that provideTargets may not return empty collection
   }
 
-  private int instanceWeight(final HealthInfoInstance.Service instance) {
-    for (final Map.Entry<String, Integer> tagWeight : tag2weight.entrySet()) {
-      if (instance.Tags.contains(tagWeight.getKey())) {
-        return tagWeight.getValue();
-      }
-    }
-
-    return 1;
-  }
-
   @Override
   public List<String> provideTargets(final int targetsNum) {
     final List<String> currTargets = targets;
@@ -88,21 +78,41 @@ public class ConsulBasedTargetProvider implements TargetProvider, HealthyTargets
 
   @Override
   public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
+    final List<String> targets = weightedTargetUrls(healthTargets, urlSuffix, tag2weight);
+
+    Collections.shuffle(targets);
+    this.targets = targets;
+    log.debug("New weighed targets: {}", targets);
+  }
+
+  /**
+   * @return the urls of the targets, each repeated by the weight of its tags.
+   */
+  static List<String> weightedTargetUrls(final List<HealthInfoInstance> healthTargets, final String urlSuffix,
+                                         final Map<String, Integer> tag2weight) {
     final List<String> targets = new ArrayList<>(healthTargets.size());
     for (final HealthInfoInstance healthInfo : healthTargets) {
-      final String targetUrl = createTargetUrl(healthInfo);
-      final int weight = instanceWeight(healthInfo.Service);
+      final String targetUrl = createTargetUrl(healthInfo, urlSuffix);
+      final int weight = instanceWeight(healthInfo.Service, tag2weight);
       for (int i = 0; i < weight; i++) {
         targets.add(targetUrl);
       }
     }
 
-    Collections.shuffle(targets);
-    this.targets = targets;
-    log.debug("New weighed targets: {}", targets);
+    return targets;
+  }
+
+  private static int instanceWeight(final HealthInfoInstance.Service instance, final Map<String, Integer> tag2weight) {
+    for (final Map.Entry<String, Integer> tagWeight : tag2weight.entrySet()) {
+      if (instance.Tags.contains(tagWeight.getKey())) {
+        return tagWeight.getValue();
+      }
+    }
+
+    return 1;
   }
 
-  private String createTargetUrl(final HealthInfoInstance healthInfo) {
+  static String createTargetUrl(final HealthInfoInstance healthInfo, final String urlSuffix) {
     final String nodeAddress = healthInfo.Node.Address;
     final String serviceAddress = healthInfo.Service.Address;
     // Take service address (IP) unless it is null/empty - then take the node address (IP)
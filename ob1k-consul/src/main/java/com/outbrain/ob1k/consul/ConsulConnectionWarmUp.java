@@ -0,0 +1,30 @@
+package com.outbrain.ob1k.consul;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.client.ConnectionWarmUp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ConnectionWarmUp} of the targets registered in consul, opening connections to the instances as soon as
+ * they become healthy, before the target provider sends them any call.
+ */
+public class ConsulConnectionWarmUp extends ConnectionWarmUp implements HealthyTargetsList.TargetsChangedListener {
+
+  public ConsulConnectionWarmUp(final HealthyTargetsList healthyTargetsList, final int connections) {
+    super(connections);
+    Preconditions.checkNotNull(healthyTargetsList, "healthyTargetsList must not be null");
+    healthyTargetsList.addListener(this);
+  }
+
+  @Override
+  public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
+    final List<String> targets = new ArrayList<>(healthTargets.size());
+    for (final HealthInfoInstance instance : healthTargets) {
+      // the connections are per host, the path doesn't matter
+      targets.add(ConsulBasedTargetProvider.createTargetUrl(instance, ""));
+    }
+    onTargets(targets);
+  }
+}
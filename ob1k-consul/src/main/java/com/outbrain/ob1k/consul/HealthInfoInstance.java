@@ -4,6 +4,7 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -88,6 +89,7 @@ public class HealthInfoInstance {
   public static class Node {
     public String Node;
     public String Address;
+    public Map<String, String> Meta;
     public long ModifyIndex;
 
     @Override
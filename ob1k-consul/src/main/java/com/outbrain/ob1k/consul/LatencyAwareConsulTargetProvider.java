@@ -0,0 +1,47 @@
+package com.outbrain.ob1k.consul;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.client.targets.LatencyAwareTargetProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link LatencyAwareTargetProvider} of the targets registered in consul, balancing the calls by the latency
+ * of the targets instead of round robin.
+ * The tag weights scale the share of the targets as they do for the {@link ConsulBasedTargetProvider}.
+ */
+public class LatencyAwareConsulTargetProvider extends LatencyAwareTargetProvider implements HealthyTargetsList.TargetsChangedListener {
+
+  private static final Logger log = LoggerFactory.getLogger(LatencyAwareConsulTargetProvider.class);
+
+  private final String urlSuffix;
+  private final Map<String, Integer> tag2weight;
+
+  public LatencyAwareConsulTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix,
+                                          final Map<String, Integer> tag2weight) {
+    this(healthyTargetsList, urlSuffix, tag2weight, DEFAULT_DECAY_TIME_MS, DEFAULT_INITIAL_LATENCY_MS,
+      DEFAULT_FAILURE_PENALTY_MS);
+  }
+
+  public LatencyAwareConsulTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix,
+                                          final Map<String, Integer> tag2weight, final long decayTimeMs,
+                                          final long initialLatencyMs, final long failurePenaltyMs) {
+    super(Preconditions.checkNotNull(healthyTargetsList, "healthyTargetsList must not be null").getModule(),
+      Collections.<String>emptyList(), decayTimeMs, initialLatencyMs, failurePenaltyMs);
+    this.urlSuffix = urlSuffix == null ? "" : urlSuffix;
+    this.tag2weight = tag2weight == null ? Collections.<String, Integer>emptyMap() : new HashMap<>(tag2weight);
+    healthyTargetsList.addListener(this);
+  }
+
+  @Override
+  public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
+    final List<String> targets = ConsulBasedTargetProvider.weightedTargetUrls(healthTargets, urlSuffix, tag2weight);
+    setTargets(targets);
+    log.debug("New weighed targets: {}", targets);
+  }
+}
@@ -0,0 +1,82 @@
+package com.outbrain.ob1k.consul;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Objects;
+
+/**
+ * The zone and rack of a target, taken from the meta of its consul node, or else from the
+ * <code>zone-</code> and <code>rack-</code> tags of its service.
+ *
+ * @see ZoneAwareConsulTargetProvider
+ */
+public final class TargetLocality {
+  public static final String ZONE_KEY = "zone";
+  public static final String RACK_KEY = "rack";
+
+  private final String zone;
+  private final String rack;
+
+  public TargetLocality(final String zone, final String rack) {
+    this.zone = StringUtils.trimToNull(zone);
+    this.rack = StringUtils.trimToNull(rack);
+  }
+
+  public static TargetLocality of(final HealthInfoInstance instance) {
+    return new TargetLocality(extract(instance, ZONE_KEY), extract(instance, RACK_KEY));
+  }
+
+  private static String extract(final HealthInfoInstance instance, final String key) {
+    if (instance.Node != null && instance.Node.Meta != null && instance.Node.Meta.containsKey(key)) {
+      return instance.Node.Meta.get(key);
+    }
+
+    return instance.Service == null ? null : TagsUtil.extractTag(instance.Service.Tags, key);
+  }
+
+  /**
+   * @return the zone, or null if it's unknown.
+   */
+  public String getZone() {
+    return zone;
+  }
+
+  /**
+   * @return the rack, or null if it's unknown.
+   */
+  public String getRack() {
+    return rack;
+  }
+
+  public boolean isSameZone(final TargetLocality other) {
+    return zone != null && zone.equals(other.zone);
+  }
+
+  public boolean isSameRack(final TargetLocality other) {
+    return isSameZone(other) && rack != null && rack.equals(other.rack);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (!(o instanceof TargetLocality)) {
+      return false;
+    }
+
+    final TargetLocality other = (TargetLocality) o;
+    return Objects.equals(zone, other.zone) && Objects.equals(rack, other.rack);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(zone, rack);
+  }
+
+  @Override
+  public String toString() {
+    return zone + "/" + rack;
+  }
+}
@@ -0,0 +1,211 @@
+package com.outbrain.ob1k.consul;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.client.targets.FeedbackTargetProvider;
+import com.outbrain.ob1k.client.targets.LatencyAwareTargetProvider;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link FeedbackTargetProvider} of the targets registered in consul, preferring the targets in the same rack,
+ * then in the same zone as the client, to save the cost and latency of crossing zones.
+ * <p>
+ * The locality of the targets is read by {@link TargetLocality}, and the locality of the client is given, or read
+ * from the {@value #LOCAL_ZONE_PROPERTY} and {@value #LOCAL_RACK_PROPERTY} system properties.
+ * </p>
+ * The calls spill over to the wider level, which includes the local targets, when the local targets are less than
+ * the min capacity ratio of their fair share (the targets divided by the zones, or racks), or when their average
+ * latency exceeds the spill over latency. Within a level the targets are balanced by their latency, as by the
+ * {@link LatencyAwareTargetProvider}. The calls sent to the local and other zones are counted.
+ */
+public class ZoneAwareConsulTargetProvider implements FeedbackTargetProvider, HealthyTargetsList.TargetsChangedListener {
+
+  public static final String LOCAL_ZONE_PROPERTY = "com.outbrain.ob1k.consul.zone";
+  public static final String LOCAL_RACK_PROPERTY = "com.outbrain.ob1k.consul.rack";
+  public static final double DEFAULT_MIN_CAPACITY_RATIO = 0.5;
+
+  private static final Logger log = LoggerFactory.getLogger(ZoneAwareConsulTargetProvider.class);
+
+  private static final int RACK = 0;
+  private static final int ZONE = 1;
+  private static final int ALL = 2;
+
+  private final String module;
+  private final String urlSuffix;
+  private final Map<String, Integer> tag2weight;
+  private final TargetLocality locality;
+  private final double minCapacityRatio;
+  private final long spillOverLatencyNanos;
+  // each level holds the targets of the previous one
+  private final LatencyAwareTargetProvider[] levels;
+
+  private final Counter localZoneRequests;
+  private final Counter crossZoneRequests;
+
+  private volatile Localities localities = new Localities(false, false, Collections.<String, String>emptyMap());
+
+  public ZoneAwareConsulTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix,
+                                       final Map<String, Integer> tag2weight, final MetricFactory metricFactory) {
+    this(healthyTargetsList, urlSuffix, tag2weight, new TargetLocality(System.getProperty(LOCAL_ZONE_PROPERTY),
+      System.getProperty(LOCAL_RACK_PROPERTY)), metricFactory);
+  }
+
+  public ZoneAwareConsulTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix,
+                                       final Map<String, Integer> tag2weight, final TargetLocality locality,
+                                       final MetricFactory metricFactory) {
+    this(healthyTargetsList, urlSuffix, tag2weight, locality, DEFAULT_MIN_CAPACITY_RATIO, 0, metricFactory);
+  }
+
+  /**
+   * @param locality             the zone and rack of the client
+   * @param minCapacityRatio     the least share of their fair share the local targets serve alone
+   * @param spillOverLatencyMs   the average latency of the local targets that spills the calls over, or 0 to
+   *                             spill over by capacity only
+   * @param metricFactory        counts the calls to the local and other zones, may be null
+   */
+  public ZoneAwareConsulTargetProvider(final HealthyTargetsList healthyTargetsList, final String urlSuffix,
+                                       final Map<String, Integer> tag2weight, final TargetLocality locality,
+                                       final double minCapacityRatio, final long spillOverLatencyMs,
+                                       final MetricFactory metricFactory) {
+    checkArgument(minCapacityRatio >= 0, "min capacity ratio must not be negative");
+    Preconditions.checkNotNull(healthyTargetsList, "healthyTargetsList must not be null");
+    this.module = healthyTargetsList.getModule();
+    this.urlSuffix = urlSuffix == null ? "" : urlSuffix;
+    this.tag2weight = tag2weight == null ? Collections.<String, Integer>emptyMap() : new HashMap<>(tag2weight);
+    this.locality = Preconditions.checkNotNull(locality, "locality must not be null");
+    this.minCapacityRatio = minCapacityRatio;
+    this.spillOverLatencyNanos = TimeUnit.MILLISECONDS.toNanos(spillOverLatencyMs);
+    this.levels = new LatencyAwareTargetProvider[] {
+      new LatencyAwareTargetProvider(module), new LatencyAwareTargetProvider(module), new LatencyAwareTargetProvider(module)
+    };
+
+    if (metricFactory != null) {
+      final String component = getClass().getSimpleName() + "." + module;
+      localZoneRequests = metricFactory.createCounter(component, "localZoneRequests");
+      crossZoneRequests = metricFactory.createCounter(component, "crossZoneRequests");
+    } else {
+      localZoneRequests = null;
+      crossZoneRequests = null;
+    }
+
+    healthyTargetsList.addListener(this);
+  }
+
+  @Override
+  public String getTargetLogicalName() {
+    return module;
+  }
+
+  @Override
+  public String provideTarget() {
+    return level().provideTarget();
+  }
+
+  @Override
+  public List<String> provideTargets(final int targetsNum) {
+    return level().provideTargets(targetsNum);
+  }
+
+  @Override
+  public void onRequestStart(final String target) {
+    for (final LatencyAwareTargetProvider level : levels) {
+      level.onRequestStart(target);
+    }
+
+    final Map<String, String> zones = localities.zones;
+    if (locality.getZone() != null && zones.containsKey(target)) {
+      final Counter requests = locality.getZone().equals(zones.get(target)) ? localZoneRequests : crossZoneRequests;
+      if (requests != null) {
+        requests.inc();
+      }
+    }
+  }
+
+  @Override
+  public void onRequestComplete(final String target, final long latencyNanos, final boolean success) {
+    for (final LatencyAwareTargetProvider level : levels) {
+      level.onRequestComplete(target, latencyNanos, success);
+    }
+  }
+
+  @Override
+  public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
+    final List<HealthInfoInstance> rackTargets = new ArrayList<>();
+    final List<HealthInfoInstance> zoneTargets = new ArrayList<>();
+    final Set<String> zones = new HashSet<>();
+    final Set<String> zoneRacks = new HashSet<>();
+    final Map<String, String> targetZones = new HashMap<>();
+
+    for (final HealthInfoInstance instance : healthTargets) {
+      final TargetLocality targetLocality = TargetLocality.of(instance);
+      targetZones.put(ConsulBasedTargetProvider.createTargetUrl(instance, urlSuffix), targetLocality.getZone());
+      zones.add(targetLocality.getZone());
+
+      if (targetLocality.isSameZone(locality)) {
+        zoneTargets.add(instance);
+        zoneRacks.add(targetLocality.getRack());
+        if (targetLocality.isSameRack(locality)) {
+          rackTargets.add(instance);
+        }
+      }
+    }
+
+    // all calls go to the widest level while the levels are replaced
+    localities = new Localities(false, false, targetZones);
+    levels[RACK].setTargets(ConsulBasedTargetProvider.weightedTargetUrls(rackTargets, urlSuffix, tag2weight));
+    levels[ZONE].setTargets(ConsulBasedTargetProvider.weightedTargetUrls(zoneTargets, urlSuffix, tag2weight));
+    levels[ALL].setTargets(ConsulBasedTargetProvider.weightedTargetUrls(healthTargets, urlSuffix, tag2weight));
+    localities = new Localities(hasCapacity(rackTargets.size(), zoneTargets.size(), zoneRacks.size()),
+      hasCapacity(zoneTargets.size(), healthTargets.size(), zones.size()), targetZones);
+
+    log.debug("New targets of {}: {} in rack, {} in zone {}, {} in total", module, rackTargets.size(),
+      zoneTargets.size(), locality.getZone(), healthTargets.size());
+  }
+
+  private boolean hasCapacity(final int localTargets, final int targets, final int groups) {
+    return localTargets > 0 && localTargets >= minCapacityRatio * targets / groups;
+  }
+
+  private LatencyAwareTargetProvider level() {
+    final Localities current = localities;
+    if (current.rackCapacity && !isDegraded(levels[RACK])) {
+      return levels[RACK];
+    }
+
+    if (current.zoneCapacity && !isDegraded(levels[ZONE])) {
+      return levels[ZONE];
+    }
+
+    return levels[ALL];
+  }
+
+  private boolean isDegraded(final LatencyAwareTargetProvider level) {
+    return spillOverLatencyNanos > 0 && level.getAverageLatencyNanos() > spillOverLatencyNanos;
+  }
+
+  private static final class Localities {
+    private final boolean rackCapacity;
+    private final boolean zoneCapacity;
+    private final Map<String, String> zones;
+
+    private Localities(final boolean rackCapacity, final boolean zoneCapacity, final Map<String, String> zones) {
+      this.rackCapacity = rackCapacity;
+      this.zoneCapacity = zoneCapacity;
+      this.zones = Objects.requireNonNull(zones);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.outbrain.ob1k.consul;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LatencyAwareConsulTargetProviderTest {
+
+  private static final String MODULE_NAME = "MyService";
+  private static final int PORT = 8080;
+
+  @Test
+  public void testTargetsAreWeightedByTags() {
+    final HealthyTargetsList healthyTargetsList = mock(HealthyTargetsList.class);
+    when(healthyTargetsList.getModule()).thenReturn(MODULE_NAME);
+    final LatencyAwareConsulTargetProvider targetProvider = new LatencyAwareConsulTargetProvider(healthyTargetsList,
+      "/api", Collections.singletonMap("heavy", 10));
+
+    targetProvider.onTargetsChanged(Arrays.asList(createHealthInfoInstance(1, "light"), createHealthInfoInstance(2, "heavy")));
+
+    assertEquals(MODULE_NAME, targetProvider.getTargetLogicalName());
+    assertEquals(Arrays.asList(createUrl(1), createUrl(2)), targetProvider.getTargets());
+    // the same latency and load, so the heavier target is cheaper
+    assertEquals(createUrl(2), targetProvider.provideTarget());
+  }
+
+  private static HealthInfoInstance createHealthInfoInstance(final int nodeIndex, final String tag) {
+    final HealthInfoInstance.Node node = new HealthInfoInstance.Node();
+    node.Node = "myservice.node" + nodeIndex;
+    node.Address = nodeIndex + "." + nodeIndex + "." + nodeIndex + "." + nodeIndex;
+
+    final HealthInfoInstance.Service service = new HealthInfoInstance.Service();
+    service.Tags = newHashSet("httpPort-" + PORT, "contextPath-/" + MODULE_NAME, tag);
+    service.Address = "";
+
+    final HealthInfoInstance instance = new HealthInfoInstance();
+    instance.Node = node;
+    instance.Service = service;
+    instance.Checks = emptyList();
+    return instance;
+  }
+
+  private static String createUrl(final int nodeIndex) {
+    return "http://" + nodeIndex + "." + nodeIndex + "." + nodeIndex + "." + nodeIndex + ":" + PORT + "/" + MODULE_NAME + "/api";
+  }
+}
@@ -0,0 +1,153 @@
+package com.outbrain.ob1k.consul;
+
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZoneAwareConsulTargetProviderTest {
+
+  private static final String MODULE_NAME = "MyService";
+  private static final int PORT = 8080;
+  private static final int CALLS = 100;
+  private static final TargetLocality LOCALITY = new TargetLocality("us-east-1a", "r1");
+
+  private HealthyTargetsList healthyTargetsList;
+  private MetricFactory metricFactory;
+  private Counter localZoneRequests;
+  private Counter crossZoneRequests;
+
+  @Before
+  public void init() {
+    healthyTargetsList = mock(HealthyTargetsList.class);
+    when(healthyTargetsList.getModule()).thenReturn(MODULE_NAME);
+
+    metricFactory = mock(MetricFactory.class);
+    localZoneRequests = mock(Counter.class);
+    crossZoneRequests = mock(Counter.class);
+    when(metricFactory.createCounter(anyString(), eq("localZoneRequests"))).thenReturn(localZoneRequests);
+    when(metricFactory.createCounter(anyString(), eq("crossZoneRequests"))).thenReturn(crossZoneRequests);
+  }
+
+  @Test
+  public void testPrefersTheLocalRackThenZone() {
+    final ZoneAwareConsulTargetProvider targetProvider = new ZoneAwareConsulTargetProvider(healthyTargetsList, "",
+      emptyMap(), LOCALITY, 0, 0, metricFactory);
+
+    targetProvider.onTargetsChanged(Arrays.asList(instance(1, "us-east-1a", "r1"), instance(2, "us-east-1a", "r2"),
+      instance(3, "us-east-1b", "r1")));
+    assertEquals(newHashSet(url(1)), provideTargets(targetProvider));
+
+    targetProvider.onTargetsChanged(Arrays.asList(instance(2, "us-east-1a", "r2"), instance(3, "us-east-1b", "r1")));
+    assertEquals(newHashSet(url(2)), provideTargets(targetProvider));
+  }
+
+  @Test
+  public void testSpillsOverWhenTheLocalCapacityIsLow() {
+    final ZoneAwareConsulTargetProvider targetProvider = new ZoneAwareConsulTargetProvider(healthyTargetsList, "",
+      emptyMap(), new TargetLocality("us-east-1a", null), 0.5, 0, metricFactory);
+
+    // a single local target is less than half of the fair share of four per zone
+    final List<HealthInfoInstance> instances = new ArrayList<>();
+    instances.add(instance(1, "us-east-1a", null));
+    for (int i = 2; i <= 8; i++) {
+      instances.add(instance(i, "us-east-1b", null));
+    }
+    targetProvider.onTargetsChanged(instances);
+
+    assertTrue("calls should spill over to other zones", provideTargets(targetProvider).size() > 1);
+
+    // three local targets of a fair share of five
+    instances.add(instance(9, "us-east-1a", null));
+    instances.add(instance(10, "us-east-1a", null));
+    targetProvider.onTargetsChanged(instances);
+    assertTrue("calls should stay in the local zone",
+      newHashSet(url(1), url(9), url(10)).containsAll(provideTargets(targetProvider)));
+  }
+
+  @Test
+  public void testSpillsOverWhenTheLocalLatencyDegrades() {
+    final ZoneAwareConsulTargetProvider targetProvider = new ZoneAwareConsulTargetProvider(healthyTargetsList, "",
+      emptyMap(), LOCALITY, 0.5, 100, metricFactory);
+    targetProvider.onTargetsChanged(Arrays.asList(instance(1, "us-east-1a", "r1"), instance(2, "us-east-1b", "r1")));
+    assertEquals(newHashSet(url(1)), provideTargets(targetProvider));
+
+    targetProvider.onRequestStart(url(1));
+    targetProvider.onRequestComplete(url(1), TimeUnit.SECONDS.toNanos(1), true);
+
+    assertEquals(newHashSet(url(2)), provideTargets(targetProvider));
+  }
+
+  @Test
+  public void testCountsCrossZoneRequests() {
+    final ZoneAwareConsulTargetProvider targetProvider = new ZoneAwareConsulTargetProvider(healthyTargetsList, "",
+      singletonMap("heavy", 2), LOCALITY, metricFactory);
+    targetProvider.onTargetsChanged(Arrays.asList(instance(1, "us-east-1a", "r1"), instance(2, "us-east-1b", "r1")));
+
+    targetProvider.onRequestStart(url(1));
+    targetProvider.onRequestStart(url(2));
+    targetProvider.onRequestStart(url(2));
+
+    verify(localZoneRequests).inc();
+    verify(crossZoneRequests, times(2)).inc();
+  }
+
+  @Test
+  public void testLocalityFromNodeMeta() {
+    final HealthInfoInstance instance = instance(1, "us-east-1b", "r1");
+    instance.Node.Meta = singletonMap(TargetLocality.ZONE_KEY, "us-east-1a");
+
+    assertEquals(new TargetLocality("us-east-1a", "r1"), TargetLocality.of(instance));
+  }
+
+  private static Set<String> provideTargets(final ZoneAwareConsulTargetProvider targetProvider) {
+    final Set<String> targets = new HashSet<>();
+    for (int i = 0; i < CALLS; i++) {
+      targets.add(targetProvider.provideTarget());
+    }
+    return targets;
+  }
+
+  private static HealthInfoInstance instance(final int nodeIndex, final String zone, final String rack) {
+    final HealthInfoInstance.Node node = new HealthInfoInstance.Node();
+    node.Node = "myservice.node" + nodeIndex;
+    node.Address = "10.0.0." + nodeIndex;
+
+    final HealthInfoInstance.Service service = new HealthInfoInstance.Service();
+    service.Tags = newHashSet("httpPort-" + PORT, "contextPath-/" + MODULE_NAME, "zone-" + zone);
+    if (rack != null) {
+      service.Tags.add("rack-" + rack);
+    }
+    service.Address = "";
+
+    final HealthInfoInstance instance = new HealthInfoInstance();
+    instance.Node = node;
+    instance.Service = service;
+    instance.Checks = emptyList();
+    return instance;
+  }
+
+  private static String url(final int nodeIndex) {
+    return "http://10.0.0." + nodeIndex + ":" + PORT + "/" + MODULE_NAME;
+  }
+}
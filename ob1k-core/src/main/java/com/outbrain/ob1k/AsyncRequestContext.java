@@ -9,4 +9,14 @@ import com.outbrain.ob1k.concurrent.ComposableFuture;
  */
 public interface AsyncRequestContext extends RequestContext {
   <T> ComposableFuture<T> invokeAsync();
+
+  /**
+   * invokes the rest of the call chain with the given params in place of the params of this call.
+   * the contexts of ob1k leave the params of this call untouched, while this default implementation copies the given
+   * params over them, for contexts that don't override it.
+   */
+  default <T> ComposableFuture<T> invokeAsync(final Object[] params) {
+    System.arraycopy(params, 0, getParams(), 0, params.length);
+    return invokeAsync();
+  }
 }
@@ -6,6 +6,7 @@ import com.outbrain.ob1k.client.dispatch.DefaultDispatchStrategy;
 import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
 import com.outbrain.ob1k.client.endpoints.AbstractClientEndpoint;
 import com.outbrain.ob1k.client.endpoints.AsyncClientEndpoint;
+import com.outbrain.ob1k.client.endpoints.CollapsingClientEndpoint;
 import com.outbrain.ob1k.client.endpoints.EndpointDescription;
 import com.outbrain.ob1k.client.endpoints.StreamClientEndpoint;
 import com.outbrain.ob1k.client.targets.EmptyTargetProvider;
@@ -18,6 +19,7 @@ import com.outbrain.ob1k.common.marshalling.TypeHelper;
 import com.outbrain.ob1k.http.HttpClient;
 import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
+import io.netty.channel.EventLoopGroup;
 import java.io.Closeable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
@@ -37,11 +39,15 @@ public class ClientBuilder<T extends Service> {
   private final List<AsyncFilter> asyncFilters;
   private final List<StreamFilter> streamFilters;
   private final Map<String, EndpointDescriptor> endpointDescriptors;
+  private final Map<String, CollapsingDescriptor> collapsingDescriptors;
   private final HttpClient.Builder httpClientBuilder;
 
   private TargetProvider targetProvider = new EmptyTargetProvider();
   private ContentType clientType = ContentType.JSON;
   private DispatchStrategy dispatchStrategy = DefaultDispatchStrategy.INSTANCE;
+  private boolean generateStub = false;
+  private ConnectionWarmUp connectionWarmUp;
+  private MetricFactory metricFactory;
 
   public ClientBuilder(final Class<T> type) {
     this.type = type;
@@ -49,6 +55,7 @@ public class ClientBuilder<T extends Service> {
     this.asyncFilters = new ArrayList<>();
     this.streamFilters = new ArrayList<>();
     this.endpointDescriptors = new HashMap<>();
+    this.collapsingDescriptors = new HashMap<>();
   }
 
   public ClientBuilder<T> addFilter(final ServiceFilter filter) {
@@ -75,6 +82,7 @@ public class ClientBuilder<T extends Service> {
 
   public ClientBuilder<T> setMetricFactory(final MetricFactory metricFactory) {
     httpClientBuilder.setMetricFactory(metricFactory);
+    this.metricFactory = metricFactory;
     return this;
   }
 
@@ -119,6 +127,48 @@ public class ClientBuilder<T extends Service> {
     return this;
   }
 
+  /**
+   * how long an idle connection is kept alive in the pool, non positive keeps it for ever.
+   */
+  public ClientBuilder<T> setPooledConnectionIdleTimeout(final int timeout) {
+    httpClientBuilder.setPooledConnectionIdleTimeout(timeout);
+    return this;
+  }
+
+  /**
+   * opens connections to the targets of the warm up as they appear, when on the netty transport.
+   */
+  public ClientBuilder<T> setConnectionWarmUp(final ConnectionWarmUp connectionWarmUp) {
+    this.connectionWarmUp = connectionWarmUp;
+    return this;
+  }
+
+  /**
+   * sends the requests on a netty 4 transport instead of the async http client.
+   */
+  public ClientBuilder<T> useNettyTransport() {
+    httpClientBuilder.useNettyTransport();
+    return this;
+  }
+
+  /**
+   * sends the requests on a netty 4 transport running on the given event loops, e.g. the ones of the NettyServer,
+   * so requests made while serving a request complete on the same thread.
+   */
+  public ClientBuilder<T> useNettyTransport(final EventLoopGroup eventLoopGroup) {
+    httpClientBuilder.useNettyTransport(eventLoopGroup);
+    return this;
+  }
+
+  /**
+   * builds the client as a generated class calling each endpoint directly, instead of a JDK proxy.
+   * interfaces that aren't public still get a proxy.
+   */
+  public ClientBuilder<T> useGeneratedStub(final boolean generateStub) {
+    this.generateStub = generateStub;
+    return this;
+  }
+
   public ClientBuilder<T> setTargetProvider(final TargetProvider targetProvider) {
     this.targetProvider = targetProvider == null ? new EmptyTargetProvider() : targetProvider;
     return this;
@@ -145,6 +195,25 @@ public class ClientBuilder<T extends Service> {
     return this;
   }
 
+  /**
+   * collapses the concurrent calls of a single key method into calls of its bulk method, which takes a collection of
+   * the keys and returns a future of a map of the keys to their values.
+   */
+  public ClientBuilder<T> collapseEndpoint(final String methodName, final String bulkMethodName) {
+    return collapseEndpoint(methodName, bulkMethodName, CollapsingClientEndpoint.DEFAULT_MAX_BATCH_SIZE,
+      CollapsingClientEndpoint.DEFAULT_MAX_WAIT_MS);
+  }
+
+  /**
+   * collapses the concurrent calls of a single key method into calls of its bulk method, sent once they hold
+   * max batch size keys, or once the first of them waited max wait ms.
+   */
+  public ClientBuilder<T> collapseEndpoint(final String methodName, final String bulkMethodName,
+                                           final int maxBatchSize, final long maxWaitMs) {
+    collapsingDescriptors.put(methodName, new CollapsingDescriptor(bulkMethodName, maxBatchSize, maxWaitMs));
+    return this;
+  }
+
   public ClientBuilder<T> setDispatchStrategy(final DispatchStrategy dispatchStrategy) {
     this.dispatchStrategy = dispatchStrategy;
     return this;
@@ -170,6 +239,14 @@ public class ClientBuilder<T extends Service> {
     final ClassLoader loader = ClientBuilder.class.getClassLoader();
     final HttpClient httpClient = httpClientBuilder.build();
     final Map<Method, AbstractClientEndpoint> endpoints = extractEndpointsFromType(httpClient);
+    if (connectionWarmUp != null) {
+      connectionWarmUp.addClient(httpClient);
+    }
+
+    if (generateStub && ClientStubGenerator.canGenerate(type, endpoints.keySet())) {
+      return ClientStubGenerator.newStub(type, httpClient, targetProvider, dispatchStrategy, endpoints);
+    }
+
     final HttpInvocationHandler handler = new HttpInvocationHandler(targetProvider, httpClient, endpoints, dispatchStrategy);
 
     @SuppressWarnings("unchecked")
@@ -197,12 +274,13 @@ public class ClientBuilder<T extends Service> {
 
     final Map<Method, AbstractClientEndpoint> endpoints = new HashMap<>();
     final Method[] methods = type.getDeclaredMethods();
+    // the types of all methods are registered once, the registry is shared by all endpoints of the client
+    final RequestMarshallerRegistry registry = createRegistry(type);
 
     for (final Method method : methods) {
       if (isEndpoint(method)) {
         final String methodName = method.getName();
         final EndpointDescriptor endpointDescriptor = getEndpointDescriptor(methodName);
-        final RequestMarshallerRegistry registry = createRegistry(type);
         final EndpointDescription endpoint = new EndpointDescription(method, type, clientType,
           endpointDescriptor.path, endpointDescriptor.requestMethodType);
         final AbstractClientEndpoint clientEndpoint;
@@ -222,9 +300,40 @@ public class ClientBuilder<T extends Service> {
       }
     }
 
+    for (final Map.Entry<String, CollapsingDescriptor> collapsing : collapsingDescriptors.entrySet()) {
+      final Method method = endpointMethod(endpoints, collapsing.getKey());
+      final AbstractClientEndpoint bulkEndpoint = endpoints.get(endpointMethod(endpoints, collapsing.getValue().bulkMethod));
+      if (!(bulkEndpoint instanceof AsyncClientEndpoint)) {
+        throw new IllegalArgumentException("Bulk method " + type.getSimpleName() + "::" +
+          collapsing.getValue().bulkMethod + " must return ComposableFuture");
+      }
+
+      endpoints.put(method, new CollapsingClientEndpoint(httpClient, registry, endpoints.get(method).getEndpointDescription(),
+        (AsyncClientEndpoint) bulkEndpoint, collapsing.getValue().maxBatchSize, collapsing.getValue().maxWaitMs,
+        metricFactory));
+    }
+
     return endpoints;
   }
 
+  private Method endpointMethod(final Map<Method, AbstractClientEndpoint> endpoints, final String methodName) {
+    Method endpointMethod = null;
+    for (final Method method : endpoints.keySet()) {
+      if (method.getName().equals(methodName)) {
+        if (endpointMethod != null) {
+          throw new IllegalArgumentException("Method " + type.getSimpleName() + "::" + methodName + " is overloaded");
+        }
+        endpointMethod = method;
+      }
+    }
+
+    if (endpointMethod == null) {
+      throw new IllegalArgumentException("Interface " + type.getSimpleName() + " has no method " + methodName);
+    }
+
+    return endpointMethod;
+  }
+
   private EndpointDescriptor getEndpointDescriptor(final String methodName) {
     return endpointDescriptors.containsKey(methodName) ?
       endpointDescriptors.get(methodName) :
@@ -246,6 +355,22 @@ public class ClientBuilder<T extends Service> {
     return filters;
   }
 
+  /**
+   * Describes the bulk method a method is collapsed into
+   */
+  private static class CollapsingDescriptor {
+
+    private final String bulkMethod;
+    private final int maxBatchSize;
+    private final long maxWaitMs;
+
+    private CollapsingDescriptor(final String bulkMethod, final int maxBatchSize, final long maxWaitMs) {
+      this.bulkMethod = bulkMethod;
+      this.maxBatchSize = maxBatchSize;
+      this.maxWaitMs = maxWaitMs;
+    }
+  }
+
   /**
    * Describes how endpoint of service looks for the client builder
    *
@@ -0,0 +1,55 @@
+package com.outbrain.ob1k.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.endpoints.AbstractClientEndpoint;
+import com.outbrain.ob1k.client.endpoints.DispatchAction;
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.http.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * the base of the client classes generated by the {@link ClientStubGenerator}.
+ * <p>
+ * each generated method holds its endpoint in a final field and dispatches to it directly, instead of looking it up
+ * by the called method as the {@link HttpInvocationHandler} of a JDK proxy does.
+ * </p>
+ * public only so it's accessible to the generated classes, it isn't meant to be extended otherwise.
+ */
+public abstract class ClientStub implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClientStub.class);
+
+  private final HttpClient client;
+  private final TargetProvider targetProvider;
+  private final DispatchStrategy dispatchStrategy;
+
+  protected ClientStub(final HttpClient client, final TargetProvider targetProvider,
+                       final DispatchStrategy dispatchStrategy) {
+
+    this.client = checkNotNull(client, "client may not be null");
+    this.targetProvider = checkNotNull(targetProvider, "targetProvider may not be null");
+    this.dispatchStrategy = checkNotNull(dispatchStrategy, "dispatchStrategy may not be null");
+  }
+
+  protected final Object dispatch(final AbstractClientEndpoint endpoint, final Object[] args) {
+    final DispatchAction dispatchAction = endpoint.createDispatchAction(args);
+    return endpoint.dispatch(targetProvider, dispatchStrategy, dispatchAction);
+  }
+
+  @Override
+  public void close() throws IOException {
+    client.close();
+    logger.debug("client {} is closed.", targetProvider.getTargetLogicalName());
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + targetProvider.getTargetLogicalName() + ")";
+  }
+}
@@ -0,0 +1,268 @@
+package com.outbrain.ob1k.client;
+
+import com.google.common.primitives.Primitives;
+import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.endpoints.AbstractClientEndpoint;
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.common.endpoints.ServiceEndpointContract;
+import com.outbrain.ob1k.http.HttpClient;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * generates a concrete client class per service interface, as an alternative to the JDK proxy.
+ * <p>
+ * each method of the generated class packs its arguments and dispatches to the endpoint held in its own final
+ * field, so every call site is monomorphic and can be inlined, with no map lookup or reflective invocation.
+ * a class is generated once per interface, with the bytecode written by asm, and defined in a loader that
+ * delegates to the loader of the interface.
+ * </p>
+ * only public interfaces are supported, a class of another loader can't implement a package private interface.
+ */
+final class ClientStubGenerator {
+
+  private static final String STUB_SUFFIX = "$Ob1kClientStub";
+  private static final String ENDPOINT_FIELD_PREFIX = "endpoint";
+
+  private static final String STUB_NAME = Type.getInternalName(ClientStub.class);
+  private static final String ENDPOINT_DESC = Type.getDescriptor(AbstractClientEndpoint.class);
+  private static final String OBJECT_NAME = Type.getInternalName(Object.class);
+  private static final String SUPER_CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+    Type.getType(HttpClient.class), Type.getType(TargetProvider.class), Type.getType(DispatchStrategy.class));
+  private static final String CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+    Type.getType(HttpClient.class), Type.getType(TargetProvider.class), Type.getType(DispatchStrategy.class),
+    Type.getType(AbstractClientEndpoint[].class));
+  private static final String DISPATCH_DESC = Type.getMethodDescriptor(Type.getType(Object.class),
+    Type.getType(AbstractClientEndpoint.class), Type.getType(Object[].class));
+
+  private static final Comparator<Method> METHOD_ORDER =
+    Comparator.comparing(Method::getName).thenComparing(method -> Type.getMethodDescriptor(method));
+
+  private static final ClassValue<Constructor<?>> stubConstructors = new ClassValue<Constructor<?>>() {
+    @Override
+    protected Constructor<?> computeValue(final Class<?> type) {
+      return generate(type);
+    }
+  };
+
+  private ClientStubGenerator() {}
+
+  /**
+   * @return true if a client class can be generated for the type, which must be public and have no abstract
+   * methods other than its endpoints and close().
+   */
+  static boolean canGenerate(final Class<?> type, final Collection<Method> endpointMethods) {
+    if (!type.isInterface() || !Modifier.isPublic(type.getModifiers())) {
+      return false;
+    }
+
+    for (final Method method : type.getMethods()) {
+      if (Modifier.isAbstract(method.getModifiers()) && !endpointMethods.contains(method) && !isClose(method)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  static <T> T newStub(final Class<T> type, final HttpClient httpClient, final TargetProvider targetProvider,
+                       final DispatchStrategy dispatchStrategy, final Map<Method, AbstractClientEndpoint> endpoints) {
+
+    final List<Method> methods = sortedMethods(endpoints.keySet());
+    final AbstractClientEndpoint[] stubEndpoints = new AbstractClientEndpoint[methods.size()];
+    for (int i = 0; i < stubEndpoints.length; i++) {
+      stubEndpoints[i] = endpoints.get(methods.get(i));
+    }
+
+    try {
+      return type.cast(stubConstructors.get(type).newInstance(httpClient, targetProvider, dispatchStrategy, stubEndpoints));
+    } catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("failed creating the client of " + type.getName(), e);
+    }
+  }
+
+  private static Constructor<?> generate(final Class<?> type) {
+    final String name = type.getName() + STUB_SUFFIX;
+    final List<Method> methods = sortedMethods(endpointMethods(type));
+    final byte[] bytes = generateClass(name.replace('.', '/'), type, methods);
+
+    final ClassLoader parent = type.getClassLoader() != null ? type.getClassLoader() : ClientStub.class.getClassLoader();
+    try {
+      return new StubClassLoader(parent).define(name, bytes).getConstructor(HttpClient.class, TargetProvider.class,
+        DispatchStrategy.class, AbstractClientEndpoint[].class);
+    } catch (final NoSuchMethodException e) {
+      throw new IllegalStateException("failed generating the client of " + type.getName(), e);
+    }
+  }
+
+  private static byte[] generateClass(final String internalName, final Class<?> type, final List<Method> methods) {
+    final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null, STUB_NAME,
+      new String[] {Type.getInternalName(type), Type.getInternalName(Closeable.class)});
+
+    for (int i = 0; i < methods.size(); i++) {
+      cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, ENDPOINT_FIELD_PREFIX + i, ENDPOINT_DESC, null, null).visitEnd();
+    }
+
+    generateConstructor(cw, internalName, methods.size());
+    for (int i = 0; i < methods.size(); i++) {
+      generateMethod(cw, internalName, methods.get(i), i);
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static void generateConstructor(final ClassWriter cw, final String internalName, final int endpoints) {
+    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitVarInsn(Opcodes.ALOAD, 2);
+    mv.visitVarInsn(Opcodes.ALOAD, 3);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STUB_NAME, "<init>", SUPER_CONSTRUCTOR_DESC, false);
+
+    for (int i = 0; i < endpoints; i++) {
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      mv.visitVarInsn(Opcodes.ALOAD, 4);
+      pushInt(mv, i);
+      mv.visitInsn(Opcodes.AALOAD);
+      mv.visitFieldInsn(Opcodes.PUTFIELD, internalName, ENDPOINT_FIELD_PREFIX + i, ENDPOINT_DESC);
+    }
+
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * return (ReturnType) dispatch(endpointN, new Object[] {args...});
+   */
+  private static void generateMethod(final ClassWriter cw, final String internalName, final Method method,
+                                     final int index) {
+    final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method),
+      null, exceptionNames(method));
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitFieldInsn(Opcodes.GETFIELD, internalName, ENDPOINT_FIELD_PREFIX + index, ENDPOINT_DESC);
+
+    final Class<?>[] paramTypes = method.getParameterTypes();
+    if (paramTypes.length == 0) {
+      // the same as the args of a proxy invocation
+      mv.visitInsn(Opcodes.ACONST_NULL);
+    } else {
+      pushInt(mv, paramTypes.length);
+      mv.visitTypeInsn(Opcodes.ANEWARRAY, OBJECT_NAME);
+
+      int slot = 1;
+      for (int i = 0; i < paramTypes.length; i++) {
+        final Type paramType = Type.getType(paramTypes[i]);
+        mv.visitInsn(Opcodes.DUP);
+        pushInt(mv, i);
+        mv.visitVarInsn(paramType.getOpcode(Opcodes.ILOAD), slot);
+        if (paramTypes[i].isPrimitive()) {
+          box(mv, paramTypes[i], paramType);
+        }
+        mv.visitInsn(Opcodes.AASTORE);
+        slot += paramType.getSize();
+      }
+    }
+
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STUB_NAME, "dispatch", DISPATCH_DESC, false);
+    mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(method.getReturnType()));
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void box(final MethodVisitor mv, final Class<?> primitive, final Type primitiveType) {
+    final Class<?> wrapper = Primitives.wrap(primitive);
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(wrapper), "valueOf",
+      Type.getMethodDescriptor(Type.getType(wrapper), primitiveType), false);
+  }
+
+  private static void pushInt(final MethodVisitor mv, final int value) {
+    if (value <= 5) {
+      mv.visitInsn(Opcodes.ICONST_0 + value);
+    } else if (value <= Byte.MAX_VALUE) {
+      mv.visitIntInsn(Opcodes.BIPUSH, value);
+    } else {
+      mv.visitIntInsn(Opcodes.SIPUSH, value);
+    }
+  }
+
+  private static String[] exceptionNames(final Method method) {
+    final Class<?>[] exceptionTypes = method.getExceptionTypes();
+    if (exceptionTypes.length == 0) {
+      return null;
+    }
+
+    final String[] names = new String[exceptionTypes.length];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = Type.getInternalName(exceptionTypes[i]);
+    }
+    return names;
+  }
+
+  /**
+   * @return the methods the client builder makes endpoints of.
+   */
+  private static List<Method> endpointMethods(final Class<?> type) {
+    final List<Method> methods = new ArrayList<>();
+    for (final Method method : type.getDeclaredMethods()) {
+      if (ServiceEndpointContract.isEndpoint(method)) {
+        methods.add(method);
+      }
+    }
+    return methods;
+  }
+
+  private static List<Method> sortedMethods(final Collection<Method> methods) {
+    final List<Method> sorted = new ArrayList<>(methods);
+    sorted.sort(METHOD_ORDER);
+    return sorted;
+  }
+
+  private static boolean isClose(final Method method) {
+    return "close".equals(method.getName()) && method.getParameterTypes().length == 0 &&
+      method.getReturnType() == void.class;
+  }
+
+  /**
+   * defines the generated classes, resolving the ob1k classes they extend even if the interface was loaded by a
+   * loader that can't see them.
+   */
+  private static final class StubClassLoader extends ClassLoader {
+
+    private StubClassLoader(final ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      try {
+        return super.loadClass(name, resolve);
+      } catch (final ClassNotFoundException e) {
+        return ClientStub.class.getClassLoader().loadClass(name);
+      }
+    }
+
+    private Class<?> define(final String name, final byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.outbrain.ob1k.client;
+
+import com.google.common.base.Preconditions;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.http.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * opens connections to the targets of a client as they appear, so the first calls to a new target don't pay for
+ * the connect.
+ * <p>
+ * the targets are given by {@link #onTargets(List)}, e.g. by a discovery listener, and each new target is warmed up
+ * by the clients built with this warm up (see {@link ClientBuilder#setConnectionWarmUp(ConnectionWarmUp)}).
+ * a target that is removed and appears again is warmed up again.
+ * clients are held weakly, and dropped once they are closed.
+ * </p>
+ * only clients on the netty transport open connections ahead.
+ */
+public class ConnectionWarmUp {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionWarmUp.class);
+
+  private final int connections;
+  private final Set<HttpClient> clients = Collections.newSetFromMap(new WeakHashMap<>());
+  private Set<String> targets = new HashSet<>();
+
+  /**
+   * @param connections the connections to open to each target, from each event loop of the client.
+   */
+  public ConnectionWarmUp(final int connections) {
+    checkArgument(connections > 0, "connections must be positive");
+    this.connections = connections;
+  }
+
+  /**
+   * warms up the targets that weren't warmed up yet.
+   */
+  public synchronized void onTargets(final List<String> targets) {
+    Preconditions.checkNotNull(targets, "targets must not be null");
+
+    clients.removeIf(HttpClient::isClosed);
+    final Set<String> newTargets = new HashSet<>(targets);
+    for (final String target : newTargets) {
+      if (!this.targets.contains(target)) {
+        for (final HttpClient client : clients) {
+          warmUp(client, target);
+        }
+      }
+    }
+
+    this.targets = newTargets;
+  }
+
+  /**
+   * warms up the current targets on the client, and the targets that appear from now on.
+   */
+  synchronized void addClient(final HttpClient client) {
+    clients.removeIf(HttpClient::isClosed);
+    clients.add(client);
+    for (final String target : targets) {
+      warmUp(client, target);
+    }
+  }
+
+  private void warmUp(final HttpClient client, final String target) {
+    final ComposableFuture<Integer> opened = client.warmUp(target, connections);
+    opened.consume(result -> {
+      if (result.isSuccess()) {
+        logger.debug("{} connections to {} are open", result.getValue(), target);
+      } else {
+        logger.debug("failed warming up the connections to {}", target, result.getError());
+      }
+    });
+  }
+}
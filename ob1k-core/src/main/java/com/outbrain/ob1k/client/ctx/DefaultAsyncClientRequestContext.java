@@ -27,5 +27,10 @@ public class DefaultAsyncClientRequestContext extends AbstractClientRequestConte
     return clientEndpoint.invokeAsync(this);
   }
 
+  @Override
+  public <T> ComposableFuture<T> invokeAsync(final Object[] params) {
+    return clientEndpoint.invokeAsync(new DefaultAsyncClientRequestContext(remoteTarget, params, clientEndpoint, executionIndex));
+  }
+
 
 }
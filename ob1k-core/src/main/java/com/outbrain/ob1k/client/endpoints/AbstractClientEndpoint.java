@@ -3,18 +3,14 @@ package com.outbrain.ob1k.client.endpoints;
 import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
 import com.outbrain.ob1k.client.ctx.ClientRequestContext;
 import com.outbrain.ob1k.client.targets.TargetProvider;
-import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
+import com.outbrain.ob1k.common.marshalling.BinaryRequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
-import com.outbrain.ob1k.common.marshalling.TypeHelper;
 import com.outbrain.ob1k.http.HttpClient;
 import com.outbrain.ob1k.http.RequestBuilder;
-import com.outbrain.ob1k.http.TypedResponse;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
 import org.apache.commons.codec.EncoderException;
 
 import java.io.IOException;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 
 /**
  * A common parent for async and stream based endpoints used by the client to call the remote target.
@@ -26,32 +22,32 @@ public abstract class AbstractClientEndpoint {
   protected final RequestMarshallerRegistry marshallerRegistry;
   protected final HttpClient httpClient;
   protected final EndpointDescription endpointDescription;
+  protected final InvocationPlan invocationPlan;
 
   protected AbstractClientEndpoint(final HttpClient httpClient, final RequestMarshallerRegistry marshallerRegistry,
                                    final EndpointDescription endpointDescription) {
     this.httpClient = httpClient;
     this.marshallerRegistry = marshallerRegistry;
     this.endpointDescription = endpointDescription;
-  }
-
-  protected Type extractResponseType() {
-    return TypeHelper.extractReturnType(endpointDescription.getMethod());
+    this.invocationPlan = new InvocationPlan(endpointDescription, marshallerRegistry);
   }
 
   protected RequestBuilder buildEndpointRequestBuilder(final ClientRequestContext ctx,
                                                        final MarshallingStrategy marshallingStrategy)
                                                        throws IOException,EncoderException {
-    return ClientEndpointRequestBuilder.build(httpClient, endpointDescription, ctx, marshallingStrategy);
-  }
+    final RequestBuilder requestBuilder = ClientEndpointRequestBuilder.build(httpClient, endpointDescription,
+      invocationPlan, ctx, marshallingStrategy);
+
+    final String schemaHash = invocationPlan.getSchemaHash();
+    if (schemaHash != null) {
+      requestBuilder.addHeader(BinaryRequestMarshaller.SCHEMA_HEADER, schemaHash);
+    }
 
-  protected boolean isTypedResponse(final Type responseType) {
-    return responseType instanceof ParameterizedType
-      && ((ParameterizedType) responseType).getRawType() == TypedResponse.class;
+    return requestBuilder;
   }
 
   protected byte[] marshallObject(final Object value) throws IOException {
-    final RequestMarshaller marshaller = marshallerRegistry.getMarshaller(endpointDescription.getContentType().requestEncoding());
-    return marshaller.marshallRequestParams((Object[]) value);
+    return invocationPlan.getRequestMarshaller().marshallRequestParams((Object[]) value);
   }
 
   public EndpointDescription getEndpointDescription() {
@@ -3,6 +3,7 @@ package com.outbrain.ob1k.client.endpoints;
 import com.outbrain.ob1k.client.ctx.AsyncClientRequestContext;
 import com.outbrain.ob1k.client.ctx.DefaultAsyncClientRequestContext;
 import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.targets.FeedbackTargetProvider;
 import com.outbrain.ob1k.client.targets.TargetProvider;
 import com.outbrain.ob1k.common.concurrent.ComposableFutureHelper;
 import com.outbrain.ob1k.common.filters.AsyncFilter;
@@ -16,7 +17,6 @@ import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
 import org.apache.commons.codec.EncoderException;
 
 import java.io.IOException;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
@@ -65,7 +65,7 @@ public class AsyncClientEndpoint extends AbstractClientEndpoint {
         return fromError(e);
       }
 
-      final Type responseType = extractResponseType();
+      final Type responseType = invocationPlan.getResponseType();
 
       // If the client requested to get the response object
       if (responseType == Response.class) {
@@ -73,8 +73,8 @@ public class AsyncClientEndpoint extends AbstractClientEndpoint {
       }
 
       // If the client requested to get the <T>, together with the whole response object
-      if (isTypedResponse(responseType)) {
-        final Type type = ((ParameterizedType) responseType).getActualTypeArguments()[0];
+      if (invocationPlan.isTypedResponse()) {
+        final Type type = invocationPlan.getValueType();
         return ComposableFutureHelper.cast(requestBuilder.asTypedResponse(type));
       }
 
@@ -94,6 +94,11 @@ public class AsyncClientEndpoint extends AbstractClientEndpoint {
   @SuppressWarnings("unchecked")
   public Object dispatch(final TargetProvider targetProvider, final DispatchStrategy dispatchStrategy,
                          final DispatchAction dispatchAction) {
+    if (targetProvider instanceof FeedbackTargetProvider) {
+      final DispatchAction feedbackAction = FeedbackDispatchActions.async((FeedbackTargetProvider) targetProvider, dispatchAction);
+      return dispatchStrategy.dispatchAsync(endpointDescription, targetProvider, feedbackAction);
+    }
+
     return dispatchStrategy.dispatchAsync(endpointDescription, targetProvider, dispatchAction);
   }
 }
@@ -5,24 +5,21 @@ import com.outbrain.ob1k.client.ctx.ClientRequestContext;
 import com.outbrain.ob1k.http.HttpClient;
 import com.outbrain.ob1k.http.RequestBuilder;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
-import com.outbrain.ob1k.http.utils.UrlUtils;
 import org.apache.commons.codec.EncoderException;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * @author marenzon
  */
 class ClientEndpointRequestBuilder {
 
-  public static RequestBuilder build(final HttpClient httpClient, final EndpointDescription endpointDescription, final ClientRequestContext ctx,
+  public static RequestBuilder build(final HttpClient httpClient, final EndpointDescription endpointDescription,
+                                     final InvocationPlan invocationPlan, final ClientRequestContext ctx,
                                      final MarshallingStrategy marshallingStrategy) throws IOException, EncoderException {
 
     final RequestBuilder requestBuilder = getRequestBuilder(endpointDescription, httpClient, ctx);
-    final Object[] requestValues = setPathParamsFromValues(requestBuilder, ctx);
+    final Object[] requestValues = setPathParamsFromValues(requestBuilder, invocationPlan, ctx);
 
     requestBuilder.setMarshallingStrategy(marshallingStrategy);
     requestBuilder.setBody(requestValues);
@@ -31,24 +28,22 @@ class ClientEndpointRequestBuilder {
     return requestBuilder;
   }
 
-  private static Object[] setPathParamsFromValues(final RequestBuilder requestBuilder, final ClientRequestContext ctx)
-          throws EncoderException {
+  private static Object[] setPathParamsFromValues(final RequestBuilder requestBuilder, final InvocationPlan invocationPlan,
+                                                  final ClientRequestContext ctx) throws EncoderException {
 
     final Object[] params = ctx.getParams();
 
     if (params == null) {
-      return new Object[0];
+      return invocationPlan.bodyValues(null);
     }
 
-    final List<Object> requestValues = new LinkedList<>(Arrays.asList(params));
-    final List<String> pathParams = UrlUtils.extractPathParams(ctx.getUrl());
-
-    for (final String pathParam : pathParams) {
-      final Object paramValue = requestValues.remove(0);
-      requestBuilder.setPathParam(pathParam, String.valueOf(paramValue));
+    // the path params were parsed out of the method path when the client was built
+    final String[] pathParams = invocationPlan.getPathParams();
+    for (int i = 0; i < pathParams.length; i++) {
+      requestBuilder.setPathParam(pathParams[i], String.valueOf(params[i]));
     }
 
-    return requestValues.toArray();
+    return invocationPlan.bodyValues(params);
   }
 
   private static RequestBuilder getRequestBuilder(final EndpointDescription endpointDescription, final HttpClient httpClient,
@@ -0,0 +1,227 @@
+package com.outbrain.ob1k.client.endpoints;
+
+import com.google.common.reflect.TypeToken;
+import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.common.marshalling.TypeHelper;
+import com.outbrain.ob1k.concurrent.CancellationToken;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.http.HttpClient;
+import com.outbrain.swinfra.metrics.api.Histogram;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import com.outbrain.swinfra.metrics.api.Timer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.outbrain.ob1k.common.endpoints.ServiceEndpointContract.isAsyncMethod;
+
+/**
+ * collapses the concurrent calls of a single key endpoint, e.g. get(id), into calls of its bulk endpoint,
+ * e.g. getBulk(ids), and completes each call with the value of its key.
+ * <p>
+ * the bulk endpoint takes a collection (or list, or set) of the keys and returns a map of the keys to their values,
+ * a key missing from the map completes its calls with null. a batch is sent when it holds the max batch size keys,
+ * or when its first call waited the max wait time, and concurrent calls of the same key share a single key of it.
+ * the calls are sent by the bulk endpoint, with its filters.
+ * </p>
+ * given a metric factory, the size of the batches and the time their first call waited are recorded.
+ */
+public class CollapsingClientEndpoint extends AbstractClientEndpoint {
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+  public static final long DEFAULT_MAX_WAIT_MS = 5;
+
+  private final AsyncClientEndpoint bulkEndpoint;
+  private final int maxBatchSize;
+  private final long maxWaitMs;
+  private final Function<Collection<Object>, Collection<Object>> keysCollection;
+  private final Histogram batchSize;
+  private final Timer batchWaitTime;
+
+  private Batch batch;
+
+  public CollapsingClientEndpoint(final HttpClient httpClient, final RequestMarshallerRegistry marshallerRegistry,
+                                  final EndpointDescription endpointDescription, final AsyncClientEndpoint bulkEndpoint,
+                                  final int maxBatchSize, final long maxWaitMs, final MetricFactory metricFactory) {
+    super(httpClient, marshallerRegistry, endpointDescription);
+    checkArgument(maxBatchSize > 0, "max batch size must be positive");
+    checkArgument(maxWaitMs >= 0, "max wait time must not be negative");
+
+    final Method method = endpointDescription.getMethod();
+    final Method bulkMethod = bulkEndpoint.getEndpointDescription().getMethod();
+    checkArgument(isAsyncMethod(method) && method.getParameterTypes().length == 1,
+      "collapsed method " + method.getName() + " must take a single key and return a ComposableFuture");
+    checkArgument(bulkMethod.getParameterTypes().length == 1 &&
+      Map.class.isAssignableFrom(TypeToken.of(TypeHelper.extractReturnType(bulkMethod)).getRawType()),
+      "bulk method " + bulkMethod.getName() + " must take the keys and return a ComposableFuture of a map");
+
+    this.bulkEndpoint = bulkEndpoint;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitMs = maxWaitMs;
+    this.keysCollection = keysCollection(bulkMethod);
+
+    if (metricFactory != null) {
+      final String component = getClass().getSimpleName() + "." + method.getDeclaringClass().getSimpleName() + "." +
+        method.getName();
+      batchSize = metricFactory.createHistogram(component, "batchSize", false);
+      batchWaitTime = metricFactory.createTimer(component, "batchWaitTime");
+    } else {
+      batchSize = null;
+      batchWaitTime = null;
+    }
+  }
+
+  private static Function<Collection<Object>, Collection<Object>> keysCollection(final Method bulkMethod) {
+    final Class<?> keysType = bulkMethod.getParameterTypes()[0];
+    if (keysType.isAssignableFrom(ArrayList.class)) {
+      return ArrayList::new;
+    }
+
+    if (keysType.isAssignableFrom(LinkedHashSet.class)) {
+      return LinkedHashSet::new;
+    }
+
+    throw new IllegalArgumentException("bulk method " + bulkMethod.getName() + " must take a collection, list or set of the keys");
+  }
+
+  /**
+   * @return an action calling the bulk endpoint for the key alone, the key is collapsed with others when the action
+   * is dispatched by this endpoint.
+   */
+  @Override
+  public DispatchAction createDispatchAction(final Object[] params) {
+    return new KeyAction(params[0]);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object dispatch(final TargetProvider targetProvider, final DispatchStrategy dispatchStrategy,
+                         final DispatchAction dispatchAction) {
+    if (!(dispatchAction instanceof KeyAction)) {
+      return dispatchStrategy.dispatchAsync(endpointDescription, targetProvider, dispatchAction);
+    }
+
+    final Object key = ((KeyAction) dispatchAction).key;
+    final ComposableFuture<Object> value;
+    final Batch fullBatch;
+    synchronized (this) {
+      if (batch == null) {
+        final Batch newBatch = new Batch(targetProvider, dispatchStrategy);
+        batch = newBatch;
+        newBatch.flushTimer = ComposableFutures.getScheduler().schedule(() -> flush(newBatch), maxWaitMs,
+          TimeUnit.MILLISECONDS);
+      }
+
+      value = batch.add(key);
+      fullBatch = batch.size() >= maxBatchSize ? batch : null;
+      if (fullBatch != null) {
+        batch = null;
+      }
+    }
+
+    if (fullBatch != null) {
+      fullBatch.flushTimer.cancel(false);
+      send(fullBatch);
+    }
+
+    return value;
+  }
+
+  private void flush(final Batch timedOutBatch) {
+    synchronized (this) {
+      if (batch != timedOutBatch) {
+        // already sent when it was full
+        return;
+      }
+      batch = null;
+    }
+
+    send(timedOutBatch);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void send(final Batch sentBatch) {
+    if (batchSize != null) {
+      batchSize.update(sentBatch.size());
+      batchWaitTime.update(System.nanoTime() - sentBatch.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    final ComposableFuture<Map<Object, Object>> values;
+    try {
+      values = (ComposableFuture<Map<Object, Object>>) bulkEndpoint.dispatch(sentBatch.targetProvider,
+        sentBatch.dispatchStrategy, bulkAction(sentBatch.keys.keySet()));
+    } catch (final RuntimeException e) {
+      sentBatch.complete(null, e);
+      return;
+    }
+
+    values.consume(result -> sentBatch.complete(result.isSuccess() ? result.getValue() : null, result.getError()));
+  }
+
+  private DispatchAction bulkAction(final Collection<Object> keys) {
+    return bulkEndpoint.createDispatchAction(new Object[] {keysCollection.apply(keys)});
+  }
+
+  private final class KeyAction implements DispatchAction<ComposableFuture<Object>> {
+    private final Object key;
+
+    private KeyAction(final Object key) {
+      this.key = key;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ComposableFuture<Object> invoke(final String remoteTarget) {
+      final ComposableFuture<Map<Object, Object>> values = (ComposableFuture<Map<Object, Object>>)
+        bulkAction(Collections.singletonList(key)).invoke(remoteTarget);
+      return values.transform(result -> result == null ? null : result.get(key));
+    }
+  }
+
+  /**
+   * the keys collected for a single bulk call, each with the promise shared by its calls.
+   */
+  private static final class Batch {
+    private final TargetProvider targetProvider;
+    private final DispatchStrategy dispatchStrategy;
+    private final long startTime = System.nanoTime();
+    private final Map<Object, ComposablePromise<Object>> keys = new LinkedHashMap<>();
+    // flushes the batch after the max wait time, set under the lock of the endpoint when the batch is created
+    private CancellationToken flushTimer;
+
+    private Batch(final TargetProvider targetProvider, final DispatchStrategy dispatchStrategy) {
+      this.targetProvider = targetProvider;
+      this.dispatchStrategy = dispatchStrategy;
+    }
+
+    private ComposableFuture<Object> add(final Object key) {
+      return keys.computeIfAbsent(key, k -> ComposableFutures.newPromise()).future();
+    }
+
+    private int size() {
+      return keys.size();
+    }
+
+    private void complete(final Map<Object, Object> values, final Throwable error) {
+      for (final Map.Entry<Object, ComposablePromise<Object>> key : keys.entrySet()) {
+        if (error != null) {
+          key.getValue().setException(error);
+        } else {
+          key.getValue().set(values == null ? null : values.get(key.getKey()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.outbrain.ob1k.client.endpoints;
+
+import com.outbrain.ob1k.client.targets.FeedbackTargetProvider;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.handlers.FutureResultHandler;
+import rx.Observable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * wraps the dispatch actions of the endpoints, reporting the latency and outcome of each call to its
+ * {@link FeedbackTargetProvider}.
+ */
+final class FeedbackDispatchActions {
+
+  private FeedbackDispatchActions() {}
+
+  static <T> DispatchAction<ComposableFuture<T>> async(final FeedbackTargetProvider targetProvider,
+                                                      final DispatchAction<ComposableFuture<T>> dispatchAction) {
+    return remoteTarget -> {
+      targetProvider.onRequestStart(remoteTarget);
+      final long startTime = System.nanoTime();
+
+      final ComposableFuture<T> response;
+      try {
+        response = dispatchAction.invoke(remoteTarget);
+      } catch (final RuntimeException e) {
+        targetProvider.onRequestComplete(remoteTarget, System.nanoTime() - startTime, false);
+        throw e;
+      }
+
+      return response.continueWith((FutureResultHandler<T, T>) result -> {
+        targetProvider.onRequestComplete(remoteTarget, System.nanoTime() - startTime, result.isSuccess());
+        return ComposableFutures.fromTry(result);
+      });
+    };
+  }
+
+  static <T> DispatchAction<Observable<T>> stream(final FeedbackTargetProvider targetProvider,
+                                                 final DispatchAction<Observable<T>> dispatchAction) {
+    return remoteTarget -> Observable.defer(() -> {
+      targetProvider.onRequestStart(remoteTarget);
+      final long startTime = System.nanoTime();
+      final AtomicBoolean completed = new AtomicBoolean();
+      final Completion completion = success -> {
+        // the first element is the response, the rest of the stream isn't a part of its latency
+        if (completed.compareAndSet(false, true)) {
+          targetProvider.onRequestComplete(remoteTarget, System.nanoTime() - startTime, success);
+        }
+      };
+
+      final Observable<T> stream;
+      try {
+        stream = dispatchAction.invoke(remoteTarget);
+      } catch (final RuntimeException e) {
+        completion.complete(false);
+        throw e;
+      }
+
+      // a stream unsubscribed before its first element got no response, it's reported as failed so its start is matched
+      return stream.
+        doOnNext(element -> completion.complete(true)).
+        doOnError(error -> completion.complete(false)).
+        doOnCompleted(() -> completion.complete(true)).
+        doOnUnsubscribe(() -> completion.complete(false));
+    });
+  }
+
+  private interface Completion {
+    void complete(boolean success);
+  }
+}
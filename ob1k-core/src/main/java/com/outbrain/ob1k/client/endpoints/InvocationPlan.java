@@ -0,0 +1,91 @@
+package com.outbrain.ob1k.client.endpoints;
+
+import com.outbrain.ob1k.common.marshalling.BinaryRequestMarshaller;
+import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
+import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.common.marshalling.TypeHelper;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.utils.UrlUtils;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the immutable part of calling an endpoint, resolved once when the client is built instead of on every call.
+ * <p>
+ * the path params of the method path are bound to the leading method params by their slot, the rest of the params
+ * are the body of the request.
+ * </p>
+ */
+final class InvocationPlan {
+  private static final Object[] NO_VALUES = new Object[0];
+
+  private final String[] pathParams;
+  private final RequestMarshaller requestMarshaller;
+  private final String schemaHash;
+  private final Type responseType;
+  private final Type valueType;
+  private final boolean typedResponse;
+
+  InvocationPlan(final EndpointDescription endpointDescription, final RequestMarshallerRegistry marshallerRegistry) {
+    final List<String> pathParams = UrlUtils.extractPathParams(endpointDescription.getMethodPath());
+    this.pathParams = pathParams.toArray(new String[pathParams.size()]);
+    this.requestMarshaller = marshallerRegistry.getMarshaller(endpointDescription.getContentType().requestEncoding());
+    // lets the server verify it reads the fields by the same ids
+    this.schemaHash = requestMarshaller instanceof BinaryRequestMarshaller ?
+      ((BinaryRequestMarshaller) requestMarshaller).schemaHash(endpointDescription.getMethod()) : null;
+    this.responseType = TypeHelper.extractReturnType(endpointDescription.getMethod());
+    this.typedResponse = responseType instanceof ParameterizedType &&
+      ((ParameterizedType) responseType).getRawType() == TypedResponse.class;
+    this.valueType = typedResponse ? ((ParameterizedType) responseType).getActualTypeArguments()[0] : responseType;
+  }
+
+  /**
+   * @return the names of the path params, by the slot of their method param.
+   */
+  String[] getPathParams() {
+    return pathParams;
+  }
+
+  /**
+   * @return the method params sent in the body of the request, following the path params.
+   */
+  Object[] bodyValues(final Object[] params) {
+    if (params == null || params.length <= pathParams.length) {
+      return NO_VALUES;
+    }
+
+    return pathParams.length == 0 ? params : Arrays.copyOfRange(params, pathParams.length, params.length);
+  }
+
+  RequestMarshaller getRequestMarshaller() {
+    return requestMarshaller;
+  }
+
+  /**
+   * @return the value of the schema header, or null if the request protocol doesn't verify the schema.
+   */
+  String getSchemaHash() {
+    return schemaHash;
+  }
+
+  /**
+   * @return the declared result type of the method.
+   */
+  Type getResponseType() {
+    return responseType;
+  }
+
+  boolean isTypedResponse() {
+    return typedResponse;
+  }
+
+  /**
+   * @return the type of the unmarshalled value, the type argument of a typed response.
+   */
+  Type getValueType() {
+    return valueType;
+  }
+}
@@ -3,7 +3,10 @@ package com.outbrain.ob1k.client.endpoints;
 import com.outbrain.ob1k.client.ctx.DefaultStreamClientRequestContext;
 import com.outbrain.ob1k.client.ctx.StreamClientRequestContext;
 import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.targets.FeedbackTargetProvider;
 import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.common.marshalling.ChunkFrameDecoder;
+import com.outbrain.ob1k.common.marshalling.ChunkHeader;
 import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
 import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
 import com.outbrain.ob1k.http.HttpClient;
@@ -11,12 +14,12 @@ import com.outbrain.ob1k.http.HttpClient;
 import com.outbrain.ob1k.common.filters.StreamFilter;
 import com.outbrain.ob1k.http.RequestBuilder;
 import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.TypedResponse;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
 import org.apache.commons.codec.EncoderException;
 import rx.Observable;
 
 import java.io.IOException;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
 /**
@@ -64,20 +67,38 @@ public class StreamClientEndpoint extends AbstractClientEndpoint {
         return Observable.error(e);
       }
 
-      final Type responseType = extractResponseType();
+      // the body parts are split into the chunks of the stream, which are sent length prefixed by supporting servers
+      requestBuilder.addHeader(ChunkHeader.FRAMING_HEADER, ChunkHeader.LENGTH_FRAMING);
+      final Observable<Response> parts = requestBuilder.asStream();
+      final Type responseType = invocationPlan.getResponseType();
 
       // If the client requested to get the response object
       if (responseType == Response.class) {
-        return (Observable<T>) requestBuilder.asStream();
+        return (Observable<T>) parts.lift(new ChunkFrameDecoder<>(null, marshallingStrategy));
       }
 
       // If the client requested to get the <T>, together with the whole response object
-      if (isTypedResponse(responseType)) {
-        final Type type = ((ParameterizedType) responseType).getActualTypeArguments()[0];
-        return (Observable<T>) requestBuilder.asTypedStream(type);
+      if (invocationPlan.isTypedResponse()) {
+        final Type type = invocationPlan.getValueType();
+        return (Observable<T>) parts.lift(new ChunkFrameDecoder<>(type, marshallingStrategy)).flatMap(typedResponse -> {
+          try {
+            // making sure that we can unmarshall the response
+            typedResponse.getTypedBody();
+            return Observable.just(typedResponse);
+          } catch (final IOException e) {
+            return Observable.error(e);
+          }
+        });
       }
 
-      return requestBuilder.asStreamValue(responseType);
+      final Observable<TypedResponse<T>> chunks = parts.lift(new ChunkFrameDecoder<>(responseType, marshallingStrategy));
+      return chunks.flatMap(typedResponse -> {
+        try {
+          return Observable.just(typedResponse.getTypedBody());
+        } catch (final IOException e) {
+          return Observable.error(e);
+        }
+      });
     }
   }
 
@@ -93,6 +114,11 @@ public class StreamClientEndpoint extends AbstractClientEndpoint {
   @SuppressWarnings("unchecked")
   public Object dispatch(final TargetProvider targetProvider, final DispatchStrategy dispatchStrategy,
                          final DispatchAction dispatchAction) {
+    if (targetProvider instanceof FeedbackTargetProvider) {
+      final DispatchAction feedbackAction = FeedbackDispatchActions.stream((FeedbackTargetProvider) targetProvider, dispatchAction);
+      return dispatchStrategy.dispatchStream(endpointDescription, targetProvider, feedbackAction);
+    }
+
     return dispatchStrategy.dispatchStream(endpointDescription, targetProvider, dispatchAction);
   }
 }
@@ -0,0 +1,28 @@
+package com.outbrain.ob1k.client.targets;
+
+/**
+ * A {@link TargetProvider} that is told about the outcome of the calls made to the targets it provided,
+ * so it can prefer the targets that serve best.
+ * <p>
+ * The client endpoints report every call dispatched to a target of such a provider.
+ * </p>
+ */
+public interface FeedbackTargetProvider extends TargetProvider {
+
+  /**
+   * Called when a call is sent to the target.
+   *
+   * @param target the remote target
+   */
+  void onRequestStart(String target);
+
+  /**
+   * Called once per started call, when its response arrived or the call failed.
+   * For a stream this is when its first element arrived, a stream unsubscribed before it is reported as failed.
+   *
+   * @param target       the remote target
+   * @param latencyNanos the time from sending the call to its response
+   * @param success      false if the call failed
+   */
+  void onRequestComplete(String target, long latencyNanos, boolean success);
+}
@@ -0,0 +1,279 @@
+package com.outbrain.ob1k.client.targets;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A {@link TargetProvider} balancing the load by the latency of the targets, using the power of two choices.
+ * <p>
+ * Each target keeps an exponentially weighted moving average of its latency, which jumps to a higher
+ * latency at once and decays back over the decay time, and the number of its outstanding calls.
+ * Its cost is the average latency times the outstanding calls (plus one), divided by its weight, and each
+ * call goes to the cheaper of two random targets. So a slow target, e.g. one in a GC pause, gets less traffic
+ * as soon as its calls pile up, while all targets still get some.
+ * </p>
+ * The targets may be given as a static list or updated by {@link #setTargets(List)}, e.g. by a discovery
+ * listener. A target that appears in the list more than once is weighted by its number of appearances.
+ *
+ * @see FeedbackTargetProvider
+ */
+public class LatencyAwareTargetProvider implements FeedbackTargetProvider {
+
+  public static final long DEFAULT_DECAY_TIME_MS = 10000;
+  public static final long DEFAULT_INITIAL_LATENCY_MS = 30;
+  public static final long DEFAULT_FAILURE_PENALTY_MS = 1000;
+
+  private final String logicalName;
+  private final double decayTimeNanos;
+  private final long initialLatencyNanos;
+  private final long failurePenaltyNanos;
+
+  private volatile Targets targets = new Targets(Collections.<TargetStats>emptyList());
+
+  public LatencyAwareTargetProvider(final String logicalName) {
+    this(logicalName, Collections.<String>emptyList());
+  }
+
+  public LatencyAwareTargetProvider(final String logicalName, final List<String> targets) {
+    this(logicalName, targets, DEFAULT_DECAY_TIME_MS, DEFAULT_INITIAL_LATENCY_MS, DEFAULT_FAILURE_PENALTY_MS);
+  }
+
+  /**
+   * @param logicalName        the logical name of the targets
+   * @param targets            the targets, a target may appear more than once to raise its weight
+   * @param decayTimeMs        the time it takes the latency average to forget a past latency
+   * @param initialLatencyMs   the latency assumed for a target before its first response
+   * @param failurePenaltyMs   the least latency a failed call counts as
+   */
+  public LatencyAwareTargetProvider(final String logicalName, final List<String> targets, final long decayTimeMs,
+                                    final long initialLatencyMs, final long failurePenaltyMs) {
+    checkArgument(decayTimeMs > 0, "decay time must be positive");
+    this.logicalName = Preconditions.checkNotNull(logicalName, "logicalName must not be null");
+    this.decayTimeNanos = TimeUnit.MILLISECONDS.toNanos(decayTimeMs);
+    this.initialLatencyNanos = TimeUnit.MILLISECONDS.toNanos(initialLatencyMs);
+    this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(failurePenaltyMs);
+    setTargets(targets);
+  }
+
+  /**
+   * replaces the targets, keeping the statistics of the targets that remain.
+   */
+  public void setTargets(final List<String> targets) {
+    Preconditions.checkNotNull(targets, "targets must not be null");
+
+    final Map<String, Integer> weights = new LinkedHashMap<>();
+    for (final String target : targets) {
+      final Integer weight = weights.get(target);
+      weights.put(target, weight == null ? 1 : weight + 1);
+    }
+
+    final Targets currentTargets = this.targets;
+    final List<TargetStats> stats = new ArrayList<>(weights.size());
+    for (final Map.Entry<String, Integer> targetWeight : weights.entrySet()) {
+      final TargetStats current = currentTargets.byTarget.get(targetWeight.getKey());
+      stats.add(current != null ?
+        current.withWeight(targetWeight.getValue()) :
+        new TargetStats(targetWeight.getKey(), targetWeight.getValue(), initialLatencyNanos));
+    }
+
+    this.targets = new Targets(stats);
+  }
+
+  /**
+   * @return the current targets, each once.
+   */
+  public List<String> getTargets() {
+    final List<String> result = new ArrayList<>();
+    for (final TargetStats stats : targets.stats) {
+      result.add(stats.target);
+    }
+    return result;
+  }
+
+  /**
+   * @return the mean of the latency averages of the targets, or zero if there are none.
+   */
+  public double getAverageLatencyNanos() {
+    final TargetStats[] stats = targets.stats;
+    if (stats.length == 0) {
+      return 0;
+    }
+
+    final long now = System.nanoTime();
+    double sum = 0;
+    for (final TargetStats target : stats) {
+      sum += target.latency.value(now, decayTimeNanos);
+    }
+    return sum / stats.length;
+  }
+
+  @Override
+  public String getTargetLogicalName() {
+    return logicalName;
+  }
+
+  @Override
+  public String provideTarget() {
+    final TargetStats[] stats = currentStats();
+    return choose(stats, null).target;
+  }
+
+  @Override
+  public List<String> provideTargets(final int targetsNum) {
+    checkArgument(targetsNum > 0, "targets number must be more than zero");
+    final TargetStats[] stats = currentStats();
+
+    // the targets differ as long as there are enough of them, e.g. for a double dispatch
+    final List<String> providedTargets = new ArrayList<>(targetsNum);
+    final List<TargetStats> chosen = new ArrayList<>(targetsNum);
+    for (int i = 0; i < targetsNum; i++) {
+      final TargetStats target = choose(stats, chosen.size() < stats.length ? chosen : null);
+      chosen.add(target);
+      providedTargets.add(target.target);
+    }
+
+    return providedTargets;
+  }
+
+  @Override
+  public void onRequestStart(final String target) {
+    final TargetStats stats = targets.byTarget.get(target);
+    if (stats != null) {
+      stats.outstanding.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void onRequestComplete(final String target, final long latencyNanos, final boolean success) {
+    final TargetStats stats = targets.byTarget.get(target);
+    if (stats != null) {
+      stats.outstanding.decrementAndGet();
+      stats.observe(success ? latencyNanos : Math.max(latencyNanos, failurePenaltyNanos), System.nanoTime(),
+        decayTimeNanos);
+    }
+  }
+
+  private TargetStats[] currentStats() {
+    final TargetStats[] stats = targets.stats;
+    checkState(stats.length > 0, "No targets are currently registered for " + logicalName);
+    return stats;
+  }
+
+  /**
+   * @return the cheaper of two different random targets, which aren't excluded unless all are.
+   */
+  private TargetStats choose(final TargetStats[] stats, final List<TargetStats> excluded) {
+    final TargetStats[] candidates = excluded == null || excluded.isEmpty() ? stats : remaining(stats, excluded);
+    if (candidates.length == 1) {
+      return candidates[0];
+    }
+
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int first = random.nextInt(candidates.length);
+    final int other = random.nextInt(candidates.length - 1);
+    final int second = other >= first ? other + 1 : other;
+
+    final long now = System.nanoTime();
+    return candidates[second].cost(now, decayTimeNanos) < candidates[first].cost(now, decayTimeNanos) ?
+      candidates[second] : candidates[first];
+  }
+
+  private static TargetStats[] remaining(final TargetStats[] stats, final List<TargetStats> excluded) {
+    final List<TargetStats> remaining = new ArrayList<>(stats.length);
+    for (final TargetStats target : stats) {
+      if (!excluded.contains(target)) {
+        remaining.add(target);
+      }
+    }
+    return remaining.toArray(new TargetStats[remaining.size()]);
+  }
+
+  private static final class Targets {
+    private final TargetStats[] stats;
+    private final Map<String, TargetStats> byTarget;
+
+    private Targets(final List<TargetStats> stats) {
+      this.stats = stats.toArray(new TargetStats[stats.size()]);
+      this.byTarget = new HashMap<>();
+      for (final TargetStats target : stats) {
+        byTarget.put(target.target, target);
+      }
+    }
+  }
+
+  /**
+   * the latency average and outstanding calls of a target, shared by the target lists it belongs to.
+   */
+  private static final class TargetStats {
+    private final String target;
+    private final int weight;
+    private final AtomicInteger outstanding;
+    private final LatencyAverage latency;
+
+    private TargetStats(final String target, final int weight, final long initialLatencyNanos) {
+      this(target, weight, new AtomicInteger(), new LatencyAverage(initialLatencyNanos));
+    }
+
+    private TargetStats(final String target, final int weight, final AtomicInteger outstanding,
+                        final LatencyAverage latency) {
+      this.target = target;
+      this.weight = weight;
+      this.outstanding = outstanding;
+      this.latency = latency;
+    }
+
+    private TargetStats withWeight(final int weight) {
+      return weight == this.weight ? this : new TargetStats(target, weight, outstanding, latency);
+    }
+
+    private void observe(final long latencyNanos, final long now, final double decayTimeNanos) {
+      latency.observe(latencyNanos, now, decayTimeNanos);
+    }
+
+    private double cost(final long now, final double decayTimeNanos) {
+      // at least a nanosecond, so the outstanding calls count even for an idle target
+      final double averageLatency = Math.max(latency.value(now, decayTimeNanos), 1);
+      return averageLatency * (Math.max(outstanding.get(), 0) + 1) / weight;
+    }
+  }
+
+  /**
+   * a peak sensitive moving average, decaying toward zero while there are no calls so a penalized target
+   * is tried again.
+   */
+  private static final class LatencyAverage {
+    private volatile double average;
+    private volatile long lastUpdate;
+
+    private LatencyAverage(final long initialLatencyNanos) {
+      this.average = initialLatencyNanos;
+      this.lastUpdate = System.nanoTime();
+    }
+
+    private synchronized void observe(final long latencyNanos, final long now, final double decayTimeNanos) {
+      if (latencyNanos > average) {
+        average = latencyNanos;
+      } else {
+        final double weight = Math.exp(-Math.max(now - lastUpdate, 0) / decayTimeNanos);
+        average = average * weight + latencyNanos * (1 - weight);
+      }
+      lastUpdate = now;
+    }
+
+    private double value(final long now, final double decayTimeNanos) {
+      return average * Math.exp(-Math.max(now - lastUpdate, 0) / decayTimeNanos);
+    }
+  }
+}
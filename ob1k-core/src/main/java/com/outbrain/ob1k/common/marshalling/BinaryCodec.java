@@ -0,0 +1,923 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Primitives;
+import com.outbrain.ob1k.http.TypedResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * encodes the values of the compact binary protocol.
+ * <p>
+ * the encoding is driven by the declared types, so no type or field names are written: integers are varints (like
+ * protobuf, a negative number takes the full 5 or 10 bytes, as most numbers passed around are positive),
+ * strings and byte arrays are length prefixed, enums are their ordinal and beans are identified by field ids - the
+ * position of each field in the name sorted fields of the bean. a bean is written as a bitmap of its set field ids
+ * followed by the values of these fields. a sequence of values (parameters, elements, keys and values) starts with
+ * its size, and a bitmap of its non null values if it has nulls. a null single value is an empty message.
+ * </p>
+ * <p>
+ * the codecs are compiled once per type and cached. both sides hash the schema of the types of a method, so a client
+ * can tell the server which field ids it assumed (see {@link BinaryRequestMarshaller#SCHEMA_HEADER}).
+ * </p>
+ * a message is framed by a varint length prefix.
+ */
+public class BinaryCodec {
+  private final ConcurrentMap<Type, Codec> codecs = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Method, String> schemas = new ConcurrentHashMap<>();
+
+  /**
+   * compiles the codec of the type ahead of its first use.
+   *
+   * @throws IllegalArgumentException if the type can't be encoded.
+   */
+  public void register(final Type type) {
+    codec(type);
+  }
+
+  /**
+   * writes a framed message of the values, each by its own class.
+   *
+   * @throws IllegalArgumentException if a value is a bean that extends another bean, see {@link #write(Object)}.
+   */
+  public ByteBuf writeValues(final Object[] values) throws IOException {
+    final ByteBuf payload = Unpooled.buffer();
+    writeElements(payload, values, null);
+    return frame(payload);
+  }
+
+  /**
+   * reads the values of a framed message, by their declared types.
+   */
+  public Object[] readValues(final ByteBuf message, final Type[] types) throws IOException {
+    try {
+      final ByteBuf payload = unframe(message);
+      final boolean[] present = readPresence(payload);
+      if (present.length != types.length) {
+        throw new IOException("bad binary message - expected " + types.length + " values but got " + present.length);
+      }
+
+      final Object[] values = new Object[present.length];
+      for (int i = 0; i < values.length; i++) {
+        if (present[i]) {
+          values[i] = codec(types[i]).read(payload);
+        }
+      }
+
+      return values;
+    } catch (final IndexOutOfBoundsException e) {
+      throw new IOException("bad binary message - the message is truncated", e);
+    }
+  }
+
+  /**
+   * writes a framed message of a single value, by its own class.
+   *
+   * @throws IllegalArgumentException if the value is a bean that extends another bean - the reader may have declared
+   * the parent bean, whose field ids differ, and nothing in the message tells them apart.
+   */
+  public ByteBuf write(final Object value) throws IOException {
+    final ByteBuf payload = Unpooled.buffer();
+    if (value != null) {
+      classCodec(value).write(payload, value);
+    }
+
+    return frame(payload);
+  }
+
+  /**
+   * reads a framed message of a single value, by its declared type.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T read(final ByteBuf message, final Type type) throws IOException {
+    try {
+      final ByteBuf payload = unframe(message);
+      return payload.isReadable() ? (T) codec(type).read(payload) : null;
+    } catch (final IndexOutOfBoundsException e) {
+      throw new IOException("bad binary message - the message is truncated", e);
+    }
+  }
+
+  /**
+   * @return the hash of the schema of the parameters of the method, and of its result unless it's a raw response.
+   * types that can't be encoded are hashed by their name.
+   */
+  public String schemaHash(final Method method) {
+    final String hash = schemas.get(method);
+    if (hash != null) {
+      return hash;
+    }
+
+    final StringBuilder params = new StringBuilder();
+    for (final Type type : method.getGenericParameterTypes()) {
+      describe(type, params, new ArrayList<>());
+      params.append(';');
+    }
+
+    Type resultType = TypeHelper.extractReturnType(method);
+    if (resultType instanceof ParameterizedType && ((ParameterizedType) resultType).getRawType() == TypedResponse.class) {
+      resultType = ((ParameterizedType) resultType).getActualTypeArguments()[0];
+    }
+
+    String newHash = hash(params);
+    if (!(resultType instanceof Class && com.outbrain.ob1k.http.Response.class.isAssignableFrom((Class) resultType))) {
+      final StringBuilder result = new StringBuilder();
+      describe(resultType, result, new ArrayList<>());
+      newHash += ':' + hash(result);
+    }
+
+    final String existing = schemas.putIfAbsent(method, newHash);
+    return existing != null ? existing : newHash;
+  }
+
+  /**
+   * writes the size of the elements, a bitmap of the non null ones if there are nulls, and the non null elements.
+   *
+   * @param codec the codec of the elements, or null to write each element by its class.
+   */
+  private void writeElements(final ByteBuf out, final Object[] elements, final Codec codec) throws IOException {
+    boolean hasNulls = false;
+    for (final Object element : elements) {
+      if (element == null) {
+        hasNulls = true;
+        break;
+      }
+    }
+
+    writeVarint(out, elements.length << 1 | (hasNulls ? 1 : 0));
+    if (hasNulls) {
+      for (int i = 0; i < elements.length; i += 8) {
+        int bits = 0;
+        for (int j = i; j < Math.min(i + 8, elements.length); j++) {
+          bits |= elements[j] != null ? 1 << (j - i) : 0;
+        }
+        out.writeByte(bits);
+      }
+    }
+
+    for (final Object element : elements) {
+      if (element != null) {
+        (codec != null ? codec : classCodec(element)).write(out, element);
+      }
+    }
+  }
+
+  private static boolean[] readPresence(final ByteBuf in) throws IOException {
+    final int header = readVarint(in);
+    final boolean[] present = new boolean[header >>> 1];
+    if ((header & 1) == 0) {
+      Arrays.fill(present, true);
+      return present;
+    }
+
+    for (int i = 0; i < present.length; i += 8) {
+      final byte bits = in.readByte();
+      for (int j = i; j < Math.min(i + 8, present.length); j++) {
+        present[j] = (bits & 1 << (j - i)) != 0;
+      }
+    }
+
+    return present;
+  }
+
+  private static Object[] readElements(final ByteBuf in, final Codec codec) throws IOException {
+    final boolean[] present = readPresence(in);
+    final Object[] elements = new Object[present.length];
+    for (int i = 0; i < elements.length; i++) {
+      if (present[i]) {
+        elements[i] = codec.read(in);
+      }
+    }
+
+    return elements;
+  }
+
+  private static ByteBuf frame(final ByteBuf payload) {
+    final ByteBuf length = Unpooled.buffer(5);
+    writeVarint(length, payload.readableBytes());
+    return Unpooled.wrappedBuffer(length, payload);
+  }
+
+  private static ByteBuf unframe(final ByteBuf message) throws IOException {
+    final int length = readVarint(message);
+    if (message.readableBytes() < length) {
+      throw new IOException("bad binary message - expected " + length + " bytes but got " + message.readableBytes());
+    }
+
+    return message.readSlice(length);
+  }
+
+  private Codec codec(final Type type) {
+    final Codec codec = codecs.get(type);
+    if (codec != null) {
+      return codec;
+    }
+
+    return compile(type);
+  }
+
+  // the values written by their class are read by the declared type, which has to be that very class
+  private Codec classCodec(final Object value) {
+    final Class<?> cls = value.getClass();
+    final Codec codec = codec(cls);
+    final Class<?> parent = cls.getSuperclass();
+    if (codec instanceof BeanCodec && parent != Object.class && !Modifier.isAbstract(parent.getModifiers())) {
+      throw new IllegalArgumentException("'" + cls.getName() + "' is not supported by the binary protocol as a value " +
+        "of an undeclared type, it can't be told apart from its parent bean '" + parent.getName() + "'");
+    }
+
+    return codec;
+  }
+
+  // compiled under a lock, so recursive beans may refer to their own codec before it's published
+  private synchronized Codec compile(final Type type) {
+    final Codec existing = codecs.get(type);
+    if (existing != null) {
+      return existing;
+    }
+
+    final Map<Type, Codec> compiled = new HashMap<>();
+    final Codec codec = compile(type, compiled);
+    codecs.putAll(compiled);
+    return codec;
+  }
+
+  private Codec compile(final Type type, final Map<Type, Codec> compiling) {
+    final Codec existing = codecs.get(type);
+    if (existing != null) {
+      return existing;
+    }
+
+    final Codec inProgress = compiling.get(type);
+    if (inProgress != null) {
+      return inProgress;
+    }
+
+    final Codec codec;
+    if (type instanceof Class) {
+      codec = compileClass((Class<?>) type, compiling);
+    } else if (type instanceof ParameterizedType) {
+      final ParameterizedType parameterizedType = (ParameterizedType) type;
+      final Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+      final Type[] arguments = parameterizedType.getActualTypeArguments();
+      if (Collection.class.isAssignableFrom(rawType)) {
+        codec = new CollectionCodec(rawType, compile(arguments[0], compiling));
+      } else if (Map.class.isAssignableFrom(rawType)) {
+        codec = new MapCodec(rawType, compile(arguments[0], compiling), compile(arguments[1], compiling));
+      } else {
+        codec = compile(rawType, compiling);
+      }
+    } else if (type instanceof GenericArrayType) {
+      final Type componentType = ((GenericArrayType) type).getGenericComponentType();
+      codec = new ArrayCodec(rawClass(componentType), compile(componentType, compiling));
+    } else if (type instanceof WildcardType) {
+      codec = compile(((WildcardType) type).getUpperBounds()[0], compiling);
+    } else if (type instanceof TypeVariable) {
+      codec = compile(((TypeVariable) type).getBounds()[0], compiling);
+    } else {
+      throw unsupported(type);
+    }
+
+    compiling.put(type, codec);
+    return codec;
+  }
+
+  private Codec compileClass(final Class<?> cls, final Map<Type, Codec> compiling) {
+    if (cls == int.class || cls == Integer.class) {
+      return INT;
+    } else if (cls == long.class || cls == Long.class) {
+      return LONG;
+    } else if (cls == short.class || cls == Short.class) {
+      return SHORT;
+    } else if (cls == byte.class || cls == Byte.class) {
+      return BYTE;
+    } else if (cls == char.class || cls == Character.class) {
+      return CHAR;
+    } else if (cls == boolean.class || cls == Boolean.class) {
+      return BOOLEAN;
+    } else if (cls == float.class || cls == Float.class) {
+      return FLOAT;
+    } else if (cls == double.class || cls == Double.class) {
+      return DOUBLE;
+    } else if (cls == String.class) {
+      return STRING;
+    } else if (cls == byte[].class) {
+      return BYTES;
+    } else if (Date.class.isAssignableFrom(cls)) {
+      return DATE;
+    } else if (cls == BigDecimal.class) {
+      return BIG_DECIMAL;
+    } else if (cls == BigInteger.class) {
+      return BIG_INTEGER;
+    } else if (Enum.class.isAssignableFrom(cls)) {
+      return new EnumCodec(cls.isEnum() ? cls : cls.getSuperclass());
+    } else if (cls.isArray()) {
+      return new ArrayCodec(cls.getComponentType(), compile(cls.getComponentType(), compiling));
+    } else if (Collection.class.isAssignableFrom(cls)) {
+      return new CollectionCodec(cls, null);
+    } else if (Map.class.isAssignableFrom(cls)) {
+      return new MapCodec(cls, null, null);
+    } else if (cls == Object.class || cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+      throw unsupported(cls);
+    }
+
+    final BeanCodec codec = new BeanCodec(cls);
+    compiling.put(cls, codec);
+    codec.compileFields(compiling);
+    return codec;
+  }
+
+  private static IllegalArgumentException unsupported(final Type type) {
+    return new IllegalArgumentException("'" + type.getTypeName() + "' is not supported by the binary protocol");
+  }
+
+  private static Class<?> rawClass(final Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    } else if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    } else if (type instanceof GenericArrayType) {
+      return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+    }
+
+    return Object.class;
+  }
+
+  private static List<Field> beanFields(final Class<?> cls) {
+    final List<Field> fields = new ArrayList<>();
+    for (Class<?> current = cls; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (final Field field : current.getDeclaredFields()) {
+        final int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+          fields.add(field);
+        }
+      }
+    }
+
+    fields.sort(Comparator.comparing(Field::getName).thenComparing(field -> field.getDeclaringClass().getName()));
+    return fields;
+  }
+
+  private static void describe(final Type type, final StringBuilder schema, final List<Class<?>> beans) {
+    final Class<?> cls = rawClass(type);
+    if (Primitives.unwrap(cls).isPrimitive()) {
+      // boxed and primitive values are encoded the same
+      schema.append(Primitives.unwrap(cls).getName());
+    } else if (cls == String.class || cls == byte[].class || cls == BigDecimal.class || cls == BigInteger.class ||
+      Date.class.isAssignableFrom(cls)) {
+      schema.append(cls.getSimpleName());
+    } else if (Enum.class.isAssignableFrom(cls)) {
+      final Class<?> enumClass = cls.isEnum() ? cls : cls.getSuperclass();
+      schema.append("enum").append(Arrays.toString(enumClass.getEnumConstants()));
+    } else if (cls.isArray()) {
+      schema.append('[');
+      describe(type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() :
+        cls.getComponentType(), schema, beans);
+      schema.append(']');
+    } else if (Collection.class.isAssignableFrom(cls) || Map.class.isAssignableFrom(cls)) {
+      // lists and sets are encoded the same
+      schema.append(Map.class.isAssignableFrom(cls) ? "map<" : "seq<");
+      if (type instanceof ParameterizedType) {
+        final Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+        for (int i = 0; i < arguments.length; i++) {
+          if (i > 0) {
+            schema.append(',');
+          }
+          describe(arguments[i], schema, beans);
+        }
+      }
+      schema.append('>');
+    } else if (cls == Object.class || cls.isInterface() || Modifier.isAbstract(cls.getModifiers())) {
+      schema.append('?').append(cls.getName());
+    } else if (beans.contains(cls)) {
+      // a recursive bean refers to the bean it's nested in
+      schema.append('#').append(beans.indexOf(cls));
+    } else {
+      // beans are described by their fields, so copies of a bean in different packages have the same schema
+      beans.add(cls);
+      schema.append('{');
+      for (final Field field : beanFields(cls)) {
+        schema.append(field.getName()).append(':');
+        describe(field.getGenericType(), schema, beans);
+        schema.append(',');
+      }
+      schema.append('}');
+    }
+  }
+
+  private static String hash(final CharSequence schema) {
+    return Hashing.murmur3_32().hashString(schema, CharsetUtil.UTF_8).toString();
+  }
+
+  static void writeVarint(final ByteBuf out, final int value) {
+    int remaining = value;
+    while ((remaining & ~0x7F) != 0) {
+      out.writeByte((remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    out.writeByte(remaining);
+  }
+
+  static int readVarint(final ByteBuf in) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final byte b = in.readByte();
+      result |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+
+    throw new IOException("bad binary message - malformed varint");
+  }
+
+  static void writeVarlong(final ByteBuf out, final long value) {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      out.writeByte((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    out.writeByte((int) remaining);
+  }
+
+  static long readVarlong(final ByteBuf in) throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = in.readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+
+    throw new IOException("bad binary message - malformed varint");
+  }
+
+  private interface Codec {
+    void write(ByteBuf out, Object value) throws IOException;
+    Object read(ByteBuf in) throws IOException;
+  }
+
+  private static final Codec INT = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarint(out, ((Number) value).intValue());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return readVarint(in);
+    }
+  };
+
+  private static final Codec SHORT = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarint(out, ((Number) value).intValue());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return (short) readVarint(in);
+    }
+  };
+
+  private static final Codec BYTE = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      out.writeByte((Byte) value);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) {
+      return in.readByte();
+    }
+  };
+
+  private static final Codec LONG = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarlong(out, ((Number) value).longValue());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return readVarlong(in);
+    }
+  };
+
+  private static final Codec CHAR = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarint(out, (Character) value);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return (char) readVarint(in);
+    }
+  };
+
+  private static final Codec BOOLEAN = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      out.writeBoolean((Boolean) value);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) {
+      return in.readBoolean();
+    }
+  };
+
+  private static final Codec FLOAT = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      out.writeFloat(((Number) value).floatValue());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) {
+      return in.readFloat();
+    }
+  };
+
+  private static final Codec DOUBLE = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      out.writeDouble(((Number) value).doubleValue());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) {
+      return in.readDouble();
+    }
+  };
+
+  private static final Codec STRING = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      final byte[] bytes = ((String) value).getBytes(CharsetUtil.UTF_8);
+      writeVarint(out, bytes.length);
+      out.writeBytes(bytes);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      final int length = readVarint(in);
+      final String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+      in.skipBytes(length);
+      return value;
+    }
+  };
+
+  private static final Codec BYTES = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      final byte[] bytes = (byte[]) value;
+      writeVarint(out, bytes.length);
+      out.writeBytes(bytes);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      final byte[] bytes = new byte[readVarint(in)];
+      in.readBytes(bytes);
+      return bytes;
+    }
+  };
+
+  private static final Codec DATE = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarlong(out, ((Date) value).getTime());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return new Date(readVarlong(in));
+    }
+  };
+
+  private static final Codec BIG_DECIMAL = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      STRING.write(out, value.toString());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return new BigDecimal((String) STRING.read(in));
+    }
+  };
+
+  private static final Codec BIG_INTEGER = new Codec() {
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      BYTES.write(out, ((BigInteger) value).toByteArray());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      return new BigInteger((byte[]) BYTES.read(in));
+    }
+  };
+
+  private static final class EnumCodec implements Codec {
+    private final Object[] constants;
+
+    private EnumCodec(final Class<?> enumClass) {
+      this.constants = enumClass.getEnumConstants();
+    }
+
+    @Override
+    public void write(final ByteBuf out, final Object value) {
+      writeVarint(out, ((Enum) value).ordinal());
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      final int ordinal = readVarint(in);
+      if (ordinal >= constants.length) {
+        throw new IOException("bad binary message - unknown constant " + ordinal + " of " + constants[0].getClass());
+      }
+
+      return constants[ordinal];
+    }
+  }
+
+  private final class ArrayCodec implements Codec {
+    private final Class<?> componentType;
+    private final Codec componentCodec;
+
+    private ArrayCodec(final Class<?> componentType, final Codec componentCodec) {
+      this.componentType = componentType;
+      this.componentCodec = componentCodec;
+    }
+
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      if (!componentType.isPrimitive()) {
+        writeElements(out, (Object[]) value, componentCodec);
+        return;
+      }
+
+      final int length = Array.getLength(value);
+      writeVarint(out, length);
+      for (int i = 0; i < length; i++) {
+        componentCodec.write(out, Array.get(value, i));
+      }
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      if (!componentType.isPrimitive()) {
+        final Object[] elements = readElements(in, componentCodec);
+        final Object[] array = (Object[]) Array.newInstance(componentType, elements.length);
+        System.arraycopy(elements, 0, array, 0, elements.length);
+        return array;
+      }
+
+      final int length = readVarint(in);
+      final Object array = Array.newInstance(componentType, length);
+      for (int i = 0; i < length; i++) {
+        Array.set(array, i, componentCodec.read(in));
+      }
+
+      return array;
+    }
+  }
+
+  private final class CollectionCodec implements Codec {
+    private final Class<?> collectionType;
+    private final Codec elementCodec;
+
+    /**
+     * @param elementCodec the codec of the elements, or null to write each element by its class.
+     */
+    private CollectionCodec(final Class<?> collectionType, final Codec elementCodec) {
+      this.collectionType = collectionType;
+      this.elementCodec = elementCodec;
+    }
+
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      writeElements(out, ((Collection<?>) value).toArray(), elementCodec);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      if (elementCodec == null) {
+        throw new IOException("can't read a collection of an unknown element type " + collectionType.getName());
+      }
+
+      final Object[] elements = readElements(in, elementCodec);
+      final Collection<Object> collection = newCollection(elements.length);
+      Collections.addAll(collection, elements);
+
+      return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Object> newCollection(final int size) throws IOException {
+      if (collectionType.isInterface() || Modifier.isAbstract(collectionType.getModifiers())) {
+        if (SortedSet.class.isAssignableFrom(collectionType)) {
+          return new TreeSet<>();
+        } else if (Set.class.isAssignableFrom(collectionType)) {
+          return new LinkedHashSet<>(size * 2);
+        } else if (Queue.class.isAssignableFrom(collectionType)) {
+          return new ArrayDeque<>(size);
+        }
+
+        return new ArrayList<>(size);
+      }
+
+      try {
+        return (Collection<Object>) collectionType.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new IOException("can't create a collection of type " + collectionType.getName(), e);
+      }
+    }
+  }
+
+  private final class MapCodec implements Codec {
+    private final Class<?> mapType;
+    private final Codec keyCodec;
+    private final Codec valueCodec;
+
+    /**
+     * @param keyCodec the codec of the keys, or null to write each entry by its classes.
+     */
+    private MapCodec(final Class<?> mapType, final Codec keyCodec, final Codec valueCodec) {
+      this.mapType = mapType;
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+    }
+
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      final Map<?, ?> map = (Map<?, ?>) value;
+      final Object[] keys = new Object[map.size()];
+      final Object[] values = new Object[keys.length];
+      int index = 0;
+      for (final Map.Entry<?, ?> entry : map.entrySet()) {
+        keys[index] = entry.getKey();
+        values[index] = entry.getValue();
+        index++;
+      }
+
+      writeElements(out, keys, keyCodec);
+      writeElements(out, values, valueCodec);
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      if (keyCodec == null) {
+        throw new IOException("can't read a map of unknown key and value types " + mapType.getName());
+      }
+
+      final Object[] keys = readElements(in, keyCodec);
+      final Object[] values = readElements(in, valueCodec);
+      if (keys.length != values.length) {
+        throw new IOException("bad binary message - a map of " + keys.length + " keys and " + values.length + " values");
+      }
+
+      final Map<Object, Object> map = newMap(keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        map.put(keys[i], values[i]);
+      }
+
+      return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> newMap(final int size) throws IOException {
+      if (mapType.isInterface() || Modifier.isAbstract(mapType.getModifiers())) {
+        if (ConcurrentMap.class.isAssignableFrom(mapType)) {
+          return new ConcurrentHashMap<>(size * 2);
+        } else if (SortedMap.class.isAssignableFrom(mapType)) {
+          return new TreeMap<>();
+        }
+
+        return new LinkedHashMap<>(size * 2);
+      }
+
+      try {
+        return (Map<Object, Object>) mapType.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new IOException("can't create a map of type " + mapType.getName(), e);
+      }
+    }
+  }
+
+  private final class BeanCodec implements Codec {
+    private final Class<?> beanType;
+    private final Constructor<?> constructor;
+    private Field[] fields;
+    private Codec[] fieldCodecs;
+    private int bitmapSize;
+
+    private BeanCodec(final Class<?> beanType) {
+      this.beanType = beanType;
+      try {
+        constructor = beanType.getDeclaredConstructor();
+        constructor.setAccessible(true);
+      } catch (final NoSuchMethodException e) {
+        throw new IllegalArgumentException("'" + beanType.getName() + "' is not supported by the binary protocol, " +
+          "a bean must have an empty constructor");
+      }
+    }
+
+    private void compileFields(final Map<Type, Codec> compiling) {
+      final List<Field> beanFields = beanFields(beanType);
+      final Codec[] codecs = new Codec[beanFields.size()];
+      for (int i = 0; i < codecs.length; i++) {
+        final Field field = beanFields.get(i);
+        field.setAccessible(true);
+        codecs[i] = compile(field.getGenericType(), compiling);
+      }
+
+      this.fields = beanFields.toArray(new Field[codecs.length]);
+      this.fieldCodecs = codecs;
+      this.bitmapSize = (codecs.length + 7) / 8;
+    }
+
+    @Override
+    public void write(final ByteBuf out, final Object value) throws IOException {
+      final Object[] values = new Object[fields.length];
+      final int bitmapIndex = out.writerIndex();
+      out.writeZero(bitmapSize);
+
+      try {
+        for (int i = 0; i < fields.length; i++) {
+          values[i] = fields[i].get(value);
+          if (values[i] != null) {
+            out.setByte(bitmapIndex + i / 8, out.getByte(bitmapIndex + i / 8) | (1 << (i % 8)));
+          }
+        }
+      } catch (final IllegalAccessException e) {
+        throw new IOException("can't read the fields of " + beanType.getName(), e);
+      }
+
+      for (int i = 0; i < fields.length; i++) {
+        if (values[i] != null) {
+          fieldCodecs[i].write(out, values[i]);
+        }
+      }
+    }
+
+    @Override
+    public Object read(final ByteBuf in) throws IOException {
+      try {
+        final Object bean = constructor.newInstance();
+        final int bitmapIndex = in.readerIndex();
+        in.skipBytes(bitmapSize);
+
+        for (int i = 0; i < fields.length; i++) {
+          if ((in.getByte(bitmapIndex + i / 8) & (1 << (i % 8))) != 0) {
+            fields[i].set(bean, fieldCodecs[i].read(in));
+          }
+        }
+
+        return bean;
+      } catch (final ReflectiveOperationException e) {
+        throw new IOException("can't create a bean of type " + beanType.getName(), e);
+      }
+    }
+  }
+}
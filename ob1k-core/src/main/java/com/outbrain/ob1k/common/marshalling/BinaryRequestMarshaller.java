@@ -0,0 +1,251 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.google.common.io.ByteStreams;
+import com.outbrain.ob1k.HttpRequestMethodType;
+import com.outbrain.ob1k.Request;
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.common.ContentType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.TRANSFER_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaders.Values.CHUNKED;
+import static io.netty.handler.codec.http.HttpHeaders.Values.KEEP_ALIVE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * marshalls the compact binary protocol, see {@link BinaryCodec} for the encoding.
+ * <p>
+ * the body parameters of a request and the value of a response are framed by their length, and so is each chunk of
+ * a stream, after its chunk header.
+ * </p>
+ * clients send the schema hash of the called method in the {@link #SCHEMA_HEADER}, so a server with different
+ * types fails the request instead of reading the fields by the wrong ids.
+ */
+public class BinaryRequestMarshaller implements RequestMarshaller {
+  /**
+   * the hash of the parameter types of the called method, followed by ':' and the hash of its result type when the
+   * client reads the result.
+   */
+  public static final String SCHEMA_HEADER = "X-Ob1k-Schema";
+
+  private static final Logger logger = LoggerFactory.getLogger(BinaryRequestMarshaller.class);
+  private static final byte[] HTML_NEW_LINE = "<br/>\n".getBytes(CharsetUtil.UTF_8);
+  private static final byte[] HEADER = ChunkHeader.ELEMENT_HEADER_BYTES;
+
+  private final BinaryCodec codec = new BinaryCodec();
+
+  @Override
+  public void registerTypes(final Type... types) {
+    for (final Type type : types) {
+      if (type == null) {
+        continue;
+      }
+
+      try {
+        codec.register(type);
+      } catch (final IllegalArgumentException e) {
+        // the other protocols may still serve this type
+        logger.debug("type {} can't be served by the binary protocol: {}", type.getTypeName(), e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @return the value of the {@link #SCHEMA_HEADER} for calling the method.
+   */
+  public String schemaHash(final Method method) {
+    return codec.schemaHash(method);
+  }
+
+  @Override
+  public Object[] unmarshallRequestParams(final Request request, final Method method, final String[] paramNames) throws IOException {
+    checkSchema(request.getHeader(SCHEMA_HEADER), method);
+
+    // if the method is not expecting anything, no reason trying unmarshalling
+    if (paramNames.length == 0) {
+      return new Object[0];
+    }
+
+    final Type[] types = method.getGenericParameterTypes();
+    final List<Object> results = new ArrayList<>(types.length);
+    final Map<String, String> pathParams = request.getPathParams();
+
+    int index = 0;
+    for (final String paramName : paramNames) {
+      if (pathParams.containsKey(paramName)) {
+        results.add(ParamMarshaller.unmarshall(pathParams.get(paramName), (Class) types[index]));
+        index++;
+      } else {
+        break;
+      }
+    }
+
+    if (results.size() < pathParams.size()) {
+      throw new IOException("path params should be bounded to be a prefix of the method parameters list.");
+    }
+
+    final HttpRequestMethodType requestMethod = request.getMethod();
+    if (HttpRequestMethodType.GET == requestMethod || HttpRequestMethodType.DELETE == requestMethod) {
+      final Map<String, String> queryParams = request.getQueryParams();
+      for (int i = index; i < paramNames.length && queryParams.containsKey(paramNames[i]); i++) {
+        final Type type = types[index];
+        if (!isPrimitiveOrString(type)) {
+          throw new IllegalArgumentException("only primitives and strings are allowed in query");
+        }
+        results.add(ParamMarshaller.unmarshall(queryParams.get(paramNames[i]), (Class) type));
+        index++;
+      }
+    }
+
+    if (results.size() == types.length) {
+      return results.toArray();
+    }
+
+    if (request.getContentLength() == 0) {
+      throw new IllegalArgumentException("not enough params passed for the request");
+    }
+
+    final ByteBuf body = Unpooled.wrappedBuffer(ByteStreams.toByteArray(request.getRequestInputStream()));
+    results.addAll(Arrays.asList(codec.readValues(body, Arrays.copyOfRange(types, index, types.length))));
+
+    return results.toArray();
+  }
+
+  @Override
+  public FullHttpResponse marshallResponse(final Object res, final HttpResponseStatus status) throws IOException {
+    final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status, codec.write(res));
+
+    response.headers().set(CONTENT_TYPE, ContentType.COMPACT_BINARY.responseEncoding());
+    return response;
+  }
+
+  @Override
+  public HttpResponse marshallResponseHeaders(final boolean rawStream) {
+    final HttpResponse res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    res.headers().add(TRANSFER_ENCODING, CHUNKED);
+    res.headers().add(CONNECTION, KEEP_ALIVE);
+    res.headers().add(CONTENT_TYPE, rawStream ? ContentType.TEXT_HTML.responseEncoding() : ContentType.COMPACT_BINARY.responseEncoding());
+
+    return res;
+  }
+
+  @Override
+  public HttpContent marshallResponsePart(final Object res, final HttpResponseStatus status, final boolean rawStream) throws IOException {
+    final ByteBuf content = codec.write(res);
+    final ByteBuf buf = rawStream ?
+      Unpooled.wrappedBuffer(content, Unpooled.wrappedBuffer(HTML_NEW_LINE)) :
+      Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(HEADER), content);
+
+    return new DefaultHttpContent(buf);
+  }
+
+  @Override
+  public byte[] marshallRequestParams(final Object[] requestParams) throws IOException {
+    final ByteBuf message = codec.writeValues(requestParams == null ? new Object[0] : requestParams);
+    final byte[] bytes = new byte[message.readableBytes()];
+    message.readBytes(bytes);
+
+    return bytes;
+  }
+
+  @Override
+  public <T> T unmarshallResponse(final Response response, final Type type) throws IOException {
+    final int statusCode = response.getStatusCode();
+
+    if (statusCode < 200 || statusCode >= 300) {
+      throw new IOException("Call failed for url: " + response.getUrl() + ", status code: " + statusCode + ".\n" +
+        errorMessage(response));
+    }
+
+    if (HttpResponseStatus.NO_CONTENT.code() == statusCode || !response.hasResponseBody()) {
+      return null;
+    }
+
+    return codec.read(Unpooled.wrappedBuffer(response.getResponseBodyAsByteBuffer()), type);
+  }
+
+  @Override
+  public <T> T unmarshallStreamResponse(final Response response, final Type type) throws IOException {
+
+    // the chunk is read in place, after its header
+    final ByteBuffer body = response.getResponseBodyAsByteBuffer();
+
+    if (body.remaining() < HEADER.length) {
+      throw new IOException("bad stream response - no chunk header");
+    }
+
+    if (ChunkHeader.startsWith(body, HEADER)) {
+
+      body.position(body.position() + HEADER.length);
+      return codec.read(Unpooled.wrappedBuffer(body), type);
+
+    } else if (ChunkHeader.startsWith(body, ChunkHeader.ERROR_HEADER_BYTES)) {
+
+      body.position(body.position() + HEADER.length);
+      throw new RuntimeException(CharsetUtil.UTF_8.decode(body).toString());
+    }
+
+    body.limit(body.position() + HEADER.length);
+    throw new IOException("invalid chunk header - unsupported " + CharsetUtil.UTF_8.decode(body));
+  }
+
+  private void checkSchema(final String clientSchema, final Method method) throws IOException {
+    if (clientSchema == null) {
+      // e.g. a plain http client, sending the params in the declared order
+      return;
+    }
+
+    final String schema = codec.schemaHash(method);
+    final String[] clientHashes = clientSchema.split(":");
+    final String[] hashes = schema.split(":");
+    // the result is compared only if both sides read it, raw responses take any body
+    final boolean matches = clientHashes[0].equals(hashes[0]) &&
+      (clientHashes.length < 2 || hashes.length < 2 || clientHashes[1].equals(hashes[1]));
+
+    if (!matches) {
+      throw new IOException("schema mismatch - the client of " + method.getName() + " has the schema " + clientSchema +
+        " but the service has " + schema + ", the types of the client differ from the types of the service");
+    }
+  }
+
+  private String errorMessage(final Response response) throws IOException {
+    if (ContentType.COMPACT_BINARY.responseEncoding().equals(response.getContentType())) {
+      try {
+        // errors are marshalled as messages
+        final Object message = codec.read(Unpooled.wrappedBuffer(response.getResponseBodyAsByteBuffer()), String.class);
+        return String.valueOf(message);
+      } catch (final IOException | RuntimeException e) {
+        logger.debug("failed reading the error message of a binary response", e);
+      }
+    }
+
+    return response.getResponseBody();
+  }
+
+  private boolean isPrimitiveOrString(final Type type) {
+    return type instanceof Class && (((Class) type).isPrimitive() || String.class.isAssignableFrom((Class<?>) type));
+  }
+}
@@ -0,0 +1,454 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.outbrain.ob1k.http.common.ContentType;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * splits the body parts of a stream response into its chunks, emitting a response per chunk.
+ * <p>
+ * the body parts are accumulated in a pooled buffer, so a chunk may span any number of parts and a part may hold
+ * any number of chunks. chunks are split by their length prefix when the server applied the
+ * {@link ChunkHeader#LENGTH_FRAMING}, and by their trailing newline otherwise (an error chunk takes the rest of the
+ * stream). binary streams of servers that don't support the length framing, and failed responses, are
+ * emitted a part per chunk, as before.
+ * </p>
+ * chunks are only split as requested downstream, the parts that weren't split yet are held as bytes.
+ *
+ * @param <T> the type of the chunk elements
+ */
+public class ChunkFrameDecoder<T> implements Observable.Operator<TypedResponse<T>, Response> {
+  private static final byte NEW_LINE = '\n';
+
+  private final Type type;
+  private final MarshallingStrategy marshallingStrategy;
+
+  /**
+   * @param type the type of the elements, or null if the chunks aren't unmarshalled.
+   * @param marshallingStrategy unmarshalls a chunk.
+   */
+  public ChunkFrameDecoder(final Type type, final MarshallingStrategy marshallingStrategy) {
+    this.type = type;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  @Override
+  public Subscriber<? super Response> call(final Subscriber<? super TypedResponse<T>> child) {
+    final DecodingSubscriber parent = new DecodingSubscriber(child);
+    child.add(parent);
+    child.setProducer(parent.producer);
+    return parent;
+  }
+
+  private enum Framing { PARTS, DELIMITED, LENGTH }
+
+  private final class DecodingSubscriber extends Subscriber<Response> {
+    private final Subscriber<? super TypedResponse<T>> child;
+    private final Queue<ByteBuffer> parts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Producer producer = this::requestMore;
+    private volatile Response headers;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    // accessed by the drain loop only
+    private Framing framing;
+    private ByteBuf cumulation;
+    private boolean terminated;
+
+    private DecodingSubscriber(final Subscriber<? super TypedResponse<T>> child) {
+      this.child = child;
+      add(Subscriptions.create(this::drain));
+    }
+
+    @Override
+    public void onStart() {
+      // the parts can't be held back by the http client, so they're all taken and held as bytes
+      request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(final Response part) {
+      if (headers == null) {
+        headers = part;
+      }
+
+      try {
+        parts.offer(part.getResponseBodyAsByteBuffer());
+      } catch (final IOException e) {
+        onError(e);
+        return;
+      }
+
+      drain();
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+      error = e;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onCompleted() {
+      done = true;
+      drain();
+    }
+
+    private void requestMore(final long n) {
+      if (n <= 0) {
+        return;
+      }
+
+      while (true) {
+        final long current = requested.get();
+        final long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        if (requested.compareAndSet(current, next)) {
+          break;
+        }
+      }
+
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+      do {
+        if (child.isUnsubscribed()) {
+          release();
+          parts.clear();
+        } else if (!terminated) {
+          drainFrames();
+        }
+
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drainFrames() {
+      // reading done before the parts, so no part is missed when completing
+      final boolean upstreamDone = done;
+      accumulate();
+
+      while (requested.get() > 0) {
+        final byte[] frame = nextFrame(upstreamDone);
+        if (frame == null) {
+          break;
+        }
+
+        requested.decrementAndGet();
+        child.onNext(new Frame<>(headers, frame, type, marshallingStrategy));
+        if (child.isUnsubscribed()) {
+          return;
+        }
+      }
+
+      if (cumulation != null) {
+        cumulation.discardSomeReadBytes();
+      }
+
+      if (upstreamDone && parts.isEmpty() && !hasFrames()) {
+        if (error == null && cumulation != null && cumulation.isReadable()) {
+          error = new IOException("bad stream response - the stream ended in the middle of a chunk");
+        }
+
+        terminated = true;
+        release();
+        if (error != null) {
+          child.onError(error);
+        } else {
+          child.onCompleted();
+        }
+      }
+    }
+
+    private void accumulate() {
+      if (framing == null && headers != null) {
+        framing = framing(headers);
+      }
+
+      if (framing == null || framing == Framing.PARTS) {
+        return;
+      }
+
+      ByteBuffer part;
+      while ((part = parts.poll()) != null) {
+        if (cumulation == null) {
+          cumulation = PooledByteBufAllocator.DEFAULT.heapBuffer(Math.max(part.remaining(), 256));
+        }
+        cumulation.writeBytes(part);
+      }
+    }
+
+    /**
+     * @return true if another frame can be read after the upstream is done.
+     */
+    private boolean hasFrames() {
+      if (framing == Framing.PARTS) {
+        return !parts.isEmpty();
+      }
+
+      if (cumulation == null || !cumulation.isReadable()) {
+        return false;
+      }
+
+      // whatever is left of a delimited stream is a frame of its own, e.g. an error
+      return framing == Framing.DELIMITED || frameLength() >= 0;
+    }
+
+    private byte[] nextFrame(final boolean upstreamDone) {
+      if (framing == null) {
+        return null;
+      }
+
+      if (framing == Framing.PARTS) {
+        final ByteBuffer part = parts.poll();
+        if (part == null) {
+          return null;
+        }
+
+        final byte[] frame = new byte[part.remaining()];
+        part.get(frame);
+        return frame;
+      }
+
+      if (cumulation == null || !cumulation.isReadable()) {
+        return null;
+      }
+
+      final int length = frameLength();
+      if (length >= 0) {
+        if (framing == Framing.LENGTH) {
+          cumulation.skipBytes(ChunkHeader.LENGTH_PREFIX_SIZE);
+        }
+        return readFrame(length);
+      }
+
+      return upstreamDone && framing == Framing.DELIMITED ? readFrame(cumulation.readableBytes()) : null;
+    }
+
+    /**
+     * @return the length of the frame at the reader index, or -1 if it wasn't fully received yet.
+     */
+    private int frameLength() {
+      if (framing == Framing.LENGTH) {
+        if (cumulation.readableBytes() < ChunkHeader.LENGTH_PREFIX_SIZE) {
+          return -1;
+        }
+
+        final int length = cumulation.getInt(cumulation.readerIndex());
+        return cumulation.readableBytes() - ChunkHeader.LENGTH_PREFIX_SIZE >= length ? length : -1;
+      }
+
+      if (startsWith(ChunkHeader.ERROR_HEADER_BYTES)) {
+        // an error is the last chunk and has no trailing newline
+        return -1;
+      }
+
+      // the header itself ends with a newline
+      final int headerLength = ChunkHeader.ELEMENT_HEADER_BYTES.length;
+      if (cumulation.readableBytes() <= headerLength) {
+        return -1;
+      }
+
+      final int readerIndex = cumulation.readerIndex();
+      final int newLine = cumulation.indexOf(readerIndex + headerLength, cumulation.writerIndex(), NEW_LINE);
+      return newLine < 0 ? -1 : newLine - readerIndex + 1;
+    }
+
+    private byte[] readFrame(final int length) {
+      final byte[] frame = new byte[length];
+      cumulation.readBytes(frame);
+      return frame;
+    }
+
+    private boolean startsWith(final byte[] header) {
+      if (cumulation.readableBytes() < header.length) {
+        return false;
+      }
+
+      final int readerIndex = cumulation.readerIndex();
+      for (int i = 0; i < header.length; i++) {
+        if (cumulation.getByte(readerIndex + i) != header[i]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private void release() {
+      if (cumulation != null) {
+        cumulation.release();
+        cumulation = null;
+      }
+    }
+  }
+
+  private static Framing framing(final Response response) {
+    final int status = response.getStatusCode();
+    if (status < 200 || status >= 300) {
+      return Framing.PARTS;
+    }
+
+    if (ChunkHeader.LENGTH_FRAMING.equals(response.getHeader(ChunkHeader.FRAMING_HEADER))) {
+      return Framing.LENGTH;
+    }
+
+    final String contentType = response.getContentType();
+    if (contentType != null && (contentType.startsWith(ContentType.MESSAGE_PACK.requestEncoding()) ||
+      contentType.startsWith(ContentType.COMPACT_BINARY.requestEncoding()))) {
+      // binary elements may contain a newline, so the chunks of older servers can only be taken as they arrive
+      return Framing.PARTS;
+    }
+
+    return Framing.DELIMITED;
+  }
+
+  /**
+   * a single chunk of the stream, sharing the status and headers of the response.
+   */
+  private static final class Frame<T> implements TypedResponse<T> {
+    private final Response response;
+    private final byte[] body;
+    private final Type type;
+    private final MarshallingStrategy marshallingStrategy;
+    private volatile T typedBody;
+
+    private Frame(final Response response, final byte[] body, final Type type,
+                  final MarshallingStrategy marshallingStrategy) {
+      this.response = response;
+      this.body = body;
+      this.type = type;
+      this.marshallingStrategy = marshallingStrategy;
+    }
+
+    @Override
+    public T getTypedBody() throws IOException {
+      if (typedBody == null) {
+        checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+        checkNotNull(type, "class type may not be null");
+
+        typedBody = marshallingStrategy.unmarshall(type, this);
+      }
+
+      return typedBody;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return response.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+      return response.getStatusText();
+    }
+
+    @Override
+    public URI getUri() throws URISyntaxException {
+      return response.getUri();
+    }
+
+    @Override
+    public String getUrl() {
+      return response.getUrl();
+    }
+
+    @Override
+    public String getContentType() {
+      return response.getContentType();
+    }
+
+    @Override
+    public byte[] getResponseBodyAsBytes() throws IOException {
+      return body;
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() throws IOException {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public ByteBuffer getResponseBodyAsByteBuffer() throws IOException {
+      return ByteBuffer.wrap(body);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+      return response.getCookies();
+    }
+
+    @Override
+    public String getResponseBody() throws IOException {
+      return new String(body, CharsetUtil.UTF_8);
+    }
+
+    @Override
+    public String getHeader(final String name) {
+      return response.getHeader(name);
+    }
+
+    @Override
+    public List<String> getHeaders(final String name) {
+      return response.getHeaders(name);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override
+    public boolean isRedirected() {
+      return response.isRedirected();
+    }
+
+    @Override
+    public boolean hasResponseBody() {
+      return body.length > 0;
+    }
+
+    @Override
+    public boolean hasResponseStatus() {
+      return response.hasResponseStatus();
+    }
+
+    @Override
+    public boolean hasResponseHeaders() {
+      return response.hasResponseHeaders();
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package com.outbrain.ob1k.common.marshalling;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Created by aronen on 6/30/14.
  *
@@ -9,4 +12,34 @@ package com.outbrain.ob1k.common.marshalling;
 public class ChunkHeader {
   public static final String ELEMENT_HEADER = "Chunk-Status: 200\r\n";
   public static final String ERROR_HEADER = "Chunk-Status: 500\r\n";
+
+  /**
+   * a request header by which a client asks for length prefixed chunks, echoed in the response when applied.
+   * each chunk is then prefixed by its size as a 4 bytes int, so elements can be split and coalesced freely by the
+   * transport, instead of relying on a chunk per element or on a newline that binary elements may contain.
+   */
+  public static final String FRAMING_HEADER = "X-Ob1k-Chunk-Framing";
+  public static final String LENGTH_FRAMING = "length";
+  public static final int LENGTH_PREFIX_SIZE = 4;
+
+  static final byte[] ELEMENT_HEADER_BYTES = ELEMENT_HEADER.getBytes(StandardCharsets.UTF_8);
+  static final byte[] ERROR_HEADER_BYTES = ERROR_HEADER.getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * @return true if the remaining bytes of the buffer start with the header, without moving its position.
+   */
+  static boolean startsWith(final ByteBuffer buffer, final byte[] header) {
+    if (buffer.remaining() < header.length) {
+      return false;
+    }
+
+    final int position = buffer.position();
+    for (int i = 0; i < header.length; i++) {
+      if (buffer.get(position + i) != header[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
 }
@@ -13,9 +13,10 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonFactory;
@@ -25,6 +26,7 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.outbrain.ob1k.HttpRequestMethodType;
 import com.outbrain.ob1k.Request;
@@ -33,6 +35,7 @@ import com.outbrain.ob1k.http.common.ContentType;
 import com.outbrain.ob1k.http.marshalling.JacksonMarshallingStrategy;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpContent;
@@ -48,6 +51,10 @@ import io.netty.util.CharsetUtil;
  * @author aronen
  */
 public class JsonRequestMarshaller implements RequestMarshaller {
+  private static final byte[] NEW_LINE = "\n".getBytes(CharsetUtil.UTF_8);
+  private static final byte[] HTML_NEW_LINE = "<br/>\n".getBytes(CharsetUtil.UTF_8);
+
+  private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
   private final ObjectMapper mapper;
   private final JsonFactory factory;
   private final MarshallingStrategy marshallingStrategy;
@@ -105,11 +112,11 @@ public class JsonRequestMarshaller implements RequestMarshaller {
   public HttpContent marshallResponsePart(final Object res,
                                           final HttpResponseStatus status,
                                           final boolean rawStream) throws IOException {
-    final String content = rawStream ?
-      mapper.writeValueAsString(res) + "<br/>\n" :
-      ChunkHeader.ELEMENT_HEADER + mapper.writeValueAsString(res) + "\n";
+    final byte[] content = mapper.writeValueAsBytes(res);
+    final ByteBuf buf = rawStream ?
+      Unpooled.wrappedBuffer(content, HTML_NEW_LINE) :
+      Unpooled.wrappedBuffer(ChunkHeader.ELEMENT_HEADER_BYTES, content, NEW_LINE);
 
-    final ByteBuf buf = Unpooled.copiedBuffer(content, CharsetUtil.UTF_8);
     return new DefaultHttpContent(buf);
   }
 
@@ -144,35 +151,37 @@ public class JsonRequestMarshaller implements RequestMarshaller {
   @Override
   public <T> T unmarshallStreamResponse(final Response response, final Type type) throws IOException {
 
-    final ByteBuffer byteBufferBody = response.getResponseBodyAsByteBuffer();
-    final int chunkHeaderSize = ChunkHeader.ELEMENT_HEADER.length();
+    // the chunk is parsed in place, after its header
+    final ByteBuffer body = response.getResponseBodyAsByteBuffer();
+    final int chunkHeaderSize = ChunkHeader.ELEMENT_HEADER_BYTES.length;
 
-    if (byteBufferBody.remaining() < chunkHeaderSize) {
+    if (body.remaining() < chunkHeaderSize) {
       throw new IOException("bad stream response - no chunk header");
     }
 
-    final byte[] header = new byte[chunkHeaderSize];
-    byteBufferBody.get(header);
-
-    final int remaining = byteBufferBody.remaining();
-    final byte[] body = new byte[remaining];
-    byteBufferBody.get(body);
+    if (ChunkHeader.startsWith(body, ChunkHeader.ELEMENT_HEADER_BYTES)) {
 
-    if (Arrays.equals(ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
-
-      if (remaining == 0) {
+      body.position(body.position() + chunkHeaderSize);
+      if (!body.hasRemaining()) {
         // on empty body the object mapper throws "JsonMappingException: No content to map due to end-of-input"
         return null;
       }
 
-      return mapper.readValue(body, getJacksonType(type));
+      final ObjectReader reader = reader(type);
+      if (body.hasArray()) {
+        return reader.readValue(body.array(), body.arrayOffset() + body.position(), body.remaining());
+      }
+
+      return reader.readValue(new ByteBufInputStream(Unpooled.wrappedBuffer(body)));
 
-    } else if (Arrays.equals(ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
+    } else if (ChunkHeader.startsWith(body, ChunkHeader.ERROR_HEADER_BYTES)) {
 
-      throw new RuntimeException(new String(body,CharsetUtil.UTF_8));
+      body.position(body.position() + chunkHeaderSize);
+      throw new RuntimeException(CharsetUtil.UTF_8.decode(body).toString());
     }
 
-    throw new IOException("invalid chunk header - unsupported " + new String(header, CharsetUtil.UTF_8));
+    body.limit(body.position() + chunkHeaderSize);
+    throw new IOException("invalid chunk header - unsupported " + CharsetUtil.UTF_8.decode(body));
   }
 
   private Object[] parseURLRequestParams(final Request request,
@@ -261,6 +270,17 @@ public class JsonRequestMarshaller implements RequestMarshaller {
     return results.toArray();
   }
 
+  private ObjectReader reader(final Type type) {
+    final ObjectReader reader = readers.get(type);
+    if (reader != null) {
+      return reader;
+    }
+
+    final ObjectReader newReader = mapper.reader(getJacksonType(type));
+    final ObjectReader existing = readers.putIfAbsent(type, newReader);
+    return existing != null ? existing : newReader;
+  }
+
   private JavaType getJacksonType(final Type type) {
     final TypeFactory typeFactory = TypeFactory.defaultInstance();
     return typeFactory.constructType(type);
@@ -33,11 +33,12 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
@@ -57,10 +58,11 @@ public class MessagePackRequestMarshaller implements RequestMarshaller {
   private static final java.util.logging.Logger msgPackLogger = java.util.logging.Logger.getLogger(BuildContext.class.getName());
   private static final byte[] NEW_LINE = "\n".getBytes(CharsetUtil.UTF_8);
   private static final byte[] HTML_NEW_LINE = "<br/>\n".getBytes(CharsetUtil.UTF_8);
-  private static final byte[] HEADER = ChunkHeader.ELEMENT_HEADER.getBytes(CharsetUtil.UTF_8);
+  private static final byte[] HEADER = ChunkHeader.ELEMENT_HEADER_BYTES;
 
   private final MarshallingStrategy msgPackMarshallingStrategy;
   private final MessagePack msgPack;
+  private final ConcurrentMap<Type, Template<?>> templates = new ConcurrentHashMap<>();
 
   public MessagePackRequestMarshaller() {
     msgPack = new MessagePack();
@@ -243,37 +245,44 @@ public class MessagePackRequestMarshaller implements RequestMarshaller {
   @Override
   public <T> T unmarshallStreamResponse(final com.outbrain.ob1k.http.Response response, final Type type) throws IOException {
 
+    // the chunk is unpacked in place, after its header
     final ByteBuffer byteBufferBody = response.getResponseBodyAsByteBuffer();
 
     if (byteBufferBody.remaining() < HEADER.length) {
       throw new IOException("bad stream response - no chunk header");
     }
 
-    final byte[] header = new byte[HEADER.length];
-    byteBufferBody.get(header);
+    if (ChunkHeader.startsWith(byteBufferBody, HEADER)) {
 
-    final int remaining = byteBufferBody.remaining();
-
-    if (Arrays.equals(HEADER, header)) {
-
-      if (remaining == 0) {
+      byteBufferBody.position(byteBufferBody.position() + HEADER.length);
+      if (!byteBufferBody.hasRemaining()) {
         // on empty streamBody the msgpack reader throws EOF
         return null;
       }
 
-      final Value value = msgPack.read(byteBufferBody);
       @SuppressWarnings("unchecked")
-      final Template<T> template = (Template<T>) msgPack.lookup(type);
-      return template.read(new Converter(msgPack, value), null);
+      final Template<T> template = (Template<T>) template(type);
+      return template.read(msgPack.createBufferUnpacker(byteBufferBody), null);
+
+    } else if (ChunkHeader.startsWith(byteBufferBody, ChunkHeader.ERROR_HEADER_BYTES)) {
 
-    } else if (Arrays.equals(ChunkHeader.ERROR_HEADER.getBytes(CharsetUtil.UTF_8), header)) {
+      byteBufferBody.position(byteBufferBody.position() + HEADER.length);
+      throw new RuntimeException(CharsetUtil.UTF_8.decode(byteBufferBody).toString());
+    }
+
+    byteBufferBody.limit(byteBufferBody.position() + HEADER.length);
+    throw new IOException("invalid chunk header - unsupported " + CharsetUtil.UTF_8.decode(byteBufferBody));
+  }
 
-      final byte[] body = new byte[remaining];
-      byteBufferBody.get(body);
-      throw new RuntimeException(new String(body, CharsetUtil.UTF_8));
+  private Template<?> template(final Type type) {
+    final Template<?> template = templates.get(type);
+    if (template != null) {
+      return template;
     }
 
-    throw new IOException("invalid chunk header - unsupported " + new String(header, CharsetUtil.UTF_8));
+    final Template<?> newTemplate = msgPack.lookup(type);
+    final Template<?> existing = templates.putIfAbsent(type, newTemplate);
+    return existing != null ? existing : newTemplate;
   }
 
   private void registerBean(final Set<Class> processed, final Class cls) {
@@ -18,6 +18,7 @@ public class RequestMarshallerRegistry {
     marshallers.put(ContentType.JSON.requestEncoding(), new JsonRequestMarshaller());
     final MessagePackRequestMarshaller messagePackRequestMarshaller = new MessagePackRequestMarshaller();
     marshallers.put(ContentType.MESSAGE_PACK.requestEncoding(), messagePackRequestMarshaller);
+    marshallers.put(ContentType.COMPACT_BINARY.requestEncoding(), new BinaryRequestMarshaller());
   }
 
   public RequestMarshaller getMarshaller(final String contentType) {
@@ -28,4 +28,9 @@ public class DefaultAsyncServerRequestContext extends AbstractServerRequestConte
     return endpoint.invokeAsync(this);
   }
 
+  @Override
+  public <T> ComposableFuture<T> invokeAsync(final Object[] params) {
+    return endpoint.invokeAsync(new DefaultAsyncServerRequestContext(request, endpoint, params, executionIndex));
+  }
+
 }
@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.util.CharsetUtil;
@@ -63,6 +64,7 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
 
   private io.netty.handler.codec.http.HttpRequest request;
   private Subscription subscription;
+  private boolean streamFlushScheduled;
 
   public HttpRequestDispatcherHandler(final String contextPath, final ServiceDispatcher dispatcher,
                                       final StaticPathResolver staticResolver, final RequestMarshallerRegistry marshallerRegistry,
@@ -174,8 +176,11 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
   }
 
   public void handleStreamResponse(final ChannelHandlerContext ctx, final Observable<Object> response, final boolean rawStream) {
+    // length prefixed chunks can be coalesced, so they're flushed once per batch instead of once per element
+    final boolean lengthFraming = !rawStream && ChunkHeader.LENGTH_FRAMING.equals(request.headers().get(ChunkHeader.FRAMING_HEADER));
+
     // first send the packet containing the headers.
-    sendStreamHeaders(ctx, rawStream);
+    sendStreamHeaders(ctx, rawStream, lengthFraming);
     subscription = response.subscribe(new Subscriber<Object>() {
       @Override
       public void onCompleted() {
@@ -188,7 +193,7 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
       public void onError(final Throwable e) {
         final String content = rawStream ? e.toString() : ChunkHeader.ERROR_HEADER + e.toString();
         final ByteBuf buf = Unpooled.copiedBuffer(content, CharsetUtil.UTF_8);
-        final LastHttpContent chunk = new DefaultLastHttpContent(buf);
+        final LastHttpContent chunk = new DefaultLastHttpContent(lengthFraming ? lengthPrefixed(buf) : buf);
         ctx.writeAndFlush(chunk).addListener(ChannelFutureListener.CLOSE);
       }
 
@@ -200,7 +205,11 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
         }
 
         try {
-          sendStreamChunk(object, ctx, rawStream);
+          if (lengthFraming) {
+            sendStreamFrame(object, ctx);
+          } else {
+            sendStreamChunk(object, ctx, rawStream);
+          }
         } catch (final IOException e) {
           unsubscribe();
           onError(e);
@@ -216,9 +225,41 @@ public class HttpRequestDispatcherHandler extends SimpleChannelInboundHandler<Ob
     return ctx.writeAndFlush(chunk);
   }
 
-  private ChannelFuture sendStreamHeaders(final ChannelHandlerContext ctx, final boolean rawStream) {
+  private void sendStreamFrame(final Object message, final ChannelHandlerContext ctx) throws IOException {
+    final RequestMarshaller marshaller = getMarshaller(request);
+    final HttpContent chunk = marshaller.marshallResponsePart(message, OK, false);
+    final HttpContent frame = new DefaultHttpContent(lengthPrefixed(chunk.content()));
+
+    final EventLoop eventLoop = ctx.channel().eventLoop();
+    if (eventLoop.inEventLoop()) {
+      writeStreamFrame(frame, ctx);
+    } else {
+      eventLoop.execute(() -> writeStreamFrame(frame, ctx));
+    }
+  }
+
+  // called on the event loop, flushing once after the frames written until the flush runs
+  private void writeStreamFrame(final HttpContent frame, final ChannelHandlerContext ctx) {
+    ctx.write(frame);
+    if (!streamFlushScheduled) {
+      streamFlushScheduled = true;
+      ctx.channel().eventLoop().execute(() -> {
+        streamFlushScheduled = false;
+        ctx.flush();
+      });
+    }
+  }
+
+  private static ByteBuf lengthPrefixed(final ByteBuf content) {
+    return Unpooled.wrappedBuffer(Unpooled.copyInt(content.readableBytes()), content);
+  }
+
+  private ChannelFuture sendStreamHeaders(final ChannelHandlerContext ctx, final boolean rawStream, final boolean lengthFraming) {
     final RequestMarshaller marshaller = getMarshaller(request);
     final HttpResponse res = marshaller.marshallResponseHeaders(rawStream);
+    if (lengthFraming) {
+      res.headers().set(ChunkHeader.FRAMING_HEADER, ChunkHeader.LENGTH_FRAMING);
+    }
 
     return ctx.writeAndFlush(res);
   }
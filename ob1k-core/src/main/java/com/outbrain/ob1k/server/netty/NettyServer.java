@@ -148,6 +148,13 @@ public class NettyServer implements Server {
     return applicationName;
   }
 
+  /**
+   * @return the event loops of the server, to be shared with http clients created by the server's services.
+   */
+  public EventLoopGroup getEventLoopGroup() {
+    return nioGroup;
+  }
+
   @Override
   public void stop() {
     logger.info("################## Stopping OB1K server for module '{}' ##################", applicationName);
@@ -1,8 +1,11 @@
 package com.outbrain.ob1k.client;
 
 import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
 import org.junit.Test;
 
+import java.util.List;
+
 public class ClientBuilderTest {
 
 
@@ -27,4 +30,23 @@ public class ClientBuilderTest {
     String syncMethod();
   }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldBlowUpIfCollapsedIntoUnknownBulkMethod() {
+    final ClientBuilder<WithBulk> clientBuilder = new ClientBuilder<>(WithBulk.class).collapseEndpoint("get", "getAll");
+
+    clientBuilder.build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldBlowUpIfBulkMethodDoesNotReturnMap() {
+    final ClientBuilder<WithBulk> clientBuilder = new ClientBuilder<>(WithBulk.class).collapseEndpoint("get", "getList");
+
+    clientBuilder.build();
+  }
+
+  private interface WithBulk extends Service {
+    ComposableFuture<String> get(String id);
+    ComposableFuture<List<String>> getList(List<String> ids);
+  }
+
 }
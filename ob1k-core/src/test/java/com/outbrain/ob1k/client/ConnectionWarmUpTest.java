@@ -0,0 +1,75 @@
+package com.outbrain.ob1k.client;
+
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.http.HttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionWarmUpTest {
+
+  private static final String FIRST = "http://first:8080";
+  private static final String SECOND = "http://second:8080";
+
+  private HttpClient client;
+
+  @Before
+  public void setup() {
+    client = mock(HttpClient.class);
+    when(client.warmUp(anyString(), anyInt())).thenReturn(ComposableFutures.fromValue(2));
+  }
+
+  @Test
+  public void testWarmsUpNewTargetsOnce() {
+    final ConnectionWarmUp warmUp = new ConnectionWarmUp(2);
+    warmUp.addClient(client);
+
+    warmUp.onTargets(Collections.singletonList(FIRST));
+    warmUp.onTargets(Arrays.asList(FIRST, SECOND));
+
+    verify(client, times(1)).warmUp(FIRST, 2);
+    verify(client, times(1)).warmUp(SECOND, 2);
+  }
+
+  @Test
+  public void testWarmsUpTargetsThatReappear() {
+    final ConnectionWarmUp warmUp = new ConnectionWarmUp(2);
+    warmUp.addClient(client);
+
+    warmUp.onTargets(Collections.singletonList(FIRST));
+    warmUp.onTargets(Collections.singletonList(SECOND));
+    warmUp.onTargets(Collections.singletonList(FIRST));
+
+    verify(client, times(2)).warmUp(FIRST, 2);
+  }
+
+  @Test
+  public void testClosedClientsAreNotWarmedUp() {
+    final ConnectionWarmUp warmUp = new ConnectionWarmUp(2);
+    warmUp.addClient(client);
+    when(client.isClosed()).thenReturn(true);
+
+    warmUp.onTargets(Collections.singletonList(FIRST));
+    verify(client, never()).warmUp(anyString(), anyInt());
+  }
+
+  @Test
+  public void testWarmsUpKnownTargetsOnNewClients() {
+    final ConnectionWarmUp warmUp = new ConnectionWarmUp(1);
+    warmUp.onTargets(Collections.singletonList(FIRST));
+    verify(client, never()).warmUp(anyString(), anyInt());
+
+    warmUp.addClient(client);
+    verify(client).warmUp(FIRST, 1);
+  }
+}
@@ -0,0 +1,111 @@
+package com.outbrain.ob1k.client.benchmarks;
+
+import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.client.ClientBuilder;
+import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.endpoints.DispatchAction;
+import com.outbrain.ob1k.client.endpoints.EndpointDescription;
+import com.outbrain.ob1k.client.targets.SimpleTargetProvider;
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rx.Observable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the cost of calling a client built as a JDK proxy with a client built as a generated stub.
+ * the dispatch strategy completes the calls without sending them, so only the client side of the call is measured.
+ * run with the benchmarks profile: mvn -P benchmarks test-compile, then run main from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClientInvocationBenchmark {
+
+  public interface EchoService extends Service {
+    ComposableFuture<String> echo(String message);
+    ComposableFuture<Integer> add(int first, int second);
+    ComposableFuture<String> ping();
+  }
+
+  @Param({"false", "true"})
+  public boolean generatedStub;
+
+  private EchoService client;
+
+  @Setup
+  public void setup() {
+    client = new ClientBuilder<>(EchoService.class).
+      useGeneratedStub(generatedStub).
+      setDispatchStrategy(new CompletedDispatchStrategy()).
+      setTargetProvider(new SimpleTargetProvider("http://localhost:8080/echo")).
+      build();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ((Closeable) client).close();
+  }
+
+  @Benchmark
+  public ComposableFuture<String> echo() {
+    return client.echo("hello");
+  }
+
+  @Benchmark
+  public ComposableFuture<Integer> add() {
+    return client.add(1, 2);
+  }
+
+  @Benchmark
+  public ComposableFuture<String> ping() {
+    return client.ping();
+  }
+
+  /**
+   * completes every call with a null value, without invoking the dispatch action.
+   */
+  private static final class CompletedDispatchStrategy implements DispatchStrategy {
+    private static final ComposableFuture<Object> COMPLETED = ComposableFutures.fromNull();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> ComposableFuture<T> dispatchAsync(final EndpointDescription endpointDescription,
+                                                 final TargetProvider targetProvider,
+                                                 final DispatchAction<ComposableFuture<T>> dispatchAction) {
+      return (ComposableFuture<T>) COMPLETED;
+    }
+
+    @Override
+    public <T> Observable<T> dispatchStream(final EndpointDescription endpointDescription,
+                                            final TargetProvider targetProvider,
+                                            final DispatchAction<Observable<T>> dispatchAction) {
+      return Observable.empty();
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ClientInvocationBenchmark.class.getSimpleName()).build()).run();
+  }
+}
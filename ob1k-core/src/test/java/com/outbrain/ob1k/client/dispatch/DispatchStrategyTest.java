@@ -4,6 +4,7 @@ import com.outbrain.ob1k.client.endpoints.AbstractClientEndpoint;
 import com.outbrain.ob1k.client.endpoints.AsyncClientEndpoint;
 import com.outbrain.ob1k.client.endpoints.DispatchAction;
 import com.outbrain.ob1k.client.endpoints.StreamClientEndpoint;
+import com.outbrain.ob1k.client.targets.FeedbackTargetProvider;
 import com.outbrain.ob1k.client.targets.TargetProvider;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
 import org.junit.Test;
@@ -17,7 +18,11 @@ import static java.util.Collections.nCopies;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static rx.Observable.just;
 
@@ -116,6 +121,50 @@ public class DispatchStrategyTest {
     assertEquals("double dispatch should not occur", 1, invokeCounter.get());
   }
 
+  @Test
+  public void testFeedbackTargetProviderIsToldAboutAsyncCalls() throws Exception {
+    final AsyncClientEndpoint clientEndpoint = createAsyncClientEndpoint(new AtomicInteger());
+    final DispatchAction dispatchAction = clientEndpoint.createDispatchAction(PARAMS);
+    final FeedbackTargetProvider targetProvider = createFeedbackTargetProvider();
+
+    final ComposableFuture dispatchFuture = (ComposableFuture) clientEndpoint.dispatch(targetProvider,
+      DefaultDispatchStrategy.INSTANCE, dispatchAction);
+
+    assertEquals("hello world", dispatchFuture.get());
+    verify(targetProvider).onRequestStart(FAKE_REMOTE);
+    verify(targetProvider).onRequestComplete(eq(FAKE_REMOTE), anyLong(), eq(true));
+  }
+
+  @Test
+  public void testFeedbackTargetProviderIsToldAboutFailedStreamCalls() throws Exception {
+    final StreamClientEndpoint clientEndpoint = createStreamClientEndpoint(remoteTarget ->
+      Observable.error(new RuntimeException("failed")));
+    final DispatchAction dispatchAction = clientEndpoint.createDispatchAction(PARAMS);
+    final FeedbackTargetProvider targetProvider = createFeedbackTargetProvider();
+
+    final Observable<?> observable = (Observable<?>) clientEndpoint.dispatch(targetProvider,
+      DefaultDispatchStrategy.INSTANCE, dispatchAction);
+
+    verify(targetProvider, never()).onRequestStart(FAKE_REMOTE);
+    observable.onErrorResumeNext(Observable.empty()).toBlocking().firstOrDefault(null);
+    verify(targetProvider).onRequestStart(FAKE_REMOTE);
+    verify(targetProvider).onRequestComplete(eq(FAKE_REMOTE), anyLong(), eq(false));
+  }
+
+  @Test
+  public void testFeedbackTargetProviderIsToldAboutUnsubscribedStreamCalls() throws Exception {
+    final StreamClientEndpoint clientEndpoint = createStreamClientEndpoint(remoteTarget -> Observable.never());
+    final DispatchAction dispatchAction = clientEndpoint.createDispatchAction(PARAMS);
+    final FeedbackTargetProvider targetProvider = createFeedbackTargetProvider();
+
+    final Observable<?> observable = (Observable<?>) clientEndpoint.dispatch(targetProvider,
+      DefaultDispatchStrategy.INSTANCE, dispatchAction);
+
+    observable.subscribe().unsubscribe();
+    verify(targetProvider).onRequestStart(FAKE_REMOTE);
+    verify(targetProvider).onRequestComplete(eq(FAKE_REMOTE), anyLong(), eq(false));
+  }
+
   private static AsyncClientEndpoint createAsyncClientEndpoint(final AtomicInteger invokeCounter) {
     return createAsyncClientEndpoint(remoteTarget -> {
       invokeCounter.incrementAndGet();
@@ -149,6 +198,12 @@ public class DispatchStrategyTest {
     return clientMock;
   }
 
+  private static FeedbackTargetProvider createFeedbackTargetProvider() {
+    final FeedbackTargetProvider targetProvider = mock(FeedbackTargetProvider.class);
+    when(targetProvider.provideTarget()).thenReturn(FAKE_REMOTE);
+    return targetProvider;
+  }
+
   private static TargetProvider createTargetProvider() {
     final TargetProvider targetProvider = mock(TargetProvider.class);
 
@@ -0,0 +1,179 @@
+package com.outbrain.ob1k.client.endpoints;
+
+import com.outbrain.ob1k.HttpRequestMethodType;
+import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.client.dispatch.DefaultDispatchStrategy;
+import com.outbrain.ob1k.client.dispatch.DispatchStrategy;
+import com.outbrain.ob1k.client.targets.TargetProvider;
+import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.common.marshalling.TypeHelper;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.http.common.ContentType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CollapsingClientEndpointTest {
+
+  private static final String FAKE_REMOTE = "http://my.service";
+
+  private interface ValuesService extends Service {
+    ComposableFuture<String> get(Integer id);
+    ComposableFuture<Map<Integer, String>> getBulk(List<Integer> ids);
+  }
+
+  private final List<Collection<?>> bulkCalls = new CopyOnWriteArrayList<>();
+  private volatile boolean failBulkCalls;
+  private AsyncClientEndpoint bulkEndpoint;
+  private TargetProvider targetProvider;
+
+  @Before
+  public void setup() throws Exception {
+    bulkEndpoint = mock(AsyncClientEndpoint.class);
+    when(bulkEndpoint.getEndpointDescription()).thenReturn(description(method("getBulk", List.class)));
+    when(bulkEndpoint.createDispatchAction(any(Object[].class))).thenAnswer(invocation -> {
+      final Collection<?> ids = (Collection<?>) ((Object[]) invocation.getArguments()[0])[0];
+      return (DispatchAction<ComposableFuture<Map<Integer, String>>>) remoteTarget -> bulkValues(ids);
+    });
+    when(bulkEndpoint.dispatch(any(TargetProvider.class), any(DispatchStrategy.class), any(DispatchAction.class))).
+      thenAnswer(invocation -> ((DispatchAction) invocation.getArguments()[2]).invoke(FAKE_REMOTE));
+
+    targetProvider = mock(TargetProvider.class);
+    when(targetProvider.provideTarget()).thenReturn(FAKE_REMOTE);
+  }
+
+  @Test
+  public void testConcurrentCallsAreCollapsed() throws Exception {
+    final CollapsingClientEndpoint endpoint = createEndpoint(100, 20);
+
+    final ComposableFuture<String> first = get(endpoint, 1);
+    final ComposableFuture<String> second = get(endpoint, 2);
+    final ComposableFuture<String> again = get(endpoint, 1);
+    final ComposableFuture<String> missing = get(endpoint, 0);
+
+    assertEquals("value1", first.get());
+    assertEquals("value2", second.get());
+    assertEquals("value1", again.get());
+    assertNull("a key missing from the bulk response should get null", missing.get());
+    assertEquals("the calls should be sent in one bulk call", 1, bulkCalls.size());
+    assertEquals("each key should be sent once", Arrays.asList(1, 2, 0), new ArrayList<>(bulkCalls.get(0)));
+  }
+
+  @Test
+  public void testFullBatchIsSentAtOnce() throws Exception {
+    final CollapsingClientEndpoint endpoint = createEndpoint(2, 200);
+
+    final ComposableFuture<String> first = get(endpoint, 1);
+    final ComposableFuture<String> second = get(endpoint, 2);
+    final ComposableFuture<String> third = get(endpoint, 3);
+
+    assertEquals("the full batch shouldn't wait", 1, bulkCalls.size());
+    assertEquals("value1", first.get());
+    assertEquals("value2", second.get());
+
+    assertEquals("the next batch should be sent after the wait time", "value3", third.get());
+    assertEquals(2, bulkCalls.size());
+  }
+
+  @Test
+  public void testFailedBulkCallFailsAllCalls() throws Exception {
+    failBulkCalls = true;
+    final CollapsingClientEndpoint endpoint = createEndpoint(100, 10);
+
+    final ComposableFuture<String> first = get(endpoint, 1);
+    final ComposableFuture<String> second = get(endpoint, 2);
+
+    assertFailed(first);
+    assertFailed(second);
+    assertEquals(1, bulkCalls.size());
+  }
+
+  @Test
+  public void testDispatchActionCallsTheBulkEndpointAlone() throws Exception {
+    final CollapsingClientEndpoint endpoint = createEndpoint(100, 10);
+
+    @SuppressWarnings("unchecked")
+    final DispatchAction<ComposableFuture<String>> action = endpoint.createDispatchAction(new Object[] {7});
+
+    assertEquals("value7", action.invoke(FAKE_REMOTE).get());
+    assertEquals(Arrays.asList(7), new ArrayList<>(bulkCalls.get(0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBulkMethodMustReturnMap() throws Exception {
+    final AsyncClientEndpoint notBulk = mock(AsyncClientEndpoint.class);
+    when(notBulk.getEndpointDescription()).thenReturn(description(method("get", Integer.class)));
+    new CollapsingClientEndpoint(null, registry(), description(method("get", Integer.class)), notBulk, 10, 10, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ComposableFuture<String> get(final CollapsingClientEndpoint endpoint, final Integer id) {
+    final DispatchAction action = endpoint.createDispatchAction(new Object[] {id});
+    return (ComposableFuture<String>) endpoint.dispatch(targetProvider, DefaultDispatchStrategy.INSTANCE, action);
+  }
+
+  private ComposableFuture<Map<Integer, String>> bulkValues(final Collection<?> ids) {
+    bulkCalls.add(ids);
+    if (failBulkCalls) {
+      return fromError(new RuntimeException("bulk call failed"));
+    }
+
+    final Map<Integer, String> values = new HashMap<>();
+    for (final Object id : ids) {
+      if (!id.equals(0)) {
+        values.put((Integer) id, "value" + id);
+      }
+    }
+    return fromValue(values);
+  }
+
+  private CollapsingClientEndpoint createEndpoint(final int maxBatchSize, final long maxWaitMs) throws Exception {
+    return new CollapsingClientEndpoint(null, registry(), description(method("get", Integer.class)), bulkEndpoint,
+      maxBatchSize, maxWaitMs, null);
+  }
+
+  private static void assertFailed(final ComposableFuture<String> future) throws InterruptedException {
+    try {
+      future.get();
+      fail("the call should fail with its bulk call");
+    } catch (final ExecutionException e) {
+      assertTrue(e.getCause().getMessage().contains("bulk call failed"));
+    }
+  }
+
+  private static Method method(final String name, final Class<?> paramType) throws NoSuchMethodException {
+    return ValuesService.class.getDeclaredMethod(name, paramType);
+  }
+
+  private static EndpointDescription description(final Method method) {
+    return new EndpointDescription(method, ValuesService.class, ContentType.JSON, method.getName(),
+      HttpRequestMethodType.ANY);
+  }
+
+  private static RequestMarshallerRegistry registry() {
+    final RequestMarshallerRegistry registry = new RequestMarshallerRegistry();
+    for (final Method method : ValuesService.class.getDeclaredMethods()) {
+      registry.registerTypes(TypeHelper.extractTypes(method));
+    }
+    return registry;
+  }
+}
@@ -0,0 +1,59 @@
+package com.outbrain.ob1k.client.endpoints;
+
+import com.outbrain.ob1k.HttpRequestMethodType;
+import com.outbrain.ob1k.Service;
+import com.outbrain.ob1k.common.marshalling.BinaryRequestMarshaller;
+import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.common.marshalling.TypeHelper;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.ContentType;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InvocationPlanTest {
+
+  private interface UserService extends Service {
+    ComposableFuture<TypedResponse<String>> update(int id, String name, String value);
+    ComposableFuture<String> hello(String name);
+  }
+
+  @Test
+  public void testPathParamsAreBoundBySlot() throws Exception {
+    final InvocationPlan plan = plan(UserService.class.getDeclaredMethod("update", int.class, String.class, String.class),
+      ContentType.JSON, "users/{id}/{name}");
+
+    assertArrayEquals(new String[] {"id", "name"}, plan.getPathParams());
+    assertArrayEquals(new Object[] {"value"}, plan.bodyValues(new Object[] {1, "name", "value"}));
+    assertArrayEquals(new Object[0], plan.bodyValues(new Object[] {1, "name"}));
+    assertArrayEquals(new Object[0], plan.bodyValues(null));
+    assertTrue(plan.isTypedResponse());
+    assertEquals(String.class, plan.getValueType());
+    assertNull(plan.getSchemaHash());
+  }
+
+  @Test
+  public void testBinarySchemaHashIsResolvedOnce() throws Exception {
+    final Method method = UserService.class.getDeclaredMethod("hello", String.class);
+    final InvocationPlan plan = plan(method, ContentType.COMPACT_BINARY, "hello");
+
+    assertEquals(0, plan.getPathParams().length);
+    assertFalse(plan.isTypedResponse());
+    assertEquals(String.class, plan.getValueType());
+    assertEquals(((BinaryRequestMarshaller) plan.getRequestMarshaller()).schemaHash(method), plan.getSchemaHash());
+  }
+
+  private static InvocationPlan plan(final Method method, final ContentType contentType, final String path) {
+    final RequestMarshallerRegistry registry = new RequestMarshallerRegistry();
+    registry.registerTypes(TypeHelper.extractTypes(method));
+    return new InvocationPlan(new EndpointDescription(method, UserService.class, contentType, path,
+      HttpRequestMethodType.ANY), registry);
+  }
+}
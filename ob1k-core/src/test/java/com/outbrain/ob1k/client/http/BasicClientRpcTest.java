@@ -2,6 +2,7 @@ package com.outbrain.ob1k.client.http;
 
 import com.outbrain.ob1k.Service;
 import com.outbrain.ob1k.client.ClientBuilder;
+import com.outbrain.ob1k.client.ClientStub;
 import com.outbrain.ob1k.client.Clients;
 import com.outbrain.ob1k.client.ctx.AsyncClientRequestContext;
 import com.outbrain.ob1k.client.targets.SimpleTargetProvider;
@@ -22,8 +23,10 @@ import rx.Observable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
@@ -142,6 +145,7 @@ public class BasicClientRpcTest {
 
     final IHelloService jsonClient = createClient(ContentType.JSON, port);
     final IHelloService msgPackClient = createClient(ContentType.MESSAGE_PACK, port);
+    final IHelloService binaryClient = createClient(ContentType.COMPACT_BINARY, port);
 
     final List<TestBean> beans = createBeans();
 
@@ -155,6 +159,12 @@ public class BasicClientRpcTest {
       final List<TestBean> resBeans2 = result2.get();
       Assert.assertEquals(resBeans2.size(), beans.size());
       Assert.assertEquals(resBeans2.get(0).getAge(), beans.get(0).getAge() + 1);
+
+      final ComposableFuture<List<TestBean>> result3 = binaryClient.increaseAge(beans, "programming");
+      final List<TestBean> resBeans3 = result3.get();
+      Assert.assertEquals(resBeans3.size(), beans.size());
+      Assert.assertEquals(resBeans3.get(0).getAge(), beans.get(0).getAge() + 1);
+      Assert.assertEquals(resBeans3.get(0).getHabits(), Arrays.asList("eating", "sleeping", "programming"));
     } catch (InterruptedException | ExecutionException e) {
       Assert.fail(e.getMessage());
     }
@@ -224,6 +234,41 @@ public class BasicClientRpcTest {
     testStream(ContentType.MESSAGE_PACK);
   }
 
+  @Test
+  public void testStreamBinary() {
+    testStream(ContentType.COMPACT_BINARY);
+  }
+
+  @Test
+  public void testGeneratedStub() throws Exception {
+    final IHelloService client = new ClientBuilder<>(IHelloService.class).
+      useGeneratedStub(true).
+      setRequestTimeout(120000). // heavily loaded testing environment.
+      setTargetProvider(new SimpleTargetProvider("http://localhost:" + port + CTX_PATH + HELLO_SERVICE_PATH)).
+      build();
+
+    Assert.assertTrue("client should be generated", client instanceof ClientStub);
+    Assert.assertEquals("hello world", client.helloWorld().get());
+    Assert.assertEquals("hello haim", client.hello("haim").get());
+    Assert.assertTrue(client.sleep(1).get());
+
+    final List<String> results = new ArrayList<>();
+    client.getMessages("moshe", 3, false).toBlocking().forEach(results::add);
+    Assert.assertEquals(Arrays.asList("hello moshe #0", "hello moshe #1", "hello moshe #2"), results);
+
+    ((Closeable) client).close();
+  }
+
+  @Test
+  public void testGeneratedStubFallsBackToProxyForPrivateInterfaces() {
+    final HelloServiceClient client = new ClientBuilder<>(HelloServiceClient.class).
+      useGeneratedStub(true).
+      setTargetProvider(new SimpleTargetProvider("http://localhost:" + port + CTX_PATH + HELLO_SERVICE_PATH)).
+      build();
+
+    Assert.assertTrue("client should be a proxy", Proxy.isProxyClass(client.getClass()));
+  }
+
   private void testStream(final ContentType contentType) {
     final IHelloService client = createClient(contentType, port);
     final int SIZE = 10;
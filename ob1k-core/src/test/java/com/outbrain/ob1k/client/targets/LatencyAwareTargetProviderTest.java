@@ -0,0 +1,106 @@
+package com.outbrain.ob1k.client.targets;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyAwareTargetProviderTest {
+
+  private static final String FAST = "http://fast:8080/service";
+  private static final String SLOW = "http://slow:8080/service";
+  private static final int CALLS = 1000;
+
+  @Test
+  public void testPrefersTheFasterTarget() {
+    final LatencyAwareTargetProvider targetProvider = new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW));
+    final Map<String, Integer> counts = new HashMap<>();
+
+    for (int i = 0; i < CALLS; i++) {
+      final String target = targetProvider.provideTarget();
+      counts.merge(target, 1, Integer::sum);
+      targetProvider.onRequestStart(target);
+      targetProvider.onRequestComplete(target, TimeUnit.MILLISECONDS.toNanos(FAST.equals(target) ? 1 : 50), true);
+    }
+
+    assertTrue("the fast target should get most calls: " + counts, counts.get(FAST) > CALLS * 0.9);
+    assertTrue("the slow target should still get calls: " + counts, counts.getOrDefault(SLOW, 0) > 0);
+  }
+
+  @Test
+  public void testOutstandingCallsShiftTheLoad() {
+    final LatencyAwareTargetProvider targetProvider = new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW));
+    // e.g. a target in a gc pause, its calls pile up with no response
+    for (int i = 0; i < 10; i++) {
+      targetProvider.onRequestStart(SLOW);
+    }
+
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(FAST, targetProvider.provideTarget());
+    }
+  }
+
+  @Test
+  public void testFailuresArePenalized() {
+    final LatencyAwareTargetProvider targetProvider = new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW));
+    targetProvider.onRequestStart(SLOW);
+    targetProvider.onRequestComplete(SLOW, 1, false);
+    targetProvider.onRequestStart(FAST);
+    targetProvider.onRequestComplete(FAST, TimeUnit.MILLISECONDS.toNanos(10), true);
+
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(FAST, targetProvider.provideTarget());
+    }
+  }
+
+  @Test
+  public void testDuplicatedTargetsAreWeighted() {
+    final LatencyAwareTargetProvider targetProvider =
+      new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW, SLOW, SLOW, SLOW));
+    assertEquals(Arrays.asList(FAST, SLOW), targetProvider.getTargets());
+
+    // the same latency and load, the heavier target is cheaper
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(SLOW, targetProvider.provideTarget());
+    }
+  }
+
+  @Test
+  public void testProvidesDifferentTargets() {
+    final LatencyAwareTargetProvider targetProvider = new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW));
+
+    for (int i = 0; i < CALLS; i++) {
+      final List<String> targets = targetProvider.provideTargets(2);
+      assertNotEquals(targets.get(0), targets.get(1));
+    }
+
+    assertEquals(Arrays.asList(FAST, FAST, FAST),
+      new LatencyAwareTargetProvider("service", Collections.singletonList(FAST)).provideTargets(3));
+  }
+
+  @Test
+  public void testUpdatedTargetsKeepTheirStats() {
+    final LatencyAwareTargetProvider targetProvider = new LatencyAwareTargetProvider("service", Arrays.asList(FAST, SLOW));
+    targetProvider.onRequestStart(SLOW);
+    targetProvider.onRequestComplete(SLOW, TimeUnit.SECONDS.toNanos(1), true);
+
+    targetProvider.setTargets(Arrays.asList(SLOW, FAST, "http://new:8080/service"));
+
+    for (int i = 0; i < CALLS; i++) {
+      assertNotEquals(SLOW, targetProvider.provideTarget());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoTargets() {
+    new LatencyAwareTargetProvider("service").provideTarget();
+  }
+}
@@ -0,0 +1,223 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.outbrain.ob1k.HttpRequestMethodType;
+import com.outbrain.ob1k.Request;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.common.ContentType;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BinaryRequestMarshallerTest {
+
+  private final BinaryRequestMarshaller marshaller = new BinaryRequestMarshaller();
+
+  @Rule
+  public final ExpectedException expectedException = ExpectedException.none();
+
+  public enum Kind { SMALL, LARGE }
+
+  public static class Node {
+    private int id;
+    private long timestamp;
+    private String name;
+    private Boolean flag;
+    private double score;
+    private Kind kind;
+    private byte[] data;
+    private int[] numbers;
+    private List<String> tags;
+    private Set<Kind> kinds;
+    private Map<String, Integer> counts;
+    private Node child;
+  }
+
+  public static class LabeledNode extends Node {
+    private String label;
+  }
+
+  public static class Entity {
+    public long id;
+    public long createdAt;
+    public int visits;
+    public String name;
+    public String description;
+    public List<String> tags;
+  }
+
+  public interface NodeService {
+    ComposableFuture<Node> update(Node node, List<Integer> ids, String name);
+  }
+
+  @Test
+  public void testResponseRoundTrip() throws IOException {
+    final Node node = createNode();
+    node.child = createNode();
+    node.child.name = null;
+    node.child.tags = Arrays.asList("a", null, "c");
+
+    final Node result = marshaller.unmarshallResponse(response(marshallResponse(node)), Node.class);
+
+    assertNode(node, result);
+    assertNode(node.child, result.child);
+    assertNull(result.child.child);
+  }
+
+  @Test
+  public void testNullResponse() throws IOException {
+    assertNull(marshaller.unmarshallResponse(response(marshallResponse(null)), Node.class));
+  }
+
+  @Test
+  public void testRequestParamsRoundTrip() throws Exception {
+    final Method method = NodeService.class.getMethod("update", Node.class, List.class, String.class);
+    final byte[] body = marshaller.marshallRequestParams(new Object[] {createNode(), Arrays.asList(1, -2, 300), null});
+    final Request request = request(body, marshaller.schemaHash(method));
+
+    final Object[] params = marshaller.unmarshallRequestParams(request, method, new String[] {"node", "ids", "name"});
+
+    assertNode(createNode(), (Node) params[0]);
+    assertEquals(Arrays.asList(1, -2, 300), params[1]);
+    assertNull(params[2]);
+  }
+
+  @Test
+  public void testSchemaMismatch() throws Exception {
+    final Method method = NodeService.class.getMethod("update", Node.class, List.class, String.class);
+    final byte[] body = marshaller.marshallRequestParams(new Object[] {createNode(), Collections.emptyList(), "name"});
+    final Request request = request(body, "0badbeef");
+
+    expectedException.expect(IOException.class);
+    expectedException.expectMessage("schema mismatch");
+    marshaller.unmarshallRequestParams(request, method, new String[] {"node", "ids", "name"});
+  }
+
+  @Test
+  public void testSmallerThanJsonAndMessagePack() throws IOException {
+    final List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final Entity entity = new Entity();
+      entity.id = 1000000L + i * 7919;
+      entity.createdAt = 1445421212000L + i * 1000;
+      entity.visits = i * 10;
+      entity.name = "entity-" + i;
+      entity.tags = new ArrayList<>(Arrays.asList("eating", "sleeping"));
+      entities.add(entity);
+    }
+
+    final MessagePackRequestMarshaller messagePackMarshaller = new MessagePackRequestMarshaller();
+    messagePackMarshaller.registerTypes(Entity.class);
+
+    final int binarySize = marshaller.marshallResponse(entities, HttpResponseStatus.OK).content().readableBytes();
+    final int jsonSize = new JsonRequestMarshaller().marshallResponse(entities, HttpResponseStatus.OK).content().readableBytes();
+    final int messagePackSize = messagePackMarshaller.marshallResponse(entities, HttpResponseStatus.OK).content().readableBytes();
+
+    assertTrue("binary size " + binarySize + " should be smaller than json size " + jsonSize, binarySize < jsonSize);
+    assertTrue("binary size " + binarySize + " should be smaller than message pack size " + messagePackSize,
+      binarySize < messagePackSize);
+  }
+
+  @Test
+  public void testSubclassOfADeclaredBeanIsRejected() throws Exception {
+    final LabeledNode node = new LabeledNode();
+    node.label = "label";
+
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage(LabeledNode.class.getName());
+    marshaller.marshallRequestParams(new Object[] {node, Collections.emptyList(), "name"});
+  }
+
+  @Test
+  public void testSubclassElementOfADeclaredBeanIsRejected() throws IOException {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage(LabeledNode.class.getName());
+    marshallResponse(Arrays.asList(createNode(), new LabeledNode()));
+  }
+
+  @Test
+  public void testTruncatedResponse() throws IOException {
+    final byte[] body = marshallResponse(createNode());
+
+    expectedException.expect(IOException.class);
+    marshaller.unmarshallResponse(response(Arrays.copyOf(body, body.length - 1)), Node.class);
+  }
+
+  private byte[] marshallResponse(final Object value) throws IOException {
+    final ByteBuf content = marshaller.marshallResponse(value, HttpResponseStatus.OK).content();
+    final byte[] body = new byte[content.readableBytes()];
+    content.readBytes(body);
+    return body;
+  }
+
+  private static Node createNode() {
+    final Node node = new Node();
+    node.id = -17;
+    node.timestamp = 1445421212000L;
+    node.name = "node";
+    node.score = 0.75;
+    node.kind = Kind.LARGE;
+    node.data = new byte[] {1, 2, 3};
+    node.numbers = new int[] {Integer.MIN_VALUE, 0, Integer.MAX_VALUE};
+    node.tags = Arrays.asList("first", "second");
+    node.kinds = Collections.singleton(Kind.SMALL);
+    node.counts = new HashMap<>();
+    node.counts.put("one", 1);
+    node.counts.put("none", null);
+    return node;
+  }
+
+  private static void assertNode(final Node expected, final Node actual) {
+    assertEquals(expected.id, actual.id);
+    assertEquals(expected.timestamp, actual.timestamp);
+    assertEquals(expected.name, actual.name);
+    assertEquals(expected.flag, actual.flag);
+    assertEquals(expected.score, actual.score, 0);
+    assertEquals(expected.kind, actual.kind);
+    assertArrayEquals(expected.data, actual.data);
+    assertArrayEquals(expected.numbers, actual.numbers);
+    assertEquals(expected.tags, actual.tags);
+    assertEquals(expected.kinds, actual.kinds);
+    assertEquals(expected.counts, actual.counts);
+  }
+
+  private static Response response(final byte[] body) throws IOException {
+    final Response response = mock(Response.class);
+    when(response.getStatusCode()).thenReturn(HttpResponseStatus.OK.code());
+    when(response.getContentType()).thenReturn(ContentType.COMPACT_BINARY.responseEncoding());
+    when(response.hasResponseBody()).thenReturn(true);
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(ByteBuffer.wrap(body));
+    return response;
+  }
+
+  private static Request request(final byte[] body, final String schemaHash) {
+    final Request request = mock(Request.class);
+    when(request.getMethod()).thenReturn(HttpRequestMethodType.POST);
+    when(request.getHeader(BinaryRequestMarshaller.SCHEMA_HEADER)).thenReturn(schemaHash);
+    when(request.getPathParams()).thenReturn(Collections.emptyMap());
+    when(request.getContentLength()).thenReturn((long) body.length);
+    when(request.getRequestInputStream()).thenReturn(new ByteArrayInputStream(body));
+    return request;
+  }
+}
@@ -0,0 +1,123 @@
+package com.outbrain.ob1k.common.marshalling;
+
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChunkFrameDecoderTest {
+
+  private final JsonRequestMarshaller marshaller = new JsonRequestMarshaller();
+
+  @Test
+  public void testDelimitedChunksAcrossParts() throws IOException {
+    final String body = element("first") + element("second") + element("third");
+    final List<Response> parts = split(body, 7, false);
+
+    assertEquals(Arrays.asList("first", "second", "third"), decode(parts));
+  }
+
+  @Test
+  public void testLengthPrefixedChunksAcrossParts() throws IOException {
+    // a newline inside an element, as a binary element may have
+    final byte[] first = (ChunkHeader.ELEMENT_HEADER + "\n\"first\"\n").getBytes(StandardCharsets.UTF_8);
+    final byte[] second = element("second").getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer body = ByteBuffer.allocate(8 + first.length + second.length);
+    body.putInt(first.length).put(first).putInt(second.length).put(second);
+
+    final List<Response> parts = split(new String(body.array(), StandardCharsets.ISO_8859_1), 5, true);
+
+    assertEquals(Arrays.asList("first", "second"), decode(parts));
+  }
+
+  @Test
+  public void testErrorChunk() throws IOException {
+    final String body = element("first") + ChunkHeader.ERROR_HEADER + "failed";
+    final TestSubscriber<String> subscriber = new TestSubscriber<>();
+    values(split(body, 3, false)).subscribe(subscriber);
+
+    subscriber.assertValues("first");
+    assertEquals(1, subscriber.getOnErrorEvents().size());
+    assertEquals("failed", subscriber.getOnErrorEvents().get(0).getMessage());
+  }
+
+  @Test
+  public void testChunksAreDecodedOnDemand() throws IOException {
+    final String body = element("first") + element("second");
+    final TestSubscriber<TypedResponse<String>> subscriber = new TestSubscriber<>(0);
+    Observable.from(split(body, body.length(), false)).
+      lift(new ChunkFrameDecoder<String>(String.class, streamStrategy())).
+      subscribe(subscriber);
+
+    assertEquals(0, subscriber.getOnNextEvents().size());
+    subscriber.requestMore(1);
+    assertEquals(1, subscriber.getOnNextEvents().size());
+    subscriber.requestMore(1);
+    assertEquals(2, subscriber.getOnNextEvents().size());
+    subscriber.assertCompleted();
+  }
+
+  private List<String> decode(final List<Response> parts) {
+    return values(parts).toList().toBlocking().single();
+  }
+
+  private Observable<String> values(final List<Response> parts) {
+    return Observable.from(parts).
+      lift(new ChunkFrameDecoder<String>(String.class, streamStrategy())).
+      flatMap(response -> {
+        try {
+          return Observable.just(response.getTypedBody());
+        } catch (final IOException e) {
+          return Observable.error(e);
+        }
+      });
+  }
+
+  private MarshallingStrategy streamStrategy() {
+    return new MarshallingStrategy() {
+      @Override
+      public <T> T unmarshall(final Type type, final Response response) throws IOException {
+        return marshaller.unmarshallStreamResponse(response, type);
+      }
+
+      @Override
+      public byte[] marshall(final Object value) throws IOException {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static String element(final String value) {
+    return ChunkHeader.ELEMENT_HEADER + "\"" + value + "\"\n";
+  }
+
+  private static List<Response> split(final String body, final int partSize, final boolean lengthFraming) throws IOException {
+    final byte[] bytes = body.getBytes(lengthFraming ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    final List<Response> parts = new ArrayList<>();
+    for (int offset = 0; offset < bytes.length; offset += partSize) {
+      final Response part = mock(Response.class);
+      when(part.getStatusCode()).thenReturn(200);
+      when(part.getContentType()).thenReturn("application/json; charset=UTF-8");
+      when(part.getHeader(ChunkHeader.FRAMING_HEADER)).thenReturn(lengthFraming ? ChunkHeader.LENGTH_FRAMING : null);
+      when(part.getResponseBodyAsByteBuffer()).thenReturn(
+        ByteBuffer.wrap(bytes, offset, Math.min(partSize, bytes.length - offset)).slice());
+      parts.add(part);
+    }
+
+    return parts;
+  }
+}
@@ -8,7 +8,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
@@ -56,11 +58,29 @@ public class JsonRequestMarshallerTest {
     jsonRequestMarshaller.unmarshallResponse(response, TestBody.class);
   }
 
+  @Test
+  public void testUnmarshallStreamElement() throws IOException {
+    final String body = "{\"prop\":\"value\"}";
+    final Response response = mockResponse(HttpResponseStatus.OK.code(), ChunkHeader.ELEMENT_HEADER + body);
+    final TestBody result = jsonRequestMarshaller.unmarshallStreamResponse(response, TestBody.class);
+    assertEquals("value", result.getProp());
+  }
+
+  @Test
+  public void testUnmarshallStreamError() throws IOException {
+    final Response response = mockResponse(HttpResponseStatus.OK.code(), ChunkHeader.ERROR_HEADER + "failed");
+    expectedException.expect(RuntimeException.class);
+    expectedException.expectMessage("failed");
+    jsonRequestMarshaller.unmarshallStreamResponse(response, TestBody.class);
+  }
+
   private Response mockResponse(final int statusCode, final String body) throws IOException {
     final Response response = mock(Response.class);
     when(response.getStatusCode()).thenReturn(statusCode);
     when(response.getResponseBody()).thenReturn(body);
     when(response.getResponseBodyAsBytes()).thenReturn(body == null ? null : body.getBytes());
+    when(response.getResponseBodyAsStream()).thenReturn(body == null ? null : new ByteArrayInputStream(body.getBytes()));
+    when(response.getResponseBodyAsByteBuffer()).thenReturn(body == null ? null : ByteBuffer.wrap(body.getBytes()));
     when(response.hasResponseBody()).thenReturn(true);
     return response;
   }
@@ -0,0 +1,232 @@
+package com.outbrain.ob1k.common.marshalling.benchmarks;
+
+import com.outbrain.ob1k.common.marshalling.RequestMarshaller;
+import com.outbrain.ob1k.common.marshalling.RequestMarshallerRegistry;
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.common.ContentType;
+import com.outbrain.ob1k.http.common.Cookie;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the cost of marshalling and unmarshalling a response of the json, message pack and compact binary
+ * protocols. the sizes of the marshalled responses are printed before the run.
+ * run with the benchmarks profile: mvn -P benchmarks test-compile, then run main from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MarshallerBenchmark {
+
+  public static class Entity {
+    public long id;
+    public long createdAt;
+    public int visits;
+    public double score;
+    public String name;
+    public String description;
+    public List<String> tags;
+  }
+
+  private static final Type ENTITIES_TYPE = entitiesType();
+
+  @Param({"JSON", "MESSAGE_PACK", "COMPACT_BINARY"})
+  public ContentType protocol;
+
+  private RequestMarshaller marshaller;
+  private List<Entity> entities;
+  private Response response;
+
+  @Setup
+  public void setup() throws IOException {
+    final RequestMarshallerRegistry registry = new RequestMarshallerRegistry();
+    registry.registerTypes(ENTITIES_TYPE);
+    marshaller = registry.getMarshaller(protocol.requestEncoding());
+    entities = createEntities();
+    response = new BodyResponse(protocol, marshall(marshaller, entities));
+  }
+
+  @Benchmark
+  public FullHttpResponse marshallResponse() throws IOException {
+    return marshaller.marshallResponse(entities, HttpResponseStatus.OK);
+  }
+
+  @Benchmark
+  public List<Entity> unmarshallResponse() throws IOException {
+    return marshaller.unmarshallResponse(response, ENTITIES_TYPE);
+  }
+
+  private static Type entitiesType() {
+    try {
+      return MarshallerBenchmark.class.getDeclaredField("entities").getGenericType();
+    } catch (final NoSuchFieldException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<Entity> createEntities() {
+    final List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final Entity entity = new Entity();
+      entity.id = 1000000L + i * 7919;
+      entity.createdAt = 1445421212000L + i * 1000;
+      entity.visits = i * 10;
+      entity.score = i / 3.0;
+      entity.name = "entity-" + i;
+      entity.description = i % 2 == 0 ? null : "the description of entity " + i;
+      entity.tags = Arrays.asList("first", "second", "third");
+      entities.add(entity);
+    }
+
+    return entities;
+  }
+
+  private static byte[] marshall(final RequestMarshaller marshaller, final Object value) throws IOException {
+    final ByteBuf content = marshaller.marshallResponse(value, HttpResponseStatus.OK).content();
+    final byte[] body = new byte[content.readableBytes()];
+    content.readBytes(body);
+    return body;
+  }
+
+  /**
+   * a successful response holding a body.
+   */
+  private static final class BodyResponse implements Response {
+    private final ContentType contentType;
+    private final byte[] body;
+
+    private BodyResponse(final ContentType contentType, final byte[] body) {
+      this.contentType = contentType;
+      this.body = body;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return HttpResponseStatus.OK.code();
+    }
+
+    @Override
+    public String getStatusText() {
+      return HttpResponseStatus.OK.reasonPhrase();
+    }
+
+    @Override
+    public URI getUri() {
+      return URI.create(getUrl());
+    }
+
+    @Override
+    public String getUrl() {
+      return "http://localhost/benchmark";
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType.responseEncoding();
+    }
+
+    @Override
+    public byte[] getResponseBodyAsBytes() {
+      return body;
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public ByteBuffer getResponseBodyAsByteBuffer() {
+      return ByteBuffer.wrap(body);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public String getResponseBody() {
+      return new String(body, CharsetUtil.UTF_8);
+    }
+
+    @Override
+    public String getHeader(final String name) {
+      return null;
+    }
+
+    @Override
+    public List<String> getHeaders(final String name) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean isRedirected() {
+      return false;
+    }
+
+    @Override
+    public boolean hasResponseBody() {
+      return body.length > 0;
+    }
+
+    @Override
+    public boolean hasResponseStatus() {
+      return true;
+    }
+
+    @Override
+    public boolean hasResponseHeaders() {
+      return false;
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException, IOException, NoSuchFieldException {
+    for (final String protocol : MarshallerBenchmark.class.getField("protocol").getAnnotation(Param.class).value()) {
+      final RequestMarshallerRegistry registry = new RequestMarshallerRegistry();
+      registry.registerTypes(ENTITIES_TYPE);
+      final ContentType contentType = ContentType.valueOf(protocol);
+      final int size = marshall(registry.getMarshaller(contentType.requestEncoding()), createEntities()).length;
+      System.out.println(protocol + " response size: " + size + " bytes");
+    }
+
+    new Runner(new OptionsBuilder().include(MarshallerBenchmark.class.getSimpleName()).build()).run();
+  }
+}
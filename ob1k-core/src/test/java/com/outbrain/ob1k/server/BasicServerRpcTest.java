@@ -67,6 +67,11 @@ public class BasicServerRpcTest {
     createPathParamsWithBodyTest(HttpRequestMethodType.GET, ContentType.MESSAGE_PACK);
   }
 
+  @Test
+  public void testPathParamsViaGET_Binary() throws Exception {
+    createPathParamsWithBodyTest(HttpRequestMethodType.GET, ContentType.COMPACT_BINARY);
+  }
+
   @Test
   public void testPathParamsViaPOST_Json() throws Exception {
     createPathParamsWithBodyTest(HttpRequestMethodType.POST, ContentType.JSON);
@@ -77,6 +82,11 @@ public class BasicServerRpcTest {
     createPathParamsWithBodyTest(HttpRequestMethodType.POST, ContentType.MESSAGE_PACK);
   }
 
+  @Test
+  public void testPathParamsViaPOST_Binary() throws Exception {
+    createPathParamsWithBodyTest(HttpRequestMethodType.POST, ContentType.COMPACT_BINARY);
+  }
+
   private void createPathParamsWithBodyTest(final HttpRequestMethodType methodType, final ContentType contentType) throws Exception {
     Server server = null;
     RequestsTestService client = null;
@@ -108,6 +118,11 @@ public class BasicServerRpcTest {
     testMethodSpecificRequest(ContentType.MESSAGE_PACK);
   }
 
+  @Test
+  public void testMethodSpecificRequestsWithBinary() throws Exception {
+    testMethodSpecificRequest(ContentType.COMPACT_BINARY);
+  }
+
   @Test
   public void testMethodSpecificRequestsWithJson() throws Exception {
     testMethodSpecificRequest(ContentType.JSON);
@@ -0,0 +1,92 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.collect.Lists;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a builder of unlogged batches grouped by partition.
+ * <p>
+ * statements with the same routing key belong to the same partition token, so each group is sent as an unlogged
+ * batch that a token aware load balancing policy routes directly to a replica of the partition, instead of one
+ * multi-partition batch that the coordinator has to fan out.
+ * statements without a routing key (e.g. a prepared statement that doesn't bind the whole partition key) are sent
+ * on their own.
+ * </p>
+ * created by {@link CqlSession#newBatch(int, String...)} and executed by {@link CqlSession#executeAsync(CqlBatch)}.
+ */
+public class CqlBatch {
+  private final List<TagMetrics> tagMetrics;
+  private final int maxStatementsPerBatch;
+  private final Map<ByteBuffer, List<Statement>> partitions = new LinkedHashMap<>();
+  private final List<Statement> unrouted = new ArrayList<>();
+
+  CqlBatch(final List<TagMetrics> tagMetrics, final int maxStatementsPerBatch) {
+    if (tagMetrics.isEmpty()) {
+      throw new IllegalArgumentException("expecting non empty tags");
+    }
+    if (maxStatementsPerBatch < 1) {
+      throw new IllegalArgumentException("maxStatementsPerBatch must be positive");
+    }
+    this.tagMetrics = tagMetrics;
+    this.maxStatementsPerBatch = maxStatementsPerBatch;
+  }
+
+  public CqlBatch add(final Statement statement) {
+    final ByteBuffer routingKey = statement.getRoutingKey();
+    if (routingKey == null) {
+      unrouted.add(statement);
+    } else {
+      List<Statement> partition = partitions.get(routingKey);
+      if (partition == null) {
+        partition = new ArrayList<>();
+        partitions.put(routingKey, partition);
+      }
+      partition.add(statement);
+    }
+    return this;
+  }
+
+  public CqlBatch add(final CqlStatement statement) {
+    return add(statement.getStatement());
+  }
+
+  public CqlBatch add(final CqlPreparedStatement statement, final Object... parameters) {
+    return add(statement.getStatement().bind(parameters));
+  }
+
+  public int size() {
+    int size = unrouted.size();
+    for (final List<Statement> partition : partitions.values()) {
+      size += partition.size();
+    }
+    return size;
+  }
+
+  List<TagMetrics> getTagMetrics() {
+    return tagMetrics;
+  }
+
+  /**
+   * @return the statements to execute, one per partition chunk of up to maxStatementsPerBatch statements.
+   */
+  List<Statement> statements() {
+    final List<Statement> statements = new ArrayList<>(unrouted);
+    for (final List<Statement> partition : partitions.values()) {
+      for (final List<Statement> chunk : Lists.partition(partition, maxStatementsPerBatch)) {
+        if (chunk.size() == 1) {
+          statements.add(chunk.get(0));
+        } else {
+          statements.add(new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(chunk));
+        }
+      }
+    }
+    return statements;
+  }
+}
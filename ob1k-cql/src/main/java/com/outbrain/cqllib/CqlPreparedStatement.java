@@ -17,6 +17,7 @@ public class CqlPreparedStatement {
 
   private final List<TagMetrics> metrics;
   private final PreparedStatement statement;
+  private volatile boolean idempotent;
 
   public CqlPreparedStatement(final PreparedStatement statement, final MetricFactory metricFactory, final String... tags) {
     if (tags.length == 0) {
@@ -31,6 +32,14 @@ public class CqlPreparedStatement {
     }));
   }
 
+  CqlPreparedStatement(final PreparedStatement statement, final List<TagMetrics> metrics) {
+    if (metrics.isEmpty()) {
+      throw new IllegalArgumentException("expecting non empty tags");
+    }
+    this.statement = Preconditions.checkNotNull(statement);
+    this.metrics = metrics;
+  }
+
   public List<TagMetrics> getTagMetrics() {
     return metrics;
   }
@@ -38,4 +47,17 @@ public class CqlPreparedStatement {
   public PreparedStatement getStatement() {
     return statement;
   }
+
+  /**
+   * marks the statement as safe to execute more than once, allowing the session to speculatively execute it
+   * when it's slow.
+   */
+  public CqlPreparedStatement setIdempotent(final boolean idempotent) {
+    this.idempotent = idempotent;
+    return this;
+  }
+
+  public boolean isIdempotent() {
+    return idempotent;
+  }
 }
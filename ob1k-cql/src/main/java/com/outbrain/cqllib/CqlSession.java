@@ -1,9 +1,11 @@
 package com.outbrain.cqllib;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
 import com.datastax.driver.core.QueryOptions;
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SocketOptions;
 import com.datastax.driver.core.Statement;
@@ -15,29 +17,45 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.outbrain.ob1k.concurrent.*;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import com.outbrain.ob1k.concurrent.handlers.FutureResultHandler;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
-import com.outbrain.swinfra.metrics.api.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
 import rx.exceptions.Exceptions;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.outbrain.ob1k.concurrent.ComposableFutures.fromTry;
 
 /**
  * Created by guyk on 7/9/14
+ * <p>
+ * idempotent statements can be executed speculatively: when a statement takes longer than the given latency percentile
+ * of its previous executions (tracked per first tag), it is sent again, usually to another replica,
+ * and the first successful response wins.
+ * </p>
  */
 public class CqlSession {
   private final Session session;
   private final RetryPolicy retryPolicy;
   private final MetricFactory metricFactory;
+  private final double speculativeExecutionPercentile;
+  private final ConcurrentMap<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, TagMetrics> tagMetricsByTag = new ConcurrentHashMap<>();
+  private final PreparedStatementRegistry preparedStatements;
 
   private static final Logger logger = LoggerFactory.getLogger(CqlSession.class);
 
@@ -45,7 +63,38 @@ public class CqlSession {
                     final RetryPolicy retryPolicy, final QueryOptions queryOptions,
                     final LoadBalancingPolicy loadBalancingPolicy, final int maxConnectionsPerHost,
                     final MetricFactory metricFactory) {
+    this(nodes, port, keyspace, socketOptions, retryPolicy, queryOptions, loadBalancingPolicy, maxConnectionsPerHost,
+      metricFactory, 0);
+  }
 
+  /**
+   * @param maxConnectionsPerHost the max connections to each host, or non positive for the driver defaults.
+   * @param speculativeExecutionPercentile the latency percentile (e.g. 99) after which idempotent statements are
+   *                                       executed again, or non positive to disable speculative execution.
+   */
+  public CqlSession(final String nodes, final int port, final String keyspace, final SocketOptions socketOptions,
+                    final RetryPolicy retryPolicy, final QueryOptions queryOptions,
+                    final LoadBalancingPolicy loadBalancingPolicy, final int maxConnectionsPerHost,
+                    final MetricFactory metricFactory, final double speculativeExecutionPercentile) {
+    this(connect(nodes, port, keyspace, socketOptions, queryOptions, loadBalancingPolicy, maxConnectionsPerHost),
+      retryPolicy, metricFactory, speculativeExecutionPercentile);
+  }
+
+  /**
+   * over a connected session.
+   */
+  CqlSession(final Session session, final RetryPolicy retryPolicy, final MetricFactory metricFactory,
+             final double speculativeExecutionPercentile) {
+    this.session = session;
+    this.retryPolicy = Preconditions.checkNotNull(retryPolicy);
+    this.metricFactory = Preconditions.checkNotNull(metricFactory);
+    this.speculativeExecutionPercentile = speculativeExecutionPercentile;
+    this.preparedStatements = new PreparedStatementRegistry(session, metricFactory);
+  }
+
+  private static Session connect(final String nodes, final int port, final String keyspace,
+                                 final SocketOptions socketOptions, final QueryOptions queryOptions,
+                                 final LoadBalancingPolicy loadBalancingPolicy, final int maxConnectionsPerHost) {
     // this is temp. to reuse current hosts properties:
     final Iterable<String> nodesIter = Splitter.on(",").split(nodes);
     final String[] nodesArr = Iterables.toArray(Iterables.transform(nodesIter, new Function<String, String>() {
@@ -59,97 +108,226 @@ public class CqlSession {
     }), String.class);
 
 
-    /*PoolingOptions poolingOptions = new PoolingOptions();
-    poolingOptions.setMaxConnectionsPerHost(HostDistance.LOCAL, maxConnectionsPerHost);
-    poolingOptions.setMaxConnectionsPerHost(HostDistance.REMOTE, maxConnectionsPerHost);*/
-
+    final PoolingOptions poolingOptions = new PoolingOptions();
+    if (maxConnectionsPerHost > 0) {
+      for (final HostDistance distance : new HostDistance[] {HostDistance.LOCAL, HostDistance.REMOTE}) {
+        // the core size can't exceed the max size
+        poolingOptions.setCoreConnectionsPerHost(distance,
+          Math.min(poolingOptions.getCoreConnectionsPerHost(distance), maxConnectionsPerHost));
+        poolingOptions.setMaxConnectionsPerHost(distance, maxConnectionsPerHost);
+      }
+    }
 
     final Cluster cluster = Cluster.builder().
             withPort(port).
             withSocketOptions(socketOptions).
             withQueryOptions(queryOptions).
             withLoadBalancingPolicy(loadBalancingPolicy).
-            //  withPoolingOptions(poolingOptions).
-                    addContactPoints(nodesArr).build();
+            withPoolingOptions(poolingOptions).
+            addContactPoints(nodesArr).build();
     //cluster.init();
-    this.session = cluster.connect(keyspace);
-    this.retryPolicy = Preconditions.checkNotNull(retryPolicy);
-    this.metricFactory = Preconditions.checkNotNull(metricFactory);
+    return cluster.connect(keyspace);
   }
 
   public CqlStatementFactory newFactory(final String... tags) {
-    return new CqlStatementFactory(metricFactory, tags);
+    return new CqlStatementFactory(tagMetrics(tags));
   }
 
+  /**
+   * queries are prepared once per session, so this only costs a round trip to the cluster the first time a query is
+   * prepared.
+   */
   public CqlPreparedStatement prepare(final String query, final String... tags) {
-    return new CqlPreparedStatement(session.prepare(query), metricFactory, tags);
+    return new CqlPreparedStatement(preparedStatements.prepare(query), tagMetrics(tags));
+  }
+
+  private List<TagMetrics> tagMetrics(final String... tags) {
+    final List<TagMetrics> result = new ArrayList<>(tags.length);
+    for (final String tag : tags) {
+      TagMetrics metrics = tagMetricsByTag.get(tag);
+      if (metrics == null) {
+        final TagMetrics newMetrics = new TagMetrics(metricFactory, tag);
+        metrics = tagMetricsByTag.putIfAbsent(tag, newMetrics);
+        if (metrics == null) {
+          metrics = newMetrics;
+        }
+      }
+      result.add(metrics);
+    }
+    return result;
+  }
+
+  /**
+   * @return a batch that groups its statements by partition, reporting its metrics under the given tags.
+   */
+  public CqlBatch newBatch(final int maxStatementsPerBatch, final String... tags) {
+    return new CqlBatch(tagMetrics(tags), maxStatementsPerBatch);
   }
 
   public ComposableFuture<ResultSet> executeAsync(final CqlStatement cqlStatement) {
-    return executeImpl(cqlStatement.getStatement(), cqlStatement.getTagMetrics());
+    return executeImpl(cqlStatement.getStatement(), cqlStatement.getTagMetrics(), cqlStatement.isIdempotent());
   }
 
   public ComposableFuture<ResultSet> executeAsync(final CqlPreparedStatement cqlStatement, final Object... parameters) {
-    return executeImpl(cqlStatement.getStatement().bind(parameters), cqlStatement.getTagMetrics());
+    return executeImpl(cqlStatement.getStatement().bind(parameters), cqlStatement.getTagMetrics(), cqlStatement.isIdempotent());
+  }
+
+  /**
+   * executes the statements of the batch, one unlogged batch per partition, in parallel.
+   * batches are never executed speculatively.
+   *
+   * @return the results of the executed statements, failing if any of them fails.
+   */
+  public ComposableFuture<List<ResultSet>> executeAsync(final CqlBatch batch) {
+    final List<ComposableFuture<ResultSet>> results = new ArrayList<>();
+    for (final Statement statement : batch.statements()) {
+      results.add(executeImpl(statement, batch.getTagMetrics(), false));
+    }
+    return ComposableFutures.all(true, results);
+  }
+
+  /**
+   * streams the rows of the statement, fetching pages of fetchSize rows only as the rows are consumed.
+   * the statement is executed on subscription, so the returned observable can be subscribed again to re-execute it.
+   * note that the fetch size of the given statement is changed.
+   */
+  public Observable<Row> executeAsyncPaged(final CqlStatement cqlStatement, final int fetchSize) {
+    final Statement statement = cqlStatement.getStatement();
+    statement.setFetchSize(fetchSize);
+    return Observable.create(new PagedRows(new PagedRows.QueryProvider() {
+      @Override
+      public ComposableFuture<ResultSet> execute() {
+        return executeImpl(statement, cqlStatement.getTagMetrics(), cqlStatement.isIdempotent());
+      }
+    }, fetchSize));
+  }
+
+  /**
+   * streams the rows of the statement, fetching pages of fetchSize rows only as the rows are consumed.
+   * the statement is executed on subscription, so the returned observable can be subscribed again to re-execute it.
+   */
+  public Observable<Row> executeAsyncPaged(final CqlPreparedStatement cqlStatement, final int fetchSize, final Object... parameters) {
+    return Observable.create(new PagedRows(new PagedRows.QueryProvider() {
+      @Override
+      public ComposableFuture<ResultSet> execute() {
+        final Statement statement = cqlStatement.getStatement().bind(parameters).setFetchSize(fetchSize);
+        return executeImpl(statement, cqlStatement.getTagMetrics(), cqlStatement.isIdempotent());
+      }
+    }, fetchSize));
   }
 
-  private ComposableFuture<ResultSet> executeImpl(final Statement statement, final List<TagMetrics> tagMetrics) {
+  private ComposableFuture<ResultSet> executeImpl(final Statement statement, final List<TagMetrics> tagMetrics, final boolean idempotent) {
     statement.setRetryPolicy(new RetryPolicyWithMetrics(retryPolicy, tagMetrics));
-    final Iterable<Timer.Context> timerContexts = measureOnStart(tagMetrics);
+    final long start = System.nanoTime();
+    final ComposableFuture<ResultSet> result = idempotent && speculativeExecutionPercentile > 0 ?
+      executeSpeculatively(statement, tagMetrics) : executeOnce(statement, tagMetrics, null);
+
+    return result.continueWith(new FutureResultHandler<ResultSet, ResultSet>() {
+      @Override
+      public ComposableFuture<ResultSet> handle(final Try<ResultSet> result) {
+        measureOnDone(tagMetrics, start);
+        return fromTry(result);
+      }
+    });
+  }
+
+  private ComposableFuture<ResultSet> executeSpeculatively(final Statement statement, final List<TagMetrics> tagMetrics) {
+    final LatencyTracker tracker = latencyTracker(tagMetrics.get(0).tag);
+    final long delayNanos = tracker.percentileNanos();
+    final ComposableFuture<ResultSet> first = executeOnce(statement, tagMetrics, tracker);
+    if (delayNanos < 0) {
+      return first;
+    }
+
+    // the first success wins, an error wins only if no other execution is pending
+    final ComposablePromise<ResultSet> promise = ComposableFutures.newPromise(false);
+    final AtomicBoolean completed = new AtomicBoolean();
+    final AtomicInteger pending = new AtomicInteger(1);
+    final Consumer<ResultSet> completer = new Consumer<ResultSet>() {
+      @Override
+      public void consume(final Try<ResultSet> result) {
+        if (result.isSuccess()) {
+          completed.set(true);
+          promise.set(result.getValue());
+        } else if (pending.decrementAndGet() == 0) {
+          completed.set(true);
+          promise.setException(result.getError());
+        }
+      }
+    };
+
+    first.consume(completer);
+    ComposableFutures.schedule(() -> {
+      if (!completed.get()) {
+        pending.incrementAndGet();
+        for (final TagMetrics metrics : tagMetrics) {
+          metrics.speculativeExecutions.inc();
+        }
+        executeOnce(statement, tagMetrics, tracker).consume(completer);
+      }
+      return null;
+    }, delayNanos, TimeUnit.NANOSECONDS);
+
+    return promise.future();
+  }
+
+  private LatencyTracker latencyTracker(final String tag) {
+    final LatencyTracker tracker = latencies.get(tag);
+    if (tracker != null) {
+      return tracker;
+    }
+
+    final LatencyTracker newTracker = new LatencyTracker(speculativeExecutionPercentile);
+    final LatencyTracker existing = latencies.putIfAbsent(tag, newTracker);
+    return existing != null ? existing : newTracker;
+  }
+
+  /**
+   * @param tracker tracks the latency of successful executions, may be null.
+   */
+  private ComposableFuture<ResultSet> executeOnce(final Statement statement, final List<TagMetrics> tagMetrics,
+                                                  final LatencyTracker tracker) {
     return ComposableFutures.build(new Producer<ResultSet>() {
       @Override
       public void produce(final Consumer<ResultSet> consumer) {
-        final ResultSetFuture resultSetFuture = session.executeAsync(statement);
+        final long start = System.nanoTime();
+        Futures.addCallback(session.executeAsync(statement), new FutureCallback<ResultSet>() {
+          @Override
+          public void onSuccess(final ResultSet result) {
+            if (tracker != null) {
+              tracker.update(System.nanoTime() - start);
+            }
+            consumer.consume(Try.fromValue(result));
+          }
 
-        resultSetFuture.addListener(new Runnable() {
           @Override
-          public void run() {
-            try {
-              final ResultSet result = resultSetFuture.get();
-              consumer.consume(Try.fromValue(result));
-            } catch (final InterruptedException e) {
-              Thread.currentThread().interrupt();
-              consumer.consume(Try.<ResultSet>fromError(e));
-            } catch (final ExecutionException e) {
-              final Throwable finalCause = Exceptions.getFinalCause(e);
-              if (finalCause instanceof NoHostAvailableException) {
-                final String tags = Joiner.on(',').join(tagMetrics);
-                final Map<InetSocketAddress, Throwable> errorsPerHost = ((NoHostAvailableException) finalCause).getErrors();
-                for (final Map.Entry<InetSocketAddress, Throwable> entry : errorsPerHost.entrySet()) {
-                  logger.error("host " + entry.getKey() + " failed to perform statement " + tags + ": " +
-                      entry.getValue().getMessage(), entry.getValue().getMessage());
-                }
+          public void onFailure(final Throwable error) {
+            final Throwable finalCause = Exceptions.getFinalCause(error);
+            if (finalCause instanceof NoHostAvailableException) {
+              final String tags = Joiner.on(',').join(tagMetrics);
+              final Map<InetSocketAddress, Throwable> errorsPerHost = ((NoHostAvailableException) finalCause).getErrors();
+              for (final Map.Entry<InetSocketAddress, Throwable> entry : errorsPerHost.entrySet()) {
+                logger.error("host " + entry.getKey() + " failed to perform statement " + tags + ": " +
+                    entry.getValue().getMessage(), entry.getValue().getMessage());
               }
-
-              consumer.consume(Try.<ResultSet>fromError(e.getCause() != null ? e.getCause() : e));
             }
+
+            consumer.consume(Try.<ResultSet>fromError(error));
           }
         }, ComposableFutures.getExecutor());
       }
-    }).continueWith(new FutureResultHandler<ResultSet, ResultSet>() {
-      @Override
-      public ComposableFuture<ResultSet> handle(final Try<ResultSet> result) {
-        measureOnDone(timerContexts);
-        return fromTry(result);
-      }
     });
   }
 
 
-  private List<Timer.Context> measureOnStart(final Iterable<TagMetrics> tagMetrics) {
-    return Lists.newArrayList(Iterables.transform(tagMetrics, new Function<TagMetrics, Timer.Context>() {
-      @Override
-      public Timer.Context apply(final TagMetrics input) {
-        return input != null ? input.timer.time() : null;
+  private void measureOnDone(final List<TagMetrics> tagMetrics, final long start) {
+    final long elapsed = System.nanoTime() - start;
+    for (int i = 0; i < tagMetrics.size(); i++) {
+      final TagMetrics metrics = tagMetrics.get(i);
+      if (metrics != null) {
+        metrics.timer.update(elapsed, TimeUnit.NANOSECONDS);
       }
-    }));
-  }
-
-  private void measureOnDone(final Iterable<Timer.Context> timerContexts) {
-    for (final Timer.Context timerContext : timerContexts) {
-      timerContext.stop();
     }
   }
 
 }
-
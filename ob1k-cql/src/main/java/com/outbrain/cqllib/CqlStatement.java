@@ -11,6 +11,7 @@ import java.util.List;
 public class CqlStatement {
   private final List<TagMetrics> metrics;
   private final Statement statement;
+  private volatile boolean idempotent;
 
 
   CqlStatement(final Statement statement, final List<TagMetrics> metrics) {
@@ -28,4 +29,17 @@ public class CqlStatement {
   public Statement getStatement() {
     return statement;
   }
+
+  /**
+   * marks the statement as safe to execute more than once, allowing the session to speculatively execute it
+   * when it's slow.
+   */
+  public CqlStatement setIdempotent(final boolean idempotent) {
+    this.idempotent = idempotent;
+    return this;
+  }
+
+  public boolean isIdempotent() {
+    return idempotent;
+  }
 }
@@ -10,17 +10,25 @@ import java.util.List;
  * Created by guyk on 7/13/14.
  */
 public class CqlStatementFactory {
-  private final List<TagMetrics> tagMetrics = Lists.newArrayList();
+  private final List<TagMetrics> tagMetrics;
 
   CqlStatementFactory(final MetricFactory metricFactory, final String... tags) {
     if (tags.length == 0) {
       throw new IllegalArgumentException("expecting non empty tags");
     }
+    tagMetrics = Lists.newArrayList();
     for (final String tag : tags) {
       tagMetrics.add(new TagMetrics(metricFactory, tag));
     }
   }
 
+  CqlStatementFactory(final List<TagMetrics> tagMetrics) {
+    if (tagMetrics.isEmpty()) {
+      throw new IllegalArgumentException("expecting non empty tags");
+    }
+    this.tagMetrics = tagMetrics;
+  }
+
   public CqlStatement createStatement(final Statement statement) {
     return new CqlStatement(statement, tagMetrics);
   }
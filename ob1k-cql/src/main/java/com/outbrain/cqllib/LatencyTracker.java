@@ -0,0 +1,55 @@
+package com.outbrain.cqllib;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * keeps the latencies of the recent executions of a statement and estimates a percentile over them.
+ * the percentile is recomputed once every {@link #RECOMPUTE_INTERVAL} samples, so reading it is cheap.
+ */
+class LatencyTracker {
+  private static final int WINDOW_SIZE = 1024;
+  private static final int MIN_SAMPLES = 100;
+  private static final int RECOMPUTE_INTERVAL = 128;
+
+  private final double percentile;
+  private final AtomicLongArray samples = new AtomicLongArray(WINDOW_SIZE);
+  private final AtomicLong count = new AtomicLong();
+  private volatile long percentileNanos = -1;
+
+  /**
+   * @param percentile the percentile to estimate, between 0 and 100.
+   */
+  LatencyTracker(final double percentile) {
+    if (percentile <= 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be in (0, 100]");
+    }
+    this.percentile = percentile;
+  }
+
+  void update(final long latencyNanos) {
+    final long index = count.getAndIncrement();
+    samples.set((int) (index % WINDOW_SIZE), latencyNanos);
+    if ((index + 1) >= MIN_SAMPLES && (index + 1) % RECOMPUTE_INTERVAL == 0) {
+      percentileNanos = compute(Math.min(index + 1, WINDOW_SIZE));
+    }
+  }
+
+  /**
+   * @return the estimated percentile in nanos, or -1 if there are not enough samples yet.
+   */
+  long percentileNanos() {
+    return percentileNanos;
+  }
+
+  private long compute(final long size) {
+    final long[] sorted = new long[(int) size];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = samples.get(i);
+    }
+    Arrays.sort(sorted);
+    final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+}
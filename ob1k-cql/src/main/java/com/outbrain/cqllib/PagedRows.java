@@ -0,0 +1,167 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.Consumer;
+import com.outbrain.ob1k.concurrent.Try;
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * streams the rows of a paged query.
+ * <p>
+ * the query is executed on subscription, rows are emitted as they are requested, and the next page is fetched
+ * asynchronously only when the rows of the current page run low while there is still demand.
+ * unsubscribing stops the fetching.
+ * </p>
+ */
+class PagedRows implements Observable.OnSubscribe<Row> {
+
+  interface QueryProvider {
+    ComposableFuture<ResultSet> execute();
+  }
+
+  private final QueryProvider query;
+  private final int prefetchThreshold;
+
+  /**
+   * @param fetchSize the page size of the query, the next page is prefetched when a quarter of the page is left.
+   */
+  PagedRows(final QueryProvider query, final int fetchSize) {
+    this.query = query;
+    this.prefetchThreshold = fetchSize / 4;
+  }
+
+  @Override
+  public void call(final Subscriber<? super Row> subscriber) {
+    subscriber.setProducer(new RowsProducer(subscriber));
+  }
+
+  private final class RowsProducer implements Producer {
+    private final Subscriber<? super Row> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile ResultSet resultSet;
+    private volatile boolean fetching;
+    private volatile Throwable error;
+    private boolean started;
+    private boolean done;
+
+    private RowsProducer(final Subscriber<? super Row> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        return;
+      }
+
+      long current;
+      do {
+        current = requested.get();
+        if (current == Long.MAX_VALUE) {
+          break;
+        }
+      } while (!requested.compareAndSet(current, Long.MAX_VALUE - current > n ? current + n : Long.MAX_VALUE));
+
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        if (!done) {
+          emit();
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+
+    private void emit() {
+      if (error != null) {
+        done = true;
+        subscriber.onError(error);
+        return;
+      }
+
+      if (!started) {
+        started = true;
+        fetching = true;
+        query.execute().consume(new Consumer<ResultSet>() {
+          @Override
+          public void consume(final Try<ResultSet> result) {
+            if (result.isSuccess()) {
+              resultSet = result.getValue();
+              fetching = false;
+              drain();
+            } else {
+              fail(result.getError());
+            }
+          }
+        });
+        return;
+      }
+
+      final ResultSet rows = resultSet;
+      if (rows == null) {
+        return;
+      }
+
+      while (requested.get() > 0 && rows.getAvailableWithoutFetching() > 0) {
+        if (subscriber.isUnsubscribed()) {
+          done = true;
+          return;
+        }
+
+        subscriber.onNext(rows.one());
+        if (requested.get() != Long.MAX_VALUE) {
+          requested.decrementAndGet();
+        }
+      }
+
+      if (subscriber.isUnsubscribed()) {
+        done = true;
+        return;
+      }
+
+      final int available = rows.getAvailableWithoutFetching();
+      if (available == 0 && rows.isFullyFetched()) {
+        done = true;
+        subscriber.onCompleted();
+        return;
+      }
+
+      if (!fetching && !rows.isFullyFetched() && requested.get() > 0 && available <= prefetchThreshold) {
+        fetching = true;
+        Futures.addCallback(rows.fetchMoreResults(), new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(final Void result) {
+            fetching = false;
+            drain();
+          }
+
+          @Override
+          public void onFailure(final Throwable error) {
+            fail(error);
+          }
+        }, ComposableFutures.getExecutor());
+      }
+    }
+
+    private void fail(final Throwable cause) {
+      error = cause;
+      drain();
+    }
+  }
+}
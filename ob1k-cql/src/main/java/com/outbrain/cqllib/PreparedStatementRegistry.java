@@ -0,0 +1,62 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.Gauge;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * prepares each query once per session, keyed by the query string.
+ * <p>
+ * failed prepares aren't cached, so the next caller retries them.
+ * the driver itself prepares the known statements again on hosts that are added or come back up.
+ * hits, misses and the number of statements are reported under "CQL", named by the keyspace of the session,
+ * with a running index for each additional session of the same keyspace.
+ * </p>
+ */
+class PreparedStatementRegistry {
+  private static final ConcurrentMap<String, AtomicInteger> sessionsPerKeyspace = new ConcurrentHashMap<>();
+
+  private final Session session;
+  private final ConcurrentMap<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+  private final Counter hits;
+  private final Counter misses;
+
+  PreparedStatementRegistry(final Session session, final MetricFactory metricFactory) {
+    this.session = session;
+    final String name = metricsName(session.getLoggedKeyspace());
+    this.hits = metricFactory.createCounter("CQL", name + ".preparedStatements.hits");
+    this.misses = metricFactory.createCounter("CQL", name + ".preparedStatements.misses");
+    metricFactory.registerGauge("CQL", name + ".preparedStatements.size", new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return statements.size();
+      }
+    });
+  }
+
+  private static String metricsName(final String keyspace) {
+    final String name = keyspace != null ? keyspace : "noKeyspace";
+    final int index = sessionsPerKeyspace.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+    return index == 1 ? name : name + "-" + index;
+  }
+
+  PreparedStatement prepare(final String query) {
+    final PreparedStatement statement = statements.get(query);
+    if (statement != null) {
+      hits.inc();
+      return statement;
+    }
+
+    misses.inc();
+    // concurrent misses may prepare the same query more than once, which is harmless
+    final PreparedStatement prepared = session.prepare(query);
+    final PreparedStatement existing = statements.putIfAbsent(query, prepared);
+    return existing != null ? existing : prepared;
+  }
+}
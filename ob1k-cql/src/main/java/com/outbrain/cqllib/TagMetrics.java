@@ -16,6 +16,7 @@ public class TagMetrics {
   final Counter readTimeouts;
   final Counter unavailableTimeouts;
   final Counter errors;
+  final Counter speculativeExecutions;
   //final Histogram resultSetSize;
   final Timer timer;
 
@@ -25,6 +26,7 @@ public class TagMetrics {
     writeTimeouts = metricFactory.createCounter("CQL", tag + ".writeTimeouts");
     unavailableTimeouts = metricFactory.createCounter("CQL", tag + ".unavailableTimeouts");
     errors = metricFactory.createCounter("CQL", tag + ".errors");
+    speculativeExecutions = metricFactory.createCounter("CQL", tag + ".speculativeExecutions");
     timer = metricFactory.createTimer("CQL", tag + ".timer");
     //resultSetSize = metricFactory.createHistogram("CQL", tag + ".resultSetSize", false);
   }
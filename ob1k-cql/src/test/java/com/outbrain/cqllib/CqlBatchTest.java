@@ -0,0 +1,76 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+public class CqlBatchTest {
+
+  private static final MetricFactory metricFactory = mock(MetricFactory.class, withSettings().defaultAnswer(RETURNS_MOCKS));
+
+  @Test
+  public void testStatementsAreGroupedByPartition() {
+    final Statement first = statement("a");
+    final Statement second = statement("b");
+    final Statement third = statement("a");
+    final Statement unrouted = new SimpleStatement("truncate users");
+
+    final List<Statement> statements = newBatch(10).add(first).add(second).add(third).add(unrouted).statements();
+
+    Assert.assertEquals(3, statements.size());
+    Assert.assertSame("statements without a routing key should be sent alone", unrouted, statements.get(0));
+    Assert.assertEquals(Arrays.asList(first, third), batched(statements.get(1)));
+    Assert.assertSame("a single statement of a partition shouldn't be batched", second, statements.get(2));
+  }
+
+  @Test
+  public void testPartitionsAreSplitByTheMaxBatchSize() {
+    final CqlBatch batch = newBatch(2);
+    final List<Statement> added = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      final Statement statement = statement("a");
+      added.add(statement);
+      batch.add(statement);
+    }
+
+    final List<Statement> statements = batch.statements();
+
+    Assert.assertEquals(5, batch.size());
+    Assert.assertEquals(3, statements.size());
+    Assert.assertEquals(added.subList(0, 2), batched(statements.get(0)));
+    Assert.assertEquals(added.subList(2, 4), batched(statements.get(1)));
+    Assert.assertSame(added.get(4), statements.get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxBatchSizeMustBePositive() {
+    newBatch(0);
+  }
+
+  private static CqlBatch newBatch(final int maxStatementsPerBatch) {
+    return new CqlBatch(Collections.singletonList(new TagMetrics(metricFactory, "test")), maxStatementsPerBatch);
+  }
+
+  private static Statement statement(final String partitionKey) {
+    return new SimpleStatement("insert into users (id) values (?)", partitionKey)
+      .setRoutingKey(ByteBuffer.wrap(partitionKey.getBytes()));
+  }
+
+  private static List<Statement> batched(final Statement statement) {
+    Assert.assertTrue(statement instanceof BatchStatement);
+    return new ArrayList<>(((BatchStatement) statement).getStatements());
+  }
+}
@@ -0,0 +1,120 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.DefaultRetryPolicy;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class CqlSessionTest {
+
+  private final Queue<StubResultSetFuture> executions = new ConcurrentLinkedQueue<>();
+  private final ResultSet resultSet = mock(ResultSet.class);
+  private volatile boolean respond = true;
+  private CqlSession session;
+
+  @Before
+  public void setup() {
+    final Session driverSession = mock(Session.class);
+    when(driverSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+      final StubResultSetFuture future = new StubResultSetFuture();
+      executions.add(future);
+      if (respond) {
+        future.set(resultSet);
+      }
+      return future;
+    });
+
+    final MetricFactory metricFactory = mock(MetricFactory.class, withSettings().defaultAnswer(RETURNS_MOCKS));
+    session = new CqlSession(driverSession, DefaultRetryPolicy.INSTANCE, metricFactory, 99);
+  }
+
+  @Test
+  public void testSlowIdempotentStatementIsExecutedAgain() throws Exception {
+    final CqlStatementFactory factory = session.newFactory("users");
+    warmUp(factory);
+
+    respond = false;
+    final ComposableFuture<ResultSet> result = session.executeAsync(idempotent(factory));
+    awaitExecutions(130);
+
+    executions.toArray(new StubResultSetFuture[0])[129].set(resultSet);
+    Assert.assertSame("the speculative execution should complete the statement", resultSet, result.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNonIdempotentStatementIsExecutedOnce() throws Exception {
+    final CqlStatementFactory factory = session.newFactory("users");
+    warmUp(factory);
+
+    respond = false;
+    session.executeAsync(factory.createStatement(new SimpleStatement("update users set name = 'x' where id = 1")));
+    Thread.sleep(50);
+
+    Assert.assertEquals(129, executions.size());
+  }
+
+  @Test
+  public void testNoSpeculativeExecutionWithoutLatencies() throws Exception {
+    respond = false;
+    session.executeAsync(idempotent(session.newFactory("users")));
+    Thread.sleep(50);
+
+    Assert.assertEquals(1, executions.size());
+  }
+
+  private void warmUp(final CqlStatementFactory factory) throws ExecutionException, InterruptedException {
+    for (int i = 0; i < 128; i++) {
+      // the latency is tracked before the result completes
+      session.executeAsync(idempotent(factory)).get();
+    }
+  }
+
+  private void awaitExecutions(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 1000;
+    while (executions.size() < count) {
+      Assert.assertTrue("expected " + count + " executions, got " + executions.size(), System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private static CqlStatement idempotent(final CqlStatementFactory factory) {
+    return factory.createStatement(new SimpleStatement("select * from users where id = 1")).setIdempotent(true);
+  }
+
+  private static class StubResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+    @Override
+    public boolean set(final ResultSet value) {
+      return super.set(value);
+    }
+
+    @Override
+    public ResultSet getUninterruptibly() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ResultSet getUninterruptibly(final long timeout, final TimeUnit unit) throws TimeoutException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
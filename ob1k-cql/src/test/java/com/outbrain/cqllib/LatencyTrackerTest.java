@@ -0,0 +1,51 @@
+package com.outbrain.cqllib;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyTrackerTest {
+
+  @Test
+  public void testNoEstimateBeforeEnoughSamples() {
+    final LatencyTracker tracker = new LatencyTracker(99);
+    for (int i = 1; i < 128; i++) {
+      tracker.update(i);
+    }
+    Assert.assertEquals(-1, tracker.percentileNanos());
+
+    tracker.update(128);
+    Assert.assertEquals(127, tracker.percentileNanos());
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyTracker median = new LatencyTracker(50);
+    final LatencyTracker max = new LatencyTracker(100);
+    for (int i = 256; i > 0; i--) {
+      median.update(i);
+      max.update(i);
+    }
+
+    Assert.assertEquals(128, median.percentileNanos());
+    Assert.assertEquals(256, max.percentileNanos());
+  }
+
+  @Test
+  public void testOldSamplesLeaveTheWindow() {
+    final LatencyTracker tracker = new LatencyTracker(99);
+    for (int i = 0; i < 1024; i++) {
+      tracker.update(1000);
+    }
+    Assert.assertEquals(1000, tracker.percentileNanos());
+
+    for (int i = 0; i < 1024; i++) {
+      tracker.update(10);
+    }
+    Assert.assertEquals(10, tracker.percentileNanos());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPercentileMustBeInRange() {
+    new LatencyTracker(0);
+  }
+}
@@ -0,0 +1,183 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.junit.Assert;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.mockito.Mockito.mock;
+
+public class PagedRowsTest {
+
+  private static final int FETCH_SIZE = 8;
+
+  @Test
+  public void testRowsAreEmittedAndFetchedOnDemand() throws InterruptedException {
+    final StubResultSet resultSet = new StubResultSet(8, 8, 3);
+    final AtomicInteger executions = new AtomicInteger();
+    final Observable<Row> rows = Observable.create(new PagedRows(() -> {
+      executions.incrementAndGet();
+      return ComposableFutures.fromValue(resultSet);
+    }, FETCH_SIZE));
+
+    final TestSubscriber<Row> subscriber = new TestSubscriber<>(0);
+    rows.subscribe(subscriber);
+    Assert.assertEquals("the query should be executed only on demand", 0, executions.get());
+
+    subscriber.requestMore(3);
+    Assert.assertEquals(1, executions.get());
+    Assert.assertEquals(3, subscriber.getOnNextEvents().size());
+    Assert.assertEquals("the next page shouldn't be fetched while enough rows are left", 0, resultSet.fetches);
+
+    subscriber.requestMore(10);
+    Assert.assertEquals(8, subscriber.getOnNextEvents().size());
+    Assert.assertEquals("the next page should be fetched when the rows run low with demand left", 1, resultSet.fetches);
+
+    subscriber.requestMore(1);
+    Assert.assertEquals("a page should be fetched once", 1, resultSet.fetches);
+
+    resultSet.completeFetch();
+    await(() -> subscriber.getOnNextEvents().size() == 14);
+    subscriber.requestMore(1);
+    Assert.assertEquals(15, subscriber.getOnNextEvents().size());
+    Assert.assertEquals("no page should be fetched without demand", 1, resultSet.fetches);
+
+    subscriber.requestMore(Long.MAX_VALUE);
+    Assert.assertEquals(16, subscriber.getOnNextEvents().size());
+    Assert.assertEquals(2, resultSet.fetches);
+    resultSet.completeFetch();
+
+    subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+    subscriber.assertNoErrors();
+    subscriber.assertCompleted();
+    Assert.assertEquals(19, subscriber.getOnNextEvents().size());
+  }
+
+  @Test
+  public void testNoPageIsFetchedAfterUnsubscribe() throws InterruptedException {
+    final StubResultSet resultSet = new StubResultSet(8, 8);
+    final TestSubscriber<Row> subscriber = new TestSubscriber<>(0);
+    Observable.create(new PagedRows(() -> ComposableFutures.fromValue(resultSet), FETCH_SIZE)).subscribe(subscriber);
+
+    subscriber.requestMore(10);
+    Assert.assertEquals(1, resultSet.fetches);
+    subscriber.unsubscribe();
+    resultSet.completeFetch();
+    subscriber.requestMore(10);
+
+    Thread.sleep(50);
+    Assert.assertEquals(8, subscriber.getOnNextEvents().size());
+    Assert.assertEquals(1, resultSet.fetches);
+  }
+
+  @Test
+  public void testFailedQueryFailsTheStream() {
+    final TestSubscriber<Row> subscriber = new TestSubscriber<>();
+    Observable.create(new PagedRows(() -> ComposableFutures.fromError(new RuntimeException("query failed")), FETCH_SIZE))
+      .subscribe(subscriber);
+
+    subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+    subscriber.assertNoValues();
+    Assert.assertEquals("query failed", subscriber.getOnErrorEvents().get(0).getMessage());
+  }
+
+  private static void await(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 1000;
+    while (!condition.getAsBoolean()) {
+      Assert.assertTrue("timed out waiting for the condition", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * rows of the given page sizes, the first page is available, and each fetch is completed by {@link #completeFetch()}.
+   */
+  private static class StubResultSet implements ResultSet {
+    private final Queue<Integer> pages;
+    private volatile int available;
+    private volatile int fetches;
+    private volatile SettableFuture<Void> fetch;
+
+    StubResultSet(final Integer... pages) {
+      this.pages = new ArrayDeque<>(Arrays.asList(pages));
+      this.available = this.pages.poll();
+    }
+
+    void completeFetch() {
+      available += pages.poll();
+      fetch.set(null);
+    }
+
+    @Override
+    public Row one() {
+      if (available == 0) {
+        throw new IllegalStateException("no rows were fetched");
+      }
+      available--;
+      return mock(Row.class);
+    }
+
+    @Override
+    public int getAvailableWithoutFetching() {
+      return available;
+    }
+
+    @Override
+    public boolean isFullyFetched() {
+      return pages.isEmpty();
+    }
+
+    @Override
+    public ListenableFuture<Void> fetchMoreResults() {
+      fetches++;
+      fetch = SettableFuture.create();
+      return fetch;
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return available == 0 && isFullyFetched();
+    }
+
+    @Override
+    public ColumnDefinitions getColumnDefinitions() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Row> all() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ExecutionInfo getExecutionInfo() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<ExecutionInfo> getAllExecutionInfo() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.outbrain.cqllib;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.outbrain.swinfra.metrics.api.Gauge;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class PreparedStatementRegistryTest {
+
+  private static final String QUERY = "select * from users where id = ?";
+
+  private Session session;
+  private MetricFactory metricFactory;
+
+  @Before
+  public void setup() {
+    session = mock(Session.class);
+    metricFactory = mock(MetricFactory.class, withSettings().defaultAnswer(RETURNS_MOCKS));
+  }
+
+  @Test
+  public void testQueriesArePreparedOnce() {
+    final PreparedStatement prepared = mock(PreparedStatement.class);
+    when(session.prepare(QUERY)).thenReturn(prepared);
+    final PreparedStatementRegistry registry = new PreparedStatementRegistry(session, metricFactory);
+
+    Assert.assertSame(prepared, registry.prepare(QUERY));
+    Assert.assertSame(prepared, registry.prepare(QUERY));
+    verify(session, times(1)).prepare(QUERY);
+  }
+
+  @Test
+  public void testFailedPreparesAreRetried() {
+    final PreparedStatement prepared = mock(PreparedStatement.class);
+    when(session.prepare(QUERY)).thenThrow(new IllegalStateException("prepare failed")).thenReturn(prepared);
+    final PreparedStatementRegistry registry = new PreparedStatementRegistry(session, metricFactory);
+
+    try {
+      registry.prepare(QUERY);
+      Assert.fail("the prepare should fail");
+    } catch (final IllegalStateException e) {
+      Assert.assertEquals("prepare failed", e.getMessage());
+    }
+
+    Assert.assertSame(prepared, registry.prepare(QUERY));
+    verify(session, times(2)).prepare(QUERY);
+  }
+
+  @Test
+  public void testSessionsOfTheSameKeyspaceHaveTheirOwnMetrics() {
+    when(session.getLoggedKeyspace()).thenReturn("registry_test");
+
+    new PreparedStatementRegistry(session, metricFactory);
+    new PreparedStatementRegistry(session, metricFactory);
+
+    verify(metricFactory).registerGauge(eq("CQL"), eq("registry_test.preparedStatements.size"), Matchers.<Gauge<Integer>>any());
+    verify(metricFactory).registerGauge(eq("CQL"), eq("registry_test-2.preparedStatements.size"), Matchers.<Gauge<Integer>>any());
+  }
+}
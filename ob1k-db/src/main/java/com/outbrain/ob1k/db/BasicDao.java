@@ -5,19 +5,29 @@ import com.github.mauricio.async.db.ResultSet;
 import com.github.mauricio.async.db.RowData;
 import com.google.common.base.Joiner;
 import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.ob1k.concurrent.handlers.ResultHandler;
 import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
+import com.outbrain.ob1k.db.QueryResultCache.ResultKind;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import rx.Observable;
 import scala.Option;
 import scala.collection.Iterator;
 import scala.collection.JavaConversions;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.google.common.collect.Lists.transform;
 import static java.util.Collections.singletonList;
 
 /**
@@ -25,10 +35,48 @@ import static java.util.Collections.singletonList;
  * @author Eran Harel
  */
 public class BasicDao {
+  /** the largest statement save() sends as is in UTF-8 bytes, the default max_allowed_packet of MySQL 5.6 less a margin */
+  public static final int MAX_STATEMENT_BYTES = 4 * 1024 * 1024 - 1024;
+  public static final int DEFAULT_MAX_CHUNK_ROWS = 1000;
+  public static final int DEFAULT_MAX_CHUNK_BYTES = 1024 * 1024;
+  public static final int DEFAULT_SAVE_PARALLELISM = 4;
+
+  // stateless, shared so the generic reads are cached under a single mapper
+  private static final GenericResultSetMapper GENERIC_MAPPER = new GenericResultSetMapper();
+
   private final DbConnectionPool _pool;
+  private final PreparedStatementCache _preparedStatements;
+  private final QueryResultCache _resultCache;
+  private final Map<MySqlAsyncConnection, Set<String>> _transactionWrites = new ConcurrentHashMap<>();
 
   public BasicDao(final DbConnectionPool pool) {
+    this(pool, (QueryResultCache) null);
+  }
+
+  public BasicDao(final DbConnectionPool pool, final MetricFactory metricFactory) {
+    this(pool, PreparedStatementCache.DEFAULT_MAX_SIZE, metricFactory, null);
+  }
+
+  /**
+   * @param resultCache caches the results of the reads that don't take a connection, invalidated by the writes of this dao.
+   *                    may be null.
+   */
+  public BasicDao(final DbConnectionPool pool, final QueryResultCache resultCache) {
+    this(pool, PreparedStatementCache.DEFAULT_MAX_SIZE, null, resultCache);
+  }
+
+  /**
+   * @param maxPreparedStatements the max number of distinct statements prepared on the server by each connection,
+   *                              other statements are sent as plain queries with their params inlined.
+   * @param metricFactory reports the prepared statements hits and misses. may be null.
+   * @param resultCache caches the results of the reads that don't take a connection, invalidated by the writes of this dao.
+   *                    may be null.
+   */
+  public BasicDao(final DbConnectionPool pool, final int maxPreparedStatements, final MetricFactory metricFactory,
+                  final QueryResultCache resultCache) {
     this._pool = pool;
+    this._preparedStatements = new PreparedStatementCache(maxPreparedStatements, metricFactory);
+    this._resultCache = resultCache;
   }
 
   /**
@@ -94,18 +142,27 @@ public class BasicDao {
   }
 
   public ComposableFuture<List<Map<String, Object>>> list(final String query) {
-    return list(query, new GenericResultSetMapper());
+    return list(query, GENERIC_MAPPER);
   }
 
   public ComposableFuture<List<Map<String, Object>>> list(final MySqlAsyncConnection conn, final String query) {
-    return list(conn, query, new GenericResultSetMapper());
+    return list(conn, query, GENERIC_MAPPER);
   }
 
   public <T> ComposableFuture<List<T>> list(final String query, final ResultSetMapper<T> mapper) {
-    final ComposableFuture<QueryResult> queryRes = _pool.sendQuery(query);
+    if (_resultCache != null) {
+      return copy(_resultCache.get(query, Collections.emptyList(), ResultKind.LIST, mapper, () -> _list(_pool.sendReadQuery(query), mapper)));
+    }
+
+    final ComposableFuture<QueryResult> queryRes = _pool.sendReadQuery(query);
     return _list(queryRes, mapper);
   }
 
+  private static <T> ComposableFuture<List<T>> copy(final ComposableFuture<List<T>> cachedList) {
+    // cached lists are shared between callers
+    return cachedList.continueOnSuccess((SuccessHandler<List<T>, List<T>>) ArrayList::new);
+  }
+
   private <T> ComposableFuture<List<T>> _list(final ComposableFuture<QueryResult> queryRes, final ResultSetMapper<T> mapper) {
     return queryRes.continueOnSuccess((SuccessHandler<QueryResult, List<T>>) res -> {
       final Option<ResultSet> rowsOption = res.rows();
@@ -132,16 +189,156 @@ public class BasicDao {
     return _list(queryRes, mapper);
   }
 
+  /**
+   * streams the result of a query, mapping each row only when it is requested by the subscriber.
+   * the driver reads the whole result before emitting it, so for large results prefer
+   * {@link #stream(String, List, String, Object, int, ResultSetMapper)}.
+   * the query is sent on subscribe.
+   *
+   * @param query SQL query to execute
+   * @param mapper a mapper between the resultset row, and the emitted value
+   * @return a cold stream of the mapped rows
+   */
+  public <T> Observable<T> stream(final String query, final ResultSetMapper<T> mapper) {
+    return Observable.defer(() -> toObservable(_pool.sendReadQuery(query))).concatMap(result -> _stream(result, mapper));
+  }
+
+  /**
+   * streams a large result page by page using keyset pagination, so only a bounded number of rows is held in memory.
+   * each page is read by binding the params followed by the last key read (fromKey for the first page) and the page size,
+   * e.g. "select * from t where status=? and id > ? order by id limit ?".
+   * the next page is fetched while the rows of the current one are consumed, no page is fetched once the subscriber
+   * unsubscribed.
+   *
+   * @param pagedQuery SQL query whose two last placeholders are the last key read and the page size
+   * @param params the query params, not including the key and the page size
+   * @param keyColumn the column the query is ordered by
+   * @param fromKey the key to start after
+   * @param pageSize the number of rows read per query
+   * @param mapper a mapper between the resultset row, and the emitted value
+   * @return a cold stream of the mapped rows
+   */
+  public <T> Observable<T> stream(final String pagedQuery, final List<?> params, final String keyColumn, final Object fromKey,
+                                  final int pageSize, final ResultSetMapper<T> mapper) {
+    return Observable.defer(() ->
+      _streamPages(sendPageQuery(pagedQuery, params, fromKey, pageSize), pagedQuery, params, keyColumn, pageSize, mapper));
+  }
+
+  private ComposableFuture<QueryResult> sendPageQuery(final String query, final List<?> params, final Object fromKey, final int pageSize) {
+    final List<Object> pageParams = new ArrayList<>(params.size() + 2);
+    pageParams.addAll(params);
+    pageParams.add(fromKey);
+    pageParams.add(pageSize);
+    return sendReadPreparedStatement(query, pageParams);
+  }
+
+  private <T> Observable<T> _streamPages(final ComposableFuture<QueryResult> page, final String query, final List<?> params,
+                                         final String keyColumn, final int pageSize, final ResultSetMapper<T> mapper) {
+    return toObservable(page).concatMap(result -> {
+      final Option<ResultSet> rowsOption = result.rows();
+      if (!rowsOption.isDefined() || rowsOption.get().size() < pageSize) {
+        return _stream(result, mapper);
+      }
+
+      final ResultSet resultSet = rowsOption.get();
+      final Object lastKey = resultSet.apply(resultSet.size() - 1).apply(keyColumn);
+      // the page may arrive after the subscriber unsubscribed, in which case the next page must not be fetched.
+      return Observable.create(subscriber -> {
+        if (subscriber.isUnsubscribed()) {
+          return;
+        }
+
+        final ComposableFuture<QueryResult> nextPage = sendPageQuery(query, params, lastKey, pageSize);
+        _stream(result, mapper).concatWith(Observable.defer(() -> _streamPages(nextPage, query, params, keyColumn, pageSize, mapper)))
+          .unsafeSubscribe(subscriber);
+      });
+    });
+  }
+
+  private static <T> Observable<T> _stream(final QueryResult result, final ResultSetMapper<T> mapper) {
+    final Option<ResultSet> rowsOption = result.rows();
+    if (!rowsOption.isDefined()) {
+      return Observable.empty();
+    }
+
+    final ResultSet resultSet = rowsOption.get();
+    final List<String> columnNames = JavaConversions.seqAsJavaList(resultSet.columnNames());
+    return Observable.from(JavaConversions.asJavaIterable(resultSet)).map(row -> mapper.map(new TypedRowData(row), columnNames));
+  }
+
+  private static <T> Observable<T> toObservable(final ComposableFuture<T> future) {
+    return ComposableFutures.toColdObservable(singletonList(future));
+  }
+
+  /**
+   * @param query SQL query to execute, with a '?' placeholder per param
+   * @param params the query params, bound by their types
+   * @param mapper a mapper between the resultset row, and the returned value(s)
+   * @return the mapped rows
+   */
+  public <T> ComposableFuture<List<T>> list(final String query, final List<?> params, final ResultSetMapper<T> mapper) {
+    if (_resultCache != null) {
+      return copy(_resultCache.get(query, params, ResultKind.LIST, mapper,
+        () -> _list(sendReadPreparedStatement(query, params), mapper)));
+    }
+
+    final ComposableFuture<QueryResult> queryRes = sendReadPreparedStatement(query, params);
+    return _list(queryRes, mapper);
+  }
+
+  public <T> ComposableFuture<List<T>> list(final MySqlAsyncConnection conn, final String query, final List<?> params,
+                                            final ResultSetMapper<T> mapper) {
+    final ComposableFuture<QueryResult> queryRes = sendPreparedStatement(conn, query, params);
+    return _list(queryRes, mapper);
+  }
+
+  /**
+   * when a result cache is used, the rows are cached by id, only the ids missing from the cache are queried,
+   * and the rows are returned in the order of the ids.
+   */
   public <T> ComposableFuture<List<T>> list(final String tableName, final String idColumnName, final List<?> ids, final ResultSetMapper<T> mapper) {
-    return list(createListByIDsQuery(tableName, idColumnName, ids), mapper);
+    if (ids == null || ids.isEmpty()) {
+      return noIds();
+    }
+
+    if (_resultCache != null) {
+      return _resultCache.getByIds(tableName, idColumnName, ids, mapper, missingIds -> _mapById(
+        sendReadPreparedStatement(createQueryForIds("select * from", tableName, idColumnName, missingIds),
+          InLists.pad(missingIds)), idColumnName, mapper));
+    }
+
+    final ComposableFuture<QueryResult> queryRes =
+      sendReadPreparedStatement(createQueryForIds("select * from", tableName, idColumnName, ids), InLists.pad(ids));
+    return _list(queryRes, mapper);
   }
 
-  private String createListByIDsQuery(final String tableName, final String idColumnName, final List<?> ids) {
-    return createQueryForIds("select * from", tableName, idColumnName, ids);
+  private <T> ComposableFuture<Map<String, T>> _mapById(final ComposableFuture<QueryResult> queryRes, final String idColumnName,
+                                                        final ResultSetMapper<T> mapper) {
+    return queryRes.continueOnSuccess((SuccessHandler<QueryResult, Map<String, T>>) res -> {
+      final Option<ResultSet> rowsOption = res.rows();
+
+      final Map<String, T> response = new HashMap<>();
+      if (rowsOption.isDefined()) {
+        final ResultSet resultSet = rowsOption.get();
+        final List<String> columnNames = JavaConversions.seqAsJavaList(resultSet.columnNames());
+
+        final Iterator<RowData> rows = resultSet.iterator();
+        while (rows.hasNext()) {
+          final RowData row = rows.next();
+          response.put(String.valueOf(row.apply(idColumnName)), mapper.map(new TypedRowData(row), columnNames));
+        }
+      }
+
+      return response;
+    });
   }
 
-  private String createQueryForIds(final String baseQuery, final String tableName, final String idColumnName,
-                                   final List<?> ids) {
+  private static <T> ComposableFuture<T> noIds() {
+    return ComposableFutures.fromError(new IllegalArgumentException("ids must contain at least one id"));
+  }
+
+  private static String createQueryForIds(final String baseQuery, final String tableName, final String idColumnName,
+                                          final List<?> ids) {
     final StringBuilder query = new StringBuilder(baseQuery);
     query.append(' ');
     query.append(withBackticks(tableName));
@@ -149,15 +346,20 @@ public class BasicDao {
     query.append(withBackticks(idColumnName));
     query.append(" in (");
     final Joiner joiner = Joiner.on(',');
-    joiner.appendTo(query, transform(ids, BasicDao::withQuote)); // todo: why it's not just List<String> ?
-    query.append(");");
+    joiner.appendTo(query, Collections.nCopies(InLists.size(ids.size()), '?'));
+    query.append(')');
 
     return query.toString();
   }
 
   public <T> ComposableFuture<List<T>> list(final MySqlAsyncConnection conn, final String tableName, final String idColumnName,
                                             final List<?> ids, final ResultSetMapper<T> mapper) {
-    final ComposableFuture<QueryResult> queryRes = conn.sendQuery(createListByIDsQuery(tableName, idColumnName, ids));
+    if (ids == null || ids.isEmpty()) {
+      return noIds();
+    }
+
+    final ComposableFuture<QueryResult> queryRes =
+      sendPreparedStatement(conn, createQueryForIds("select * from", tableName, idColumnName, ids), InLists.pad(ids));
     return _list(queryRes, mapper);
   }
 
@@ -166,7 +368,11 @@ public class BasicDao {
   //  }
 
   public <T> ComposableFuture<T> get(final String query, final ResultSetMapper<T> mapper) {
-    final ComposableFuture<QueryResult> queryRes = _pool.sendQuery(query);
+    if (_resultCache != null) {
+      return _resultCache.get(query, Collections.emptyList(), ResultKind.SINGLE, mapper, () -> _get(_pool.sendReadQuery(query), mapper));
+    }
+
+    final ComposableFuture<QueryResult> queryRes = _pool.sendReadQuery(query);
     return _get(queryRes, mapper);
   }
 
@@ -194,12 +400,54 @@ public class BasicDao {
     return _get(queryRes, mapper);
   }
 
+  /**
+   * @param query SQL query to execute, with a '?' placeholder per param
+   * @param params the query params, bound by their types
+   * @param mapper a mapper between the resultset row, and the returned value
+   * @return the first mapped row, or null if there are no rows
+   */
+  public <T> ComposableFuture<T> get(final String query, final List<?> params, final ResultSetMapper<T> mapper) {
+    if (_resultCache != null) {
+      return _resultCache.get(query, params, ResultKind.SINGLE, mapper,
+        () -> _get(sendReadPreparedStatement(query, params), mapper));
+    }
+
+    final ComposableFuture<QueryResult> queryRes = sendReadPreparedStatement(query, params);
+    return _get(queryRes, mapper);
+  }
+
+  public <T> ComposableFuture<T> get(final MySqlAsyncConnection conn, final String query, final List<?> params,
+                                     final ResultSetMapper<T> mapper) {
+    final ComposableFuture<QueryResult> queryRes = sendPreparedStatement(conn, query, params);
+    return _get(queryRes, mapper);
+  }
+
   public <T> ComposableFuture<T> withConnection(final TransactionHandler<T> handler) {
     return _pool.withConnection(handler);
   }
 
   public <T> ComposableFuture<T> withTransaction(final TransactionHandler<T> handler) {
-    return _pool.withTransaction(handler);
+    if (_resultCache == null) {
+      return _pool.withTransaction(handler);
+    }
+
+    // reads may run between a write and the commit, so written tables are invalidated again once the transaction ends.
+    final Set<String> writtenTables = ConcurrentHashMap.newKeySet();
+    final AtomicReference<MySqlAsyncConnection> transactionConn = new AtomicReference<>();
+    final ComposableFuture<T> result = _pool.withTransaction(conn -> {
+      transactionConn.set(conn);
+      _transactionWrites.put(conn, writtenTables);
+      return handler.handle(conn);
+    });
+
+    result.consume(res -> {
+      final MySqlAsyncConnection conn = transactionConn.get();
+      if (conn != null) {
+        _transactionWrites.remove(conn, writtenTables);
+      }
+      writtenTables.forEach(_resultCache::invalidateWrittenTable);
+    });
+    return result;
   }
 
   public <T> ComposableFuture<T> get(final ResultSetMapper<T> mapper, final String tableName, final int limit) {
@@ -211,16 +459,16 @@ public class BasicDao {
   }
 
   public ComposableFuture<Map<String, Object>> get(final String query) {
-    return get(query, new GenericResultSetMapper());
+    return get(query, GENERIC_MAPPER);
   }
 
   public ComposableFuture<Map<String, Object>> get(final MySqlAsyncConnection conn, final String query) {
-    return get(conn, query, new GenericResultSetMapper());
+    return get(conn, query, GENERIC_MAPPER);
   }
 
   public ComposableFuture<Long> execute(final String command) {
     final ComposableFuture<QueryResult> queryRes = _pool.sendQuery(command);
-    return _execute(queryRes);
+    return _execute(command, queryRes);
   }
 
   public ComposableFuture<Long> executeAndGetId(final String command) {
@@ -230,47 +478,169 @@ public class BasicDao {
   }
 
   public <T> ComposableFuture<Long> saveAndGetId(final T entry, final String tableName, final EntityMapper<T> mapper) {
-    final String saveCommand = createSaveCommand(singletonList(entry), tableName, mapper);
+    final String saveCommand = InsertCommands.create(singletonList(entry), tableName, mapper, SaveMode.INSERT, 1, Integer.MAX_VALUE).get(0).sql;
     return executeAndGetId(saveCommand);
   }
 
   public ComposableFuture<Long> execute(final MySqlAsyncConnection conn, final String command) {
     final ComposableFuture<QueryResult> queryRes = conn.sendQuery(command);
-    return _execute(queryRes);
+    return _execute(conn, command, queryRes);
+  }
+
+  /**
+   * @param command SQL command to execute, with a '?' placeholder per param
+   * @param params the command params, bound by their types
+   * @return number of affected rows
+   */
+  public ComposableFuture<Long> execute(final String command, final List<?> params) {
+    return _execute(command, sendPreparedStatement(command, params));
   }
 
-  private ComposableFuture<Long> _execute(final ComposableFuture<QueryResult> queryRes) {
+  public ComposableFuture<Long> execute(final MySqlAsyncConnection conn, final String command, final List<?> params) {
+    return _execute(conn, command, sendPreparedStatement(conn, command, params));
+  }
+
+  private ComposableFuture<Long> _execute(final String command, final ComposableFuture<QueryResult> queryRes) {
+    if (_resultCache != null) {
+      final String writtenTable = QueryResultCache.writtenTable(command);
+      queryRes.consume(result -> _resultCache.invalidateWrittenTable(writtenTable));
+    }
     return queryRes.continueOnSuccess(QueryResult::rowsAffected);
   }
 
+  private ComposableFuture<Long> _execute(final MySqlAsyncConnection conn, final String command,
+                                          final ComposableFuture<QueryResult> queryRes) {
+    if (_resultCache != null) {
+      final Set<String> transactionWrites = _transactionWrites.get(conn);
+      if (transactionWrites != null) {
+        transactionWrites.add(QueryResultCache.writtenTable(command));
+      }
+    }
+    return _execute(command, queryRes);
+  }
+
   public ComposableFuture<Long> delete(final String tableName, final String idColumnName, final Object id) {
-    return execute(createDeleteCommand(tableName, idColumnName, singletonList(id)));
+    return delete(tableName, idColumnName, singletonList(id));
   }
 
   public ComposableFuture<Long> delete(final MySqlAsyncConnection conn, final String tableName,
                                        final String idColumnName, final Object id) {
-    return execute(conn, createDeleteCommand(tableName, idColumnName, singletonList(id)));
+    return delete(conn, tableName, idColumnName, singletonList(id));
   }
 
   public ComposableFuture<Long> delete(final String tableName, final String idColumnName, final List<?> ids) {
-    return execute(createDeleteCommand(tableName, idColumnName, ids));
+    if (ids == null || ids.isEmpty()) {
+      return noIds();
+    }
+
+    final String command = createDeleteCommand(tableName, idColumnName, ids);
+    return _execute(command, sendPreparedStatement(command, InLists.pad(ids)));
   }
 
   public ComposableFuture<Long> delete(final MySqlAsyncConnection conn, final String tableName,
                                        final String idColumnName, final List<?> ids) {
-    return execute(conn, createDeleteCommand(tableName, idColumnName, ids));
+    if (ids == null || ids.isEmpty()) {
+      return noIds();
+    }
+
+    final String command = createDeleteCommand(tableName, idColumnName, ids);
+    return _execute(conn, command, sendPreparedStatement(conn, command, InLists.pad(ids)));
   }
 
-  private String createDeleteCommand(final String tableName, final String idColumnName, final List<?> ids) {
+  private static String createDeleteCommand(final String tableName, final String idColumnName, final List<?> ids) {
     return createQueryForIds("delete from", tableName, idColumnName, ids);
   }
 
   public <T> ComposableFuture<Long> save(final List<T> entries, final String tableName, final EntityMapper<T> mapper) {
-    return execute(createSaveCommand(entries, tableName, mapper));
+    return save(entries, tableName, mapper, SaveMode.INSERT);
   }
 
   public <T> ComposableFuture<Long> save(final MySqlAsyncConnection conn, final List<T> entries, final String tableName, final EntityMapper<T> mapper) {
-    return execute(conn, createSaveCommand(entries, tableName, mapper));
+    return save(conn, entries, tableName, mapper, SaveMode.INSERT);
+  }
+
+  /**
+   * saves the entries in a single statement, unless it would exceed {@link #MAX_STATEMENT_BYTES},
+   * in which case the entries are saved in chunks, and the statement is no longer atomic.
+   *
+   * @return the total number of affected rows
+   */
+  public <T> ComposableFuture<Long> save(final List<T> entries, final String tableName, final EntityMapper<T> mapper, final SaveMode mode) {
+    final List<InsertCommands.Command> commands = InsertCommands.create(entries, tableName, mapper, mode, Integer.MAX_VALUE, MAX_STATEMENT_BYTES);
+    if (commands.size() == 1) {
+      return execute(commands.get(0).sql);
+    }
+
+    return sumRowsAffected(executeChunks(commands, DEFAULT_SAVE_PARALLELISM, this::execute));
+  }
+
+  public <T> ComposableFuture<Long> save(final MySqlAsyncConnection conn, final List<T> entries, final String tableName,
+                                         final EntityMapper<T> mapper, final SaveMode mode) {
+    final List<InsertCommands.Command> commands = InsertCommands.create(entries, tableName, mapper, mode, Integer.MAX_VALUE, MAX_STATEMENT_BYTES);
+    if (commands.size() == 1) {
+      return execute(conn, commands.get(0).sql);
+    }
+
+    return sumRowsAffected(executeChunks(commands, 1, command -> execute(conn, command)));
+  }
+
+  /**
+   * saves large amounts of entries using multi-row statements limited by their number of rows and size,
+   * executed over several connections of the pool in parallel.
+   * each chunk succeeds or fails on its own; the result of every chunk is reported in the order of the entries.
+   *
+   * @param maxRowsPerChunk the max number of entries saved by a single statement
+   * @param maxChunkBytes the max size of a single statement in UTF-8 bytes, must be less than the max_allowed_packet of the server
+   * @param parallelism the max number of statements executed concurrently
+   * @return the result of each chunk
+   */
+  public <T> ComposableFuture<List<SaveChunkResult>> saveInChunks(final List<T> entries, final String tableName, final EntityMapper<T> mapper,
+                                                                  final SaveMode mode, final int maxRowsPerChunk, final int maxChunkBytes,
+                                                                  final int parallelism) {
+    final List<InsertCommands.Command> commands = InsertCommands.create(entries, tableName, mapper, mode, maxRowsPerChunk, maxChunkBytes);
+    return executeChunks(commands, parallelism, this::execute);
+  }
+
+  public <T> ComposableFuture<List<SaveChunkResult>> saveInChunks(final List<T> entries, final String tableName, final EntityMapper<T> mapper,
+                                                                  final SaveMode mode) {
+    return saveInChunks(entries, tableName, mapper, mode, DEFAULT_MAX_CHUNK_ROWS, DEFAULT_MAX_CHUNK_BYTES, DEFAULT_SAVE_PARALLELISM);
+  }
+
+  /**
+   * same as {@link #saveInChunks(List, String, EntityMapper, SaveMode, int, int, int)}, executing the chunks one after the other
+   * on the given connection.
+   */
+  public <T> ComposableFuture<List<SaveChunkResult>> saveInChunks(final MySqlAsyncConnection conn, final List<T> entries, final String tableName,
+                                                                  final EntityMapper<T> mapper, final SaveMode mode,
+                                                                  final int maxRowsPerChunk, final int maxChunkBytes) {
+    final List<InsertCommands.Command> commands = InsertCommands.create(entries, tableName, mapper, mode, maxRowsPerChunk, maxChunkBytes);
+    return executeChunks(commands, 1, command -> execute(conn, command));
+  }
+
+  private ComposableFuture<List<SaveChunkResult>> executeChunks(final List<InsertCommands.Command> commands, final int parallelism,
+                                                                final Function<String, ComposableFuture<Long>> executor) {
+    final ComposableFuture<List<SaveChunkResult>> results = ComposableFutures.batchUnordered(commands, parallelism,
+      command -> executor.apply(command.sql).continueWith((ResultHandler<Long, SaveChunkResult>) result ->
+        new SaveChunkResult(command.firstEntry, command.entries, result.isSuccess() ? result.getValue() : 0, result.getError())));
+
+    return results.continueOnSuccess((SuccessHandler<List<SaveChunkResult>, List<SaveChunkResult>>) chunkResults -> {
+      final List<SaveChunkResult> ordered = new ArrayList<>(chunkResults);
+      ordered.sort(Comparator.comparingInt(SaveChunkResult::getFirstEntry));
+      return ordered;
+    });
+  }
+
+  private static ComposableFuture<Long> sumRowsAffected(final ComposableFuture<List<SaveChunkResult>> chunkResults) {
+    return chunkResults.continueOnSuccess((FutureSuccessHandler<List<SaveChunkResult>, Long>) results -> {
+      long rowsAffected = 0;
+      for (final SaveChunkResult result : results) {
+        if (!result.isSuccess()) {
+          return ComposableFutures.fromError(result.getError());
+        }
+        rowsAffected += result.getRowsAffected();
+      }
+      return ComposableFutures.fromValue(rowsAffected);
+    });
   }
 
   /**
@@ -285,7 +655,10 @@ public class BasicDao {
    */
   public <T> ComposableFuture<Long> update(final String tableName, final T entry, final EntityMapper<T> entryMapper,
                                            final EntityMapper<T> idMapper) {
-    return execute(createUpdateCommand(tableName, entry, entryMapper, idMapper));
+    final Map<String, Object> updateValues = entryMapper.map(entry);
+    final Map<String, Object> updateByEntries = idMapper.map(entry);
+    final String command = createUpdateCommand(tableName, updateValues, updateByEntries);
+    return _execute(command, sendPreparedStatement(command, updateParams(updateValues, updateByEntries)));
   }
 
   /**
@@ -301,90 +674,67 @@ public class BasicDao {
    */
   public <T> ComposableFuture<Long> update(final MySqlAsyncConnection conn, final String tableName, final T entry,
                                            final EntityMapper<T> entryMapper, final EntityMapper<T> idMapper) {
-    return execute(conn, createUpdateCommand(tableName, entry, entryMapper, idMapper));
+    final Map<String, Object> updateValues = entryMapper.map(entry);
+    final Map<String, Object> updateByEntries = idMapper.map(entry);
+    final String command = createUpdateCommand(tableName, updateValues, updateByEntries);
+    return _execute(conn, command, sendPreparedStatement(conn, command, updateParams(updateValues, updateByEntries)));
   }
 
-  private <T> String createUpdateCommand(final String tableName, final T entry, final EntityMapper<T> entryMapper,
-                                         final EntityMapper<T> idMapper) {
+  private static String createUpdateCommand(final String tableName, final Map<String, Object> updateValues,
+                                     final Map<String, Object> updateByEntries) {
     final StringBuilder command = new StringBuilder("update ");
     command.append(withBackticks(tableName));
     command.append(" set ");
-
-    final Map<String, Object> updateValues = entryMapper.map(entry);
-    final String entriesToUpdate = toColumnValueString(updateValues, ", ");
-
-    command.append(entriesToUpdate);
-    command.append("where ");
-
-    final Map<String, Object> updateByEntries = idMapper.map(entry);
-    final String updateBy = toColumnValueString(updateByEntries, " and ");
-
-    command.append(updateBy);
-    command.append(";");
+    command.append(toColumnPlaceholderString(updateValues, ", "));
+    command.append(" where ");
+    command.append(toColumnPlaceholderString(updateByEntries, " and "));
 
     return command.toString();
   }
 
-  private String toColumnValueString(final Map<String, Object> updateValues, final String seperator) {
-    return updateValues.entrySet().stream().map(entry ->
-      withBackticks(entry.getKey()) + "=" + withQuote(entry.getValue())).
-      collect(Collectors.joining(seperator));
+  private static List<Object> updateParams(final Map<String, Object> updateValues, final Map<String, Object> updateByEntries) {
+    final List<Object> params = new ArrayList<>(updateValues.size() + updateByEntries.size());
+    params.addAll(updateValues.values());
+    params.addAll(updateByEntries.values());
+    return params;
   }
 
-  private <T> String createSaveCommand(final List<T> entries, final String tableName, final EntityMapper<T> mapper) {
-    // using the following syntax: INSERT INTO tbl_name (a,b,c) VALUES(1,2,3),(4,5,6),(7,8,9);
-
-    if (entries == null || entries.isEmpty())
-      throw new IllegalArgumentException("entries must contain at least on entry");
+  private static String toColumnPlaceholderString(final Map<String, Object> values, final String seperator) {
+    return values.keySet().stream().map(column -> withBackticks(column) + "=?").collect(Collectors.joining(seperator));
+  }
 
-    final StringBuilder command = new StringBuilder("insert into ");
-    command.append(withBackticks(tableName));
+  private ComposableFuture<QueryResult> sendReadPreparedStatement(final String query, final List<?> params) {
+    return _preparedStatements.isPrepared(query) ?
+      _pool.sendReadPreparedStatement(query, values(params)) :
+      _pool.sendReadQuery(PreparedStatementCache.inline(query, params));
+  }
 
-    // setting the columns part (col1, col2, ...)
-    command.append(" (");
-    final T first = entries.get(0);
-    final List<String> columnNames = new ArrayList<>(mapper.map(first).keySet());
-    final Joiner joiner = Joiner.on(',');
-    joiner.appendTo(command, transform(columnNames, BasicDao::withBackticks));
-    command.append(") ");
-
-    command.append(" values ");
-
-    // setting the values part values (val11, val12, ...), (val21, val22, ...), ...
-    for (final T entry : entries) {
-      if (entry != first)
-        command.append(",");
-
-      command.append(" (");
-      final List<String> values = new ArrayList<>();
-      final Map<String, Object> elements = mapper.map(entry);
-      for (final String column : columnNames) {
-        final Object value = elements.get(column);
-        if (value != null) {
-          final String queryValue = withQuote(value);
-          values.add(queryValue);
-        } else {
-          values.add("NULL");
-        }
-      }
+  private ComposableFuture<QueryResult> sendPreparedStatement(final String command, final List<?> params) {
+    return _preparedStatements.isPrepared(command) ?
+      _pool.sendPreparedStatement(command, values(params)) :
+      _pool.sendQuery(PreparedStatementCache.inline(command, params));
+  }
 
-      joiner.appendTo(command, values);
-      command.append(") ");
-    }
+  private ComposableFuture<QueryResult> sendPreparedStatement(final MySqlAsyncConnection conn, final String command,
+                                                              final List<?> params) {
+    return _preparedStatements.isPrepared(command) ?
+      conn.sendPreparedStatement(command, values(params)) :
+      conn.sendQuery(PreparedStatementCache.inline(command, params));
+  }
 
-    command.append(";");
-    return command.toString();
+  private static List<Object> values(final List<?> params) {
+    return new ArrayList<>(params);
   }
 
   public ComposableFuture<Boolean> shutdown() {
     return _pool.close();
   }
 
-  private static String withBackticks(final String columnOrTable) {
+  static String withBackticks(final String columnOrTable) {
     return "`" + columnOrTable + "`";
   }
 
-  private static String withQuote(final Object value) {
+  static String withQuote(final Object value) {
     if (value instanceof Boolean) {
       return value.toString();
     }
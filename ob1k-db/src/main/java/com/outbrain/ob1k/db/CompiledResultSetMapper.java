@@ -0,0 +1,256 @@
+package com.outbrain.ob1k.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * a {@link ResultSetMapper} for POJOs, that maps columns to setters or fields without reflection on each row.
+ * <p>
+ * the setters and fields are resolved once per class into method handles, and the column of each one is resolved
+ * once per result set shape, so rows are read by index only.
+ * columns are matched to properties ignoring case and underscores (e.g. "user_id" is mapped to userId),
+ * and numeric and boolean columns are converted to the property type, so a BIGINT column can be mapped to an int field.
+ * unmatched columns are ignored, and null values leave primitive properties untouched.
+ * </p>
+ * the mapped class must have a no-args constructor, which may be private.
+ * mappers are thread safe and should be created once per class.
+ */
+public final class CompiledResultSetMapper<T> implements ResultSetMapper<T> {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+  private static final Map<Class<?>, MethodHandle> CONVERTERS = createConverters();
+
+  private final Class<T> type;
+  private final MethodHandle constructor;
+  private final Map<String, Property> properties;
+  private volatile Shape shape;
+
+  private CompiledResultSetMapper(final Class<T> type) {
+    this.type = type;
+    this.constructor = findConstructor(type);
+    this.properties = findProperties(type);
+  }
+
+  public static <T> CompiledResultSetMapper<T> forClass(final Class<T> type) {
+    return new CompiledResultSetMapper<>(type);
+  }
+
+  @Override
+  public T map(final TypedRowData row, final List<String> columnNames) {
+    final Shape current = shapeOf(columnNames);
+    try {
+      final Object entity = (Object) constructor.invokeExact();
+      final MethodHandle[] setters = current.setters;
+      final boolean[] primitives = current.primitives;
+      for (int i = 0; i < setters.length; i++) {
+        final MethodHandle setter = setters[i];
+        if (setter != null) {
+          final Object value = row.getRaw(i);
+          if (value != null || !primitives[i]) {
+            setter.invokeExact(entity, value);
+          }
+        }
+      }
+
+      return type.cast(entity);
+    } catch (final RuntimeException e) {
+      throw e;
+    } catch (final Throwable e) {
+      throw new IllegalStateException("failed mapping a row to " + type.getName(), e);
+    }
+  }
+
+  private Shape shapeOf(final List<String> columnNames) {
+    final Shape current = shape;
+    if (current != null && (current.source == columnNames || current.columnNames.equals(columnNames))) {
+      return current;
+    }
+
+    final Shape newShape = new Shape(columnNames, properties);
+    shape = newShape;
+    return newShape;
+  }
+
+  private static MethodHandle findConstructor(final Class<?> type) {
+    try {
+      final Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return LOOKUP.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+    } catch (final NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalArgumentException(type.getName() + " must have a no-args constructor", e);
+    }
+  }
+
+  private static Map<String, Property> findProperties(final Class<?> type) {
+    final Map<String, Property> properties = new HashMap<>();
+    try {
+      for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+        for (final Field field : current.getDeclaredFields()) {
+          final int modifiers = field.getModifiers();
+          final String name = normalize(field.getName());
+          if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic() || properties.containsKey(name)) {
+            continue;
+          }
+
+          field.setAccessible(true);
+          properties.put(name, new Property(LOOKUP.unreflectSetter(field), field.getType()));
+        }
+      }
+
+      // setters take precedence over fields
+      for (final Method method : type.getMethods()) {
+        if (!Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 1 &&
+            method.getName().length() > 3 && method.getName().startsWith("set")) {
+          method.setAccessible(true);
+          final MethodHandle setter = LOOKUP.unreflect(method);
+          properties.put(normalize(method.getName().substring(3)),
+            new Property(setter.asType(setter.type().changeReturnType(void.class)), method.getParameterTypes()[0]));
+        }
+      }
+    } catch (final IllegalAccessException e) {
+      throw new IllegalArgumentException("can't access the properties of " + type.getName(), e);
+    }
+
+    return properties;
+  }
+
+  private static String normalize(final String name) {
+    return name.replace("_", "").toLowerCase(Locale.ROOT);
+  }
+
+  private static final class Property {
+    private final MethodHandle setter;
+    private final boolean primitive;
+
+    private Property(final MethodHandle setter, final Class<?> propertyType) {
+      final MethodHandle converter = CONVERTERS.get(propertyType);
+      final MethodHandle typedSetter = converter == null ? setter : MethodHandles.filterArguments(setter, 1, converter);
+      this.setter = typedSetter.asType(SETTER_TYPE);
+      this.primitive = propertyType.isPrimitive();
+    }
+  }
+
+  private static final class Shape {
+    // the rows of a result share its column names list, so it's compared by reference first
+    private final List<String> source;
+    private final List<String> columnNames;
+    private final MethodHandle[] setters;
+    private final boolean[] primitives;
+
+    private Shape(final List<String> columnNames, final Map<String, Property> properties) {
+      this.source = columnNames;
+      this.columnNames = new ArrayList<>(columnNames);
+      this.setters = new MethodHandle[columnNames.size()];
+      this.primitives = new boolean[columnNames.size()];
+      for (int i = 0; i < setters.length; i++) {
+        final Property property = properties.get(normalize(columnNames.get(i)));
+        if (property != null) {
+          setters[i] = property.setter;
+          primitives[i] = property.primitive;
+        }
+      }
+    }
+  }
+
+  private static Map<Class<?>, MethodHandle> createConverters() {
+    final Map<Class<?>, MethodHandle> converters = new HashMap<>();
+    try {
+      converters.put(int.class, converter("toInt", int.class));
+      converters.put(Integer.class, converter("toInteger", Integer.class));
+      converters.put(long.class, converter("toLong", long.class));
+      converters.put(Long.class, converter("toLongObject", Long.class));
+      converters.put(short.class, converter("toShort", short.class));
+      converters.put(Short.class, converter("toShortObject", Short.class));
+      converters.put(byte.class, converter("toByte", byte.class));
+      converters.put(Byte.class, converter("toByteObject", Byte.class));
+      converters.put(double.class, converter("toDouble", double.class));
+      converters.put(Double.class, converter("toDoubleObject", Double.class));
+      converters.put(float.class, converter("toFloat", float.class));
+      converters.put(Float.class, converter("toFloatObject", Float.class));
+      converters.put(boolean.class, converter("toBoolean", boolean.class));
+      converters.put(Boolean.class, converter("toBooleanObject", Boolean.class));
+    } catch (final NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return converters;
+  }
+
+  private static MethodHandle converter(final String name, final Class<?> returnType) throws NoSuchMethodException, IllegalAccessException {
+    return LOOKUP.findStatic(CompiledResultSetMapper.class, name, MethodType.methodType(returnType, Object.class));
+  }
+
+  private static int toInt(final Object value) {
+    return ((Number) value).intValue();
+  }
+
+  private static Integer toInteger(final Object value) {
+    return value == null || value instanceof Integer ? (Integer) value : Integer.valueOf(toInt(value));
+  }
+
+  private static long toLong(final Object value) {
+    return ((Number) value).longValue();
+  }
+
+  private static Long toLongObject(final Object value) {
+    return value == null || value instanceof Long ? (Long) value : Long.valueOf(toLong(value));
+  }
+
+  private static short toShort(final Object value) {
+    return ((Number) value).shortValue();
+  }
+
+  private static Short toShortObject(final Object value) {
+    return value == null || value instanceof Short ? (Short) value : Short.valueOf(toShort(value));
+  }
+
+  private static byte toByte(final Object value) {
+    return ((Number) value).byteValue();
+  }
+
+  private static Byte toByteObject(final Object value) {
+    return value == null || value instanceof Byte ? (Byte) value : Byte.valueOf(toByte(value));
+  }
+
+  private static double toDouble(final Object value) {
+    return ((Number) value).doubleValue();
+  }
+
+  private static Double toDoubleObject(final Object value) {
+    return value == null || value instanceof Double ? (Double) value : Double.valueOf(toDouble(value));
+  }
+
+  private static float toFloat(final Object value) {
+    return ((Number) value).floatValue();
+  }
+
+  private static Float toFloatObject(final Object value) {
+    return value == null || value instanceof Float ? (Float) value : Float.valueOf(toFloat(value));
+  }
+
+  private static boolean toBoolean(final Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    if (value instanceof byte[]) {
+      // BIT columns
+      final byte[] bytes = (byte[]) value;
+      return bytes.length > 0 && bytes[0] == 1;
+    }
+    return ((Number) value).longValue() != 0;
+  }
+
+  private static Boolean toBooleanObject(final Object value) {
+    return value == null ? null : Boolean.valueOf(toBoolean(value));
+  }
+}
@@ -13,6 +13,20 @@ public interface DbConnectionPool {
 
   ComposableFuture<QueryResult> sendPreparedStatement(String query, List<Object> values);
 
+  /**
+   * sends a query that doesn't modify data, and may be served by a replica.
+   */
+  default ComposableFuture<QueryResult> sendReadQuery(final String query) {
+    return sendQuery(query);
+  }
+
+  /**
+   * sends a prepared statement that doesn't modify data, and may be served by a replica.
+   */
+  default ComposableFuture<QueryResult> sendReadPreparedStatement(final String query, final List<Object> values) {
+    return sendPreparedStatement(query, values);
+  }
+
   <T> ComposableFuture<T> withConnection(TransactionHandler<T> handler);
 
   <T> ComposableFuture<T> withTransaction(TransactionHandler<T> handler);
@@ -0,0 +1,185 @@
+package com.outbrain.ob1k.db;
+
+import com.github.mauricio.async.db.Configuration;
+import com.github.mauricio.async.db.Connection;
+import com.github.mauricio.async.db.QueryResult;
+import com.github.mauricio.async.db.mysql.MySQLConnection;
+import com.github.mauricio.async.db.mysql.pool.MySQLConnectionFactory;
+import com.github.mauricio.async.db.mysql.util.CharsetMapper$;
+import com.github.mauricio.async.db.util.ExecutorServiceUtils$;
+import com.github.mauricio.async.db.util.NettyUtils$;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.handlers.FutureResultHandler;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.swinfra.metrics.api.Histogram;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.ExecutionContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * a MySql {@link DbConnectionPool} backed by a {@link FairObjectPool}, rather than the mysql-async pool.
+ * <p>
+ * connections are acquired in FIFO order with an acquisition timeout, connections held for too long are reported
+ * as possible leaks, and a minimal number of idle connections is kept open.
+ * acquire wait, hold and query times are reported as histograms under "MysqlAsyncConnectionPool".
+ * </p>
+ * connections that were disconnected or returned while still querying (e.g. after a query timeout) are closed
+ * rather than reused, as are the connections of transactions that exceeded the transaction timeout.
+ * <p>
+ * given the configuration, connections are opened without blocking a thread. a custom connection factory connects
+ * synchronously, so its connections are opened on the ComposableFutures executor.
+ * </p>
+ */
+class FairMySqlConnectionPool implements DbConnectionPool {
+  private static final Logger logger = LoggerFactory.getLogger(FairMySqlConnectionPool.class);
+  private static final String METRICS_COMPONENT = "MysqlAsyncConnectionPool";
+
+  private final FairObjectPool<MySQLConnection> pool;
+  private final long transactionTimeoutMs;
+  private final Histogram queryTime;
+  private final ExecutionContext executionContext;
+
+  /**
+   * @param configuration the configuration of the connections created by the connection factory, or null if unknown.
+   * @param transactionTimeoutMs how long a transaction handler may run before the transaction fails. 0 for no limit.
+   */
+  FairMySqlConnectionPool(final MySQLConnectionFactory connFactory, final Configuration configuration, final int maxConnections,
+                          final int maxQueueSize, final int minIdle, final long acquireTimeoutMs, final long maxIdleTimeMs,
+                          final long leakDetectionThresholdMs, final long transactionTimeoutMs, final MetricFactory metricFactory,
+                          final ExecutionContext executionContext) {
+    this.executionContext = executionContext;
+    this.transactionTimeoutMs = transactionTimeoutMs;
+    final FairObjectPool.ObjectFactory<MySQLConnection> factory = new FairObjectPool.ObjectFactory<MySQLConnection>() {
+      @Override
+      public ComposableFuture<MySQLConnection> create() {
+        if (configuration != null) {
+          return connect(configuration);
+        }
+
+        // the factory connects synchronously
+        return ComposableFutures.submit(connFactory::create);
+      }
+
+      @Override
+      public void destroy(final MySQLConnection conn) {
+        connFactory.destroy(conn);
+      }
+
+      @Override
+      public boolean validate(final MySQLConnection conn) {
+        // closed by the server while idle
+        return conn.isConnected();
+      }
+    };
+
+    this.pool = new FairObjectPool<>(factory, maxConnections, maxQueueSize, minIdle, acquireTimeoutMs, maxIdleTimeMs,
+      leakDetectionThresholdMs, METRICS_COMPONENT, metricFactory);
+    this.queryTime = metricFactory != null ? metricFactory.createHistogram(METRICS_COMPONENT, "queryTimeMs", false) : null;
+  }
+
+  private static ComposableFuture<MySQLConnection> connect(final Configuration configuration) {
+    final MySQLConnection conn = new MySQLConnection(configuration, CharsetMapper$.MODULE$.Instance(),
+      NettyUtils$.MODULE$.DefaultEventLoopGroup(), ExecutorServiceUtils$.MODULE$.CachedExecutionContext());
+    return ScalaFutureHelper.from(conn::connect)
+      .withTimeout(configuration.connectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+      .continueWith((FutureResultHandler<Connection, MySQLConnection>) result -> {
+        if (result.isSuccess()) {
+          return ComposableFutures.fromValue(conn);
+        }
+
+        conn.disconnect();
+        return ComposableFutures.fromError(result.getError());
+      });
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendQuery(final String query) {
+    return withConnection(conn -> timed(conn.sendQuery(query)));
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
+    return withConnection(conn -> timed(conn.sendPreparedStatement(query, values)));
+  }
+
+  private ComposableFuture<QueryResult> timed(final ComposableFuture<QueryResult> query) {
+    if (queryTime != null) {
+      final long start = System.nanoTime();
+      query.consume(result -> queryTime.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+    return query;
+  }
+
+  private void giveBack(final MySQLConnection conn) {
+    pool.giveBack(conn, conn.isConnected() && !conn.isQuerying());
+  }
+
+  @Override
+  public <T> ComposableFuture<T> withConnection(final TransactionHandler<T> handler) {
+    return pool.take().continueOnSuccess((FutureSuccessHandler<MySQLConnection, T>) conn ->
+      handle(handler, new MySqlAsyncConnection(conn, executionContext)).continueWith((FutureResultHandler<T, T>) result -> {
+        giveBack(conn);
+        return ComposableFutures.fromTry(result);
+      }));
+  }
+
+  @Override
+  public <T> ComposableFuture<T> withTransaction(final TransactionHandler<T> handler) {
+    return pool.take().continueOnSuccess((FutureSuccessHandler<MySQLConnection, T>) conn -> {
+      final MySqlAsyncConnection asyncConn = new MySqlAsyncConnection(conn, executionContext);
+      final AtomicBoolean handled = new AtomicBoolean();
+      return asyncConn.startTx()
+        .continueOnSuccess((FutureSuccessHandler<MySqlAsyncConnection, T>) started -> bounded(handle(handler, asyncConn), handled))
+        .continueWith((FutureResultHandler<T, T>) result -> {
+          if (result.isSuccess()) {
+            return asyncConn.commit().continueWith((FutureResultHandler<QueryResult, T>) commitResult -> {
+              giveBack(conn);
+              return commitResult.isSuccess() ? ComposableFutures.fromValue(result.getValue()) : ComposableFutures.fromError(commitResult.getError());
+            });
+          }
+
+          if (result.getError() instanceof TimeoutException && !handled.get()) {
+            // the handler may still use the connection, closing it rolls the transaction back on the server.
+            pool.giveBack(conn, false);
+            return ComposableFutures.fromError(result.getError());
+          }
+
+          return asyncConn.rollBack().continueWith((FutureResultHandler<QueryResult, T>) rollBackResult -> {
+            if (!rollBackResult.isSuccess()) {
+              logger.warn("can't roll back transaction", rollBackResult.getError());
+            }
+            giveBack(conn);
+            return ComposableFutures.fromError(result.getError());
+          });
+        });
+    });
+  }
+
+  private <T> ComposableFuture<T> bounded(final ComposableFuture<T> handled, final AtomicBoolean done) {
+    handled.consume(result -> done.set(true));
+    if (transactionTimeoutMs <= 0) {
+      return handled;
+    }
+    return handled.withTimeout(transactionTimeoutMs, TimeUnit.MILLISECONDS, "transaction");
+  }
+
+  private static <T> ComposableFuture<T> handle(final TransactionHandler<T> handler, final MySqlAsyncConnection conn) {
+    try {
+      return handler.handle(conn);
+    } catch (final RuntimeException e) {
+      return ComposableFutures.fromError(e);
+    }
+  }
+
+  @Override
+  public ComposableFuture<Boolean> close() {
+    return pool.close();
+  }
+}
@@ -0,0 +1,481 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.Histogram;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * an async object pool with a bounded FIFO wait queue.
+ * <p>
+ * returned objects are handed to the longest waiting taker, so takers can't starve each other, and takers that wait
+ * longer than the acquire timeout fail with a {@link TimeoutException}. takers beyond the wait queue size are rejected
+ * with a {@link RejectedExecutionException}.
+ * </p>
+ * <p>
+ * a periodic housekeeping task closes objects idle longer than maxIdle (down to minIdle), creates objects up to minIdle,
+ * and logs objects held longer than the leak detection threshold along with the stack trace of their taker.
+ * </p>
+ * acquire wait and hold times are reported as histograms, in milliseconds.
+ */
+class FairObjectPool<T> {
+  private static final Logger logger = LoggerFactory.getLogger(FairObjectPool.class);
+
+  private final ObjectFactory<T> factory;
+  private final int maxSize;
+  private final int maxQueueSize;
+  private final int minIdle;
+  private final long acquireTimeoutMs;
+  private final long maxIdleMs;
+  private final long leakThresholdMs;
+  private final long housekeepingIntervalMs;
+
+  // all guarded by this
+  private final Deque<Idle<T>> idle = new ArrayDeque<>();
+  private final Deque<Waiter<T>> waiters = new ArrayDeque<>();
+  private final Map<T, Lease> inUse = new IdentityHashMap<>();
+  private int creating;
+  private boolean closed;
+
+  private final Histogram acquireWait;
+  private final Histogram holdTime;
+  private final Counter acquireTimeouts;
+  private final Counter rejections;
+  private final Counter leaks;
+
+  /**
+   * @param minIdle the number of idle objects kept, created on startup.
+   * @param acquireTimeoutMs how long takers may wait for an object. 0 to wait forever.
+   * @param maxIdleMs how long objects beyond minIdle may stay idle before closed.
+   * @param leakThresholdMs how long an object may be held before it is logged as a potential leak. 0 to disable.
+   */
+  FairObjectPool(final ObjectFactory<T> factory, final int maxSize, final int maxQueueSize, final int minIdle,
+                 final long acquireTimeoutMs, final long maxIdleMs, final long leakThresholdMs,
+                 final String metricsComponent, final MetricFactory metricFactory) {
+    if (minIdle > maxSize) {
+      throw new IllegalArgumentException("minIdle must not exceed maxSize");
+    }
+
+    this.factory = factory;
+    this.maxSize = maxSize;
+    this.maxQueueSize = maxQueueSize;
+    this.minIdle = minIdle;
+    this.acquireTimeoutMs = acquireTimeoutMs;
+    this.maxIdleMs = maxIdleMs;
+    this.leakThresholdMs = leakThresholdMs;
+    this.housekeepingIntervalMs = leakThresholdMs > 0 ? Math.min(1000, Math.max(10, leakThresholdMs / 2)) : 1000;
+
+    if (metricFactory != null) {
+      acquireWait = metricFactory.createHistogram(metricsComponent, "acquireWaitMs", false);
+      holdTime = metricFactory.createHistogram(metricsComponent, "holdTimeMs", false);
+      acquireTimeouts = metricFactory.createCounter(metricsComponent, "acquireTimeouts");
+      rejections = metricFactory.createCounter(metricsComponent, "rejections");
+      leaks = metricFactory.createCounter(metricsComponent, "leaks");
+      metricFactory.registerGauge(metricsComponent, "available", this::available);
+      metricFactory.registerGauge(metricsComponent, "waiting", this::waiting);
+      metricFactory.registerGauge(metricsComponent, "inUse", this::inUse);
+    } else {
+      acquireWait = null;
+      holdTime = null;
+      acquireTimeouts = null;
+      rejections = null;
+      leaks = null;
+    }
+
+    ensureMinIdle();
+    scheduleHousekeeping();
+  }
+
+  ComposableFuture<T> take() {
+    final long start = System.nanoTime();
+    final Waiter<T> waiter;
+    final List<T> stale = new ArrayList<>();
+    T object = null;
+    boolean create = false;
+    boolean redrive = false;
+    synchronized (this) {
+      if (closed) {
+        return ComposableFutures.fromError(new IllegalStateException("pool is closed"));
+      }
+
+      while (object == null && !idle.isEmpty()) {
+        final T candidate = idle.pollFirst().object;
+        if (factory.validate(candidate)) {
+          object = candidate;
+          lease(object);
+        } else {
+          stale.add(candidate);
+        }
+      }
+
+      if (object == null) {
+        if (size() < maxSize && waiters.isEmpty()) {
+          creating++;
+          create = true;
+        } else if (waiters.size() >= maxQueueSize) {
+          if (rejections != null) {
+            rejections.inc();
+          }
+          return destroyAndFail(stale, new RejectedExecutionException(
+            "pool is exhausted: " + maxSize + " objects in use, " + waiters.size() + " waiting"));
+        } else {
+          // takers that came first are served first, even when there is room for a new object.
+          redrive = size() < maxSize;
+        }
+      }
+
+      waiter = object == null ? new Waiter<>(start) : null;
+      if (waiter != null && !create) {
+        waiters.addLast(waiter);
+      }
+    }
+
+    stale.forEach(factory::destroy);
+
+    if (object != null) {
+      updateAcquireWait(start);
+      return ComposableFutures.fromValue(object);
+    }
+
+    if (acquireTimeoutMs > 0) {
+      // a waiter of a created object times out as well, the object then goes to the next waiter.
+      ComposableFutures.schedule(() -> {
+        expire(waiter);
+        return null;
+      }, acquireTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    if (create) {
+      create(waiter);
+    } else if (redrive) {
+      replaceDestroyed();
+    }
+
+    return waiter.promise.future();
+  }
+
+  private ComposableFuture<T> destroyAndFail(final List<T> stale, final Throwable error) {
+    stale.forEach(factory::destroy);
+    return ComposableFutures.fromError(error);
+  }
+
+  /**
+   * returns an object to the pool.
+   *
+   * @param valid false if the object is broken and should be destroyed.
+   */
+  void giveBack(final T object, final boolean valid) {
+    final Waiter<T> waiter;
+    final boolean destroy;
+    synchronized (this) {
+      final Lease lease = inUse.remove(object);
+      if (lease == null) {
+        logger.warn("an object that isn't in use was returned to the pool: {}", object);
+        return;
+      }
+
+      if (holdTime != null) {
+        holdTime.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lease.takenAt));
+      }
+
+      destroy = closed || !valid;
+      if (destroy) {
+        waiter = null;
+      } else {
+        waiter = pollWaiter();
+        if (waiter != null) {
+          lease(object);
+        } else {
+          idle.addFirst(new Idle<>(object));
+        }
+      }
+    }
+
+    if (waiter != null) {
+      handOff(waiter, object);
+    } else if (destroy) {
+      factory.destroy(object);
+      replaceDestroyed();
+    }
+  }
+
+  ComposableFuture<Boolean> close() {
+    final List<T> objects = new ArrayList<>();
+    final List<Waiter<T>> waiting;
+    synchronized (this) {
+      closed = true;
+      idle.forEach(entry -> objects.add(entry.object));
+      idle.clear();
+      waiting = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+
+    waiting.forEach(waiter -> waiter.fail(new IllegalStateException("pool is closed")));
+    objects.forEach(factory::destroy);
+    return ComposableFutures.fromValue(true);
+  }
+
+  synchronized int available() {
+    return idle.size();
+  }
+
+  synchronized int waiting() {
+    return waiters.size();
+  }
+
+  synchronized int inUse() {
+    return inUse.size();
+  }
+
+  private int size() {
+    return idle.size() + inUse.size() + creating;
+  }
+
+  private void lease(final T object) {
+    inUse.put(object, new Lease(leakThresholdMs > 0 ? new Exception("taken here") : null));
+  }
+
+  private Waiter<T> pollWaiter() {
+    Waiter<T> waiter;
+    while ((waiter = waiters.pollFirst()) != null) {
+      if (!waiter.done.get()) {
+        return waiter;
+      }
+    }
+    return null;
+  }
+
+  private void handOff(final Waiter<T> waiter, final T object) {
+    if (waiter.done.compareAndSet(false, true)) {
+      updateAcquireWait(waiter.start);
+      waiter.promise.set(object);
+    } else {
+      // the waiter timed out meanwhile, pass the object on.
+      giveBack(object, true);
+    }
+  }
+
+  private void create(final Waiter<T> waiter) {
+    final ComposableFuture<T> created;
+    try {
+      created = factory.create();
+    } catch (final RuntimeException e) {
+      onCreated(waiter, null, e);
+      return;
+    }
+    created.consume(result -> onCreated(waiter, result.isSuccess() ? result.getValue() : null, result.getError()));
+  }
+
+  private void onCreated(final Waiter<T> waiter, final T object, final Throwable error) {
+    Waiter<T> target = waiter;
+    final boolean destroy;
+    synchronized (this) {
+      creating--;
+      destroy = object != null && closed;
+      if (object != null && !closed) {
+        if (target == null) {
+          target = pollWaiter();
+        }
+
+        if (target != null) {
+          lease(object);
+        } else {
+          idle.addLast(new Idle<>(object));
+        }
+      }
+    }
+
+    if (destroy) {
+      factory.destroy(object);
+    }
+
+    if (target == null) {
+      if (error != null) {
+        logger.warn("failed creating a pooled object", error);
+      }
+    } else if (object != null && !destroy) {
+      handOff(target, object);
+    } else {
+      target.fail(error != null ? error : new IllegalStateException("pool is closed"));
+    }
+
+    if (object == null) {
+      // the failed object no longer takes room in the pool, create one for the next waiter instead.
+      replaceDestroyed();
+    }
+  }
+
+  private void expire(final Waiter<T> waiter) {
+    if (waiter.done.get()) {
+      return;
+    }
+
+    synchronized (this) {
+      waiters.remove(waiter);
+    }
+
+    // the object may have been handed off meanwhile
+    if (waiter.fail(new TimeoutException("timed out waiting " + acquireTimeoutMs + "ms for a pooled object")) &&
+      acquireTimeouts != null) {
+      acquireTimeouts.inc();
+    }
+  }
+
+  /**
+   * creates an object for the next waiter, after a broken one was destroyed or failed to be created.
+   */
+  private void replaceDestroyed() {
+    final Waiter<T> waiter;
+    synchronized (this) {
+      if (closed || waiters.isEmpty() || size() >= maxSize) {
+        return;
+      }
+      waiter = pollWaiter();
+      if (waiter == null) {
+        return;
+      }
+      creating++;
+    }
+    create(waiter);
+  }
+
+  private void ensureMinIdle() {
+    int missing;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      missing = Math.min(minIdle - idle.size() - creating, maxSize - size());
+      creating += Math.max(0, missing);
+    }
+
+    for (; missing > 0; missing--) {
+      create(null);
+    }
+  }
+
+  private void scheduleHousekeeping() {
+    ComposableFutures.schedule(() -> {
+      housekeeping();
+      return null;
+    }, housekeepingIntervalMs, TimeUnit.MILLISECONDS).consume(result -> {
+      if (!result.isSuccess()) {
+        logger.warn("pool housekeeping failed", result.getError());
+      }
+
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+      }
+      scheduleHousekeeping();
+    });
+  }
+
+  void housekeeping() {
+    final long now = System.nanoTime();
+    final List<T> expired = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Idle<T>> oldestFirst = idle.descendingIterator();
+      while (oldestFirst.hasNext() && idle.size() > minIdle) {
+        final Idle<T> entry = oldestFirst.next();
+        if (now - entry.since > TimeUnit.MILLISECONDS.toNanos(maxIdleMs)) {
+          oldestFirst.remove();
+          expired.add(entry.object);
+        }
+      }
+
+      if (leakThresholdMs > 0) {
+        for (final Map.Entry<T, Lease> entry : inUse.entrySet()) {
+          final Lease lease = entry.getValue();
+          if (!lease.reported && now - lease.takenAt > TimeUnit.MILLISECONDS.toNanos(leakThresholdMs)) {
+            lease.reported = true;
+            if (leaks != null) {
+              leaks.inc();
+            }
+            logger.warn("{} was held for more than {}ms, a possible leak", entry.getKey(), leakThresholdMs, lease.takenBy);
+          }
+        }
+      }
+    }
+
+    expired.forEach(factory::destroy);
+    ensureMinIdle();
+  }
+
+  private void updateAcquireWait(final long start) {
+    if (acquireWait != null) {
+      acquireWait.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+  }
+
+  interface ObjectFactory<T> {
+    ComposableFuture<T> create();
+
+    void destroy(T object);
+
+    /**
+     * @return false if an idle object broke meanwhile, in which case it is destroyed rather than taken.
+     */
+    default boolean validate(final T object) {
+      return true;
+    }
+  }
+
+  private static final class Idle<T> {
+    private final T object;
+    private final long since = System.nanoTime();
+
+    private Idle(final T object) {
+      this.object = object;
+    }
+  }
+
+  private static final class Lease {
+    private final long takenAt = System.nanoTime();
+    private final Exception takenBy;
+    private boolean reported;
+
+    private Lease(final Exception takenBy) {
+      this.takenBy = takenBy;
+    }
+  }
+
+  private static final class Waiter<T> {
+    private final long start;
+    private final ComposablePromise<T> promise = ComposableFutures.newPromise();
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private Waiter(final long start) {
+      this.start = start;
+    }
+
+    /**
+     * @return false if the waiter was already done.
+     */
+    private boolean fail(final Throwable error) {
+      if (!done.compareAndSet(false, true)) {
+        return false;
+      }
+
+      promise.setException(error);
+      return true;
+    }
+  }
+}
@@ -13,10 +13,10 @@ public class GenericResultSetMapper implements ResultSetMapper<Map<String, Objec
 
   @Override
   public Map<String, Object> map(final TypedRowData row, final List<String> columnNames) {
-    final HashMap<String, Object> rowMap = new HashMap<>();
-    for (final String columnName: columnNames) {
-      final Object val = row.getRaw(columnName);
-      rowMap.put(columnName, val);
+    final int columns = columnNames.size();
+    final HashMap<String, Object> rowMap = new HashMap<>((int) (columns / 0.75f) + 1);
+    for (int i = 0; i < columns; i++) {
+      rowMap.put(columnNames.get(i), row.getRaw(i));
     }
 
     return rowMap;
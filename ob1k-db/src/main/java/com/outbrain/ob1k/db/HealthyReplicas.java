@@ -0,0 +1,34 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.ob1k.consul.HealthInfoInstance;
+import com.outbrain.ob1k.consul.HealthyTargetsList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * keeps the replicas of a {@link ReplicatedConnectionPool} in sync with the healthy instances registered in consul.
+ * <p>
+ * the pool must have a replica factory. an empty healthy list sends all reads to the primary.
+ * </p>
+ * note that ob1k-consul is an optional dependency, needed only when this class is used.
+ */
+public class HealthyReplicas implements HealthyTargetsList.TargetsChangedListener {
+
+  private final ReplicatedConnectionPool pool;
+
+  public HealthyReplicas(final HealthyTargetsList healthyTargetsList, final ReplicatedConnectionPool pool) {
+    this.pool = Objects.requireNonNull(pool, "pool must not be null");
+    healthyTargetsList.addListener(this);
+  }
+
+  @Override
+  public void onTargetsChanged(final List<HealthInfoInstance> healthTargets) {
+    final List<String> addresses = new ArrayList<>(healthTargets.size());
+    for (final HealthInfoInstance instance : healthTargets) {
+      addresses.add(instance.Node.Address + ":" + instance.Service.Port);
+    }
+    pool.setReplicas(addresses);
+  }
+}
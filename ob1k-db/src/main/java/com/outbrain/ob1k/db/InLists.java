@@ -0,0 +1,43 @@
+package com.outbrain.ob1k.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IN lists of prepared statements are padded to a power of two size, so a single column needs at most log2(n)
+ * distinct statements.
+ * <p>
+ * the driver prepares every distinct sql once per connection and keeps it for the lifetime of the connection,
+ * so the number of distinct statements is what must be kept small.
+ * </p>
+ */
+final class InLists {
+
+  /** the max number of placeholders of a MySQL prepared statement */
+  static final int MAX_PLACEHOLDERS = 65535;
+
+  private InLists() {}
+
+  /**
+   * @return the number of placeholders used for an IN list of the given size: the smallest power of two that fits it,
+   * or the size itself if that power of two exceeds {@link #MAX_PLACEHOLDERS}.
+   */
+  static int size(final int size) {
+    final int padded = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    return padded <= MAX_PLACEHOLDERS ? padded : size;
+  }
+
+  /**
+   * pads the values to {@link #size(int)} by repeating the last value, which doesn't change the IN semantics.
+   */
+  static List<Object> pad(final List<?> values) {
+    final int size = size(values.size());
+    final List<Object> padded = new ArrayList<>(size);
+    padded.addAll(values);
+    final Object last = values.get(values.size() - 1);
+    while (padded.size() < size) {
+      padded.add(last);
+    }
+    return padded;
+  }
+}
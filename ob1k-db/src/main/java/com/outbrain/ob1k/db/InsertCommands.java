@@ -0,0 +1,139 @@
+package com.outbrain.ob1k.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * splits the entries of a multi-row insert into statements limited by their size and number of rows.
+ */
+final class InsertCommands {
+
+  static final class Command {
+    final int firstEntry;
+    final int entries;
+    final String sql;
+
+    private Command(final int firstEntry, final int entries, final String sql) {
+      this.firstEntry = firstEntry;
+      this.entries = entries;
+      this.sql = sql;
+    }
+  }
+
+  private InsertCommands() {}
+
+  /**
+   * using the following syntax: INSERT [IGNORE] INTO tbl_name (a,b,c) VALUES(1,2,3),(4,5,6) [ON DUPLICATE KEY UPDATE a=VALUES(a),...];
+   * the columns are the ones mapped from the first entry.
+   * the size of a statement is the length of its sql encoded in UTF-8, the charset of the connections.
+   * a single row larger than maxBytes gets a statement of its own.
+   */
+  static <T> List<Command> create(final List<T> entries, final String tableName, final EntityMapper<T> mapper,
+                                  final SaveMode mode, final int maxRows, final int maxBytes) {
+    if (entries == null || entries.isEmpty())
+      throw new IllegalArgumentException("entries must contain at least one entry");
+
+    final List<Map<String, Object>> rows = new ArrayList<>(entries.size());
+    for (final T entry : entries) {
+      rows.add(mapper.map(entry));
+    }
+
+    final List<String> columnNames = new ArrayList<>(rows.get(0).keySet());
+    final String prefix = createPrefix(tableName, columnNames, mode);
+    final String suffix = createSuffix(columnNames, mode);
+    final int prefixBytes = utf8Length(prefix);
+    final int suffixBytes = utf8Length(suffix);
+
+    final List<Command> commands = new ArrayList<>();
+    final StringBuilder command = new StringBuilder(prefix);
+    final StringBuilder row = new StringBuilder();
+    long commandBytes = prefixBytes;
+    int firstEntry = 0;
+    for (int i = 0; i < rows.size(); i++) {
+      row.setLength(0);
+      appendRow(row, rows.get(i), columnNames);
+      final int rowBytes = utf8Length(row);
+
+      final int chunkRows = i - firstEntry;
+      if (chunkRows > 0 && (chunkRows >= maxRows || commandBytes + 1 + rowBytes + suffixBytes > maxBytes)) {
+        commands.add(new Command(firstEntry, chunkRows, command.append(suffix).toString()));
+        command.setLength(0);
+        command.append(prefix);
+        commandBytes = prefixBytes;
+        firstEntry = i;
+      }
+
+      if (i > firstEntry) {
+        command.append(',');
+        commandBytes++;
+      }
+      command.append(row);
+      commandBytes += rowBytes;
+    }
+
+    commands.add(new Command(firstEntry, rows.size() - firstEntry, command.append(suffix).toString()));
+    return commands;
+  }
+
+  /**
+   * @return the number of bytes of the chars encoded in UTF-8, an unpaired surrogate is counted as a 3 bytes replacement.
+   */
+  static int utf8Length(final CharSequence chars) {
+    int bytes = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      final char c = chars.charAt(i);
+      if (c < 0x80) {
+        bytes++;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
+  private static String createPrefix(final String tableName, final List<String> columnNames, final SaveMode mode) {
+    final StringBuilder prefix = new StringBuilder(mode == SaveMode.INSERT_IGNORE ? "insert ignore into " : "insert into ");
+    prefix.append(BasicDao.withBackticks(tableName));
+    prefix.append(" (");
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0)
+        prefix.append(',');
+      prefix.append(BasicDao.withBackticks(columnNames.get(i)));
+    }
+    prefix.append(") values ");
+    return prefix.toString();
+  }
+
+  private static String createSuffix(final List<String> columnNames, final SaveMode mode) {
+    if (mode != SaveMode.UPSERT) {
+      return ";";
+    }
+
+    final StringBuilder suffix = new StringBuilder(" on duplicate key update ");
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0)
+        suffix.append(',');
+      final String column = BasicDao.withBackticks(columnNames.get(i));
+      suffix.append(column).append("=values(").append(column).append(')');
+    }
+    suffix.append(';');
+    return suffix.toString();
+  }
+
+  private static void appendRow(final StringBuilder command, final Map<String, Object> row, final List<String> columnNames) {
+    command.append('(');
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0)
+        command.append(',');
+      final Object value = row.get(columnNames.get(i));
+      command.append(value != null ? BasicDao.withQuote(value) : "NULL");
+    }
+    command.append(')');
+  }
+}
@@ -13,6 +13,7 @@ import io.netty.util.CharsetUtil;
 import scala.Option;
 import scala.collection.JavaConversions;
 import scala.collection.mutable.Buffer;
+import scala.concurrent.ExecutionContext;
 import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 
@@ -28,9 +29,18 @@ import java.util.concurrent.TimeUnit;
 public class MySqlAsyncConnection {
   public static final int MAXIMUM_MESSAGE_SIZE = 16*1024*1024;
   private final MySQLConnection conn;
+  private final ExecutionContext executionContext;
 
   public MySqlAsyncConnection(final MySQLConnection conn) {
+    this(conn, ScalaFutureHelper.ctx);
+  }
+
+  /**
+   * @param executionContext the context the continuations of this connection's futures run on, see {@link ScalaFutureHelper}.
+   */
+  public MySqlAsyncConnection(final MySQLConnection conn, final ExecutionContext executionContext) {
     this.conn = conn;
+    this.executionContext = executionContext;
   }
 
   public static Configuration createConfiguration(final String host, final int port, final Option<String> database, final String userName, final Option<String> password,
@@ -49,12 +59,12 @@ public class MySqlAsyncConnection {
   }
 
   public ComposableFuture<QueryResult> sendQuery(final String query) {
-    return ScalaFutureHelper.from(() -> conn.sendQuery(query));
+    return ScalaFutureHelper.from(() -> conn.sendQuery(query), executionContext);
   }
 
   public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
     final Buffer<Object> scalaValues = JavaConversions.asScalaBuffer(values);
-    return ScalaFutureHelper.from(() -> conn.sendPreparedStatement(query, scalaValues));
+    return ScalaFutureHelper.from(() -> conn.sendPreparedStatement(query, scalaValues), executionContext);
   }
 
   public ComposableFuture<MySqlAsyncConnection> connect() {
@@ -62,14 +72,14 @@ public class MySqlAsyncConnection {
       return ComposableFutures.fromValue(this);
     }
 
-    final ComposableFuture<Connection> composableFuture = ScalaFutureHelper.from(conn::connect);
+    final ComposableFuture<Connection> composableFuture = ScalaFutureHelper.from(conn::connect, executionContext);
 
     return composableFuture.continueOnSuccess((SuccessHandler<Connection, MySqlAsyncConnection>) result -> {
       final MySQLConnection connection = (MySQLConnection) result;
       if (connection == conn) {
         return MySqlAsyncConnection.this;
       } else {
-        return new MySqlAsyncConnection(connection);
+        return new MySqlAsyncConnection(connection, executionContext);
       }
     });
   }
@@ -87,14 +97,14 @@ public class MySqlAsyncConnection {
   }
 
   public ComposableFuture<MySqlAsyncConnection> disconnect() {
-    final ComposableFuture<Connection> composableFuture = ScalaFutureHelper.from(conn::disconnect);
+    final ComposableFuture<Connection> composableFuture = ScalaFutureHelper.from(conn::disconnect, executionContext);
 
     return composableFuture.continueOnSuccess((SuccessHandler<Connection, MySqlAsyncConnection>) result -> {
       final MySQLConnection connection = (MySQLConnection) result;
       if (connection == conn) {
         return MySqlAsyncConnection.this;
       } else {
-        return new MySqlAsyncConnection(connection);
+        return new MySqlAsyncConnection(connection, executionContext);
       }
     });
   }
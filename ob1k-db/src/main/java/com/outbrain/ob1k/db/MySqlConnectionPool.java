@@ -14,6 +14,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.collection.JavaConversions;
 import scala.collection.mutable.Buffer;
+import scala.concurrent.ExecutionContextExecutor;
 import scala.concurrent.Future;
 
 import java.util.List;
@@ -30,9 +31,16 @@ class MySqlConnectionPool implements DbConnectionPool {
   private static final Logger logger = LoggerFactory.getLogger(MySqlConnectionPool.class);
 
   private final ConnectionPool<MySQLConnection> _pool;
+  private final ExecutionContextExecutor executionContext;
 
   MySqlConnectionPool(final MySQLConnectionFactory connFactory, final PoolConfiguration poolConfiguration, final MetricFactory metricFactory) {
-    _pool = new ConnectionPool<>(connFactory, poolConfiguration, ScalaFutureHelper.ctx);
+    this(connFactory, poolConfiguration, metricFactory, ScalaFutureHelper.ctx);
+  }
+
+  MySqlConnectionPool(final MySQLConnectionFactory connFactory, final PoolConfiguration poolConfiguration, final MetricFactory metricFactory,
+                      final ExecutionContextExecutor executionContext) {
+    this.executionContext = executionContext;
+    _pool = new ConnectionPool<>(connFactory, poolConfiguration, executionContext);
     initializeMetrics(metricFactory, _pool);
   }
 
@@ -47,23 +55,23 @@ class MySqlConnectionPool implements DbConnectionPool {
 
   @Override
   public ComposableFuture<QueryResult> sendQuery(final String query) {
-    return ScalaFutureHelper.from(() -> _pool.sendQuery(query));
+    return ScalaFutureHelper.from(() -> _pool.sendQuery(query), executionContext);
   }
 
   @Override
   public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
     final Buffer<Object> scalaValues = JavaConversions.asScalaBuffer(values);
-    return ScalaFutureHelper.from(() -> _pool.sendPreparedStatement(query, scalaValues));
+    return ScalaFutureHelper.from(() -> _pool.sendPreparedStatement(query, scalaValues), executionContext);
   }
 
   private ComposableFuture<MySqlAsyncConnection> take() {
-    final ComposableFuture<MySQLConnection> connFuture = ScalaFutureHelper.from(_pool::take);
+    final ComposableFuture<MySQLConnection> connFuture = ScalaFutureHelper.from(_pool::take, executionContext);
 
-    return connFuture.continueOnSuccess((SuccessHandler<MySQLConnection, MySqlAsyncConnection>) MySqlAsyncConnection::new);
+    return connFuture.continueOnSuccess((SuccessHandler<MySQLConnection, MySqlAsyncConnection>) conn -> new MySqlAsyncConnection(conn, executionContext));
   }
 
   private ComposableFuture<Boolean> giveBack(final MySqlAsyncConnection conn) {
-    return ScalaFutureHelper.from(() -> _pool.giveBack(conn.getInnerConnection())).continueWith((ResultHandler<AsyncObjectPool<MySQLConnection>, Boolean>) Try::isSuccess);
+    return ScalaFutureHelper.from(() -> _pool.giveBack(conn.getInnerConnection()), executionContext).continueWith((ResultHandler<AsyncObjectPool<MySQLConnection>, Boolean>) Try::isSuccess);
   }
 
   @Override
@@ -95,7 +103,7 @@ class MySqlConnectionPool implements DbConnectionPool {
 
   @Override
   public ComposableFuture<Boolean> close() {
-    final ComposableFuture<AsyncObjectPool<MySQLConnection>> future = ScalaFutureHelper.from(_pool::close);
+    final ComposableFuture<AsyncObjectPool<MySQLConnection>> future = ScalaFutureHelper.from(_pool::close, executionContext);
 
     return future.continueWith((ResultHandler<AsyncObjectPool<MySQLConnection>, Boolean>) result -> {
       try {
@@ -1,13 +1,21 @@
 package com.outbrain.ob1k.db;
 
 
+import com.github.mauricio.async.db.Configuration;
 import com.github.mauricio.async.db.mysql.pool.MySQLConnectionFactory;
 import com.github.mauricio.async.db.pool.PoolConfiguration;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 import scala.Option;
+import scala.concurrent.ExecutionContextExecutor;
+
+import java.util.concurrent.Executor;
 
 /**
  * Builds a MySql {@link DbConnectionPool}.
+ * <p>
+ * by default the pool is backed by the mysql-async pool. {@link #fairPool()} switches to an ob1k pool with a FIFO wait queue,
+ * acquisition timeouts, leak detection and a minimal number of idle connections.
+ * </p>
  *
  * @author Eran Harel
  */
@@ -27,7 +35,14 @@ public class MySqlConnectionPoolBuilder {
   private long maxIdleTimeMs = 15 * 60 * 1000;
   private long validationIntervalMs = 30 * 1000;
 
+  private boolean fairPool = false;
+  private long acquireTimeoutMs = 0;
+  private long leakDetectionThresholdMs = 0;
+  private long transactionTimeoutMs = 0;
+  private int minIdle = 0;
+
   private MetricFactory metricFactory;
+  private ExecutionContextExecutor executionContext = ScalaFutureHelper.ctx;
 
   private MySqlConnectionPoolBuilder(final String host, final  int port, final String username) {
     this.host = host;
@@ -110,19 +125,86 @@ public class MySqlConnectionPoolBuilder {
     return this;
   }
 
+  /**
+   * uses an ob1k pool that serves waiting requests in FIFO order, rather than the mysql-async pool.
+   * the acquire timeout, leak detection, transaction timeout and min idle settings apply only to this pool.
+   */
+  public MySqlConnectionPoolBuilder fairPool() {
+    this.fairPool = true;
+    return this;
+  }
+
+  /**
+   * @param acquireTimeoutMs how long a request may wait for a connection before failing with a TimeoutException. 0 to wait forever.
+   */
+  public MySqlConnectionPoolBuilder acquireTimeout(final long acquireTimeoutMs) {
+    this.acquireTimeoutMs = acquireTimeoutMs;
+    return this;
+  }
+
+  /**
+   * @param leakDetectionThresholdMs connections held longer than this are logged with the stack trace of their taker. 0 to disable.
+   */
+  public MySqlConnectionPoolBuilder leakDetectionThreshold(final long leakDetectionThresholdMs) {
+    this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+    return this;
+  }
+
+  /**
+   * @param transactionTimeoutMs how long a transaction may run before failing with a TimeoutException, its connection is then
+   *                             closed, rolling the transaction back. 0 for no limit.
+   */
+  public MySqlConnectionPoolBuilder transactionTimeout(final long transactionTimeoutMs) {
+    this.transactionTimeoutMs = transactionTimeoutMs;
+    return this;
+  }
+
+  /**
+   * @param minIdle the number of idle connections kept open; they are opened as soon as the pool is built, warming it up.
+   */
+  public MySqlConnectionPoolBuilder minIdle(final int minIdle) {
+    this.minIdle = minIdle;
+    return this;
+  }
+
+  /**
+   * runs the continuations of the pool's futures on the netty I/O thread that completed the query, instead of handing
+   * them off to the ob1k executor. continuations must not block.
+   */
+  public MySqlConnectionPoolBuilder callbacksOnIoThread() {
+    this.executionContext = ScalaFutureHelper.sameThread;
+    return this;
+  }
+
+  /**
+   * runs the continuations of the pool's futures on the given executor, instead of the ob1k executor.
+   */
+  public MySqlConnectionPoolBuilder callbackExecutor(final Executor executor) {
+    this.executionContext = ScalaFutureHelper.executionContext(executor);
+    return this;
+  }
+
   public MySqlConnectionPoolBuilder withMetrics(final MetricFactory metricFactory) {
     this.metricFactory = metricFactory;
     return this;
   }
 
   public DbConnectionPool build() {
+    final Configuration connConfiguration = connectionFactory == null ?
+            MySqlAsyncConnection.createConfiguration(host, port, database, username, password,
+              connectTimeoutMilliSeconds, queryTimeoutMilliSeconds)
+            : null;
     final MySQLConnectionFactory connFactory = connectionFactory == null ?
-            new MySQLConnectionFactory(MySqlAsyncConnection.createConfiguration(host, port, database, username, password,
-              connectTimeoutMilliSeconds, queryTimeoutMilliSeconds))
+            new MySQLConnectionFactory(connConfiguration)
             : connectionFactory;
     final int finalMaxQueueSize = maxQueueSize.isEmpty() ? maxConnections * 2 : maxQueueSize.get();
+    if (fairPool) {
+      return new FairMySqlConnectionPool(connFactory, connConfiguration, maxConnections, finalMaxQueueSize, minIdle, acquireTimeoutMs,
+        maxIdleTimeMs, leakDetectionThresholdMs, transactionTimeoutMs, metricFactory, executionContext);
+    }
+
     final PoolConfiguration configuration = new PoolConfiguration(maxConnections, maxIdleTimeMs, finalMaxQueueSize, validationIntervalMs);
 
-    return new MySqlConnectionPool(connFactory, configuration, metricFactory);
+    return new MySqlConnectionPool(connFactory, configuration, metricFactory, executionContext);
   }
 }
@@ -0,0 +1,155 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.joda.time.ReadableInstant;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * bounds the number of distinct statements the dao prepares on the server.
+ * <p>
+ * the driver prepares every distinct sql once per connection and keeps it for the lifetime of the connection,
+ * without a way to close it, so a statement can't be evicted once prepared.
+ * instead, only the first maxSize distinct statements are prepared; any other statement is sent as a plain query
+ * with its params inlined as escaped literals, which keeps every connection below max_prepared_stmt_count.
+ * </p>
+ */
+class PreparedStatementCache {
+  static final int DEFAULT_MAX_SIZE = 256;
+
+  private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+  private final Set<String> statements = ConcurrentHashMap.newKeySet();
+  private final int maxSize;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter inlined;
+
+  PreparedStatementCache(final int maxSize, final MetricFactory metricFactory) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative");
+    }
+    this.maxSize = maxSize;
+
+    if (metricFactory != null) {
+      hits = metricFactory.createCounter("BasicDao", "preparedStatementHits");
+      misses = metricFactory.createCounter("BasicDao", "preparedStatementMisses");
+      inlined = metricFactory.createCounter("BasicDao", "inlinedStatements");
+      metricFactory.registerGauge("BasicDao", "preparedStatements", this::size);
+    } else {
+      hits = null;
+      misses = null;
+      inlined = null;
+    }
+  }
+
+  /**
+   * @return true if the sql is, or can still be, prepared on the server; false if it must be sent with its params inlined.
+   */
+  boolean isPrepared(final String sql) {
+    if (statements.contains(sql)) {
+      inc(hits);
+      return true;
+    }
+
+    synchronized (statements) {
+      if (statements.contains(sql)) {
+        inc(hits);
+        return true;
+      }
+
+      if (statements.size() < maxSize) {
+        statements.add(sql);
+        inc(misses);
+        return true;
+      }
+    }
+
+    inc(inlined);
+    return false;
+  }
+
+  int size() {
+    return statements.size();
+  }
+
+  private static void inc(final Counter counter) {
+    if (counter != null) {
+      counter.inc();
+    }
+  }
+
+  /**
+   * replaces each '?' placeholder of the sql, outside of quoted strings and identifiers, by the literal of its param.
+   *
+   * @throws IllegalArgumentException if the number of placeholders doesn't match the number of params
+   */
+  static String inline(final String sql, final List<?> params) {
+    final StringBuilder inlined = new StringBuilder(sql.length() + params.size() * 8);
+    int param = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      final char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == '\\' && quote != '`' && i + 1 < sql.length()) {
+          inlined.append(c).append(sql.charAt(++i));
+          continue;
+        }
+        if (c == quote) {
+          quote = 0;
+        }
+        inlined.append(c);
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+        inlined.append(c);
+      } else if (c == '?') {
+        if (param == params.size()) {
+          throw new IllegalArgumentException("more placeholders than the " + params.size() + " params in: " + sql);
+        }
+        inlined.append(literal(params.get(param++)));
+      } else {
+        inlined.append(c);
+      }
+    }
+
+    if (param != params.size()) {
+      throw new IllegalArgumentException(param + " placeholders for " + params.size() + " params in: " + sql);
+    }
+    return inlined.toString();
+  }
+
+  static String literal(final Object value) {
+    if (value == null) {
+      return "NULL";
+    }
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    }
+    if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    }
+    if (value instanceof byte[]) {
+      final StringBuilder hex = new StringBuilder("X'");
+      for (final byte b : (byte[]) value) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.append('\'').toString();
+    }
+    if (value instanceof ReadableInstant) {
+      return "'" + DATE_TIME_FORMAT.print((ReadableInstant) value) + "'";
+    }
+    if (value.getClass() == Date.class) {
+      // unlike the java.sql dates, its toString isn't a valid MySQL literal
+      return "'" + DATE_TIME_FORMAT.print(((Date) value).getTime()) + "'";
+    }
+
+    return "'" + SqlSanitizer.escapeInput(value.toString()) + "'";
+  }
+}
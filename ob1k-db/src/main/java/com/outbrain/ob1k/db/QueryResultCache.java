@@ -0,0 +1,412 @@
+package com.outbrain.ob1k.db;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.handlers.ErrorHandler;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.ob1k.concurrent.handlers.SuccessHandler;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * caches the results of {@link BasicDao} reads in a {@link LocalAsyncCache}, invalidated by the writes of the same dao.
+ * <p>
+ * results are keyed by the normalized query, its params, the kind of the result (a list or a single row) and the
+ * mapper, and tagged with the tables the query reads from. mappers without state are told apart by their class,
+ * other mappers by identity: their results are cached from the second read through the same instance, so mappers
+ * created per read (e.g. capturing lambdas) are never cached and should be reused instead.
+ * each table has a generation that is part of the key, so a write to a table invalidates all the results
+ * that read it at once, and the stale entries are left to expire.
+ * writes whose table can't be parsed invalidate all tables, and reads whose tables can't be parsed aren't cached.
+ * </p>
+ * <p>
+ * lookups by ids are cached per id, so a partial hit queries only the missing ids.
+ * </p>
+ * the mappers and the generations behind the keys are known only to this process, which is why the cache must be local.
+ * errors of the cache are treated as misses.
+ */
+public class QueryResultCache {
+  private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+  static final String ALL_TABLES = "*";
+
+  private static final String TABLE = "`?([\\w$]+(?:\\.[\\w$]+)?)`?";
+  private static final Pattern WRITE_PATTERN = Pattern.compile(
+    "^\\s*(?:insert\\s+(?:ignore\\s+)?(?:into\\s+)?|replace\\s+(?:into\\s+)?|update\\s+(?:ignore\\s+)?|delete\\s+(?:ignore\\s+)?from\\s+|" +
+      "truncate\\s+(?:table\\s+)?|alter\\s+table\\s+|drop\\s+table\\s+(?:if\\s+exists\\s+)?)" + TABLE,
+    Pattern.CASE_INSENSITIVE);
+  private static final Pattern FROM_PATTERN = Pattern.compile(
+    "\\bfrom\\s+([^()]+?)(?=\\b(?:where|join|inner|left|right|cross|straight_join|natural|group|order|limit|having|union|for|lock)\\b|[()]|;|$)",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final Pattern JOIN_PATTERN = Pattern.compile("\\b(?:join|straight_join)\\s+" + TABLE, Pattern.CASE_INSENSITIVE);
+  private static final Pattern FROM_TABLE_PATTERN = Pattern.compile("^\\s*" + TABLE);
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final ClassValue<Boolean> STATELESS = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(final Class<?> type) {
+      for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+        for (final Field field : current.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  };
+
+  private final LocalAsyncCache<String, Object> cache;
+  private final long defaultTtlMs;
+  private final Map<String, Long> tableTtlsMs = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  private final AtomicLong globalGeneration = new AtomicLong();
+  private final AtomicLong mapperIds = new AtomicLong();
+  private final ConcurrentMap<Object, Long> mappers = new MapMaker().weakKeys().makeMap();
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter invalidations;
+
+  public QueryResultCache(final LocalAsyncCache<String, Object> cache, final long defaultTtl, final TimeUnit unit) {
+    this(cache, defaultTtl, unit, null);
+  }
+
+  /**
+   * @param cache the underlying cache; its own ttl should not be shorter than the longest table ttl.
+   * @param defaultTtl the ttl of results of tables with no specific ttl.
+   */
+  public QueryResultCache(final LocalAsyncCache<String, Object> cache, final long defaultTtl, final TimeUnit unit,
+                          final MetricFactory metricFactory) {
+    this.cache = cache;
+    this.defaultTtlMs = unit.toMillis(defaultTtl);
+
+    if (metricFactory != null) {
+      hits = metricFactory.createCounter("QueryResultCache", "hits");
+      misses = metricFactory.createCounter("QueryResultCache", "misses");
+      invalidations = metricFactory.createCounter("QueryResultCache", "invalidations");
+    } else {
+      hits = null;
+      misses = null;
+      invalidations = null;
+    }
+  }
+
+  /**
+   * sets the ttl of results that read the given table; a result that reads several tables gets the shortest ttl.
+   */
+  public QueryResultCache withTableTtl(final String table, final long ttl, final TimeUnit unit) {
+    tableTtlsMs.put(normalizeTable(table), unit.toMillis(ttl));
+    return this;
+  }
+
+  public void invalidate(final String table) {
+    generation(normalizeTable(table)).incrementAndGet();
+    if (invalidations != null) {
+      invalidations.inc();
+    }
+  }
+
+  public void invalidateAll() {
+    globalGeneration.incrementAndGet();
+    if (invalidations != null) {
+      invalidations.inc();
+    }
+  }
+
+  /**
+   * @param table a table returned by {@link #writtenTable(String)}.
+   */
+  void invalidateWrittenTable(final String table) {
+    if (ALL_TABLES.equals(table)) {
+      invalidateAll();
+    } else {
+      invalidate(table);
+    }
+  }
+
+  /**
+   * @return the cached result of the query, or the result of the loader, which is then cached.
+   */
+  <T> ComposableFuture<T> get(final String query, final List<?> params, final ResultKind kind, final Object mapper,
+                              final Supplier<ComposableFuture<T>> loader) {
+    final Set<String> tables = readTables(query);
+    final Long mapperId = mapperId(mapper);
+    if (tables.isEmpty() || mapperId == null) {
+      return loader.get();
+    }
+
+    final Hasher hasher = Hashing.murmur3_128().newHasher()
+      .putString(WHITESPACE.matcher(query.trim()).replaceAll(" "), StandardCharsets.UTF_8)
+      .putChar('\0').putInt(kind.ordinal())
+      .putLong(mapperId);
+    putParams(hasher, params);
+    putGenerations(hasher, tables);
+    final String key = "q:" + hasher.hash();
+    final long ttlMs = ttlOf(tables);
+
+    return cache.getAsync(key).continueOnError((ErrorHandler<Object>) error -> null)
+      .continueOnSuccess((FutureSuccessHandler<Object, T>) cached -> {
+        if (isFresh(cached)) {
+          hit(1);
+          @SuppressWarnings("unchecked")
+          final T value = (T) ((CachedValue) cached).value;
+          return ComposableFutures.fromValue(value);
+        }
+
+        miss(1);
+        return loader.get().continueOnSuccess((SuccessHandler<T, T>) value -> {
+          set(key, new CachedValue(value, ttlMs));
+          return value;
+        });
+      });
+  }
+
+  /**
+   * looks up rows by ids, caching each row by its id.
+   *
+   * @param loader loads the rows of the given ids, keyed by the string value of their ids.
+   * @return the found rows, in the order of the ids.
+   */
+  <T> ComposableFuture<List<T>> getByIds(final String table, final String idColumn, final List<?> ids, final Object mapper,
+                                         final Function<List<?>, ComposableFuture<Map<String, T>>> loader) {
+    final Long mapperId = mapperId(mapper);
+    if (mapperId == null) {
+      return loader.apply(ids).continueOnSuccess((SuccessHandler<Map<String, T>, List<T>>) loaded -> {
+        final Map<String, Object> found = new HashMap<>(loaded);
+        return ordered(ids.stream().map(String::valueOf).collect(Collectors.toCollection(LinkedHashSet::new)), found);
+      });
+    }
+
+    final String normalizedTable = normalizeTable(table);
+    final Hasher hasher = Hashing.murmur3_128().newHasher()
+      .putString(normalizedTable, StandardCharsets.UTF_8)
+      .putChar('\0').putString(idColumn, StandardCharsets.UTF_8)
+      .putChar('\0').putLong(mapperId);
+    putGenerations(hasher, Collections.singleton(normalizedTable));
+    final String prefix = "id:" + hasher.hash() + ':';
+    final long ttlMs = ttlOf(Collections.singleton(normalizedTable));
+
+    final Map<String, Object> keys = new LinkedHashMap<>();
+    for (final Object id : ids) {
+      keys.put(prefix + id, id);
+    }
+
+    return cache.getBulkAsync(keys.keySet()).continueOnError((ErrorHandler<Map<String, Object>>) error -> Collections.emptyMap())
+      .continueOnSuccess((FutureSuccessHandler<Map<String, Object>, List<T>>) cached -> {
+        final Map<String, Object> found = new HashMap<>();
+        final List<Object> missingIds = new ArrayList<>();
+        for (final Map.Entry<String, Object> key : keys.entrySet()) {
+          final Object value = cached.get(key.getKey());
+          if (isFresh(value)) {
+            found.put(key.getKey(), ((CachedValue) value).value);
+          } else {
+            missingIds.add(key.getValue());
+          }
+        }
+
+        hit(found.size());
+        miss(missingIds.size());
+        if (missingIds.isEmpty()) {
+          return ComposableFutures.fromValue(ordered(keys.keySet(), found));
+        }
+
+        return loader.apply(missingIds).continueOnSuccess((SuccessHandler<Map<String, T>, List<T>>) loaded -> {
+          final Map<String, Object> entries = new HashMap<>();
+          for (final Map.Entry<String, T> row : loaded.entrySet()) {
+            final String key = prefix + row.getKey();
+            found.put(key, row.getValue());
+            entries.put(key, new CachedValue(row.getValue(), ttlMs));
+          }
+
+          if (!entries.isEmpty()) {
+            cache.setBulkAsync(entries).consume(result -> {
+              if (!result.isSuccess()) {
+                logger.warn("failed caching query results", result.getError());
+              }
+            });
+          }
+          return ordered(keys.keySet(), found);
+        });
+      });
+  }
+
+  private static <T> List<T> ordered(final Collection<String> keys, final Map<String, Object> found) {
+    final List<T> result = new ArrayList<>(found.size());
+    for (final String key : keys) {
+      @SuppressWarnings("unchecked")
+      final T value = (T) found.get(key);
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  private void set(final String key, final CachedValue value) {
+    cache.setAsync(key, value).consume(result -> {
+      if (!result.isSuccess()) {
+        logger.warn("failed caching query result", result.getError());
+      }
+    });
+  }
+
+  /**
+   * @return the id of the mapper, or null if it's the first read through a mapper with state.
+   */
+  private Long mapperId(final Object mapper) {
+    if (STATELESS.get(mapper.getClass())) {
+      return mappers.computeIfAbsent(mapper.getClass(), type -> mapperIds.incrementAndGet());
+    }
+
+    final Long id = mappers.get(mapper);
+    if (id == null) {
+      mappers.putIfAbsent(mapper, mapperIds.incrementAndGet());
+    }
+    return id;
+  }
+
+  /**
+   * each param is hashed with its type and length, so different params never hash the same values.
+   */
+  private static void putParams(final Hasher hasher, final List<?> params) {
+    hasher.putInt(params.size());
+    for (final Object param : params) {
+      hasher.putChar('\0');
+      if (param == null) {
+        hasher.putInt(-1);
+      } else if (param instanceof byte[]) {
+        final byte[] bytes = (byte[]) param;
+        hasher.putString(byte[].class.getName(), StandardCharsets.UTF_8).putInt(bytes.length).putBytes(bytes);
+      } else {
+        final String value = String.valueOf(param);
+        hasher.putString(param.getClass().getName(), StandardCharsets.UTF_8).putInt(value.length())
+          .putString(value, StandardCharsets.UTF_8);
+      }
+    }
+  }
+
+  private static boolean isFresh(final Object cached) {
+    return cached instanceof CachedValue && ((CachedValue) cached).expirationTime > System.currentTimeMillis();
+  }
+
+  private void putGenerations(final Hasher hasher, final Set<String> tables) {
+    hasher.putLong(globalGeneration.get());
+    for (final String table : tables) {
+      hasher.putChar('\0').putString(table, StandardCharsets.UTF_8).putLong(generation(table).get());
+    }
+  }
+
+  private AtomicLong generation(final String table) {
+    final AtomicLong generation = generations.get(table);
+    return generation != null ? generation : generations.computeIfAbsent(table, t -> new AtomicLong());
+  }
+
+  private long ttlOf(final Set<String> tables) {
+    long ttl = Long.MAX_VALUE;
+    for (final String table : tables) {
+      ttl = Math.min(ttl, tableTtlsMs.getOrDefault(table, defaultTtlMs));
+    }
+    return ttl;
+  }
+
+  private void hit(final int count) {
+    if (hits != null && count > 0) {
+      hits.inc(count);
+    }
+  }
+
+  private void miss(final int count) {
+    if (misses != null && count > 0) {
+      misses.inc(count);
+    }
+  }
+
+  /**
+   * @return the table written by the command, or {@link #ALL_TABLES} if it can't be parsed.
+   */
+  static String writtenTable(final String command) {
+    final Matcher matcher = WRITE_PATTERN.matcher(command);
+    return matcher.find() ? normalizeTable(matcher.group(1)) : ALL_TABLES;
+  }
+
+  /**
+   * @return the tables the query reads from, sorted; empty if none could be parsed.
+   */
+  static Set<String> readTables(final String query) {
+    final Set<String> tables = new LinkedHashSet<>();
+    final Matcher from = FROM_PATTERN.matcher(query);
+    while (from.find()) {
+      for (final String tableReference : from.group(1).split(",")) {
+        final Matcher table = FROM_TABLE_PATTERN.matcher(tableReference);
+        if (table.find()) {
+          tables.add(normalizeTable(table.group(1)));
+        }
+      }
+    }
+
+    final Matcher join = JOIN_PATTERN.matcher(query);
+    while (join.find()) {
+      tables.add(normalizeTable(join.group(1)));
+    }
+
+    final List<String> sorted = new ArrayList<>(tables);
+    Collections.sort(sorted);
+    return new LinkedHashSet<>(sorted);
+  }
+
+  private static String normalizeTable(final String table) {
+    final String name = table.replace("`", "");
+    final int schemaSeparator = name.lastIndexOf('.');
+    return (schemaSeparator >= 0 ? name.substring(schemaSeparator + 1) : name).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * the kind of a cached query result, so a list and a single row of the same query don't share a key.
+   */
+  enum ResultKind {
+    LIST, SINGLE
+  }
+
+  /**
+   * a cached result with its own expiration time, so each table can have its own ttl over a single cache.
+   */
+  static final class CachedValue {
+    private final Object value;
+    private final long expirationTime;
+
+    private CachedValue(final Object value, final long ttlMs) {
+      this.value = value;
+      this.expirationTime = System.currentTimeMillis() + ttlMs;
+    }
+  }
+}
@@ -0,0 +1,346 @@
+package com.outbrain.ob1k.db;
+
+import com.github.mauricio.async.db.QueryResult;
+import com.github.mauricio.async.db.ResultSet;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.handlers.ResultHandler;
+import com.outbrain.swinfra.metrics.api.Counter;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * a {@link DbConnectionPool} that sends writes to a primary, and reads to its replicas.
+ * <p>
+ * reads are the queries sent by {@link DbConnectionPool#sendReadQuery(String)} and
+ * {@link DbConnectionPool#sendReadPreparedStatement(String, List)}, e.g. the list/get/map/group methods of {@link BasicDao}
+ * that don't take a connection. everything else, including connections and transactions, goes to the primary.
+ * each read goes to the healthy replica with the least outstanding queries, or to the primary if there is none.
+ * </p>
+ * <p>
+ * since replication is asynchronous, reads can be sent to the primary for a while after each write (the read-your-writes
+ * window), and replicas whose replication lag exceeds a threshold can be taken out of rotation until they catch up.
+ * the window applies to all the reads of this pool, not only to the ones that depend on the write.
+ * </p>
+ * the replicas can be changed at runtime, e.g. by {@link HealthyReplicas}; removed replicas are closed once their
+ * outstanding queries complete. see {@link ReplicatedConnectionPoolBuilder}.
+ */
+public class ReplicatedConnectionPool implements DbConnectionPool {
+  private static final Logger logger = LoggerFactory.getLogger(ReplicatedConnectionPool.class);
+
+  static final String LAG_QUERY = "SHOW SLAVE STATUS";
+  static final String LAG_COLUMN = "Seconds_Behind_Master";
+
+  private final DbConnectionPool primary;
+  private final ReplicaPoolFactory replicaFactory;
+  private final long readYourWritesWindowNanos;
+  private final long maxLagSeconds;
+  private final long lagCheckIntervalMs;
+
+  private final Map<String, Replica> replicasByAddress = new LinkedHashMap<>();
+  private volatile Replica[] replicas = new Replica[0];
+  private volatile long lastWriteNanos;
+  private volatile boolean closed;
+
+  private final Counter primaryReads;
+  private final Counter replicaReads;
+  private final Counter laggingReplicas;
+
+  /**
+   * @param replicaFactory creates the pool of a replica when it is added, may be null if the replicas are given as pools.
+   * @param readYourWritesWindowMs how long to send reads to the primary after a write. 0 to disable.
+   * @param maxLagSeconds the max replication lag of a replica serving reads. 0 to disable lag checks.
+   * @param lagCheckIntervalMs the interval between replication lag checks.
+   */
+  ReplicatedConnectionPool(final DbConnectionPool primary, final ReplicaPoolFactory replicaFactory,
+                           final long readYourWritesWindowMs, final long maxLagSeconds, final long lagCheckIntervalMs,
+                           final MetricFactory metricFactory) {
+    this.primary = Objects.requireNonNull(primary, "primary must not be null");
+    this.replicaFactory = replicaFactory;
+    this.readYourWritesWindowNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindowMs);
+    this.maxLagSeconds = maxLagSeconds;
+    this.lagCheckIntervalMs = lagCheckIntervalMs;
+    this.lastWriteNanos = System.nanoTime() - readYourWritesWindowNanos;
+
+    if (metricFactory != null) {
+      primaryReads = metricFactory.createCounter("ReplicatedConnectionPool", "primaryReads");
+      replicaReads = metricFactory.createCounter("ReplicatedConnectionPool", "replicaReads");
+      laggingReplicas = metricFactory.createCounter("ReplicatedConnectionPool", "laggingReplicas");
+      metricFactory.registerGauge("ReplicatedConnectionPool", "replicas", () -> replicas.length);
+      metricFactory.registerGauge("ReplicatedConnectionPool", "healthyReplicas", this::healthyReplicasCount);
+    } else {
+      primaryReads = null;
+      replicaReads = null;
+      laggingReplicas = null;
+    }
+
+    if (maxLagSeconds > 0) {
+      scheduleLagCheck();
+    }
+  }
+
+  /**
+   * replaces the replicas by addresses, creating pools for new replicas using the replica factory.
+   *
+   * @param addresses the replicas addresses in host:port format.
+   */
+  public void setReplicas(final Collection<String> addresses) {
+    if (replicaFactory == null) {
+      throw new IllegalStateException("a replica factory is required for setting replicas by address");
+    }
+
+    final Map<String, DbConnectionPool> pools = new LinkedHashMap<>();
+    synchronized (replicasByAddress) {
+      for (final String address : addresses) {
+        final Replica replica = replicasByAddress.get(address);
+        pools.put(address, replica != null ? replica.pool : null);
+      }
+    }
+
+    pools.replaceAll((address, pool) -> pool != null ? pool : createReplicaPool(address));
+    setReplicaPools(pools);
+  }
+
+  /**
+   * replaces the replicas by their pools. replicas whose pool is no longer present are closed.
+   *
+   * @param pools replica pools by a unique replica name, e.g. its address.
+   */
+  public void setReplicaPools(final Map<String, DbConnectionPool> pools) {
+    final List<Replica> removed = new ArrayList<>();
+    synchronized (replicasByAddress) {
+      final Map<String, Replica> current = new LinkedHashMap<>(replicasByAddress);
+      replicasByAddress.clear();
+      for (final Map.Entry<String, DbConnectionPool> entry : pools.entrySet()) {
+        final Replica replica = current.remove(entry.getKey());
+        if (replica != null && replica.pool == entry.getValue()) {
+          replicasByAddress.put(entry.getKey(), replica);
+        } else {
+          replicasByAddress.put(entry.getKey(), new Replica(entry.getKey(), entry.getValue()));
+          if (replica != null) {
+            removed.add(replica);
+          }
+        }
+      }
+
+      removed.addAll(current.values());
+      replicas = replicasByAddress.values().toArray(new Replica[replicasByAddress.size()]);
+    }
+
+    if (!removed.isEmpty() || !pools.isEmpty()) {
+      logger.info("replicas changed to {}, removed {}", pools.keySet(), removed);
+    }
+    removed.forEach(Replica::retire);
+  }
+
+  private DbConnectionPool createReplicaPool(final String address) {
+    final int separator = address.lastIndexOf(':');
+    return replicaFactory.create(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendQuery(final String query) {
+    return write(() -> primary.sendQuery(query));
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
+    return write(() -> primary.sendPreparedStatement(query, values));
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendReadQuery(final String query) {
+    final Replica replica = selectReplica();
+    if (replica == null) {
+      return primary.sendQuery(query);
+    }
+
+    return replica.execute(() -> replica.pool.sendReadQuery(query));
+  }
+
+  @Override
+  public ComposableFuture<QueryResult> sendReadPreparedStatement(final String query, final List<Object> values) {
+    final Replica replica = selectReplica();
+    if (replica == null) {
+      return primary.sendPreparedStatement(query, values);
+    }
+
+    return replica.execute(() -> replica.pool.sendReadPreparedStatement(query, values));
+  }
+
+  @Override
+  public <T> ComposableFuture<T> withConnection(final TransactionHandler<T> handler) {
+    return write(() -> primary.withConnection(handler));
+  }
+
+  @Override
+  public <T> ComposableFuture<T> withTransaction(final TransactionHandler<T> handler) {
+    return write(() -> primary.withTransaction(handler));
+  }
+
+  @Override
+  public ComposableFuture<Boolean> close() {
+    closed = true;
+    final List<ComposableFuture<Boolean>> closing = new ArrayList<>();
+    closing.add(primary.close());
+    synchronized (replicasByAddress) {
+      for (final Replica replica : replicasByAddress.values()) {
+        closing.add(replica.pool.close());
+      }
+      replicasByAddress.clear();
+      replicas = new Replica[0];
+    }
+
+    return ComposableFutures.all(false, closing).continueWith((ResultHandler<List<Boolean>, Boolean>) result ->
+      result.isSuccess() && !result.getValue().contains(Boolean.FALSE));
+  }
+
+  private <T> ComposableFuture<T> write(final Supplier<ComposableFuture<T>> producer) {
+    final ComposableFuture<T> result = producer.get();
+    if (readYourWritesWindowNanos > 0) {
+      result.consume(res -> lastWriteNanos = System.nanoTime());
+    }
+    return result;
+  }
+
+  /**
+   * @return the healthy replica with the least outstanding queries, or null if reads should go to the primary.
+   */
+  Replica selectReplica() {
+    final Replica[] current = replicas;
+    if (current.length == 0 || (readYourWritesWindowNanos > 0 && System.nanoTime() - lastWriteNanos < readYourWritesWindowNanos)) {
+      if (primaryReads != null) {
+        primaryReads.inc();
+      }
+      return null;
+    }
+
+    // start from a random replica, so ties are spread evenly.
+    final int start = ThreadLocalRandom.current().nextInt(current.length);
+    Replica selected = null;
+    for (int i = 0; i < current.length; i++) {
+      final Replica replica = current[(start + i) % current.length];
+      if (!replica.lagging && (selected == null || replica.outstanding.get() < selected.outstanding.get())) {
+        selected = replica;
+      }
+    }
+
+    final Counter counter = selected != null ? replicaReads : primaryReads;
+    if (counter != null) {
+      counter.inc();
+    }
+    return selected;
+  }
+
+  private int healthyReplicasCount() {
+    int count = 0;
+    for (final Replica replica : replicas) {
+      if (!replica.lagging) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void scheduleLagCheck() {
+    ComposableFutures.scheduleFuture(this::checkLag, lagCheckIntervalMs, TimeUnit.MILLISECONDS).consume(result -> {
+      if (!closed) {
+        scheduleLagCheck();
+      }
+    });
+  }
+
+  ComposableFuture<List<Boolean>> checkLag() {
+    final List<ComposableFuture<Boolean>> checks = new ArrayList<>();
+    for (final Replica replica : replicas) {
+      checks.add(replica.pool.sendReadQuery(LAG_QUERY).continueWith((ResultHandler<QueryResult, Boolean>) result -> {
+        final boolean lagging = !result.isSuccess() || isLagging(result.getValue());
+        if (lagging != replica.lagging) {
+          logger.warn("replica {} is {}", replica.address, lagging ? "lagging, removing it from rotation" : "back in rotation");
+          if (lagging && laggingReplicas != null) {
+            laggingReplicas.inc();
+          }
+        }
+        replica.lagging = lagging;
+        return lagging;
+      }));
+    }
+
+    return ComposableFutures.all(false, checks);
+  }
+
+  private boolean isLagging(final QueryResult result) {
+    final ResultSet rows = result.rows().isDefined() ? result.rows().get() : null;
+    if (rows == null || rows.isEmpty()) {
+      // not a replica
+      return false;
+    }
+
+    // null while replication is stopped
+    final Object lag = rows.head().apply(LAG_COLUMN);
+    return !(lag instanceof Number) || ((Number) lag).longValue() > maxLagSeconds;
+  }
+
+  /**
+   * creates the pool of a replica when it is added.
+   */
+  public interface ReplicaPoolFactory {
+    DbConnectionPool create(String host, int port);
+  }
+
+  static final class Replica {
+    final String address;
+    final DbConnectionPool pool;
+    final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean retired;
+    volatile boolean lagging;
+
+    private Replica(final String address, final DbConnectionPool pool) {
+      this.address = address;
+      this.pool = pool;
+    }
+
+    private <T> ComposableFuture<T> execute(final Supplier<ComposableFuture<T>> producer) {
+      outstanding.incrementAndGet();
+      final ComposableFuture<T> result = producer.get();
+      result.consume(res -> {
+        if (outstanding.decrementAndGet() == 0 && retired) {
+          closeOnce();
+        }
+      });
+      return result;
+    }
+
+    private void retire() {
+      retired = true;
+      if (outstanding.get() == 0) {
+        closeOnce();
+      }
+    }
+
+    private void closeOnce() {
+      if (closed.compareAndSet(false, true)) {
+        pool.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return address;
+    }
+  }
+}
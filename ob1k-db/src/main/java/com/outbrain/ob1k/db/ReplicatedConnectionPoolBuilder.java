@@ -0,0 +1,106 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a {@link ReplicatedConnectionPool}.
+ * <p>
+ * example, with replicas from consul:
+ * <pre>
+ *   final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(primaryPool)
+ *     .replicaFactory((host, port) -&gt; MySqlConnectionPoolBuilder.newBuilder(host, port, user).password(password).build())
+ *     .readYourWritesWindow(1, TimeUnit.SECONDS)
+ *     .maxReplicationLag(5, TimeUnit.SECONDS)
+ *     .build();
+ *   new HealthyReplicas(healthyTargetsList, pool);
+ * </pre>
+ */
+public class ReplicatedConnectionPoolBuilder {
+
+  private final DbConnectionPool primary;
+  private ReplicatedConnectionPool.ReplicaPoolFactory replicaFactory;
+  private Collection<String> replicaAddresses;
+  private Map<String, DbConnectionPool> replicaPools;
+  private long readYourWritesWindowMs = 0;
+  private long maxLagSeconds = 0;
+  private long lagCheckIntervalMs = 5000;
+  private MetricFactory metricFactory;
+
+  private ReplicatedConnectionPoolBuilder(final DbConnectionPool primary) {
+    this.primary = primary;
+  }
+
+  /**
+   * @param primary the pool all writes are sent to, and reads when there are no healthy replicas.
+   */
+  public static ReplicatedConnectionPoolBuilder newBuilder(final DbConnectionPool primary) {
+    return new ReplicatedConnectionPoolBuilder(primary);
+  }
+
+  /**
+   * sets the factory of the replica pools, required for replicas given by address.
+   */
+  public ReplicatedConnectionPoolBuilder replicaFactory(final ReplicatedConnectionPool.ReplicaPoolFactory replicaFactory) {
+    this.replicaFactory = replicaFactory;
+    return this;
+  }
+
+  /**
+   * @param addresses the initial replicas addresses in host:port format.
+   */
+  public ReplicatedConnectionPoolBuilder replicas(final Collection<String> addresses) {
+    this.replicaAddresses = addresses;
+    return this;
+  }
+
+  /**
+   * @param pools the initial replicas pools, by a unique replica name.
+   */
+  public ReplicatedConnectionPoolBuilder replicaPools(final Map<String, DbConnectionPool> pools) {
+    this.replicaPools = pools;
+    return this;
+  }
+
+  /**
+   * reads are sent to the primary for the given duration after each write, so they see it.
+   */
+  public ReplicatedConnectionPoolBuilder readYourWritesWindow(final long window, final TimeUnit unit) {
+    this.readYourWritesWindowMs = unit.toMillis(window);
+    return this;
+  }
+
+  /**
+   * replicas are checked periodically, and replicas lagging behind the primary more than the given lag
+   * (with seconds resolution) or not replicating are taken out of rotation.
+   */
+  public ReplicatedConnectionPoolBuilder maxReplicationLag(final long maxLag, final TimeUnit unit) {
+    this.maxLagSeconds = Math.max(1, unit.toSeconds(maxLag));
+    return this;
+  }
+
+  public ReplicatedConnectionPoolBuilder lagCheckInterval(final long interval, final TimeUnit unit) {
+    this.lagCheckIntervalMs = unit.toMillis(interval);
+    return this;
+  }
+
+  public ReplicatedConnectionPoolBuilder withMetrics(final MetricFactory metricFactory) {
+    this.metricFactory = metricFactory;
+    return this;
+  }
+
+  public ReplicatedConnectionPool build() {
+    final ReplicatedConnectionPool pool = new ReplicatedConnectionPool(primary, replicaFactory, readYourWritesWindowMs,
+      maxLagSeconds, lagCheckIntervalMs, metricFactory);
+
+    if (replicaPools != null) {
+      pool.setReplicaPools(replicaPools);
+    } else if (replicaAddresses != null) {
+      pool.setReplicas(replicaAddresses);
+    }
+    return pool;
+  }
+}
@@ -0,0 +1,48 @@
+package com.outbrain.ob1k.db;
+
+/**
+ * the result of a single statement of a chunked save.
+ * a chunk holds the entries [firstEntry, firstEntry + entries) of the saved list.
+ */
+public class SaveChunkResult {
+  private final int firstEntry;
+  private final int entries;
+  private final long rowsAffected;
+  private final Throwable error;
+
+  SaveChunkResult(final int firstEntry, final int entries, final long rowsAffected, final Throwable error) {
+    this.firstEntry = firstEntry;
+    this.entries = entries;
+    this.rowsAffected = rowsAffected;
+    this.error = error;
+  }
+
+  public int getFirstEntry() {
+    return firstEntry;
+  }
+
+  public int getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return the number of affected rows, as reported by MySQL: an upserted row that was updated counts as 2.
+   */
+  public long getRowsAffected() {
+    return rowsAffected;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  public Throwable getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return "SaveChunkResult{firstEntry=" + firstEntry + ", entries=" + entries +
+      (error == null ? ", rowsAffected=" + rowsAffected : ", error=" + error) + "}";
+  }
+}
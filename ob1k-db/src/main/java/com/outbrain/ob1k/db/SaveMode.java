@@ -0,0 +1,13 @@
+package com.outbrain.ob1k.db;
+
+/**
+ * how {@link BasicDao} save methods treat rows that collide with an existing unique key.
+ */
+public enum SaveMode {
+  /** fail the statement. */
+  INSERT,
+  /** skip the colliding rows (INSERT IGNORE). */
+  INSERT_IGNORE,
+  /** update all the saved columns of the existing rows (INSERT ... ON DUPLICATE KEY UPDATE). */
+  UPSERT
+}
@@ -1,43 +1,88 @@
 package com.outbrain.ob1k.db;
 
+import scala.Option;
+import scala.concurrent.ExecutionContext;
 import scala.concurrent.Future;
+import scala.runtime.BoxedUnit;
 import scala.util.Try;
 import com.outbrain.ob1k.concurrent.*;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
 import scala.concurrent.ExecutionContext$;
 import scala.concurrent.ExecutionContextExecutor;
 import scala.runtime.AbstractFunction1;
 
+import java.util.concurrent.Executor;
+
 /**
  * User: aronen
  * Date: 9/17/13
  * Time: 3:43 PM
+ *
+ * bridges scala futures to composable futures.
+ * <p>
+ * by default the continuations of the bridged futures run on the ob1k executor ({@link #ctx}), which costs a thread
+ * handoff per future. {@link #sameThread} runs them on the thread that completed the scala future instead, usually the
+ * netty I/O thread of the connection, so continuations must not block.
+ * futures that are already completed are bridged without registering a callback at all.
+ * </p>
  */
 public class ScalaFutureHelper {
   public static final ExecutionContextExecutor ctx =
       ExecutionContext$.MODULE$.fromExecutor(ComposableFutures.getExecutor());
 
+  /**
+   * runs callbacks on the completing thread.
+   */
+  public static final ExecutionContextExecutor sameThread = ExecutionContext$.MODULE$.fromExecutor(Runnable::run);
+
   public static interface FutureProvider<T> {
     scala.concurrent.Future<T> provide();
   }
 
+  public static ExecutionContextExecutor executionContext(final Executor executor) {
+    return ExecutionContext$.MODULE$.fromExecutor(executor);
+  }
+
   public static <T> ComposableFuture<T> from(final FutureProvider<T> source) {
-    return ComposableFutures.build(new Producer<T>() {
-      @Override
-      public void produce(final Consumer<T> consumer) {
-        final Future<T> future = source.provide();
-        future.onComplete(new AbstractFunction1<Try<T>, Void>() {
-          @Override public Void apply(final Try<T> res) {
-            if (res.isSuccess()) {
-              consumer.consume(com.outbrain.ob1k.concurrent.Try.fromValue(res.get()));
-            } else {
-              consumer.consume(com.outbrain.ob1k.concurrent.Try.<T>fromError(res.failed().get()));
-            }
-
-            return null;
-          }
-
-        }, ctx);
+    return from(source, ctx);
+  }
+
+  /**
+   * @param executionContext the context the continuations of the returned future run on.
+   */
+  public static <T> ComposableFuture<T> from(final FutureProvider<T> source, final ExecutionContext executionContext) {
+    final Future<T> future;
+    try {
+      future = source.provide();
+    } catch (final RuntimeException e) {
+      return ComposableFutures.fromError(e);
+    }
+
+    final Option<Try<T>> completed = future.value();
+    if (completed.isDefined()) {
+      return fromTry(completed.get());
+    }
+
+    final PromiseCompleter<T> completer = new PromiseCompleter<>();
+    future.onComplete(completer, executionContext);
+    return completer.promise.future();
+  }
+
+  private static <T> ComposableFuture<T> fromTry(final Try<T> res) {
+    return res.isSuccess() ? ComposableFutures.fromValue(res.get()) : ComposableFutures.<T>fromError(res.failed().get());
+  }
+
+  private static final class PromiseCompleter<T> extends AbstractFunction1<Try<T>, BoxedUnit> {
+    private final ComposablePromise<T> promise = ComposableFutures.newPromise(false);
+
+    @Override
+    public BoxedUnit apply(final Try<T> res) {
+      if (res.isSuccess()) {
+        promise.set(res.get());
+      } else {
+        promise.setException(res.failed().get());
       }
-    });
+      return BoxedUnit.UNIT;
+    }
   }
 }
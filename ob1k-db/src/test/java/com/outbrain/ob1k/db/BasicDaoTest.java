@@ -0,0 +1,257 @@
+package com.outbrain.ob1k.db;
+
+import com.github.mauricio.async.db.QueryResult;
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import scala.Option;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * tests of the dao over a stub pool, without a database.
+ */
+public class BasicDaoTest {
+
+  private static final ResultSetMapper<String> NAME_MAPPER = (row, columnNames) -> row.getString("name");
+  private static final List<String> COLUMNS = Arrays.asList("id", "name");
+  private static final String PAGED_QUERY = "select * from users where status = ? and id > ? order by id limit ?";
+
+  private StubPool pool;
+  private BasicDao dao;
+
+  @Before
+  public void setup() {
+    pool = new StubPool();
+    dao = new BasicDao(pool);
+  }
+
+  @Test
+  public void testEmptyIdsFailTheFuture() throws InterruptedException {
+    assertIllegalArgument(dao.list("users", "id", Collections.emptyList(), NAME_MAPPER));
+    assertIllegalArgument(dao.delete("users", "id", Collections.emptyList()));
+    Assert.assertTrue(pool.queries.isEmpty());
+  }
+
+  @Test
+  public void testStatementsBeyondTheMaxPreparedAreInlined() throws InterruptedException, ExecutionException {
+    final BasicDao boundedDao = new BasicDao(pool, 1, null, null);
+
+    boundedDao.execute("update users set name = ? where id = ?", Arrays.asList("a", 1)).get();
+    boundedDao.execute("delete from users where name = ?", Collections.singletonList("o'neil")).get();
+    boundedDao.execute("update users set name = ? where id = ?", Arrays.asList("b", 2)).get();
+
+    Assert.assertEquals(Arrays.asList("update users set name = ? where id = ?", "delete from users where name = 'o\\'neil'",
+      "update users set name = ? where id = ?"), pool.queries);
+    Assert.assertEquals(Arrays.asList(Arrays.<Object>asList("a", 1), Collections.emptyList(), Arrays.<Object>asList("b", 2)),
+      pool.queryParams);
+  }
+
+  @Test
+  public void testStreamPages() {
+    pool.results = usersPages(5);
+
+    final TestSubscriber<String> subscriber = new TestSubscriber<>();
+    dao.stream(PAGED_QUERY, Collections.singletonList("active"), "id", 0, 2, NAME_MAPPER).subscribe(subscriber);
+
+    subscriber.assertValues("name-1", "name-2", "name-3", "name-4", "name-5");
+    subscriber.assertCompleted();
+    Assert.assertEquals("the short last page should end the stream",
+      Arrays.asList(Arrays.<Object>asList("active", 0, 2), Arrays.<Object>asList("active", 2, 2), Arrays.<Object>asList("active", 4, 2)),
+      pool.queryParams);
+  }
+
+  @Test
+  public void testStreamEndsWithAnEmptyPage() {
+    pool.results = usersPages(4);
+
+    final TestSubscriber<String> subscriber = new TestSubscriber<>();
+    dao.stream(PAGED_QUERY, Collections.singletonList("active"), "id", 0, 2, NAME_MAPPER).subscribe(subscriber);
+
+    subscriber.assertValues("name-1", "name-2", "name-3", "name-4");
+    subscriber.assertCompleted();
+    Assert.assertEquals(3, pool.queries.size());
+  }
+
+  @Test
+  public void testStreamEmptyResult() {
+    pool.results = usersPages(0);
+
+    final TestSubscriber<String> subscriber = new TestSubscriber<>();
+    dao.stream(PAGED_QUERY, Collections.singletonList("active"), "id", 0, 2, NAME_MAPPER).subscribe(subscriber);
+
+    subscriber.assertNoValues();
+    subscriber.assertCompleted();
+    Assert.assertEquals(1, pool.queries.size());
+  }
+
+  @Test
+  public void testStreamIsLazy() {
+    pool.results = usersPages(5);
+    final TestSubscriber<String> subscriber = new TestSubscriber<>(0);
+
+    dao.stream(PAGED_QUERY, Collections.singletonList("active"), "id", 0, 2, NAME_MAPPER).subscribe(subscriber);
+    subscriber.requestMore(1);
+
+    subscriber.assertValues("name-1");
+    Assert.assertEquals("only the first page and the one after it should be read", 2, pool.queries.size());
+  }
+
+  @Test
+  public void testNoPageIsReadAfterUnsubscribe() {
+    pool.results = usersPages(5);
+    pool.complete = false;
+
+    final Subscription subscription = dao.stream(PAGED_QUERY, Collections.singletonList("active"), "id", 0, 2, NAME_MAPPER)
+      .subscribe(new TestSubscriber<>());
+    subscription.unsubscribe();
+    pool.completeAll();
+
+    Assert.assertEquals(1, pool.queries.size());
+  }
+
+  @Test
+  public void testCachedReads() throws ExecutionException, InterruptedException {
+    final BasicDao cachedDao = cachedDao();
+
+    Assert.assertEquals(Arrays.asList("name-1", "name-2"), cachedDao.list("select * from users", NAME_MAPPER).get());
+    Assert.assertEquals(Arrays.asList("name-1", "name-2"), cachedDao.list("select  *  from users", NAME_MAPPER).get());
+    Assert.assertEquals(1, pool.queries.size());
+  }
+
+  @Test
+  public void testListAndGetOfAQueryAreCachedApart() throws ExecutionException, InterruptedException {
+    final BasicDao cachedDao = cachedDao();
+    final ResultSetMapper<String> otherMapper = (row, columnNames) -> "other-" + row.getString("name");
+
+    Assert.assertEquals("name-1", cachedDao.get("select * from users", NAME_MAPPER).get());
+    Assert.assertEquals(Arrays.asList("name-1", "name-2"), cachedDao.list("select * from users", NAME_MAPPER).get());
+    Assert.assertEquals("name-1", cachedDao.get("select * from users", NAME_MAPPER).get());
+    Assert.assertEquals("mappers of the same class should be cached apart",
+      "other-name-1", cachedDao.get("select * from users", otherMapper).get());
+    Assert.assertEquals(3, pool.queries.size());
+  }
+
+  @Test
+  public void testWritesInvalidateCachedReads() throws ExecutionException, InterruptedException {
+    final BasicDao cachedDao = cachedDao();
+
+    cachedDao.list("select * from users", NAME_MAPPER).get();
+    cachedDao.execute("update users set name = 'x' where id = 1").get();
+    cachedDao.list("select * from users", NAME_MAPPER).get();
+    Assert.assertEquals(3, pool.queries.size());
+  }
+
+  @Test
+  public void testTransactionWritesInvalidateCachedReads() throws ExecutionException, InterruptedException {
+    final BasicDao cachedDao = cachedDao();
+
+    cachedDao.withTransaction(conn -> cachedDao.execute(conn, "update users set name = 'x' where id = 1")
+      .continueOnSuccess((FutureSuccessHandler<Long, List<String>>) rows ->
+        // read outside of the transaction, before it's committed
+        cachedDao.list("select * from users", NAME_MAPPER))).get();
+    cachedDao.list("select * from users", NAME_MAPPER).get();
+
+    Assert.assertEquals("a read during the transaction shouldn't be cached after the commit", 3, pool.queries.size());
+  }
+
+  private BasicDao cachedDao() {
+    pool.results = values -> {
+      final List<List<Object>> rows = Arrays.asList(RowDataFactory.values(1, "name-1"), RowDataFactory.values(2, "name-2"));
+      return new QueryResult(1, "", Option.apply(RowDataFactory.createResultSet(COLUMNS, rows)));
+    };
+    return new BasicDao(pool, new QueryResultCache(new LocalAsyncCache<>(), 1, TimeUnit.MINUTES));
+  }
+
+  private static Function<List<Object>, QueryResult> usersPages(final int users) {
+    return values -> {
+      final int fromId = (Integer) values.get(values.size() - 2);
+      final int pageSize = (Integer) values.get(values.size() - 1);
+      final List<List<Object>> rows = new ArrayList<>();
+      for (int id = fromId + 1; id <= users && rows.size() < pageSize; id++) {
+        rows.add(RowDataFactory.values(id, "name-" + id));
+      }
+      return new QueryResult(0, "", Option.apply(RowDataFactory.createResultSet(COLUMNS, rows)));
+    };
+  }
+
+  private static void assertIllegalArgument(final ComposableFuture<?> future) throws InterruptedException {
+    try {
+      future.get();
+      Assert.fail("the future should fail");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  private static class StubPool implements DbConnectionPool {
+    final List<String> queries = new ArrayList<>();
+    final List<List<Object>> queryParams = new ArrayList<>();
+    final List<Runnable> pending = new ArrayList<>();
+    Function<List<Object>, QueryResult> results = values -> new QueryResult(0, "", Option.empty());
+    boolean complete = true;
+
+    @Override
+    public ComposableFuture<QueryResult> sendQuery(final String query) {
+      return sendPreparedStatement(query, Collections.emptyList());
+    }
+
+    @Override
+    public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
+      queries.add(query);
+      queryParams.add(values);
+      if (complete) {
+        return ComposableFutures.fromValue(results.apply(values));
+      }
+
+      final ComposablePromise<QueryResult> promise = ComposableFutures.newPromise();
+      pending.add(() -> promise.set(results.apply(values)));
+      return promise.future();
+    }
+
+    @Override
+    public <T> ComposableFuture<T> withConnection(final TransactionHandler<T> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> ComposableFuture<T> withTransaction(final TransactionHandler<T> handler) {
+      return handler.handle(new MySqlAsyncConnection(null) {
+        @Override
+        public ComposableFuture<QueryResult> sendQuery(final String query) {
+          return StubPool.this.sendQuery(query);
+        }
+
+        @Override
+        public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
+          return StubPool.this.sendPreparedStatement(query, values);
+        }
+      });
+    }
+
+    @Override
+    public ComposableFuture<Boolean> close() {
+      return ComposableFutures.fromValue(true);
+    }
+
+    void completeAll() {
+      complete = true;
+      final List<Runnable> completions = new ArrayList<>(pending);
+      pending.clear();
+      completions.forEach(Runnable::run);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.outbrain.ob1k.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CompiledResultSetMapperTest {
+
+  private static final List<String> COLUMNS = Arrays.asList("id", "user_name", "score", "active", "visits", "unknown");
+
+  public static class User {
+    private long id;
+    private String userName;
+    private double score;
+    private boolean active;
+    private Integer visits;
+    private boolean nameSetterCalled;
+
+    public void setUserName(final String userName) {
+      this.userName = userName;
+      this.nameSetterCalled = true;
+    }
+  }
+
+  private final CompiledResultSetMapper<User> mapper = CompiledResultSetMapper.forClass(User.class);
+
+  @Test
+  public void testMapping() {
+    final User user = mapper.map(new TypedRowData(RowDataFactory.createRow(COLUMNS, 7L, "saba", 9.5f, new byte[] {1}, 3L, "x")), COLUMNS);
+
+    Assert.assertEquals(7L, user.id);
+    Assert.assertEquals("saba", user.userName);
+    Assert.assertTrue("setters should be preferred over fields", user.nameSetterCalled);
+    Assert.assertEquals(9.5, user.score, 0.001);
+    Assert.assertTrue(user.active);
+    Assert.assertEquals(Integer.valueOf(3), user.visits);
+  }
+
+  @Test
+  public void testNullValues() {
+    final User user = mapper.map(new TypedRowData(RowDataFactory.createRow(COLUMNS, null, null, null, null, null, null)), COLUMNS);
+
+    Assert.assertEquals(0L, user.id);
+    Assert.assertNull(user.userName);
+    Assert.assertFalse(user.active);
+    Assert.assertNull(user.visits);
+  }
+
+  @Test
+  public void testDifferentShapes() {
+    final List<String> columns = Arrays.asList("visits", "id");
+    mapper.map(new TypedRowData(RowDataFactory.createRow(COLUMNS, 7L, "saba", 9.5, (byte) 0, 3, null)), COLUMNS);
+    final User user = mapper.map(new TypedRowData(RowDataFactory.createRow(columns, 4, 8L)), columns);
+
+    Assert.assertEquals(8L, user.id);
+    Assert.assertEquals(Integer.valueOf(4), user.visits);
+    Assert.assertNull(user.userName);
+  }
+}
@@ -0,0 +1,264 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FairObjectPoolTest {
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final List<Integer> destroyed = new ArrayList<>();
+
+  private final FairObjectPool.ObjectFactory<Integer> factory = new FairObjectPool.ObjectFactory<Integer>() {
+    @Override
+    public ComposableFuture<Integer> create() {
+      return ComposableFutures.fromValue(created.incrementAndGet());
+    }
+
+    @Override
+    public void destroy(final Integer object) {
+      synchronized (destroyed) {
+        destroyed.add(object);
+      }
+    }
+  };
+
+  @Test
+  public void testWaitersAreServedInOrder() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(1, 10, 0, 0, 0);
+    final Integer object = pool.take().get();
+
+    final ComposableFuture<Integer> first = pool.take();
+    final ComposableFuture<Integer> second = pool.take();
+    Assert.assertEquals(2, pool.waiting());
+
+    pool.giveBack(object, true);
+    Assert.assertEquals(object, first.get());
+    Assert.assertEquals(1, pool.waiting());
+
+    pool.giveBack(object, true);
+    Assert.assertEquals(object, second.get());
+    Assert.assertEquals(1, created.get());
+  }
+
+  @Test
+  public void testAcquireTimeout() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(1, 10, 0, 50, 0);
+    final Integer object = pool.take().get();
+
+    try {
+      pool.take().get();
+      Assert.fail("take should time out");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    Assert.assertEquals(0, pool.waiting());
+    pool.giveBack(object, true);
+    Assert.assertEquals(1, pool.available());
+  }
+
+  @Test
+  public void testAcquireTimeoutWhileCreating() throws Exception {
+    final ComposablePromise<Integer> creation = ComposableFutures.newPromise();
+    final FairObjectPool<Integer> pool = new FairObjectPool<>(new FairObjectPool.ObjectFactory<Integer>() {
+      @Override
+      public ComposableFuture<Integer> create() {
+        return creation.future();
+      }
+
+      @Override
+      public void destroy(final Integer object) {}
+    }, 1, 10, 0, 50, 1, 0, "test", null);
+
+    try {
+      pool.take().get();
+      Assert.fail("take should time out while the object is created");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    creation.set(1);
+    Assert.assertEquals("the object created for the timed out waiter should be kept", 1, pool.available());
+    Assert.assertEquals(Integer.valueOf(1), pool.take().get());
+  }
+
+  @Test
+  public void testFullQueueIsRejected() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(1, 1, 0, 0, 0);
+    pool.take().get();
+    pool.take();
+
+    try {
+      pool.take().get();
+      Assert.fail("take should be rejected");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void testInvalidObjectsAreReplaced() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(1, 10, 0, 0, 0);
+    final Integer object = pool.take().get();
+    final ComposableFuture<Integer> waiter = pool.take();
+
+    pool.giveBack(object, false);
+    Assert.assertEquals(Integer.valueOf(2), waiter.get());
+    Assert.assertEquals(1, destroyed.size());
+    Assert.assertEquals(1, pool.inUse());
+  }
+
+  @Test
+  public void testFailedCreatesServeTheQueuedWaiters() throws Exception {
+    final List<ComposablePromise<Integer>> creations = new ArrayList<>();
+    final FairObjectPool<Integer> pool = new FairObjectPool<>(pendingFactory(creations), 2, 10, 0, 0, 1, 0, "test", null);
+
+    final ComposableFuture<Integer> first = pool.take();
+    final ComposableFuture<Integer> second = pool.take();
+    final ComposableFuture<Integer> queued = pool.take();
+    Assert.assertEquals(1, pool.waiting());
+
+    creations.get(0).setException(new IllegalStateException("can't connect"));
+    assertFailed(first, IllegalStateException.class);
+    Assert.assertEquals("a failed create should create an object for the next waiter", 3, creations.size());
+
+    creations.get(1).set(2);
+    creations.get(2).set(3);
+    Assert.assertEquals(Integer.valueOf(2), second.get());
+    Assert.assertEquals(Integer.valueOf(3), queued.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailedMinIdleCreateServesTheQueuedWaiters() throws Exception {
+    final List<ComposablePromise<Integer>> creations = new ArrayList<>();
+    final FairObjectPool<Integer> pool = new FairObjectPool<>(pendingFactory(creations), 1, 10, 1, 0, 1, 0, "test", null);
+
+    final ComposableFuture<Integer> queued = pool.take();
+    Assert.assertEquals(1, pool.waiting());
+
+    creations.get(0).setException(new IllegalStateException("can't connect"));
+    Assert.assertEquals(2, creations.size());
+    creations.get(1).set(1);
+    Assert.assertEquals(Integer.valueOf(1), queued.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testWaitersAreServedBeforeNewTakers() throws Exception {
+    final List<ComposablePromise<Integer>> creations = new ArrayList<>();
+    final FairObjectPool<Integer> pool = new FairObjectPool<>(pendingFactory(creations), 1, 10, 0, 0, 1, 0, "test", null);
+
+    final ComposableFuture<Integer> first = pool.take();
+    final ComposableFuture<Integer> queued = pool.take();
+    creations.get(0).setException(new IllegalStateException("can't connect"));
+    assertFailed(first, IllegalStateException.class);
+
+    final ComposableFuture<Integer> late = pool.take();
+    creations.get(1).set(1);
+    Assert.assertEquals(Integer.valueOf(1), queued.get(1, TimeUnit.SECONDS));
+    Assert.assertEquals(1, pool.waiting());
+
+    pool.giveBack(1, true);
+    Assert.assertEquals(Integer.valueOf(1), late.get());
+  }
+
+  @Test
+  public void testBrokenIdleObjectsAreNotTaken() throws Exception {
+    final FairObjectPool<Integer> pool = new FairObjectPool<>(new FairObjectPool.ObjectFactory<Integer>() {
+      @Override
+      public ComposableFuture<Integer> create() {
+        return factory.create();
+      }
+
+      @Override
+      public void destroy(final Integer object) {
+        factory.destroy(object);
+      }
+
+      @Override
+      public boolean validate(final Integer object) {
+        return object != 1;
+      }
+    }, 1, 10, 1, 0, 1, 0, "test", null);
+    Assert.assertEquals(1, pool.available());
+
+    Assert.assertEquals(Integer.valueOf(2), pool.take().get());
+    Assert.assertEquals(Collections.singletonList(1), destroyed);
+  }
+
+  @Test
+  public void testMinIdleAndIdleExpiry() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(5, 10, 2, 0, 0);
+    Assert.assertEquals("min idle objects should be created on startup", 2, pool.available());
+
+    final List<Integer> taken = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      taken.add(pool.take().get());
+    }
+    taken.forEach(object -> pool.giveBack(object, true));
+    Assert.assertEquals(4, pool.available());
+
+    Thread.sleep(5);
+    pool.housekeeping();
+    Assert.assertEquals("idle objects beyond min idle should expire", 2, pool.available());
+    Assert.assertEquals(2, destroyed.size());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    final FairObjectPool<Integer> pool = newPool(1, 10, 0, 0, 0);
+    final Integer object = pool.take().get();
+    final ComposableFuture<Integer> waiter = pool.take();
+
+    pool.close();
+    try {
+      waiter.get();
+      Assert.fail("waiters should fail when the pool closes");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    pool.giveBack(object, true);
+    Assert.assertEquals(1, destroyed.size());
+  }
+
+  private static FairObjectPool.ObjectFactory<Integer> pendingFactory(final List<ComposablePromise<Integer>> creations) {
+    return new FairObjectPool.ObjectFactory<Integer>() {
+      @Override
+      public ComposableFuture<Integer> create() {
+        final ComposablePromise<Integer> creation = ComposableFutures.newPromise();
+        creations.add(creation);
+        return creation.future();
+      }
+
+      @Override
+      public void destroy(final Integer object) {}
+    };
+  }
+
+  private static void assertFailed(final ComposableFuture<?> future, final Class<? extends Throwable> errorType)
+    throws InterruptedException {
+    try {
+      future.get();
+      Assert.fail("expected a " + errorType.getSimpleName());
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause().toString(), errorType.isInstance(e.getCause()));
+    }
+  }
+
+  private FairObjectPool<Integer> newPool(final int maxSize, final int maxQueueSize, final int minIdle,
+                                          final long acquireTimeoutMs, final long leakThresholdMs) {
+    return new FairObjectPool<>(factory, maxSize, maxQueueSize, minIdle, acquireTimeoutMs, 1, leakThresholdMs, "test", null);
+  }
+}
@@ -0,0 +1,31 @@
+package com.outbrain.ob1k.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class InListsTest {
+
+  @Test
+  public void testInListSizes() {
+    Assert.assertEquals(1, InLists.size(1));
+    Assert.assertEquals(2, InLists.size(2));
+    Assert.assertEquals(4, InLists.size(3));
+    Assert.assertEquals(8, InLists.size(8));
+    Assert.assertEquals(16, InLists.size(9));
+    Assert.assertEquals(32768, InLists.size(32768));
+  }
+
+  @Test
+  public void testInListsAreNotPaddedBeyondTheMaxPlaceholders() {
+    Assert.assertEquals(32769, InLists.size(32769));
+    Assert.assertEquals(InLists.MAX_PLACEHOLDERS, InLists.size(InLists.MAX_PLACEHOLDERS));
+  }
+
+  @Test
+  public void testInListPadding() {
+    Assert.assertEquals(Arrays.asList(1, 2, 3, 3), InLists.pad(Arrays.asList(1, 2, 3)));
+    Assert.assertEquals(Arrays.asList(1, 2), InLists.pad(Arrays.asList(1, 2)));
+  }
+}
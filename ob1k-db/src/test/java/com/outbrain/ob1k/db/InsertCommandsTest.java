@@ -0,0 +1,119 @@
+package com.outbrain.ob1k.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InsertCommandsTest {
+
+  private static final EntityMapper<Integer> MAPPER = id -> {
+    final Map<String, Object> row = new LinkedHashMap<>();
+    row.put("id", id);
+    row.put("name", "n" + id);
+    return row;
+  };
+
+  @Test
+  public void testSingleStatement() {
+    final List<InsertCommands.Command> commands =
+      InsertCommands.create(Arrays.asList(1, 2), "t", MAPPER, SaveMode.INSERT, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals("insert into `t` (`id`,`name`) values ('1','n1'),('2','n2');", commands.get(0).sql);
+  }
+
+  @Test
+  public void testSaveModes() {
+    final List<Integer> entries = Arrays.asList(1);
+    Assert.assertEquals("insert ignore into `t` (`id`,`name`) values ('1','n1');",
+      InsertCommands.create(entries, "t", MAPPER, SaveMode.INSERT_IGNORE, 10, 1000).get(0).sql);
+    Assert.assertEquals("insert into `t` (`id`,`name`) values ('1','n1') on duplicate key update `id`=values(`id`),`name`=values(`name`);",
+      InsertCommands.create(entries, "t", MAPPER, SaveMode.UPSERT, 10, 1000).get(0).sql);
+  }
+
+  @Test
+  public void testChunkingByRows() {
+    final List<InsertCommands.Command> commands =
+      InsertCommands.create(range(5), "t", MAPPER, SaveMode.INSERT, 2, Integer.MAX_VALUE);
+
+    Assert.assertEquals(3, commands.size());
+    Assert.assertEquals(0, commands.get(0).firstEntry);
+    Assert.assertEquals(2, commands.get(1).firstEntry);
+    Assert.assertEquals(4, commands.get(2).firstEntry);
+    Assert.assertEquals(1, commands.get(2).entries);
+    Assert.assertEquals("insert into `t` (`id`,`name`) values ('4','n4');", commands.get(2).sql);
+  }
+
+  @Test
+  public void testChunkingBySize() {
+    final int maxBytes = 200;
+    final List<InsertCommands.Command> commands =
+      InsertCommands.create(range(100), "t", MAPPER, SaveMode.UPSERT, Integer.MAX_VALUE, maxBytes);
+
+    int entries = 0;
+    for (final InsertCommands.Command command : commands) {
+      Assert.assertTrue(command.sql, command.sql.length() <= maxBytes);
+      Assert.assertEquals(entries, command.firstEntry);
+      entries += command.entries;
+    }
+    Assert.assertEquals(100, entries);
+  }
+
+  @Test
+  public void testChunkingByUtf8Bytes() {
+    final EntityMapper<Integer> hebrewMapper = id -> Collections.singletonMap("name", "\u05e9\u05dc\u05d5\u05dd" + id);
+    final int maxBytes = 200;
+    final List<InsertCommands.Command> commands =
+      InsertCommands.create(range(100), "t", hebrewMapper, SaveMode.INSERT, Integer.MAX_VALUE, maxBytes);
+
+    Assert.assertTrue(commands.size() > 1);
+    for (final InsertCommands.Command command : commands) {
+      Assert.assertTrue(command.sql, command.sql.getBytes(StandardCharsets.UTF_8).length <= maxBytes);
+    }
+  }
+
+  @Test
+  public void testUtf8Length() {
+    Assert.assertEquals(1, InsertCommands.utf8Length("a"));
+    Assert.assertEquals(2, InsertCommands.utf8Length("\u05e9"));
+    Assert.assertEquals(3, InsertCommands.utf8Length("\u20ac"));
+    Assert.assertEquals(4, InsertCommands.utf8Length("\ud83d\ude00"));
+  }
+
+  @Test
+  public void testOversizedRowGetsItsOwnStatement() {
+    final List<InsertCommands.Command> commands =
+      InsertCommands.create(Arrays.asList(1, 2), "t", MAPPER, SaveMode.INSERT, Integer.MAX_VALUE, 10);
+
+    Assert.assertEquals(2, commands.size());
+    Assert.assertEquals(1, commands.get(1).entries);
+  }
+
+  @Test
+  public void testEntriesAreMappedOnce() {
+    final AtomicInteger mapped = new AtomicInteger();
+    final EntityMapper<Integer> countingMapper = id -> {
+      mapped.incrementAndGet();
+      return MAPPER.map(id);
+    };
+
+    InsertCommands.create(range(3), "t", countingMapper, SaveMode.INSERT, 2, Integer.MAX_VALUE);
+    Assert.assertEquals(3, mapped.get());
+  }
+
+  private static List<Integer> range(final int size) {
+    final List<Integer> entries = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      entries.add(i);
+    }
+    return entries;
+  }
+}
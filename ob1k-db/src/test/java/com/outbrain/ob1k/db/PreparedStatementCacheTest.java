@@ -0,0 +1,43 @@
+package com.outbrain.ob1k.db;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PreparedStatementCacheTest {
+
+  @Test
+  public void testOnlyMaxSizeStatementsArePrepared() {
+    final PreparedStatementCache cache = new PreparedStatementCache(2, null);
+
+    Assert.assertTrue(cache.isPrepared("select 1"));
+    Assert.assertTrue(cache.isPrepared("select 2"));
+    Assert.assertFalse(cache.isPrepared("select 3"));
+    Assert.assertTrue("prepared statements should keep being reused", cache.isPrepared("select 1"));
+    Assert.assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testInlineParams() {
+    Assert.assertEquals("select * from t where a = 'it\\'s' and b in (1,NULL,true) and c = '?' and `d?` = X'0aff'",
+      PreparedStatementCache.inline("select * from t where a = ? and b in (?,?,?) and c = '?' and `d?` = ?",
+        Arrays.asList("it's", 1, null, true, new byte[] {10, -1})));
+    Assert.assertEquals("select 'a\\'?' , 2",
+      PreparedStatementCache.inline("select 'a\\'?' , ?", Collections.singletonList(2)));
+  }
+
+  @Test
+  public void testInlineDates() {
+    Assert.assertEquals("'2015-03-04 05:06:07.008'",
+      PreparedStatementCache.literal(new DateTime(2015, 3, 4, 5, 6, 7, 8, DateTimeZone.UTC)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInlineRequiresAParamPerPlaceholder() {
+    PreparedStatementCache.inline("select ?, ?", Collections.singletonList(1));
+  }
+}
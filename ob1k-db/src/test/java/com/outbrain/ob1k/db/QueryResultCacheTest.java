@@ -0,0 +1,206 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.ob1k.cache.LocalAsyncCache;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class QueryResultCacheTest {
+
+  private static final Object MAPPER = new Object();
+
+  private QueryResultCache resultCache;
+  private AtomicInteger loads;
+
+  @Before
+  public void setup() {
+    resultCache = new QueryResultCache(new LocalAsyncCache<>(), 1, TimeUnit.MINUTES);
+    loads = new AtomicInteger();
+  }
+
+  @Test
+  public void testReadTables() {
+    Assert.assertEquals(new TreeSet<>(Arrays.asList("users")), QueryResultCache.readTables("select * from `users` where id = 1"));
+    Assert.assertEquals(new TreeSet<>(Arrays.asList("orders", "users")),
+      QueryResultCache.readTables("select * from db.users u join `orders` o on u.id = o.user_id"));
+    Assert.assertEquals(new TreeSet<>(Arrays.asList("orders", "users")),
+      QueryResultCache.readTables("SELECT * FROM users u, orders o WHERE u.id = o.user_id"));
+    Assert.assertEquals(new TreeSet<>(Arrays.asList("orders", "users")),
+      QueryResultCache.readTables("select * from users where id in (select user_id from orders)"));
+    Assert.assertTrue(QueryResultCache.readTables("select now()").isEmpty());
+  }
+
+  @Test
+  public void testWrittenTable() {
+    Assert.assertEquals("users", QueryResultCache.writtenTable("insert into `users` (`id`) values ('1');"));
+    Assert.assertEquals("users", QueryResultCache.writtenTable("insert ignore into db.users (id) values (1)"));
+    Assert.assertEquals("users", QueryResultCache.writtenTable("UPDATE users SET name = ? WHERE id = ?"));
+    Assert.assertEquals("users", QueryResultCache.writtenTable("delete from `users` where `id` in (?)"));
+    Assert.assertEquals("users", QueryResultCache.writtenTable("truncate table users"));
+    Assert.assertEquals(QueryResultCache.ALL_TABLES, QueryResultCache.writtenTable("call reset_users()"));
+  }
+
+  @Test
+  public void testHitAndMiss() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select * from users", "a"));
+    Assert.assertEquals("a", get("select  *  from users", "b"));
+    Assert.assertEquals(1, loads.get());
+
+    Assert.assertEquals("c", get("select * from orders", "c"));
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testUncachedQueries() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select now()", "a"));
+    Assert.assertEquals("b", get("select now()", "b"));
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testInvalidation() throws ExecutionException, InterruptedException {
+    get("select * from users join orders on users.id = orders.user_id", "a");
+    get("select * from items", "a");
+
+    resultCache.invalidateWrittenTable(QueryResultCache.writtenTable("update `orders` set total = 0"));
+    Assert.assertEquals("b", get("select * from users join orders on users.id = orders.user_id", "b"));
+    Assert.assertEquals("a", get("select * from items", "b"));
+
+    resultCache.invalidateAll();
+    Assert.assertEquals("c", get("select * from items", "c"));
+    Assert.assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testResultKindsAreCachedApart() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, MAPPER, "a"));
+    Assert.assertEquals("b", get("select * from users", QueryResultCache.ResultKind.SINGLE, MAPPER, "b"));
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, MAPPER, "c"));
+    Assert.assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testMappersAreCachedApart() throws ExecutionException, InterruptedException {
+    final Object otherMapper = new OtherMapper();
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, MAPPER, "a"));
+    Assert.assertEquals("b", get("select * from users", QueryResultCache.ResultKind.LIST, otherMapper, "b"));
+    Assert.assertEquals("b", get("select * from users", QueryResultCache.ResultKind.LIST, otherMapper, "c"));
+    Assert.assertEquals(2, loads.get());
+
+    Assert.assertEquals(Arrays.asList("r1"), getByIds(Arrays.asList(1)));
+    final List<String> otherRows = resultCache.<String>getByIds("users", "id", Arrays.asList(1), otherMapper,
+      missingIds -> ComposableFutures.fromValue(Collections.singletonMap("1", "other"))).get();
+    Assert.assertEquals(Arrays.asList("other"), otherRows);
+  }
+
+  @Test
+  public void testMappersWithoutStateShareResults() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, new OtherMapper(), "a"));
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, new OtherMapper(), "b"));
+    Assert.assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testMappersWithStateAreCachedFromTheirSecondRead() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select * from users", QueryResultCache.ResultKind.LIST, new StatefulMapper("x"), "a"));
+    Assert.assertEquals("per read mappers should never be cached",
+      "b", get("select * from users", QueryResultCache.ResultKind.LIST, new StatefulMapper("x"), "b"));
+
+    final StatefulMapper mapper = new StatefulMapper("x");
+    Assert.assertEquals("c", get("select * from users", QueryResultCache.ResultKind.LIST, mapper, "c"));
+    Assert.assertEquals("d", get("select * from users", QueryResultCache.ResultKind.LIST, mapper, "d"));
+    Assert.assertEquals("d", get("select * from users", QueryResultCache.ResultKind.LIST, mapper, "e"));
+    Assert.assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testParamsAreCachedApart() throws ExecutionException, InterruptedException {
+    Assert.assertEquals("a", get("select * from users where a = ? and b = ?", Arrays.asList("x, y", "z"), "a"));
+    Assert.assertEquals("b", get("select * from users where a = ? and b = ?", Arrays.asList("x", "y, z"), "b"));
+    Assert.assertEquals("c", get("select * from users where a = ?", Collections.singletonList(1), "c"));
+    Assert.assertEquals("d", get("select * from users where a = ?", Collections.singletonList("1"), "d"));
+    Assert.assertEquals("a", get("select * from users where a = ? and b = ?", Arrays.asList("x, y", "z"), "e"));
+    Assert.assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testGetByIdsLoadsOnlyMissingIds() throws ExecutionException, InterruptedException {
+    Assert.assertEquals(Arrays.asList("r1", "r2"), getByIds(Arrays.asList(1, 2)));
+    Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2)), loadedIds);
+
+    Assert.assertEquals(Arrays.asList("r3", "r2", "r1"), getByIds(Arrays.asList(3, 2, 1)));
+    Assert.assertEquals(Arrays.asList(3), loadedIds.get(1));
+
+    resultCache.invalidate("`db`.`Users`");
+    getByIds(Arrays.asList(1));
+    Assert.assertEquals(Arrays.asList(1), loadedIds.get(2));
+  }
+
+  @Test
+  public void testGetByIdsSkipsMissingRows() throws ExecutionException, InterruptedException {
+    Assert.assertEquals(Arrays.asList("r1"), getByIds(Arrays.asList(1, -1)));
+    Assert.assertEquals(Collections.emptyList(), getByIds(Arrays.asList(-1)));
+    Assert.assertEquals(2, loadedIds.size());
+  }
+
+  private final List<List<?>> loadedIds = new ArrayList<>();
+
+  private List<String> getByIds(final List<?> ids) throws ExecutionException, InterruptedException {
+    return resultCache.<String>getByIds("users", "id", ids, MAPPER, missingIds -> {
+      loadedIds.add(missingIds);
+      final Map<String, String> rows = new HashMap<>();
+      for (final Object id : missingIds) {
+        if ((Integer) id > 0) {
+          rows.put(String.valueOf(id), "r" + id);
+        }
+      }
+      return ComposableFutures.fromValue(rows);
+    }).get();
+  }
+
+  private String get(final String query, final String value) throws ExecutionException, InterruptedException {
+    return get(query, QueryResultCache.ResultKind.LIST, MAPPER, value);
+  }
+
+  private String get(final String query, final List<?> params, final String value) throws ExecutionException, InterruptedException {
+    return get(query, params, QueryResultCache.ResultKind.LIST, MAPPER, value);
+  }
+
+  private String get(final String query, final QueryResultCache.ResultKind kind, final Object mapper, final String value)
+    throws ExecutionException, InterruptedException {
+    return get(query, Collections.emptyList(), kind, mapper, value);
+  }
+
+  private String get(final String query, final List<?> params, final QueryResultCache.ResultKind kind, final Object mapper,
+                     final String value) throws ExecutionException, InterruptedException {
+    final Supplier<ComposableFuture<String>> loader = () -> {
+      loads.incrementAndGet();
+      return ComposableFutures.fromValue(value);
+    };
+    return resultCache.get(query, params, kind, mapper, loader).get();
+  }
+
+  private static final class OtherMapper {}
+
+  private static final class StatefulMapper {
+    private final String state;
+
+    private StatefulMapper(final String state) {
+      this.state = state;
+    }
+  }
+}
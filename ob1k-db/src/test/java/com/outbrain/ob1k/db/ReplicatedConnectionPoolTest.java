@@ -0,0 +1,168 @@
+package com.outbrain.ob1k.db;
+
+import com.github.mauricio.async.db.QueryResult;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Option;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ReplicatedConnectionPoolTest {
+
+  @Test
+  public void testReadsGoToReplicasAndWritesToPrimary() {
+    final StubPool primary = new StubPool();
+    final StubPool replica = new StubPool();
+    final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(primary)
+      .replicaPools(Collections.singletonMap("replica", replica)).build();
+
+    pool.sendReadQuery("select 1");
+    pool.sendReadPreparedStatement("select ?", Collections.singletonList(1));
+    pool.sendQuery("update t set a = 1");
+    pool.sendPreparedStatement("update t set a = ?", Collections.singletonList(1));
+
+    Assert.assertEquals(2, replica.queries.size());
+    Assert.assertEquals(Arrays.asList("update t set a = 1", "update t set a = ?"), primary.queries);
+  }
+
+  @Test
+  public void testReadsGoToPrimaryWithoutReplicas() {
+    final StubPool primary = new StubPool();
+    final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(primary).build();
+
+    pool.sendReadQuery("select 1");
+    Assert.assertEquals(1, primary.queries.size());
+  }
+
+  @Test
+  public void testLeastOutstandingReplicaIsSelected() {
+    final StubPool busy = new StubPool();
+    final StubPool idle = new StubPool();
+    final Map<String, DbConnectionPool> replicas = new LinkedHashMap<>();
+    replicas.put("busy", busy);
+    replicas.put("idle", idle);
+    final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(new StubPool()).replicaPools(replicas).build();
+
+    busy.complete = false;
+    idle.complete = false;
+    pool.sendReadQuery("q1");
+    pool.sendReadQuery("q2");
+    idle.completeAll();
+    busy.completeAll();
+
+    busy.complete = false;
+    pool.sendReadQuery("q3");
+    for (int i = 0; i < 10; i++) {
+      pool.sendReadQuery("q");
+    }
+
+    Assert.assertEquals("the replica with an outstanding query should get only the first read", 2, busy.queries.size());
+    Assert.assertEquals(11, idle.queries.size());
+  }
+
+  @Test
+  public void testReadYourWrites() throws Exception {
+    final StubPool primary = new StubPool();
+    final StubPool replica = new StubPool();
+    final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(primary)
+      .replicaPools(Collections.singletonMap("replica", replica))
+      .readYourWritesWindow(200, TimeUnit.MILLISECONDS)
+      .build();
+
+    pool.sendReadQuery("before");
+    pool.sendQuery("write");
+    pool.sendReadQuery("after");
+    Assert.assertEquals(Collections.singletonList("before"), replica.queries);
+    Assert.assertEquals(Arrays.asList("write", "after"), primary.queries);
+
+    Thread.sleep(250);
+    pool.sendReadQuery("later");
+    Assert.assertEquals(Arrays.asList("before", "later"), replica.queries);
+  }
+
+  @Test
+  public void testRemovedReplicaIsClosedWhenIdle() {
+    final Map<String, StubPool> created = new LinkedHashMap<>();
+    final ReplicatedConnectionPool pool = ReplicatedConnectionPoolBuilder.newBuilder(new StubPool())
+      .replicaFactory((host, port) -> {
+        final StubPool replica = new StubPool();
+        created.put(host + ":" + port, replica);
+        return replica;
+      })
+      .replicas(Collections.singletonList("db1:3306"))
+      .build();
+
+    final StubPool db1 = created.get("db1:3306");
+    db1.complete = false;
+    pool.sendReadQuery("select 1");
+
+    pool.setReplicas(Arrays.asList("db1:3306", "db2:3306"));
+    Assert.assertSame("existing replicas should be kept", db1, created.get("db1:3306"));
+    Assert.assertEquals(2, created.size());
+
+    pool.setReplicas(Collections.singletonList("db2:3306"));
+    Assert.assertFalse(db1.closed);
+    db1.completeAll();
+    Assert.assertTrue("removed replica should be closed once its queries complete", db1.closed);
+
+    pool.sendReadQuery("select 2");
+    Assert.assertEquals(Collections.singletonList("select 2"), created.get("db2:3306").queries);
+  }
+
+  private static class StubPool implements DbConnectionPool {
+    final List<String> queries = new ArrayList<>();
+    final List<ComposablePromise<QueryResult>> pending = new ArrayList<>();
+    boolean complete = true;
+    boolean closed;
+
+    @Override
+    public ComposableFuture<QueryResult> sendQuery(final String query) {
+      queries.add(query);
+      if (complete) {
+        return ComposableFutures.fromValue(new QueryResult(0, "", Option.empty()));
+      }
+
+      final ComposablePromise<QueryResult> promise = ComposableFutures.newPromise();
+      pending.add(promise);
+      return promise.future();
+    }
+
+    @Override
+    public ComposableFuture<QueryResult> sendPreparedStatement(final String query, final List<Object> values) {
+      return sendQuery(query);
+    }
+
+    @Override
+    public <T> ComposableFuture<T> withConnection(final TransactionHandler<T> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> ComposableFuture<T> withTransaction(final TransactionHandler<T> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ComposableFuture<Boolean> close() {
+      closed = true;
+      return ComposableFutures.fromValue(true);
+    }
+
+    void completeAll() {
+      complete = true;
+      for (final ComposablePromise<QueryResult> promise : pending) {
+        promise.set(new QueryResult(0, "", Option.empty()));
+      }
+      pending.clear();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.outbrain.ob1k.db;
+
+import com.github.mauricio.async.db.ResultSet;
+import com.github.mauricio.async.db.RowData;
+import com.github.mauricio.async.db.general.ArrayRowData;
+import com.github.mauricio.async.db.general.ColumnData;
+import com.github.mauricio.async.db.general.MutableResultSet;
+import scala.Tuple2;
+import scala.collection.JavaConversions;
+import scala.collection.immutable.Map;
+import scala.collection.immutable.Map$;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * creates driver rows for tests and benchmarks, without a database.
+ */
+public final class RowDataFactory {
+
+  private RowDataFactory() {}
+
+  public static RowData createRow(final List<String> columnNames, final Object... values) {
+    Map<String, Object> mapping = Map$.MODULE$.empty();
+    for (int i = 0; i < columnNames.size(); i++) {
+      mapping = mapping.$plus(new Tuple2<String, Object>(columnNames.get(i), i));
+    }
+
+    final ArrayRowData row = new ArrayRowData(columnNames.size(), 0, mapping);
+    for (int i = 0; i < values.length; i++) {
+      row.update(i, values[i]);
+    }
+    return row;
+  }
+
+  /**
+   * @param rows the values of each row, in the order of the columns.
+   */
+  public static ResultSet createResultSet(final List<String> columnNames, final List<List<Object>> rows) {
+    final List<ColumnData> columns = new ArrayList<>(columnNames.size());
+    for (final String columnName : columnNames) {
+      columns.add(new Column(columnName));
+    }
+
+    final MutableResultSet<ColumnData> resultSet = new MutableResultSet<>(JavaConversions.asScalaBuffer(columns).toIndexedSeq());
+    for (final List<Object> row : rows) {
+      resultSet.addRow(JavaConversions.asScalaBuffer(row));
+    }
+    return resultSet;
+  }
+
+  public static List<Object> values(final Object... values) {
+    return Arrays.asList(values);
+  }
+
+  private static class Column implements ColumnData {
+    private final String name;
+
+    Column(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public int dataType() {
+      return 0;
+    }
+
+    @Override
+    public long dataTypeSize() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.outbrain.ob1k.db;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.concurrent.Future$;
+import scala.concurrent.Promise;
+import scala.concurrent.Promise$;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ScalaFutureHelperTest {
+
+  @Test
+  public void testCompletedFuturesAreBridgedInline() throws Exception {
+    final ComposableFuture<String> future = ScalaFutureHelper.from(() -> Future$.MODULE$.successful("value"));
+    final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+    future.consume(result -> callbackThread.set(Thread.currentThread()));
+
+    Assert.assertEquals("value", future.get());
+    Assert.assertSame(Thread.currentThread(), callbackThread.get());
+  }
+
+  @Test
+  public void testSameThreadRunsOnCompletingThread() throws Exception {
+    final Promise<String> promise = Promise$.MODULE$.apply();
+    final ComposableFuture<String> future = ScalaFutureHelper.from(promise::future, ScalaFutureHelper.sameThread);
+
+    final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    future.consume(result -> {
+      callbackThread.set(Thread.currentThread());
+      done.countDown();
+    });
+
+    final Thread completer = new Thread(() -> promise.success("value"));
+    completer.start();
+
+    Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+    Assert.assertSame(completer, callbackThread.get());
+    Assert.assertEquals("value", future.get());
+  }
+
+  @Test
+  public void testErrorsArePropagated() throws Exception {
+    final Promise<String> promise = Promise$.MODULE$.apply();
+    final ComposableFuture<String> future = ScalaFutureHelper.from(promise::future, ScalaFutureHelper.sameThread);
+    promise.failure(new IllegalStateException("failed"));
+
+    try {
+      future.get();
+      Assert.fail("future should fail");
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.outbrain.ob1k.db.benchmarks;
+
+import com.github.mauricio.async.db.RowData;
+import com.outbrain.ob1k.db.CompiledResultSetMapper;
+import com.outbrain.ob1k.db.GenericResultSetMapper;
+import com.outbrain.ob1k.db.ResultSetMapper;
+import com.outbrain.ob1k.db.RowDataFactory;
+import com.outbrain.ob1k.db.TypedRowData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the row mapping cost of the generic, hand written and compiled mappers.
+ * run with the benchmarks profile: mvn -P benchmarks test-compile, then run main from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResultSetMapperBenchmark {
+
+  private static final List<String> COLUMNS = Arrays.asList("id", "name", "score", "active", "visits", "created_by", "status");
+
+  public static class Entity {
+    public long id;
+    public String name;
+    public double score;
+    public boolean active;
+    public int visits;
+    public String createdBy;
+    public String status;
+  }
+
+  private static final ResultSetMapper<Entity> HAND_WRITTEN_MAPPER = (row, columnNames) -> {
+    final Entity entity = new Entity();
+    entity.id = row.getLong("id");
+    entity.name = row.getString("name");
+    entity.score = row.getDouble("score");
+    entity.active = row.getBoolean("active");
+    entity.visits = row.getInt("visits");
+    entity.createdBy = row.getString("created_by");
+    entity.status = row.getString("status");
+    return entity;
+  };
+
+  private final GenericResultSetMapper genericMapper = new GenericResultSetMapper();
+  private final CompiledResultSetMapper<Entity> compiledMapper = CompiledResultSetMapper.forClass(Entity.class);
+  private TypedRowData[] rows;
+
+  @Setup
+  public void setup() {
+    rows = new TypedRowData[1000];
+    for (int i = 0; i < rows.length; i++) {
+      final RowData row = RowDataFactory.createRow(COLUMNS, (long) i, "name-" + i, i / 3.0, new byte[] {(byte) (i % 2)}, i, "user-" + i, "ACTIVE");
+      rows[i] = new TypedRowData(row);
+    }
+  }
+
+  @Benchmark
+  public void genericMapper(final Blackhole blackhole) {
+    for (final TypedRowData row : rows) {
+      final Map<String, Object> entity = genericMapper.map(row, COLUMNS);
+      blackhole.consume(entity);
+    }
+  }
+
+  @Benchmark
+  public void handWrittenMapper(final Blackhole blackhole) {
+    for (final TypedRowData row : rows) {
+      blackhole.consume(HAND_WRITTEN_MAPPER.map(row, COLUMNS));
+    }
+  }
+
+  @Benchmark
+  public void compiledMapper(final Blackhole blackhole) {
+    for (final TypedRowData row : rows) {
+      blackhole.consume(compiledMapper.map(row, COLUMNS));
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ResultSetMapperBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -6,16 +6,24 @@ import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
 
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
 import com.outbrain.ob1k.http.marshalling.JacksonMarshallingStrategy;
 import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.netty.NettyHttpTransport;
+import com.outbrain.ob1k.http.netty.NettyRequestBuilder;
 import com.outbrain.ob1k.http.ning.NingRequestBuilder;
 import com.outbrain.swinfra.metrics.api.MetricFactory;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.util.HashedWheelTimer;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.URI;
 
 /**
  * Ob1k's Http Client
@@ -23,7 +31,8 @@ import java.io.IOException;
  * Provides a simple async client for your http requests,
  * with shared client configuration and specific request configuration.
  *
- * Using AsyncHttpClient as the executor
+ * Using AsyncHttpClient as the executor, or a Netty 4 transport when set by
+ * {@link Builder#useNettyTransport(EventLoopGroup)}
  *
  * @author marenzon, insipred of aronen's previous HttpClient implemintation.
  */
@@ -35,17 +44,35 @@ public class HttpClient implements Closeable {
   public static final int REQUEST_TIMEOUT = 500;
   public static final int MAX_CONNECTIONS_PER_HOST = 100;
   public static final int MAX_TOTAL_CONNECTIONS = MAX_CONNECTIONS_PER_HOST * 2;
+  public static final int DEFAULT_READ_TIMEOUT = 60000;
+  public static final int POOLED_CONNECTION_IDLE_TIMEOUT = 60000;
 
   private final AsyncHttpClient asyncHttpClient;
   private final MarshallingStrategy marshallingStrategy;
   private final long responseMaxSize;
+  private final NettyHttpTransport nettyTransport;
+  private final int requestTimeout;
+  private final boolean followRedirect;
+  private final boolean disableUrlEncoding;
+  private volatile boolean closed;
 
   private HttpClient(final AsyncHttpClient asyncHttpClient, final long responseMaxSize,
                      final MarshallingStrategy marshallingStrategy) {
 
+    this(asyncHttpClient, responseMaxSize, marshallingStrategy, null, REQUEST_TIMEOUT, false, false);
+  }
+
+  private HttpClient(final AsyncHttpClient asyncHttpClient, final long responseMaxSize,
+                     final MarshallingStrategy marshallingStrategy, final NettyHttpTransport nettyTransport,
+                     final int requestTimeout, final boolean followRedirect, final boolean disableUrlEncoding) {
+
     this.asyncHttpClient = asyncHttpClient;
     this.responseMaxSize = responseMaxSize;
     this.marshallingStrategy = marshallingStrategy;
+    this.nettyTransport = nettyTransport;
+    this.requestTimeout = requestTimeout;
+    this.followRedirect = followRedirect;
+    this.disableUrlEncoding = disableUrlEncoding;
   }
 
   /**
@@ -67,6 +94,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder get(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return createNettyRequestBuilder(HttpMethod.GET, url);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareGet(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -80,6 +111,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder post(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return createNettyRequestBuilder(HttpMethod.POST, url);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.preparePost(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -93,6 +128,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder put(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return createNettyRequestBuilder(HttpMethod.PUT, url);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.preparePut(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -106,6 +145,10 @@ public class HttpClient implements Closeable {
   public RequestBuilder delete(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return createNettyRequestBuilder(HttpMethod.DELETE, url);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareDelete(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
@@ -119,10 +162,32 @@ public class HttpClient implements Closeable {
   public RequestBuilder head(final String url) {
 
     checkNotNull(url, "url may not be null");
+    if (nettyTransport != null) {
+      return createNettyRequestBuilder(HttpMethod.HEAD, url);
+    }
+
     final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder = asyncHttpClient.prepareHead(url);
     return createNewRequestBuilder(url, ningRequestBuilder);
   }
 
+  /**
+   * Opens connections to the host of the url ahead of the requests to it, e.g. when it's discovered.
+   * Only the Netty transport opens connections ahead, it opens them from each of its event loops.
+   *
+   * @param url url of the host
+   * @param connections number of connections to open
+   * @return the number of connections to the host that are open, once they are
+   */
+  public ComposableFuture<Integer> warmUp(final String url, final int connections) {
+
+    checkNotNull(url, "url may not be null");
+    if (nettyTransport == null) {
+      return ComposableFutures.fromValue(0);
+    }
+
+    return nettyTransport.warmUp(URI.create(url), connections);
+  }
+
   /**
    * Closing the http client
    *
@@ -131,7 +196,20 @@ public class HttpClient implements Closeable {
   @Override
   public void close() throws IOException {
 
-    asyncHttpClient.close();
+    closed = true;
+    if (nettyTransport != null) {
+      nettyTransport.close();
+    } else {
+      asyncHttpClient.close();
+    }
+  }
+
+  /**
+   * @return true once the http client was closed
+   */
+  public boolean isClosed() {
+
+    return closed;
   }
 
   private NingRequestBuilder createNewRequestBuilder(final String url, final AsyncHttpClient.BoundRequestBuilder ningRequestBuilder) {
@@ -139,6 +217,12 @@ public class HttpClient implements Closeable {
     return new NingRequestBuilder(asyncHttpClient, ningRequestBuilder, url, responseMaxSize, marshallingStrategy);
   }
 
+  private NettyRequestBuilder createNettyRequestBuilder(final HttpMethod method, final String url) {
+
+    return new NettyRequestBuilder(nettyTransport, method, url, responseMaxSize, marshallingStrategy, requestTimeout,
+      followRedirect, disableUrlEncoding);
+  }
+
   /**
    * @return new builder object
    */
@@ -158,6 +242,7 @@ public class HttpClient implements Closeable {
     private int connectionTimeout = HttpClient.CONNECTION_TIMEOUT;
     private int requestTimeout = HttpClient.REQUEST_TIMEOUT;
     private Integer readTimeout = null;
+    private int pooledConnectionIdleTimeout = HttpClient.POOLED_CONNECTION_IDLE_TIMEOUT;
     private int retries = HttpClient.RETRIES;
     private int maxConnectionsPerHost = HttpClient.MAX_CONNECTIONS_PER_HOST;
     private int maxTotalConnections = HttpClient.MAX_TOTAL_CONNECTIONS;
@@ -166,6 +251,9 @@ public class HttpClient implements Closeable {
     private boolean followRedirect;
     private boolean acceptAnySslCertificate;
     private long responseMaxSize;
+    private boolean nettyTransport;
+    private EventLoopGroup eventLoopGroup;
+    private ByteBufAllocator allocator;
 
     /**
      * Max retries for request
@@ -266,6 +354,18 @@ public class HttpClient implements Closeable {
       return this;
     }
 
+    /**
+     * How long an idle connection is kept alive in the pool (optional, defaults to 60 sec).
+     *
+     * @param pooledConnectionIdleTimeout idle timeout in ms, or non positive to keep the connections for ever
+     * @return builder
+     */
+    public Builder setPooledConnectionIdleTimeout(final int pooledConnectionIdleTimeout) {
+
+      this.pooledConnectionIdleTimeout = pooledConnectionIdleTimeout;
+      return this;
+    }
+
     /**
      * Enforce compression on the request
      *
@@ -302,8 +402,47 @@ public class HttpClient implements Closeable {
       return this;
     }
 
+    /**
+     * Sends the requests on a Netty 4 transport with its own event loops, instead of the AsyncHttpClient.
+     * Max total connections isn't enforced by the Netty transport.
+     *
+     * @return builder
+     */
+    public Builder useNettyTransport() {
+
+      return useNettyTransport(null);
+    }
+
+    /**
+     * Sends the requests on a Netty 4 transport running on the given event loops, e.g. the ones of the NettyServer.
+     * Requests made on one of the event loops use connections of the same event loop, and complete on it.
+     * Max connections per host is enforced per event loop, and max total connections isn't enforced.
+     *
+     * @param eventLoopGroup the event loops to run on, or null for event loops shared by all the clients
+     * @return builder
+     */
+    public Builder useNettyTransport(final EventLoopGroup eventLoopGroup) {
+
+      this.nettyTransport = true;
+      this.eventLoopGroup = eventLoopGroup;
+      return this;
+    }
+
+    /**
+     * Set the buffers allocator of the Netty transport connections
+     *
+     * @param allocator buffers allocator
+     * @return builder
+     */
+    public Builder setByteBufAllocator(final ByteBufAllocator allocator) {
+
+      this.allocator = allocator;
+      return this;
+    }
+
     /**
      * Set metric factory for the client
+     * The Netty transport exports the active, idle and pending connections, and the connect time of each host.
      *
      * @param metricFactory metric factory
      * @return builder
@@ -332,6 +471,14 @@ public class HttpClient implements Closeable {
      */
     public HttpClient build() {
 
+      if (nettyTransport) {
+        final NettyHttpTransport transport = new NettyHttpTransport(eventLoopGroup, allocator, connectionTimeout,
+          readTimeout != null ? readTimeout : DEFAULT_READ_TIMEOUT, requestTimeout, maxConnectionsPerHost, retries,
+          compressionEnforced, acceptAnySslCertificate, pooledConnectionIdleTimeout, metricFactory);
+        return new HttpClient(null, responseMaxSize, marshallingStrategy, transport, requestTimeout, followRedirect,
+          disableUrlEncoding);
+      }
+
       final AsyncHttpClientConfig.Builder configBuilder = new AsyncHttpClientConfig.Builder().
         setConnectTimeout(connectionTimeout).
         setMaxRequestRetry(retries).
@@ -340,6 +487,7 @@ public class HttpClient implements Closeable {
         setDisableUrlEncodingForBoundedRequests(disableUrlEncoding).
         setMaxConnectionsPerHost(maxConnectionsPerHost).
         setMaxConnections(maxTotalConnections).
+        setPooledConnectionIdleTimeout(pooledConnectionIdleTimeout).
         setAsyncHttpClientProviderConfig(NettyConfigHolder.INSTANCE).
         setFollowRedirect(followRedirect).
         setAcceptAnyCertificate(acceptAnySslCertificate);
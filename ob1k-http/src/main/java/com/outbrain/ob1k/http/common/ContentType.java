@@ -10,6 +10,7 @@ public enum ContentType {
   JSON("application/json", "application/json; charset=UTF-8"),
   XML("application/xml", "application/xml; charset=UTF-8"),
   MESSAGE_PACK("application/x-msgpack", "application/x-msgpack"),
+  COMPACT_BINARY("application/x-ob1k-binary", "application/x-ob1k-binary"),
   X_WWW_FORM_URLENCODED("application/x-www-form-urlencoded", "application/x-www-form-urlencoded"),
   TEXT_PLAIN("text/plain", "text/plain"),
   TEXT_HTML("text/html", "text/html"),
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.outbrain.ob1k.http.Response;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -13,10 +14,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Jackson unmarshalling strategy implementation
  *
+ * The body is parsed from the response stream, which reads the received body parts in place instead of copying
+ * them into one array, with an ObjectReader cached per type.
+ *
  * @author marenzon
  */
 public class JacksonMarshallingStrategy implements MarshallingStrategy {
@@ -24,6 +30,7 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
   private static final Logger log = LoggerFactory.getLogger(JacksonMarshallingStrategy.class);
 
   private final ObjectMapper objectMapper;
+  private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
 
   public JacksonMarshallingStrategy() {
 
@@ -51,7 +58,7 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
       return null;
     }
 
-    return objectMapper.readValue(response.getResponseBodyAsBytes(), getJacksonType(type));
+    return reader(type).readValue(response.getResponseBodyAsStream());
   }
 
   @Override
@@ -60,6 +67,18 @@ public class JacksonMarshallingStrategy implements MarshallingStrategy {
     return objectMapper.writeValueAsBytes(value);
   }
 
+  private ObjectReader reader(final Type type) {
+
+    final ObjectReader reader = readers.get(type);
+    if (reader != null) {
+      return reader;
+    }
+
+    final ObjectReader newReader = objectMapper.reader(getJacksonType(type));
+    final ObjectReader existing = readers.putIfAbsent(type, newReader);
+    return existing != null ? existing : newReader;
+  }
+
   private JavaType getJacksonType(final Type type) {
 
     final TypeFactory typeFactory = TypeFactory.defaultInstance();
@@ -5,18 +5,21 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import org.msgpack.MessagePack;
 import org.msgpack.packer.Packer;
 import org.msgpack.template.Template;
-import org.msgpack.type.Value;
-import org.msgpack.unpacker.Converter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * MessagePack unmarshalling strategy implementation
  *
+ * The body is unpacked by the template of the type straight from the response stream, without copying the body
+ * into one array or building an intermediate value tree. Templates are cached per type.
+ *
  * @author marenzon
  */
 public class MessagePackMarshallingStrategy implements MarshallingStrategy {
@@ -24,6 +27,7 @@ public class MessagePackMarshallingStrategy implements MarshallingStrategy {
   private static final Logger log = LoggerFactory.getLogger(MessagePackMarshallingStrategy.class);
 
   private final MessagePack messagePack;
+  private final ConcurrentMap<Type, Template<?>> templates = new ConcurrentHashMap<>();
 
   public MessagePackMarshallingStrategy(final MessagePack messagePack) {
 
@@ -47,9 +51,8 @@ public class MessagePackMarshallingStrategy implements MarshallingStrategy {
       return null;
     }
 
-    final Value value = messagePack.read(response.getResponseBodyAsBytes());
-    final Template<T> template = (Template<T>) messagePack.lookup(type);
-    return template.read(new Converter(messagePack, value), null);
+    final Template<T> template = (Template<T>) template(type);
+    return template.read(messagePack.createUnpacker(response.getResponseBodyAsStream()), null);
   }
 
   @Override
@@ -62,4 +65,16 @@ public class MessagePackMarshallingStrategy implements MarshallingStrategy {
 
     return outputStream.toByteArray();
   }
+
+  private Template<?> template(final Type type) {
+
+    final Template<?> template = templates.get(type);
+    if (template != null) {
+      return template;
+    }
+
+    final Template<?> newTemplate = messagePack.lookup(type);
+    final Template<?> existing = templates.putIfAbsent(type, newTemplate);
+    return existing != null ? existing : newTemplate;
+  }
 }
@@ -0,0 +1,764 @@
+package com.outbrain.ob1k.http.netty;
+
+import com.google.common.collect.MapMaker;
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.swinfra.metrics.api.Histogram;
+import com.outbrain.swinfra.metrics.api.MetricFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A Netty 4 http transport for the {@link com.outbrain.ob1k.http.HttpClient}
+ *
+ * Connections are pooled per host and per event loop. A request made from one of the event loops of the group,
+ * e.g. while a {@link io.netty.channel.EventLoopGroup} is shared with the NettyServer handling the inbound request,
+ * is sent on a connection of the same event loop, so its response completes on that thread without any handoff.
+ * Each other thread is assigned an event loop of the group on its first request, so its connections are reused too.
+ *
+ * Connections that failed, timed out or were closed by the server are discarded instead of being returned to the pool,
+ * idle connections are closed after the idle timeout ({@link #IDLE_TIMEOUT_MS} by default), and the pool of a host is
+ * evicted (and its address resolved again) after {@link #MAX_CONSECUTIVE_CONNECT_FAILURES} consecutive connection
+ * failures.
+ *
+ * Given a {@link MetricFactory}, the active, idle and pending connections of each host are exported as gauges, and the
+ * connect time of its connections as a histogram. Connections may be opened ahead of the first requests to a host by
+ * {@link #warmUp(URI, int)}.
+ */
+public class NettyHttpTransport implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(NettyHttpTransport.class);
+
+  public static final long IDLE_TIMEOUT_MS = 60000;
+  public static final int MAX_CONSECUTIVE_CONNECT_FAILURES = 3;
+  public static final int MAX_CHUNK_SIZE = 65536;
+
+  private static final AttributeKey<Call> CALL = AttributeKey.valueOf("ob1k.http.call");
+  // the gauges of a host are registered once per metric factory, so the transports of a factory share the stats they
+  // report rather than the gauges staying bound to the first transport
+  private static final ConcurrentMap<MetricFactory, ConcurrentMap<String, HostStats>> SHARED_HOST_STATS =
+    new MapMaker().weakKeys().makeMap();
+
+  private final EventLoopGroup eventLoopGroup;
+  private final Bootstrap bootstrap;
+  private final ResponseHandler responseHandler = new ResponseHandler();
+  private final ConcurrentMap<PoolKey, HostPool> pools = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, HostStats> hostStats;
+  private final ThreadLocal<EventLoop> threadEventLoop = ThreadLocal.withInitial(this::assignEventLoop);
+  private final int maxConnectionsPerHost;
+  private final long acquireTimeoutMs;
+  private final int readTimeoutMs;
+  private final int retries;
+  private final boolean compression;
+  private final boolean acceptAnySslCertificate;
+  private final long idleTimeoutMs;
+  private final MetricFactory metricFactory;
+  private volatile SslContext sslContext;
+  private volatile boolean closed;
+
+  public NettyHttpTransport(final EventLoopGroup eventLoopGroup, final ByteBufAllocator allocator,
+                            final int connectionTimeoutMs, final int readTimeoutMs, final long acquireTimeoutMs,
+                            final int maxConnectionsPerHost, final int retries, final boolean compression,
+                            final boolean acceptAnySslCertificate) {
+
+    this(eventLoopGroup, allocator, connectionTimeoutMs, readTimeoutMs, acquireTimeoutMs, maxConnectionsPerHost,
+      retries, compression, acceptAnySslCertificate, IDLE_TIMEOUT_MS, null);
+  }
+
+  /**
+   * @param eventLoopGroup the event loops to run on, e.g. the group of the NettyServer. null for a group shared by
+   *                       all the clients.
+   * @param allocator the allocator of the connections buffers, e.g. the allocator of the server.
+   * @param maxConnectionsPerHost the max connections to each host from each event loop.
+   * @param acquireTimeoutMs how long a request waits for a connection of a host that reached its max connections.
+   * @param readTimeoutMs max time between reads of a response, or non positive for none.
+   * @param idleTimeoutMs how long an idle connection is kept alive in the pool, or non positive for ever.
+   * @param metricFactory exports the connections of each host, summed over the transports of the factory. may be null.
+   */
+  public NettyHttpTransport(final EventLoopGroup eventLoopGroup, final ByteBufAllocator allocator,
+                            final int connectionTimeoutMs, final int readTimeoutMs, final long acquireTimeoutMs,
+                            final int maxConnectionsPerHost, final int retries, final boolean compression,
+                            final boolean acceptAnySslCertificate, final long idleTimeoutMs,
+                            final MetricFactory metricFactory) {
+
+    this.eventLoopGroup = eventLoopGroup != null ? eventLoopGroup : EventLoopGroupHolder.INSTANCE;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.acquireTimeoutMs = acquireTimeoutMs;
+    this.readTimeoutMs = readTimeoutMs;
+    this.retries = retries;
+    this.compression = compression;
+    this.acceptAnySslCertificate = acceptAnySslCertificate;
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.metricFactory = metricFactory;
+    this.hostStats = metricFactory != null ?
+      SHARED_HOST_STATS.computeIfAbsent(metricFactory, factory -> new ConcurrentHashMap<>()) :
+      new ConcurrentHashMap<>();
+    this.bootstrap = new Bootstrap().
+      channel(NioSocketChannel.class).
+      option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMs).
+      option(ChannelOption.TCP_NODELAY, true).
+      option(ChannelOption.SO_KEEPALIVE, true).
+      option(ChannelOption.ALLOCATOR, allocator != null ? allocator : ByteBufAllocator.DEFAULT);
+  }
+
+  public boolean isCompressionEnforced() {
+
+    return compression;
+  }
+
+  /**
+   * Sends the request, releasing it when done.
+   *
+   * @param uri the uri of the request, used for choosing the connection
+   * @param request the request to send
+   * @param timeoutMs max time for the whole request, or non positive for none
+   * @param listener receives the response
+   */
+  void execute(final URI uri, final FullHttpRequest request, final long timeoutMs, final ResponseListener listener) {
+
+    final EventLoop eventLoop = threadEventLoop.get();
+    final Call call = new Call(poolKey(uri, eventLoop), request, timeoutMs, listener);
+
+    if (eventLoop.inEventLoop()) {
+      call.start();
+    } else {
+      eventLoop.execute(call::start);
+    }
+  }
+
+  /**
+   * Opens connections to the host of the uri ahead of the requests, from each of the event loops, so the first
+   * requests don't wait for the connection (and the TLS handshake).
+   * Connections already open count, and no more than the max connections per host are opened.
+   *
+   * @param uri the uri of the host
+   * @param connections the connections to open from each event loop
+   * @return the number of connections to the host that are open, once they are
+   */
+  public ComposableFuture<Integer> warmUp(final URI uri, final int connections) {
+
+    final List<EventLoop> eventLoops = new ArrayList<>();
+    for (final EventExecutor executor : eventLoopGroup) {
+      if (executor instanceof EventLoop) {
+        eventLoops.add((EventLoop) executor);
+      }
+    }
+
+    final int perEventLoop = Math.min(connections, maxConnectionsPerHost);
+    if (closed || perEventLoop <= 0 || eventLoops.isEmpty()) {
+      return ComposableFutures.fromValue(0);
+    }
+
+    final ComposablePromise<Integer> promise = ComposableFutures.newPromise();
+    final AtomicInteger pending = new AtomicInteger(eventLoops.size());
+    final AtomicInteger opened = new AtomicInteger();
+    for (final EventLoop eventLoop : eventLoops) {
+      final PoolKey key = poolKey(uri, eventLoop);
+      eventLoop.execute(() -> pool(key).warmUp(perEventLoop, open -> {
+        opened.addAndGet(open);
+        if (pending.decrementAndGet() == 0) {
+          promise.set(opened.get());
+        }
+      }));
+    }
+
+    return promise.future();
+  }
+
+  private static PoolKey poolKey(final URI uri, final EventLoop eventLoop) {
+
+    final boolean ssl = "https".equalsIgnoreCase(uri.getScheme());
+    final int port = uri.getPort() > 0 ? uri.getPort() : (ssl ? 443 : 80);
+    return new PoolKey(uri.getHost(), port, ssl, eventLoop);
+  }
+
+  private EventLoop assignEventLoop() {
+
+    for (final EventExecutor executor : eventLoopGroup) {
+      if (executor.inEventLoop() && executor instanceof EventLoop) {
+        return (EventLoop) executor;
+      }
+    }
+
+    return eventLoopGroup.next();
+  }
+
+  private HostPool pool(final PoolKey key) {
+
+    final HostPool pool = pools.get(key);
+    if (pool != null) {
+      return pool;
+    }
+
+    final HostPool newPool = new HostPool(key);
+    final HostPool existing = pools.putIfAbsent(key, newPool);
+    if (existing != null) {
+      newPool.close();
+      return existing;
+    }
+
+    return newPool;
+  }
+
+  private HostStats hostStats(final PoolKey key) {
+
+    return hostStats.computeIfAbsent(key.host + ":" + key.port, host -> createHostStats(key));
+  }
+
+  private HostStats createHostStats(final PoolKey key) {
+
+    if (metricFactory == null) {
+      return new HostStats(null);
+    }
+
+    final String component = getClass().getSimpleName() + "." + key.host.replace('.', '_') + "_" + key.port;
+    final HostStats stats = new HostStats(metricFactory.createHistogram(component, "connectTime", false));
+    try {
+      metricFactory.registerGauge(component, "activeConnections", stats.active::get);
+      metricFactory.registerGauge(component, "idleConnections", stats::idle);
+      metricFactory.registerGauge(component, "pendingConnections", stats.pending::get);
+    } catch (final IllegalArgumentException e) {
+      logger.warn("the connection gauges of {}:{} are already registered, probably by another metric factory of the same registry",
+        key.host, key.port);
+    }
+
+    return stats;
+  }
+
+  private SslContext sslContext() throws SSLException {
+
+    if (sslContext == null) {
+      final SslContextBuilder builder = SslContextBuilder.forClient();
+      if (acceptAnySslCertificate) {
+        builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+      }
+      sslContext = builder.build();
+    }
+
+    return sslContext;
+  }
+
+  /**
+   * Closes the connections of the transport, the event loops are left running
+   */
+  @Override
+  public void close() throws IOException {
+
+    closed = true;
+    for (final Map.Entry<PoolKey, HostPool> pool : pools.entrySet()) {
+      pools.remove(pool.getKey(), pool.getValue());
+      pool.getValue().close();
+    }
+  }
+
+  /**
+   * The connections to one host from one event loop
+   */
+  private final class HostPool implements ChannelPoolHandler {
+
+    private final PoolKey key;
+    private final HostStats stats;
+    private final ChannelPool channels;
+    private int consecutiveConnectFailures;
+
+    private HostPool(final PoolKey key) {
+
+      this.key = key;
+      this.stats = hostStats(key);
+      final Bootstrap hostBootstrap = bootstrap.clone().group(key.eventLoop).remoteAddress(new InetSocketAddress(key.host, key.port));
+      this.channels = new FixedChannelPool(hostBootstrap, this, ChannelHealthChecker.ACTIVE,
+        FixedChannelPool.AcquireTimeoutAction.FAIL, acquireTimeoutMs, maxConnectionsPerHost, Integer.MAX_VALUE, true);
+    }
+
+    @Override
+    public void channelCreated(final Channel channel) throws Exception {
+
+      final ChannelPipeline pipeline = channel.pipeline();
+      pipeline.addLast("tracker", new ConnectionTracker(stats));
+      if (key.ssl) {
+        pipeline.addLast("ssl", sslContext().newHandler(channel.alloc(), key.host, key.port));
+      }
+
+      pipeline.addLast("codec", new HttpClientCodec(4096, 8192, MAX_CHUNK_SIZE));
+      if (compression) {
+        pipeline.addLast("decompressor", new HttpContentDecompressor());
+      }
+
+      if (idleTimeoutMs > 0) {
+        // the read timeout is tracked by each call, a connection idle in the pool is timed only for its eviction
+        pipeline.addLast("idle", new IdleStateHandler(0, 0, idleTimeoutMs, TimeUnit.MILLISECONDS));
+      }
+      pipeline.addLast("handler", responseHandler);
+    }
+
+    @Override
+    public void channelAcquired(final Channel channel) throws Exception {}
+
+    @Override
+    public void channelReleased(final Channel channel) throws Exception {}
+
+    // called on the event loop of the pool
+    private void warmUp(final int connections, final IntConsumer onOpened) {
+
+      final List<Channel> acquired = new ArrayList<>(connections);
+      final AtomicInteger completed = new AtomicInteger();
+      for (int i = 0; i < connections; i++) {
+        channels.acquire().addListener((Future<Channel> future) -> {
+          if (future.isSuccess()) {
+            onConnected();
+            acquired.add(future.getNow());
+          } else if (future.cause() instanceof IOException) {
+            onConnectFailed();
+          }
+
+          if (completed.incrementAndGet() == connections) {
+            // the connections are acquired together so that new ones are opened, and then left idle in the pool
+            for (final Channel channel : acquired) {
+              channels.release(channel);
+            }
+            // a connect completes before its channel becomes active, reported once it did
+            key.eventLoop.execute(() -> onOpened.accept(acquired.size()));
+          }
+        });
+      }
+    }
+
+    private void onConnected() {
+
+      consecutiveConnectFailures = 0;
+    }
+
+    private void onConnectFailed() {
+
+      if (++consecutiveConnectFailures >= MAX_CONSECUTIVE_CONNECT_FAILURES && pools.remove(key, this)) {
+        logger.info("evicting the connections pool of {}:{} after {} connection failures", key.host, key.port,
+          consecutiveConnectFailures);
+        close();
+      }
+    }
+
+    private void close() {
+
+      channels.close();
+    }
+  }
+
+  private static boolean isIdempotent(final HttpMethod method) {
+
+    return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method) ||
+      HttpMethod.TRACE.equals(method) || HttpMethod.PUT.equals(method) || HttpMethod.DELETE.equals(method);
+  }
+
+  /**
+   * A single request, retried on connection failures. A request that was fully written may have been processed by the
+   * server, so it's retried only if its method is idempotent, and until a response starts. All the state of the call
+   * is accessed on its event loop.
+   */
+  private final class Call {
+
+    private final PoolKey key;
+    private final FullHttpRequest request;
+    private final long timeoutMs;
+    private final ResponseListener listener;
+    private int retriesLeft = retries;
+    private HostPool pool;
+    private Channel channel;
+    private ScheduledFuture<?> timeout;
+    private ScheduledFuture<?> readTimeout;
+    private long lastReadNanos;
+    private boolean requestWritten;
+    private boolean responseStarted;
+    private boolean keepAlive;
+    private boolean done;
+
+    private Call(final PoolKey key, final FullHttpRequest request, final long timeoutMs, final ResponseListener listener) {
+
+      this.key = key;
+      this.request = request;
+      this.timeoutMs = timeoutMs;
+      this.listener = listener;
+    }
+
+    private void start() {
+
+      if (timeoutMs > 0) {
+        timeout = key.eventLoop.schedule(() -> fail(new TimeoutException("request timed out after " + timeoutMs + "ms"), false),
+          timeoutMs, TimeUnit.MILLISECONDS);
+      }
+
+      attempt();
+    }
+
+    private void attempt() {
+
+      final HostPool attemptPool = pool(key);
+      pool = attemptPool;
+      requestWritten = false;
+      attemptPool.stats.pending.incrementAndGet();
+      attemptPool.channels.acquire().addListener((Future<Channel> acquired) -> onAcquired(attemptPool, acquired));
+    }
+
+    private void onAcquired(final HostPool attemptPool, final Future<Channel> acquired) {
+
+      attemptPool.stats.pending.decrementAndGet();
+      if (!acquired.isSuccess()) {
+        if (acquired.cause() instanceof IOException) {
+          attemptPool.onConnectFailed();
+        }
+        fail(acquired.cause(), true);
+        return;
+      }
+
+      final Channel acquiredChannel = acquired.getNow();
+      attemptPool.onConnected();
+      if (done) {
+        attemptPool.channels.release(acquiredChannel);
+        return;
+      }
+
+      channel = acquiredChannel;
+      channel.attr(CALL).set(this);
+      pool.stats.active.incrementAndGet();
+      onRead();
+      scheduleReadTimeout(readTimeoutMs);
+      channel.writeAndFlush(request.duplicate().retain()).addListener((ChannelFuture written) -> {
+        if (written.isSuccess()) {
+          requestWritten = true;
+          onRead();
+        } else {
+          fail(written.cause(), true);
+        }
+      });
+    }
+
+    private void onRead() {
+
+      lastReadNanos = System.nanoTime();
+    }
+
+    // the read timeout of this call only, the connection may have been idle in the pool for longer
+    private void scheduleReadTimeout(final long delayMs) {
+
+      if (readTimeoutMs <= 0) {
+        return;
+      }
+
+      readTimeout = key.eventLoop.schedule(() -> {
+        if (done || channel == null) {
+          return;
+        }
+
+        final long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadNanos);
+        if (idleMs >= readTimeoutMs) {
+          fail(new TimeoutException("read timed out"), false);
+        } else {
+          scheduleReadTimeout(readTimeoutMs - idleMs);
+        }
+      }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void onResponse(final HttpResponse response) {
+
+      responseStarted = true;
+      keepAlive = HttpHeaders.isKeepAlive(response);
+      if (!listener.onHeaders(response)) {
+        abort();
+      }
+    }
+
+    private void onContent(final HttpContent content) {
+
+      if (content.content().isReadable() && !listener.onContent(content.content())) {
+        abort();
+        return;
+      }
+
+      if (content instanceof LastHttpContent) {
+        finish();
+        releaseChannel(keepAlive);
+        listener.onCompleted();
+      }
+    }
+
+    private void fail(final Throwable error, final boolean retryable) {
+
+      if (done) {
+        return;
+      }
+
+      releaseChannel(false);
+      if (retryable && !responseStarted && retriesLeft > 0 && error instanceof IOException &&
+        (!requestWritten || isIdempotent(request.getMethod()))) {
+        retriesLeft--;
+        attempt();
+        return;
+      }
+
+      finish();
+      listener.onError(error);
+    }
+
+    private void abort() {
+
+      if (!done) {
+        finish();
+        releaseChannel(false);
+      }
+    }
+
+    private void finish() {
+
+      done = true;
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      request.release();
+    }
+
+    private void releaseChannel(final boolean reusable) {
+
+      if (readTimeout != null) {
+        readTimeout.cancel(false);
+        readTimeout = null;
+      }
+
+      if (channel != null) {
+        pool.stats.active.decrementAndGet();
+        channel.attr(CALL).remove();
+        if (!reusable) {
+          channel.close();
+        }
+        pool.channels.release(channel);
+        channel = null;
+      }
+    }
+  }
+
+  @ChannelHandler.Sharable
+  private static final class ResponseHandler extends SimpleChannelInboundHandler<HttpObject> {
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final HttpObject msg) throws Exception {
+
+      final Call call = ctx.channel().attr(CALL).get();
+      if (call == null) {
+        logger.debug("unexpected response on idle connection {}, closing it", ctx.channel());
+        ctx.close();
+        return;
+      }
+
+      call.onRead();
+      if (msg instanceof HttpResponse) {
+        call.onResponse((HttpResponse) msg);
+      }
+
+      if (msg instanceof HttpContent && ctx.channel().attr(CALL).get() == call) {
+        call.onContent((HttpContent) msg);
+      }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+
+      final Call call = ctx.channel().attr(CALL).get();
+      if (call != null) {
+        call.fail(new ClosedChannelException(), true);
+      }
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+
+      final Call call = ctx.channel().attr(CALL).get();
+      if (call != null) {
+        call.fail(cause, true);
+      } else {
+        ctx.close();
+      }
+    }
+
+    @Override
+    public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
+
+      if (evt instanceof IdleStateEvent) {
+        final Call call = ctx.channel().attr(CALL).get();
+        if (call == null && ((IdleStateEvent) evt).state() == IdleState.ALL_IDLE) {
+          ctx.close();
+        }
+      }
+
+      super.userEventTriggered(ctx, evt);
+    }
+  }
+
+  /**
+   * Counts the open connections of a host, and times their connect
+   */
+  private static final class ConnectionTracker extends ChannelInboundHandlerAdapter {
+
+    private final HostStats stats;
+    private final long createdNanos = System.nanoTime();
+    private boolean active;
+
+    private ConnectionTracker(final HostStats stats) {
+
+      this.stats = stats;
+    }
+
+    @Override
+    public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+
+      active = true;
+      stats.open.incrementAndGet();
+      if (stats.connectTime != null) {
+        stats.connectTime.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdNanos));
+      }
+      super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+
+      if (active) {
+        active = false;
+        stats.open.decrementAndGet();
+      }
+      super.channelInactive(ctx);
+    }
+  }
+
+  /**
+   * The connections to one host from all the event loops, of all the transports sharing a metric factory
+   */
+  private static final class HostStats {
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    // connect time in ms, null when there are no metrics
+    private final Histogram connectTime;
+
+    private HostStats(final Histogram connectTime) {
+
+      this.connectTime = connectTime;
+    }
+
+    private int idle() {
+
+      return Math.max(open.get() - active.get(), 0);
+    }
+  }
+
+  private static final class PoolKey {
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    private final EventLoop eventLoop;
+
+    private PoolKey(final String host, final int port, final boolean ssl, final EventLoop eventLoop) {
+
+      this.host = host;
+      this.port = port;
+      this.ssl = ssl;
+      this.eventLoop = eventLoop;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PoolKey)) {
+        return false;
+      }
+
+      final PoolKey other = (PoolKey) o;
+      return port == other.port && ssl == other.ssl && host.equals(other.host) && eventLoop == other.eventLoop;
+    }
+
+    @Override
+    public int hashCode() {
+
+      return Objects.hash(host, port, ssl, System.identityHashCode(eventLoop));
+    }
+  }
+
+  /**
+   * The event loops shared by the clients that don't get a group of their own
+   */
+  private static class EventLoopGroupHolder {
+
+    private static final EventLoopGroup INSTANCE = createGroup();
+
+    private static EventLoopGroup createGroup() {
+
+      final NioEventLoopGroup group = new NioEventLoopGroup(0, new DefaultThreadFactory("ob1k-http-client", true));
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          group.shutdownGracefully();
+        }
+      });
+      return group;
+    }
+  }
+}
@@ -0,0 +1,616 @@
+package com.outbrain.ob1k.http.netty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromError;
+import static com.outbrain.ob1k.concurrent.ComposableFutures.fromValue;
+
+import com.outbrain.ob1k.concurrent.ComposableFuture;
+import com.outbrain.ob1k.concurrent.ComposableFutures;
+import com.outbrain.ob1k.concurrent.eager.ComposablePromise;
+import com.outbrain.ob1k.concurrent.handlers.FutureSuccessHandler;
+import com.outbrain.ob1k.http.RequestBuilder;
+import com.outbrain.ob1k.http.Response;
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.ContentType;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.outbrain.ob1k.http.common.Header;
+import com.outbrain.ob1k.http.common.Param;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import com.outbrain.ob1k.http.utils.UrlUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.cookie.ClientCookieEncoder;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import org.apache.commons.codec.EncoderException;
+import rx.Observable;
+import rx.Observer;
+import rx.subjects.PublishSubject;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request builder executing its requests on a {@link NettyHttpTransport}
+ *
+ * Unlike the {@link com.outbrain.ob1k.http.ning.NingRequestBuilder}, the futures and streams of the requests complete
+ * on the event loop of the connection, so their continuations must not block.
+ */
+public class NettyRequestBuilder implements RequestBuilder {
+
+  private static final int MAX_REDIRECTS = 5;
+  private static final int MAX_PRESIZED_BODY = 1024 * 1024;
+
+  private final NettyHttpTransport transport;
+  private final HttpMethod method;
+  private final HttpHeaders headers = new DefaultHttpHeaders();
+  private final List<io.netty.handler.codec.http.cookie.Cookie> cookies = new ArrayList<>();
+  private final StringBuilder queryString = new StringBuilder();
+  private final boolean followRedirect;
+  private final boolean disableUrlEncoding;
+
+  private MarshallingStrategy marshallingStrategy;
+  private String requestUrl;
+  private long responseMaxSize;
+  private int requestTimeout;
+  private String charset = DEFAULT_CHARSET;
+  private String bodyString;
+  private byte[] bodyByteArray;
+  private Object bodyObject;
+
+  public NettyRequestBuilder(final NettyHttpTransport transport, final HttpMethod method, final String requestUrl,
+                             final long responseMaxSize, final MarshallingStrategy marshallingStrategy,
+                             final int requestTimeout, final boolean followRedirect, final boolean disableUrlEncoding) {
+
+    this.transport = checkNotNull(transport, "transport may not be null");
+    this.method = checkNotNull(method, "method may not be null");
+    this.requestUrl = checkNotNull(requestUrl, "requestUrl may not be null");
+    this.responseMaxSize = responseMaxSize;
+    this.marshallingStrategy = marshallingStrategy;
+    this.requestTimeout = requestTimeout;
+    this.followRedirect = followRedirect;
+    this.disableUrlEncoding = disableUrlEncoding;
+  }
+
+  @Override
+  public RequestBuilder setContentType(final ContentType contentType) {
+
+    return setContentType(contentType.requestEncoding());
+  }
+
+  @Override
+  public RequestBuilder setContentType(final String contentType) {
+
+    headers.set(CONTENT_TYPE_HEADER, contentType);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setPathParam(final String param, final String value) throws EncoderException {
+
+    requestUrl = UrlUtils.replacePathParam(requestUrl, param, value);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setPathParam(final Param param) throws EncoderException {
+
+    return setPathParam(param.getName(), param.getValue());
+  }
+
+  @Override
+  public RequestBuilder setPathParams(final List<Param> params) throws EncoderException {
+
+    for (final Param param : params) {
+      setPathParam(param);
+    }
+
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setUserAgent(final String userAgent) {
+
+    return addHeader(USER_AGENT_HEADER, userAgent);
+  }
+
+  @Override
+  public RequestBuilder addHeader(final String name, final String value) {
+
+    headers.add(name, value);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addHeader(final Header header) {
+
+    return addHeader(header.getName(), header.getValue());
+  }
+
+  @Override
+  public RequestBuilder addHeaders(final List<Header> headers) {
+
+    headers.forEach(this::addHeader);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final String body) {
+
+    this.bodyString = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final byte[] body) {
+
+    this.bodyByteArray = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBody(final Object body) {
+
+    this.bodyObject = body;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setBodyEncoding(final String charset) {
+
+    this.charset = charset;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder withBasicAuth(final String username, final String password) {
+
+    final String credentials = username + ":" + password;
+    headers.set(HttpHeaders.Names.AUTHORIZATION,
+      "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.ISO_8859_1)));
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParam(final String name, final String value) {
+
+    queryString.append(queryString.length() == 0 ? "" : "&").append(encode(name));
+    if (value != null) {
+      queryString.append('=').append(encode(value));
+    }
+
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParams(final Map<String, String> params) {
+
+    for (final Map.Entry<String, String> param : params.entrySet()) {
+      addQueryParam(param.getKey(), param.getValue());
+    }
+
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addQueryParam(final Param param) {
+
+    return addQueryParam(param.getName(), param.getValue());
+  }
+
+  @Override
+  public RequestBuilder addQueryParams(final List<Param> params) {
+
+    params.forEach(this::addQueryParam);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setResponseMaxSize(final long responseMaxSize) {
+
+    this.responseMaxSize = responseMaxSize;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder addCookie(final Cookie cookie) {
+
+    final DefaultCookie nettyCookie = new DefaultCookie(cookie.getName(), cookie.getValue());
+    nettyCookie.setDomain(cookie.getDomain());
+    nettyCookie.setPath(cookie.getPath());
+    nettyCookie.setMaxAge(cookie.getMaxAge());
+    nettyCookie.setSecure(cookie.isSecure());
+    nettyCookie.setHttpOnly(cookie.isHttpOnly());
+    cookies.add(nettyCookie);
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setRequestTimeout(final int requestTimeout) {
+
+    this.requestTimeout = requestTimeout;
+    return this;
+  }
+
+  @Override
+  public RequestBuilder setMarshallingStrategy(final MarshallingStrategy marshallingStrategy) {
+
+    this.marshallingStrategy = checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+    return this;
+  }
+
+  @Override
+  public ComposableFuture<Response> asResponse() {
+
+    final ComposablePromise<Response> promise = ComposableFutures.newPromise(false);
+    execute(promise, null, null);
+    return promise.future();
+  }
+
+  @Override
+  public Observable<Response> asStream() {
+
+    final PublishSubject<Response> result = PublishSubject.create();
+    stream(result, null, null);
+    return result;
+  }
+
+  @Override
+  public <T> ComposableFuture<TypedResponse<T>> asTypedResponse(final Class<T> type) {
+
+    return asTypedResponse((Type) type);
+  }
+
+  @Override
+  public <T> Observable<TypedResponse<T>> asTypedStream(final Class<T> type) {
+
+    return asTypedStream((Type) type);
+  }
+
+  @Override
+  public <T> ComposableFuture<TypedResponse<T>> asTypedResponse(final Type type) {
+
+    final ComposablePromise<TypedResponse<T>> promise = ComposableFutures.newPromise(false);
+    execute(promise, type, marshallingStrategy);
+    return promise.future();
+  }
+
+  @Override
+  public <T> Observable<TypedResponse<T>> asTypedStream(final Type type) {
+
+    checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+    checkNotNull(type, "type may not be null");
+
+    final PublishSubject<TypedResponse<T>> result = PublishSubject.create();
+    stream(result, type, marshallingStrategy);
+    return result;
+  }
+
+  @Override
+  public <T> ComposableFuture<T> asValue(final Class<T> type) {
+
+    return asValue((Type) type);
+  }
+
+  @Override
+  public <T> ComposableFuture<T> asValue(final Type type) {
+
+    final ComposableFuture<TypedResponse<T>> responseFuture = asTypedResponse(type);
+
+    return responseFuture.continueOnSuccess((FutureSuccessHandler<TypedResponse<T>, T>) typedResponse -> {
+      try {
+        return fromValue(typedResponse.getTypedBody());
+      } catch (final IOException e) {
+        return fromError(e);
+      }
+    });
+  }
+
+  @Override
+  public <T> Observable<T> asStreamValue(final Class<T> type) {
+
+    return asStreamValue((Type) type);
+  }
+
+  @Override
+  public <T> Observable<T> asStreamValue(final Type type) {
+
+    final Observable<TypedResponse<T>> responseObservable = asTypedStream(type);
+
+    return responseObservable.flatMap(typedResponse -> {
+      try {
+        return Observable.just(typedResponse.getTypedBody());
+      } catch (final IOException e) {
+        return Observable.error(e);
+      }
+    });
+  }
+
+  private <T> void execute(final ComposablePromise<? super TypedResponse<T>> promise, final Type type,
+                           final MarshallingStrategy marshallingStrategy) {
+
+    final URI uri;
+    final byte[] body;
+    try {
+      uri = requestUri();
+      body = requestBody();
+    } catch (final IOException | URISyntaxException e) {
+      promise.setException(e);
+      return;
+    }
+
+    send(uri, method, body, new FullResponseListener<>(uri, body, 0, type, marshallingStrategy, promise));
+  }
+
+  private <T> void stream(final Observer<? super TypedResponse<T>> target, final Type type,
+                          final MarshallingStrategy marshallingStrategy) {
+
+    final URI uri;
+    final byte[] body;
+    try {
+      uri = requestUri();
+      body = requestBody();
+    } catch (final IOException | URISyntaxException e) {
+      target.onError(e);
+      return;
+    }
+
+    // streams have no timeout, as with the ning request builder
+    transport.execute(uri, createRequest(uri, method, body), -1, new StreamResponseListener<>(uri, type, marshallingStrategy, target));
+  }
+
+  private void send(final URI uri, final HttpMethod method, final byte[] body, final ResponseListener listener) {
+
+    transport.execute(uri, createRequest(uri, method, body), requestTimeout, listener);
+  }
+
+  private FullHttpRequest createRequest(final URI uri, final HttpMethod method, final byte[] body) {
+
+    final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+    final String pathAndQuery = uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, pathAndQuery,
+      body == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(body));
+
+    final HttpHeaders requestHeaders = request.headers();
+    requestHeaders.set(headers);
+    requestHeaders.set(HttpHeaders.Names.HOST, uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost());
+    requestHeaders.set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+    if (body != null) {
+      requestHeaders.set(HttpHeaders.Names.CONTENT_LENGTH, body.length);
+    }
+    if (!cookies.isEmpty()) {
+      requestHeaders.set(HttpHeaders.Names.COOKIE, ClientCookieEncoder.STRICT.encode(cookies));
+    }
+    if (transport.isCompressionEnforced()) {
+      requestHeaders.set(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.GZIP + "," + HttpHeaders.Values.DEFLATE);
+    }
+
+    return request;
+  }
+
+  private URI requestUri() throws URISyntaxException {
+
+    if (queryString.length() == 0) {
+      return new URI(requestUrl);
+    }
+
+    return new URI(requestUrl + (requestUrl.indexOf('?') >= 0 ? "&" : "?") + queryString);
+  }
+
+  /**
+   * Prepares the request body by body type
+   *
+   * @return the body bytes, or null if no body was set
+   * @throws IOException
+   */
+  private byte[] requestBody() throws IOException {
+
+    if (bodyByteArray != null) {
+      return bodyByteArray;
+    } else if (bodyString != null) {
+      return bodyString.getBytes(charset);
+    } else if (bodyObject != null) {
+      return marshallingStrategy.marshall(bodyObject);
+    }
+
+    return null;
+  }
+
+  private String encode(final String value) {
+
+    if (disableUrlEncoding) {
+      return value;
+    }
+
+    try {
+      return UrlUtils.encode(value);
+    } catch (final EncoderException e) {
+      throw new IllegalArgumentException("can't encode query param " + value, e);
+    }
+  }
+
+  private static boolean isRedirect(final int status) {
+
+    return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+  }
+
+  /**
+   * Aggregates the whole response, following redirects if needed
+   */
+  private final class FullResponseListener<T> implements ResponseListener {
+
+    private final URI uri;
+    private final byte[] requestBody;
+    private final int redirects;
+    private final Type type;
+    private final MarshallingStrategy marshallingStrategy;
+    private final ComposablePromise<? super TypedResponse<T>> promise;
+    private HttpResponse response;
+    private URI redirectUri;
+    private byte[] body;
+    private int size;
+
+    private FullResponseListener(final URI uri, final byte[] requestBody, final int redirects, final Type type,
+                                 final MarshallingStrategy marshallingStrategy, final ComposablePromise<? super TypedResponse<T>> promise) {
+
+      this.uri = uri;
+      this.requestBody = requestBody;
+      this.redirects = redirects;
+      this.type = type;
+      this.marshallingStrategy = marshallingStrategy;
+      this.promise = promise;
+    }
+
+    @Override
+    public boolean onHeaders(final HttpResponse response) {
+
+      this.response = response;
+      final String location = response.headers().get(HttpHeaders.Names.LOCATION);
+      if (followRedirect && location != null && redirects < MAX_REDIRECTS && isRedirect(response.getStatus().code())) {
+        redirectUri = uri.resolve(location);
+      }
+
+      final long contentLength = HttpHeaders.getContentLength(response, -1);
+      if (responseMaxSize > 0 && contentLength > responseMaxSize) {
+        promise.setException(new RuntimeException("Response size is bigger than the limit: " + responseMaxSize));
+        return false;
+      }
+
+      // the body is presized by the content length, so it's copied once into an exact size array
+      body = new byte[(int) Math.max(0, Math.min(contentLength, MAX_PRESIZED_BODY))];
+      return true;
+    }
+
+    @Override
+    public boolean onContent(final ByteBuf content) {
+
+      if (redirectUri != null) {
+        return true;
+      }
+
+      final int length = content.readableBytes();
+      if (responseMaxSize > 0 && size + length > responseMaxSize) {
+        promise.setException(new RuntimeException("Response size is bigger than the limit: " + responseMaxSize));
+        return false;
+      }
+
+      if (size + length > body.length) {
+        final byte[] grown = new byte[Math.max(size + length, body.length * 2)];
+        System.arraycopy(body, 0, grown, 0, size);
+        body = grown;
+      }
+
+      content.getBytes(content.readerIndex(), body, size, length);
+      size += length;
+      return true;
+    }
+
+    @Override
+    public void onCompleted() {
+
+      if (redirectUri != null) {
+        final int status = response.getStatus().code();
+        final boolean keepMethod = status == 307 || status == 308;
+        final HttpMethod redirectMethod = keepMethod ? method : HttpMethod.GET;
+        final byte[] redirectBody = keepMethod ? requestBody : null;
+        send(redirectUri, redirectMethod, redirectBody,
+          new FullResponseListener<>(redirectUri, redirectBody, redirects + 1, type, marshallingStrategy, promise));
+        return;
+      }
+
+      final byte[] responseBody = size == body.length ? body : Arrays.copyOf(body, size);
+      promise.set(new NettyResponse<>(response, uri.toString(), responseBody, redirects > 0, type, marshallingStrategy));
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+
+      promise.setException(error);
+    }
+  }
+
+  /**
+   * Emits a response for each part of the body
+   */
+  private final class StreamResponseListener<T> implements ResponseListener {
+
+    private final URI uri;
+    private final Type type;
+    private final MarshallingStrategy marshallingStrategy;
+    private final Observer<? super TypedResponse<T>> target;
+    private HttpResponse response;
+    private long size;
+
+    private StreamResponseListener(final URI uri, final Type type, final MarshallingStrategy marshallingStrategy,
+                                   final Observer<? super TypedResponse<T>> target) {
+
+      this.uri = uri;
+      this.type = type;
+      this.marshallingStrategy = marshallingStrategy;
+      this.target = target;
+    }
+
+    @Override
+    public boolean onHeaders(final HttpResponse response) {
+
+      this.response = response;
+      return true;
+    }
+
+    @Override
+    public boolean onContent(final ByteBuf content) {
+
+      if (responseMaxSize > 0) {
+        size += content.readableBytes();
+        if (size > responseMaxSize) {
+          target.onError(new RuntimeException("Response size is bigger than the limit: " + responseMaxSize));
+          return false;
+        }
+      }
+
+      final byte[] part = new byte[content.readableBytes()];
+      content.getBytes(content.readerIndex(), part);
+      final TypedResponse<T> typedResponse = new NettyResponse<>(response, uri.toString(), part, false, type, marshallingStrategy);
+
+      if (type != null) {
+        try {
+          // making sure that we can unmarshall the response
+          typedResponse.getTypedBody();
+        } catch (final Exception e) {
+          // if the unmarshall failed, no reason to continuing the stream
+          target.onError(e);
+          return false;
+        }
+      }
+
+      target.onNext(typedResponse);
+      return true;
+    }
+
+    @Override
+    public void onCompleted() {
+
+      target.onCompleted();
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+
+      target.onError(error);
+    }
+  }
+}
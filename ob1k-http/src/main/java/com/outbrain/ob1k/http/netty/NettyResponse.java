@@ -0,0 +1,197 @@
+package com.outbrain.ob1k.http.netty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.outbrain.ob1k.http.TypedResponse;
+import com.outbrain.ob1k.http.common.Cookie;
+import com.outbrain.ob1k.http.marshalling.MarshallingStrategy;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.cookie.ClientCookieDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response received by the {@link NettyHttpTransport}, holding its whole body
+ */
+public class NettyResponse<T> implements TypedResponse<T> {
+
+  private final HttpResponse response;
+  private final String url;
+  private final byte[] body;
+  private final boolean redirected;
+  private final MarshallingStrategy marshallingStrategy;
+  private final Type type;
+  private volatile T typedBody;
+
+  NettyResponse(final HttpResponse response, final String url, final byte[] body, final boolean redirected,
+                final Type type, final MarshallingStrategy marshallingStrategy) {
+
+    this.response = checkNotNull(response, "response may not be null");
+    this.url = url;
+    this.body = body;
+    this.redirected = redirected;
+    this.type = type;
+    this.marshallingStrategy = marshallingStrategy;
+  }
+
+  @Override
+  public int getStatusCode() {
+
+    return response.getStatus().code();
+  }
+
+  @Override
+  public String getStatusText() {
+
+    return response.getStatus().reasonPhrase();
+  }
+
+  @Override
+  public URI getUri() throws URISyntaxException {
+
+    return new URI(url);
+  }
+
+  @Override
+  public String getUrl() {
+
+    return url;
+  }
+
+  @Override
+  public String getContentType() {
+
+    return response.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+  }
+
+  @Override
+  public T getTypedBody() throws IOException {
+
+    if (typedBody == null) {
+
+      checkNotNull(marshallingStrategy, "unmarshallingStrategy may not be null");
+      checkNotNull(type, "class type may not be null");
+
+      typedBody = marshallingStrategy.unmarshall(type, this);
+    }
+
+    return typedBody;
+  }
+
+  @Override
+  public byte[] getResponseBodyAsBytes() throws IOException {
+
+    return body;
+  }
+
+  @Override
+  public InputStream getResponseBodyAsStream() throws IOException {
+
+    return new ByteArrayInputStream(body);
+  }
+
+  @Override
+  public ByteBuffer getResponseBodyAsByteBuffer() throws IOException {
+
+    return ByteBuffer.wrap(body);
+  }
+
+  @Override
+  public String getResponseBody() throws IOException {
+
+    return new String(body, charset());
+  }
+
+  @Override
+  public List<Cookie> getCookies() {
+
+    final List<Cookie> cookies = new ArrayList<>();
+    for (final String header : response.headers().getAll(HttpHeaders.Names.SET_COOKIE)) {
+      final io.netty.handler.codec.http.cookie.Cookie cookie = ClientCookieDecoder.LAX.decode(header);
+      if (cookie != null) {
+        cookies.add(new Cookie(cookie.name(), cookie.value(), cookie.domain(), cookie.path(), cookie.maxAge(),
+          cookie.isSecure(), cookie.isHttpOnly()));
+      }
+    }
+
+    return cookies;
+  }
+
+  @Override
+  public String getHeader(final String name) {
+
+    return response.headers().get(name);
+  }
+
+  @Override
+  public List<String> getHeaders(final String name) {
+
+    return response.headers().getAll(name);
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaders() {
+
+    final Map<String, List<String>> headers = new LinkedHashMap<>();
+    for (final String name : response.headers().names()) {
+      headers.put(name, response.headers().getAll(name));
+    }
+
+    return headers;
+  }
+
+  @Override
+  public boolean isRedirected() {
+
+    return redirected;
+  }
+
+  @Override
+  public boolean hasResponseBody() {
+
+    return body.length > 0;
+  }
+
+  @Override
+  public boolean hasResponseStatus() {
+
+    return true;
+  }
+
+  @Override
+  public boolean hasResponseHeaders() {
+
+    return !response.headers().isEmpty();
+  }
+
+  private Charset charset() {
+
+    final String contentType = getContentType();
+    if (contentType != null) {
+      final int index = contentType.toLowerCase().indexOf("charset=");
+      if (index >= 0) {
+        final String charset = contentType.substring(index + "charset=".length()).split(";")[0].trim().replace("\"", "");
+        try {
+          return Charset.forName(charset);
+        } catch (final IllegalArgumentException e) {
+          return StandardCharsets.UTF_8;
+        }
+      }
+    }
+
+    return StandardCharsets.UTF_8;
+  }
+}
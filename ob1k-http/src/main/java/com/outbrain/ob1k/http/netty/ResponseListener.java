@@ -0,0 +1,26 @@
+package com.outbrain.ob1k.http.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+
+/**
+ * receives the parts of a response from the {@link NettyHttpTransport}.
+ * all the callbacks of a request are called on the event loop of its connection, so they must not block.
+ */
+interface ResponseListener {
+
+  /**
+   * @return false to abort the request, after the listener reported its own error.
+   */
+  boolean onHeaders(HttpResponse response);
+
+  /**
+   * @param content a part of the body, only valid during the call.
+   * @return false to abort the request, after the listener reported its own error.
+   */
+  boolean onContent(ByteBuf content);
+
+  void onCompleted();
+
+  void onError(Throwable error);
+}
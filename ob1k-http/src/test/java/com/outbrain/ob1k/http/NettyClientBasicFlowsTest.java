@@ -0,0 +1,323 @@
+package com.outbrain.ob1k.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import com.ning.http.util.Base64;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import com.outbrain.swinfra.metrics.codahale3.CodahaleMetricsFactory;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rx.Observable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The basic flows of the http client, executed by the netty transport
+ */
+public class NettyClientBasicFlowsTest {
+
+  private static MockWebServer server;
+  private static CustomDispatcher dispatcher;
+  private static HttpClient httpClient;
+
+  private static class CustomDispatcher extends Dispatcher {
+    private final BlockingQueue<Function<RecordedRequest, MockResponse>> responseQueue = new LinkedBlockingQueue<>();
+    private volatile RecordedRequest lastRequest;
+    private final MockResponse failureResponse = new MockResponse().setResponseCode(500).setBody("response queue empty");
+
+    @Override
+    public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+      lastRequest = request;
+      if (responseQueue.peek() == null) {
+        return failureResponse;
+      }
+      return responseQueue.take().apply(request);
+    }
+
+    public void enqueue(final MockResponse response) {
+      enqueue(input -> response.clone());
+    }
+
+    public void enqueue(final Function<RecordedRequest, MockResponse> responseFunction) {
+      responseQueue.add(responseFunction);
+    }
+
+    public RecordedRequest getRequest() {
+      return lastRequest;
+    }
+  }
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    server = new MockWebServer();
+    dispatcher = new CustomDispatcher();
+    server.setDispatcher(dispatcher);
+    httpClient = HttpClient.newBuilder().useNettyTransport().build();
+  }
+
+  @AfterClass
+  public static void tearDown() throws IOException {
+    httpClient.close();
+    server.shutdown();
+  }
+
+  @Test
+  public void testSimpleRequestResponse() throws Exception {
+
+    final String expected = "hello world";
+
+    dispatcher.enqueue(new MockResponse().setBody(expected));
+
+    final String url = server.url("/helloWorld").toString();
+    final Response response = httpClient.get(url).asResponse().get();
+
+    assertEquals("response body should be " + expected, expected, response.getResponseBody());
+    assertEquals("status code should be 200", 200, response.getStatusCode());
+  }
+
+  @Test
+  public void testConnectionReuse() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setBody("first"));
+    dispatcher.enqueue(new MockResponse().setBody("second"));
+
+    final String url = server.url("/helloWorld").toString();
+    assertEquals("first", httpClient.get(url).asResponse().get().getResponseBody());
+    assertEquals("second", httpClient.get(url).asResponse().get().getResponseBody());
+
+    assertTrue("second request should reuse the connection", dispatcher.getRequest().getSequenceNumber() > 0);
+  }
+
+  @Test
+  public void testWarmUpAndConnectionMetrics() throws Exception {
+
+    final MetricRegistry registry = new MetricRegistry();
+    final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    final HttpClient warmClient = HttpClient.newBuilder().useNettyTransport(eventLoopGroup).
+      setMetricFactory(new CodahaleMetricsFactory(registry)).build();
+
+    try {
+      final URI uri = URI.create(server.url("/warm").toString());
+      final String component = "NettyHttpTransport." + uri.getHost().replace('.', '_') + "_" + uri.getPort();
+
+      assertEquals("connections should be opened ahead", 2, (int) warmClient.warmUp(uri.toString(), 2).get());
+      assertEquals("warm connections should be idle", 2, gaugeValue(registry, component + ".idleConnections"));
+      assertEquals("warm connections shouldn't be active", 0, gaugeValue(registry, component + ".activeConnections"));
+      assertEquals("connect time should be recorded", 2, registry.histogram(component + ".connectTime").getCount());
+
+      dispatcher.enqueue(new MockResponse().setBody("warm"));
+      assertEquals("warm", warmClient.get(uri.toString()).asResponse().get().getResponseBody());
+      assertEquals("the request should use a warm connection", 2, registry.histogram(component + ".connectTime").getCount());
+      assertEquals("no request should wait for a connection", 0, gaugeValue(registry, component + ".pendingConnections"));
+    } finally {
+      warmClient.close();
+      eventLoopGroup.shutdownGracefully();
+    }
+  }
+
+  @Test
+  public void testConnectionMetricsOfClientsSharingAMetricFactory() throws Exception {
+
+    final MetricRegistry registry = new MetricRegistry();
+    final CodahaleMetricsFactory metricFactory = new CodahaleMetricsFactory(registry);
+    final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    final HttpClient firstClient = HttpClient.newBuilder().useNettyTransport(eventLoopGroup).
+      setMetricFactory(metricFactory).build();
+    final HttpClient secondClient = HttpClient.newBuilder().useNettyTransport(eventLoopGroup).
+      setMetricFactory(metricFactory).build();
+
+    try {
+      final URI uri = URI.create(server.url("/shared").toString());
+      final String component = "NettyHttpTransport." + uri.getHost().replace('.', '_') + "_" + uri.getPort();
+
+      assertEquals(2, (int) firstClient.warmUp(uri.toString(), 2).get());
+      assertEquals(1, (int) secondClient.warmUp(uri.toString(), 1).get());
+      assertEquals("the idle connections of both clients should be counted", 3,
+        gaugeValue(registry, component + ".idleConnections"));
+
+      firstClient.close();
+      for (int i = 0; i < 100 && gaugeValue(registry, component + ".idleConnections") > 1; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals("the connections of the closed client shouldn't be counted", 1,
+        gaugeValue(registry, component + ".idleConnections"));
+    } finally {
+      firstClient.close();
+      secondClient.close();
+      eventLoopGroup.shutdownGracefully();
+    }
+  }
+
+  private static int gaugeValue(final MetricRegistry registry, final String name) {
+
+    final Gauge<?> gauge = registry.getGauges().get(name);
+    assertTrue("gauge " + name + " should be registered", gauge != null);
+    return (Integer) gauge.getValue();
+  }
+
+  @Test
+  public void testStream() throws Exception {
+
+    final String singleResponse = "Hello World";
+    final int repeats = 3;
+    final String streamBody = Strings.repeat(singleResponse, repeats);
+
+    dispatcher.enqueue(new MockResponse().setChunkedBody(streamBody, streamBody.length() / repeats));
+
+    final String url = server.url("/helloWorldStream").toString();
+    final StringBuilder received = new StringBuilder();
+
+    httpClient.get(url).asStream().toBlocking().forEach(response -> {
+      try {
+        received.append(response.getResponseBody());
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertEquals("chunks should add up to the body", streamBody, received.toString());
+  }
+
+  @Test
+  public void testRequestWithBody() throws Exception {
+
+    dispatcher.enqueue(request -> new MockResponse().setBody(request.getBody()));
+
+    final String name = "julia";
+    final String url = server.url("/getName").toString();
+    final Response response = httpClient.post(url).setBody(name).asResponse().get();
+
+    final RecordedRequest request = dispatcher.getRequest();
+
+    assertEquals("response body should be " + name, name, response.getResponseBody());
+    assertEquals("request should be of method post", "POST", request.getMethod());
+  }
+
+  @Test
+  public void testIdempotentRequestIsRetriedAfterItWasWritten() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+    dispatcher.enqueue(new MockResponse().setBody("retried"));
+
+    final int requests = server.getRequestCount();
+    final String url = server.url("/retried").toString();
+    assertEquals("retried", httpClient.get(url).asResponse().get().getResponseBody());
+    assertEquals("the request should be sent again", requests + 2, server.getRequestCount());
+  }
+
+  @Test
+  public void testPostIsNotRetriedAfterItWasWritten() throws Exception {
+
+    // a server of its own, a request of a former test may still reach the shared server
+    final MockWebServer postServer = new MockWebServer();
+    postServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+    try {
+      httpClient.post(postServer.url("/notRetried").toString()).setBody("body").asResponse().get();
+      fail("the request should fail");
+    } catch (final ExecutionException e) {
+      assertTrue("the request should fail on the closed connection", e.getCause() instanceof IOException);
+    } finally {
+      postServer.shutdown();
+    }
+    assertEquals("a written post should be sent once", 1, postServer.getRequestCount());
+  }
+
+  @Test
+  public void testRequestWithQueryParam() throws Exception {
+
+    dispatcher.enqueue(request -> new MockResponse().setBody(request.getPath()));
+
+    final String url = server.url("/withQueryParams").toString();
+    final String name = "julia";
+    final Response response = httpClient.get(url).addQueryParam("name", name).asResponse().get();
+
+    assertTrue("response body should have name " + name, response.getResponseBody().contains("name=" + name));
+  }
+
+  @Test
+  public void testRequestWithPathParam() throws Exception {
+
+    dispatcher.enqueue(request -> new MockResponse().setBody(request.getPath()));
+
+    final String name = "julia";
+    final String url = server.url("/withQueryParams").toString();
+    final Response response = httpClient.get(url + "?name={name}").setPathParam("name", name).asResponse().get();
+
+    assertTrue("response body should have name " + name, response.getResponseBody().contains("name=" + name));
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void testRequestTimeout() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setBody("hello world").throttleBody(0, 10, TimeUnit.MILLISECONDS));
+
+    final String url = server.url("/sleep").toString();
+    httpClient.get(url).setRequestTimeout(1).asResponse().get();
+
+    fail("should have throw ExecutionException - timeout exception");
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void testResponseMaxSize() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setBody("Hello World"));
+
+    final String url = server.url("/helloWorld").toString();
+    httpClient.get(url).setResponseMaxSize(1).asResponse().get();
+
+    fail("should have throw ExecutionException - response too big exception");
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testStreamWithResponseMaxSize() throws Exception {
+
+    dispatcher.enqueue(new MockResponse().setChunkedBody("Hello World", 2));
+
+    final String url = server.url("/stream").toString();
+    final Observable<Response> responseObservable = httpClient.get(url).
+      setResponseMaxSize(1).
+      asStream();
+
+    responseObservable.toBlocking().first();
+
+    fail("should have throw RuntimeException - response size limit is bigger than 1");
+  }
+
+  @Test
+  public void testBasicAuth() throws Exception {
+
+    dispatcher.enqueue(input -> {
+      final String authHeader = input.getHeader(HttpHeaders.Names.AUTHORIZATION).replace("Basic ", "");
+      final String credentials = new String(Base64.decode(authHeader));
+      return new MockResponse().setBody(credentials);
+    });
+
+    final String basicUsername = "moshe";
+    final String basicPassword = "junkhead";
+
+    final String url = server.url("/basicAuth").toString();
+    final Response response = httpClient.get(url).withBasicAuth(basicUsername, basicPassword).asResponse().get();
+
+    final String basicAuthHeader = basicUsername + ":" + basicPassword;
+    assertEquals("response should be '" + basicAuthHeader + "'", basicAuthHeader, response.getResponseBody());
+  }
+}
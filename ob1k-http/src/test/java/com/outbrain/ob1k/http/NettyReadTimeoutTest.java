@@ -0,0 +1,79 @@
+package com.outbrain.ob1k.http;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The read timeout of the netty transport, each test with a server and a client of its own
+ */
+public class NettyReadTimeoutTest {
+
+  private MockWebServer server;
+  private volatile RecordedRequest lastRequest;
+  private HttpClient httpClient;
+
+  @Before
+  public void setup() throws IOException {
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+        lastRequest = request;
+        if (request.getPath().startsWith("/slow")) {
+          Thread.sleep(200);
+        }
+        return new MockResponse().setBody(request.getPath());
+      }
+    });
+    httpClient = HttpClient.newBuilder().useNettyTransport().setReadTimeout(300).build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    httpClient.close();
+    server.shutdown();
+  }
+
+  @Test
+  public void testReadTimeoutOfAConnectionReusedAfterBeingIdle() throws Exception {
+
+    assertEquals("/fast", httpClient.get(server.url("/fast").toString()).asResponse().get().getResponseBody());
+
+    // idle in the pool for longer than the read timeout, then answered within it
+    Thread.sleep(750);
+    assertEquals("/slow", httpClient.get(server.url("/slow").toString()).asResponse().get().getResponseBody());
+    assertTrue("the second request should reuse the idle connection", lastRequest.getSequenceNumber() > 0);
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(final RecordedRequest request) {
+        return new MockResponse().setBody("late").setBodyDelay(1, TimeUnit.SECONDS);
+      }
+    });
+
+    try {
+      httpClient.get(server.url("/late").toString()).asResponse().get();
+      fail("should have timed out reading the response");
+    } catch (final ExecutionException e) {
+      assertTrue(e.getCause().toString(), e.getCause() instanceof TimeoutException);
+    }
+  }
+}